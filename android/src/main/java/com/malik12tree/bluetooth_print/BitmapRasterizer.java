@@ -0,0 +1,219 @@
+package com.malik12tree.bluetooth_print;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import com.rt.printerlibrary.setting.BitmapSetting;
+import java.io.IOException;
+
+/**
+ * Decodes images close to the printer's dot width and feeds them to a {@link RasterEncoder} one band at a time.
+ *
+ * Bounds are decoded first so large photos are subsampled during decode instead of being inflated at full
+ * resolution. Decoded bitmaps are recycled as soon as they have been converted; pixel and luminance arrays are
+ * reused between images.
+ */
+final class BitmapRasterizer {
+
+    // Print head widths of 80 mm printers, the widest common ones, used when the printer's own width is unknown.
+    static final int HEAD_DOTS_203_DPI = 576;
+    static final int HEAD_DOTS_300_DPI = 832;
+    // Printed rows decoded per region when streaming, ten GS v 0 commands.
+    static final int STREAM_BAND_ROWS = RasterEncoder.BAND_HEIGHT * 10;
+
+    interface BandConsumer {
+        /**
+         * Receives the raster commands of the next band. The buffer is reused for the following band.
+         */
+        void onBand(EscBuffer band);
+    }
+
+    private final RasterEncoder encoder = new RasterEncoder();
+    private int[] pixels = new int[0];
+    private byte[] luminance = new byte[0];
+
+    /**
+     * Decodes {@code data} and appends it to {@code out} as raster bands.
+     *
+     * @param headDots Printable width of the printer in dots at 203 DPI, {@code 0} if unknown.
+     * @throws IllegalArgumentException if the data isn't a decodable image.
+     */
+    void rasterize(byte[] data, BitmapSetting setting, int headDots, RasterEncoder.Dither dither, EscBuffer out) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IllegalArgumentException("Invalid Image");
+        }
+
+        int width = targetWidth(setting.getBimtapLimitWidth(), setting.getBmpDpi(), headDots, options.outWidth);
+        int height = scaledHeight(options.outWidth, options.outHeight, width);
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize(options.outWidth, width);
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        Bitmap decoded = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (decoded == null) {
+            throw new IllegalArgumentException("Invalid Image");
+        }
+
+        Bitmap scaled = decoded;
+        try {
+            if (decoded.getWidth() != width || decoded.getHeight() != height) {
+                scaled = Bitmap.createScaledBitmap(decoded, width, height, true);
+            }
+            encode(scaled, dither, out);
+        } finally {
+            if (scaled != decoded) {
+                scaled.recycle();
+            }
+            decoded.recycle();
+        }
+    }
+
+    /**
+     * Decodes {@code data} in horizontal regions and hands each converted band to {@code consumer} as soon as it is
+     * ready, so only one region is ever held in memory.
+     *
+     * Formats the region decoder can't handle are rasterized in one go and delivered as a single band.
+     *
+     * @param headDots Printable width of the printer in dots at 203 DPI, {@code 0} if unknown.
+     * @throws IllegalArgumentException if the data isn't a decodable image.
+     */
+    @SuppressWarnings("deprecation")
+    void rasterizeInBands(byte[] data, BitmapSetting setting, int headDots, RasterEncoder.Dither dither,
+            BandConsumer consumer) {
+        EscBuffer band = new EscBuffer();
+        band.clear();
+
+        BitmapRegionDecoder decoder;
+        try {
+            decoder = BitmapRegionDecoder.newInstance(data, 0, data.length, false);
+        } catch (IOException e) {
+            decoder = null;
+        }
+        if (decoder == null) {
+            rasterize(data, setting, headDots, dither, band);
+            consumer.onBand(band);
+            return;
+        }
+
+        try {
+            int sourceWidth = decoder.getWidth();
+            int sourceHeight = decoder.getHeight();
+            int width = targetWidth(setting.getBimtapLimitWidth(), setting.getBmpDpi(), headDots, sourceWidth);
+            int height = scaledHeight(sourceWidth, sourceHeight, width);
+
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = sampleSize(sourceWidth, width);
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+
+            ensureBandCapacity(width);
+            encoder.start(width, dither);
+            Rect region = new Rect();
+            for (int top = 0; top < height; top += STREAM_BAND_ROWS) {
+                int rows = Math.min(STREAM_BAND_ROWS, height - top);
+                int sourceTop = (int) ((long) top * sourceHeight / height);
+                int sourceBottom = Math.max(sourceTop + 1, (int) ((long) (top + rows) * sourceHeight / height));
+                region.set(0, sourceTop, sourceWidth, Math.min(sourceBottom, sourceHeight));
+
+                Bitmap decoded = decoder.decodeRegion(region, options);
+                if (decoded == null) {
+                    throw new IllegalArgumentException("Invalid Image");
+                }
+
+                Bitmap scaled = decoded;
+                try {
+                    if (decoded.getWidth() != width || decoded.getHeight() != rows) {
+                        scaled = Bitmap.createScaledBitmap(decoded, width, rows, true);
+                    }
+                    band.clear();
+                    encodeRows(scaled, band);
+                } finally {
+                    if (scaled != decoded) {
+                        scaled.recycle();
+                    }
+                    decoded.recycle();
+                }
+
+                consumer.onBand(band);
+            }
+        } finally {
+            decoder.recycle();
+        }
+    }
+
+    /**
+     * Appends an already scaled bitmap to {@code out} as raster bands. The bitmap is not recycled.
+     */
+    void encode(Bitmap bitmap, RasterEncoder.Dither dither, EscBuffer out) {
+        ensureBandCapacity(bitmap.getWidth());
+        encoder.start(bitmap.getWidth(), dither);
+        encodeRows(bitmap, out);
+    }
+
+    /**
+     * Continues the image started with {@link RasterEncoder#start} with the rows of {@code bitmap}.
+     */
+    private void encodeRows(Bitmap bitmap, EscBuffer out) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        for (int top = 0; top < height; top += RasterEncoder.BAND_HEIGHT) {
+            int rows = Math.min(RasterEncoder.BAND_HEIGHT, height - top);
+            bitmap.getPixels(pixels, 0, width, 0, top, width, rows);
+            toLuminance(pixels, luminance, width * rows);
+            encoder.encodeBand(luminance, 0, rows, out);
+        }
+    }
+
+    /**
+     * Returns the printed width in dots: the image width, shrunk to the configured limit and to the print head. Both
+     * are given at 203 DPI and scaled for 300 DPI heads.
+     */
+    static int targetWidth(int limitWidth, int dpi, int headDots, int sourceWidth) {
+        boolean highDpi = dpi == 300;
+        int head = headDots > 0 ? headDots : HEAD_DOTS_203_DPI;
+        int width = Math.min(sourceWidth, highDpi ? head * HEAD_DOTS_300_DPI / HEAD_DOTS_203_DPI : head);
+
+        if (limitWidth > 0) {
+            width = Math.min(width, highDpi ? limitWidth * 3 / 2 : limitWidth);
+        }
+        return Math.max(1, width);
+    }
+
+    static int scaledHeight(int sourceWidth, int sourceHeight, int width) {
+        return Math.max(1, (int) ((long) sourceHeight * width / sourceWidth));
+    }
+
+    /**
+     * Largest power of two that still decodes at least {@code targetWidth} pixels wide.
+     */
+    static int sampleSize(int sourceWidth, int targetWidth) {
+        int sampleSize = 1;
+        while (sourceWidth / (sampleSize * 2) >= targetWidth) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Converts ARGB pixels to luminance, compositing transparent pixels onto white paper.
+     */
+    static void toLuminance(int[] argb, byte[] out, int length) {
+        for (int i = 0; i < length; i++) {
+            int pixel = argb[i];
+            int alpha = pixel >>> 24;
+            int luma = (((pixel >> 16) & 0xff) * 77 + ((pixel >> 8) & 0xff) * 150 + (pixel & 0xff) * 29) >> 8;
+            out[i] = (byte) (255 - ((255 - luma) * alpha) / 255);
+        }
+    }
+
+    private void ensureBandCapacity(int width) {
+        int length = width * RasterEncoder.BAND_HEIGHT;
+        if (pixels.length < length) {
+            pixels = new int[length];
+            luminance = new byte[length];
+        }
+    }
+}
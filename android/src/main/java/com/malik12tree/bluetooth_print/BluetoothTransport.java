@@ -0,0 +1,158 @@
+package com.malik12tree.bluetooth_print;
+
+import android.annotation.SuppressLint;
+import android.bluetooth.BluetoothDevice;
+import com.rt.printerlibrary.bean.BluetoothEdrConfigBean;
+import com.rt.printerlibrary.connect.PrinterInterface;
+import com.rt.printerlibrary.enumerate.CommonEnum;
+import com.rt.printerlibrary.enumerate.ConnectStateEnum;
+import com.rt.printerlibrary.factory.connect.BluetoothFactory;
+import com.rt.printerlibrary.observer.PrinterObserver;
+import com.rt.printerlibrary.observer.PrinterObserverManager;
+import com.rt.printerlibrary.printer.RTPrinter;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bluetooth Classic (RFCOMM) through the vendored SDK. Every connect gets a fresh SDK printer interface, and the
+ * SDK's process-wide observer callbacks are routed to the listener of the interface they concern.
+ */
+final class BluetoothTransport implements PrinterTransport {
+
+    private static final Map<PrinterInterface, Link> links = new ConcurrentHashMap<>();
+
+    private static final class Link {
+        final BluetoothTransport transport;
+        final Listener listener;
+
+        Link(BluetoothTransport transport, Listener listener) {
+            this.transport = transport;
+            this.listener = listener;
+        }
+    }
+
+    private static final PrinterObserver OBSERVER = new PrinterObserver() {
+        @Override
+        public void printerObserverCallback(PrinterInterface printerInterface, int state) {
+            if (printerInterface == null) {
+                return;
+            }
+
+            switch (state) {
+                case CommonEnum.CONNECT_STATE_SUCCESS: {
+                    Link link = links.get(printerInterface);
+                    if (link != null) {
+                        link.transport.printer.setPrinterInterface(printerInterface);
+                        // Read status replies even while printing.
+                        printerInterface.setAlwaysReadInputStream(true);
+                        link.listener.onConnected();
+                    } else {
+                        // The attempt was given up while connecting.
+                        printerInterface.disConnect();
+                    }
+                    break;
+                }
+                case CommonEnum.CONNECT_STATE_INTERRUPTED: {
+                    Link link = links.remove(printerInterface);
+                    if (link != null) {
+                        link.listener.onDisconnected();
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void printerReadMsgCallback(PrinterInterface printerInterface, byte[] bytes) {
+            Link link = printerInterface != null && bytes != null ? links.get(printerInterface) : null;
+            if (link != null) {
+                link.listener.onData(bytes);
+            }
+        }
+    };
+
+    static {
+        PrinterObserverManager.getInstance().add(OBSERVER);
+    }
+
+    private final BluetoothDevice device;
+    private final BluetoothEdrConfigBean config;
+    private final RTPrinter printer;
+
+    BluetoothTransport(BluetoothDevice device, RTPrinter printer) {
+        this.device = device;
+        this.config = new BluetoothEdrConfigBean(device);
+        this.printer = printer;
+    }
+
+    @Override
+    public String address() {
+        return device.getAddress();
+    }
+
+    @SuppressLint("MissingPermission")
+    @Override
+    public String name() {
+        return device.getName();
+    }
+
+    @Override
+    public void connect(Listener listener) throws IOException {
+        PrinterInterface printerInterface = new BluetoothFactory().create();
+        if (printerInterface == null) {
+            throw new IOException("Failed to create printer interface!");
+        }
+        printerInterface.setConfigObject(config);
+        links.put(printerInterface, new Link(this, listener));
+        printer.setPrinterInterface(printerInterface);
+
+        try {
+            printer.connect(config);
+        } catch (Exception e) {
+            links.remove(printerInterface);
+            throw new IOException("Failed to connect!", e);
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        return printer.getConnectState() == ConnectStateEnum.Connected;
+    }
+
+    @Override
+    public void write(byte[] data) throws IOException {
+        if (!isConnected()) {
+            throw new IOException("Printer is not connected!");
+        }
+        try {
+            printer.writeMsg(data);
+        } catch (RuntimeException e) {
+            throw new IOException("Printer is not connected!", e);
+        }
+        if (!isConnected()) {
+            throw new IOException("Printer is not connected!");
+        }
+    }
+
+    @Override
+    public void disconnect() {
+        if (isConnected()) {
+            // The SDK reports the closed link through the observer.
+            printer.disConnect();
+            return;
+        }
+
+        // Still connecting: abort the attempt.
+        PrinterInterface printerInterface = printer.getPrinterInterface();
+        Link link = printerInterface != null ? links.remove(printerInterface) : null;
+        if (printerInterface != null) {
+            printerInterface.disConnect();
+        }
+        if (link != null) {
+            link.listener.onDisconnected();
+        }
+    }
+}
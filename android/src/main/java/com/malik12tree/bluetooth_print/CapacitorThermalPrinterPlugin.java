@@ -10,10 +10,11 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.graphics.BitmapFactory;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Base64;
 import android.util.Log;
-import androidx.annotation.RequiresApi;
 import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
 import com.getcapacitor.PermissionState;
@@ -23,40 +24,50 @@ import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
 import com.getcapacitor.annotation.Permission;
 import com.getcapacitor.annotation.PermissionCallback;
-import com.rt.printerlibrary.bean.BluetoothEdrConfigBean;
-import com.rt.printerlibrary.cmd.Cmd;
 import com.rt.printerlibrary.cmd.EscCmd;
-import com.rt.printerlibrary.cmd.EscFactory;
-import com.rt.printerlibrary.connect.PrinterInterface;
 import com.rt.printerlibrary.enumerate.BarcodeStringPosition;
 import com.rt.printerlibrary.enumerate.BarcodeType;
-import com.rt.printerlibrary.enumerate.BmpPrintMode;
 import com.rt.printerlibrary.enumerate.CommonEnum;
-import com.rt.printerlibrary.enumerate.ConnectStateEnum;
 import com.rt.printerlibrary.enumerate.ESCBarcodeFontTypeEnum;
 import com.rt.printerlibrary.enumerate.ESCFontTypeEnum;
 import com.rt.printerlibrary.enumerate.SettingEnum;
 import com.rt.printerlibrary.exception.SdkException;
-import com.rt.printerlibrary.factory.cmd.CmdFactory;
-import com.rt.printerlibrary.factory.connect.BluetoothFactory;
 import com.rt.printerlibrary.factory.connect.PIFactory;
 import com.rt.printerlibrary.factory.printer.ThermalPrinterFactory;
-import com.rt.printerlibrary.observer.PrinterObserver;
-import com.rt.printerlibrary.observer.PrinterObserverManager;
-import com.rt.printerlibrary.printer.RTPrinter;
 import com.rt.printerlibrary.setting.BarcodeSetting;
 import com.rt.printerlibrary.setting.BitmapSetting;
 import com.rt.printerlibrary.setting.TextSetting;
-import java.io.UnsupportedEncodingException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
 
 @CapacitorPlugin(name = "CapacitorThermalPrinter", permissions = {
         @Permission(strings = { Manifest.permission.ACCESS_COARSE_LOCATION }, alias = "ACCESS_COARSE_LOCATION"),
@@ -66,9 +77,21 @@ import org.json.JSONException;
         @Permission(strings = { Manifest.permission.BLUETOOTH_SCAN }, alias = "BLUETOOTH_SCAN"),
         @Permission(strings = { Manifest.permission.BLUETOOTH_CONNECT }, alias = "BLUETOOTH_CONNECT")
 })
-public class CapacitorThermalPrinterPlugin extends Plugin implements PrinterObserver {
+public class CapacitorThermalPrinterPlugin extends Plugin {
 
     private static final String TAG = "CapacitorThermalPrinterPlugin";
+    // How long getStatus waits for the printer to answer a status request.
+    private static final long STATUS_TIMEOUT_MS = 1000;
+    private static final int DEFAULT_HEARTBEAT_INTERVAL_MS = 5000;
+    // Discovery changes within this window are reported together.
+    private static final int DISCOVERY_COALESCE_MS = 250;
+    private static final int DEFAULT_CONNECT_FIRST_TIMEOUT_MS = 30000;
+    private static final int DEFAULT_ATTEMPT_TIMEOUT_MS = 10000;
+    private static final int DEFAULT_MAX_PARALLEL_ATTEMPTS = 2;
+    private static final String SPOOL_DIR = "thermal-printer-spool";
+    private static final String NOT_CONNECTED = "Printer is not connected!";
+    // How long a new printer has to answer the profile probe.
+    private static final long PROBE_TIMEOUT_MS = 2000;
     static final List<String> alignments = Arrays.asList("left", "center", "right");
     static final List<String> fonts = Arrays.asList("A", "B");
     static final List<String> placements = Arrays.asList("none", "above", "below", "both");
@@ -80,45 +103,119 @@ public class CapacitorThermalPrinterPlugin extends Plugin implements PrinterObse
     BluetoothAdapter mBluetoothAdapter = null;
     ArrayList<String> bluetoothPermissions = new ArrayList<>();
 
-    ArrayList<BluetoothDevice> devices = new ArrayList<>();
+    final DeviceIndex devices = new DeviceIndex();
     BroadcastReceiver mBluetoothReceiver = null;
     boolean mRegistered = false;
 
     private final Map<String, ConnectionContext> connectionsById = new ConcurrentHashMap<>();
     private final Map<String, ConnectionContext> connectionsByAddress = new ConcurrentHashMap<>();
-    private final Map<PrinterInterface, ConnectionContext> connectionsByInterface = new ConcurrentHashMap<>();
+    private final Map<Link, ConnectionContext> connectionsByLink = new ConcurrentHashMap<>();
     private final Map<String, ConnectionContext> pendingConnectionsByAddress = new ConcurrentHashMap<>();
-    private final Map<String, PluginCall> pendingConnectCallsById = new ConcurrentHashMap<>();
+    private final Map<String, ConnectCallback> pendingConnectsById = new ConcurrentHashMap<>();
+    private final Map<String, PrinterPool> pools = new ConcurrentHashMap<>();
+    private final Map<String, VirtualPrinter> virtualPrinters = new HashMap<>();
 
     private final ThermalPrinterFactory thermalPrinterFactory = new ThermalPrinterFactory();
+    private final RasterCache imageCache = new RasterCache(RasterCache.DEFAULT_MAX_BYTES);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable discoveryFlush = this::flushDiscoveredDevices;
+    private boolean discoveryFlushScheduled;
+    private NativeInput nativeInput;
+    private PrintSpool spool;
+    private ProfileStore profiles;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ThermalPrinterHeartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Thrown when an image is requested by cache key only and isn't cached, so JS can resend the payload.
+     */
+    private static class ImageNotCachedException extends IllegalArgumentException {
+        static final String CODE = "IMAGE_NOT_CACHED";
+
+        ImageNotCachedException() {
+            super("Image not cached");
+        }
+    }
 
     private class ConnectionContext {
         final String connectionId = UUID.randomUUID().toString();
-        final BluetoothDevice device;
-        final BluetoothEdrConfigBean config;
-        final RTPrinter printer;
-        final PrinterInterface printerInterface;
+        final String address;
+        final PrinterTransport transport;
+        // Replaced on every reconnect attempt.
+        volatile Link link;
         String displayName;
-        Cmd cmd;
+        final EscCmd cmd = new EscCmd();
+        final EscBuffer buffer = new EscBuffer();
+        final BitmapRasterizer rasterizer = new BitmapRasterizer();
+        final ConnectionWriter writer;
+        final StatusMonitor status = new StatusMonitor();
+        // What is known about the printer, shared with earlier and later connections to it.
+        final PrinterProfile profile;
+        final ProfileProbe probe = new ProfileProbe();
+        int heartbeatIntervalMs = DEFAULT_HEARTBEAT_INTERVAL_MS;
+        ScheduledFuture<?> heartbeat;
+        final ConnectionMetrics metrics = new ConnectionMetrics();
+        // When the current connect or reconnect attempt started, from System.nanoTime().
+        long connectStartedAt;
+        int metricsIntervalMs;
+        ScheduledFuture<?> metricsTask;
+        // Liveness as of the last heartbeat; read by isConnected and listConnections instead of probing.
+        volatile boolean alive;
+        volatile long lastSeenAt;
+        // When the heartbeat's probe write started, 0 while none is in progress.
+        volatile long probeStartedAt;
+        // Null unless auto-reconnect was requested on connect.
+        ReconnectPolicy reconnectPolicy;
+        // Journals jobs to the spool so they are printed even after the app restarts or the link drops.
+        boolean spool;
+        ScheduledFuture<?> reconnectTask;
+        // Attempts of the ongoing reconnect, 0 while connected.
+        volatile int reconnectAttempt;
+        volatile boolean closing;
+        long lostAt;
+        int linkLosses;
+        int reconnects;
         TextSetting textSetting;
+        private SdkTextFormat textFormat;
         BitmapSetting bitmapSetting;
         BarcodeSetting barcodeSetting;
-        String encoding = "GBK"; // Default to GBK for best Chinese character support
-
-        ConnectionContext(BluetoothDevice device) {
-            this.device = device;
-            this.config = new BluetoothEdrConfigBean(device);
-            this.printer = thermalPrinterFactory.create();
-            this.displayName = device.getName();
-
-            PrinterInterface printerInterface = new BluetoothFactory().create();
-            if (printerInterface == null) {
-                throw new IllegalStateException("Failed to create printer interface");
+        RasterEncoder.Dither dither = RasterEncoder.Dither.NONE;
+        // Last ESC SP value, in dots; needed to know how many characters fit on a line.
+        int charSpacing;
+        // Defaults to GBK for best Chinese character support
+        final TextEncoder text = new TextEncoder();
+        final Map<String, ReceiptTemplate> templates = new LinkedHashMap<String, ReceiptTemplate>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ReceiptTemplate> eldest) {
+                return size() > ReceiptTemplate.MAX_TEMPLATES;
             }
-            printerInterface.setConfigObject(this.config);
-            this.printerInterface = printerInterface;
+        };
+
+        ConnectionContext(PrinterTransport transport, PrinterProfile profile) {
+            this.transport = transport;
+            this.address = transport.address();
+            this.displayName = transport.name();
+            this.profile = profile;
+            this.writer = new ConnectionWriter(address, this::writeChunk);
+            this.writer.setMetrics(metrics);
+            this.writer.setGate(new ConnectionWriter.Gate() {
+                @Override
+                public boolean isReady() {
+                    // Holds jobs while the link is down, e.g. during a reconnect.
+                    return alive && status.isReady();
+                }
+
+                @Override
+                public void whilePaused(ConnectionWriter.Output output) throws IOException {
+                    if (alive) {
+                        status.whilePaused(output);
+                    }
+                }
+            });
 
-            this.cmd = new EscCmd();
             this.textSetting = new TextSetting();
             this.bitmapSetting = new BitmapSetting();
             this.barcodeSetting = new BarcodeSetting();
@@ -129,18 +226,120 @@ public class CapacitorThermalPrinterPlugin extends Plugin implements PrinterObse
             this.textSetting = new TextSetting();
             this.bitmapSetting = new BitmapSetting();
             this.barcodeSetting = new BarcodeSetting();
-            this.bitmapSetting.setBimtapLimitWidth(48 * 8);
+            int dotWidth = profile.dotWidth();
+            this.bitmapSetting.setBimtapLimitWidth(dotWidth > 0 ? dotWidth : 48 * 8);
+            Integer dpi = profile.dpi();
+            if (dpi != null) {
+                this.bitmapSetting.setBmpDpi(dpi);
+            }
+            this.dither = RasterEncoder.Dither.NONE;
+        }
+
+        /**
+         * The current text settings as seen by the text encoder; a new instance whenever the settings object is
+         * replaced.
+         */
+        TextFormat textFormat() {
+            if (textFormat == null || textFormat.setting != textSetting) {
+                textFormat = new SdkTextFormat(textSetting, cmd);
+            }
+            return textFormat;
+        }
+
+        void writeChunk(byte[] chunk) throws IOException {
+            transport.write(chunk);
+            lastSeenAt = System.currentTimeMillis();
         }
 
         JSObject toJson() {
             JSObject obj = new JSObject();
             obj.put("connectionId", connectionId);
-            obj.put("address", device.getAddress());
+            obj.put("address", address);
             obj.put("name", displayName);
+            if (lastSeenAt > 0) {
+                obj.put("lastSeenAt", lastSeenAt);
+            }
+            if (reconnectPolicy != null) {
+                obj.put("reconnecting", reconnectAttempt > 0);
+                obj.put("linkLosses", linkLosses);
+                obj.put("reconnects", reconnects);
+            }
             return obj;
         }
     }
 
+    /**
+     * Learns how a connect attempt ended.
+     */
+    private interface ConnectCallback {
+        /**
+         * Asked once the printer is connected, before the connection is reported. A connection that is no longer
+         * wanted is closed without being reported.
+         */
+        boolean claim(ConnectionContext context);
+
+        void onConnected(JSObject connection);
+
+        /**
+         * The attempt failed or was given up.
+         */
+        void onFailed(ConnectionContext context);
+    }
+
+    /**
+     * Resolves a connect call with the connection, or {@code null} if it failed.
+     */
+    private static ConnectCallback resolving(PluginCall call) {
+        return new ConnectCallback() {
+            @Override
+            public boolean claim(ConnectionContext context) {
+                return true;
+            }
+
+            @Override
+            public void onConnected(JSObject connection) {
+                call.resolve(connection);
+            }
+
+            @Override
+            public void onFailed(ConnectionContext context) {
+                call.resolve(null);
+            }
+        };
+    }
+
+    /**
+     * One connect attempt of a connection. Events of links that were replaced or given up are ignored.
+     */
+    private final class Link implements PrinterTransport.Listener {
+        final ConnectionContext context;
+
+        Link(ConnectionContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public void onConnected() {
+            if (connectionsByLink.get(this) == context) {
+                handleConnected(context);
+            }
+        }
+
+        @Override
+        public void onDisconnected() {
+            if (connectionsByLink.get(this) == context) {
+                handleInterrupted(context, ConnectionMetrics.DISCONNECT_LINK_LOST);
+            }
+        }
+
+        @Override
+        public void onData(byte[] data) {
+            if (connectionsByLink.get(this) == context) {
+                handleData(context, data);
+            }
+        }
+    }
+
     private class BluetoothDeviceReceiver extends BroadcastReceiver {
 
         @SuppressLint("MissingPermission")
@@ -150,31 +349,33 @@ public class CapacitorThermalPrinterPlugin extends Plugin implements PrinterObse
             // When discovery finds a device
             if (BluetoothDevice.ACTION_FOUND.equals(action)) {
                 // Get the BluetoothDevice object from the Intent
-                BluetoothDevice device = null;
-                if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.TIRAMISU) {
-                    device = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE, BluetoothDevice.class);
-                } else {
-                    device = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
-                }
+                BluetoothDevice device = getDevice(intent);
                 if (device == null)
                     return;
-                int devType = device.getBluetoothClass().getMajorDeviceClass();
-                if (devType != BluetoothClass.Device.Major.IMAGING) {
+                BluetoothClass bluetoothClass = device.getBluetoothClass();
+                if (bluetoothClass == null
+                        || bluetoothClass.getMajorDeviceClass() != BluetoothClass.Device.Major.IMAGING) {
                     return;
                 }
 
-                if (!devices.contains(device)) {
-                    devices.add(device);
+                String name = intent.getStringExtra(BluetoothDevice.EXTRA_NAME);
+                short rssi = intent.getShortExtra(BluetoothDevice.EXTRA_RSSI, Short.MIN_VALUE);
+                boolean changed = devices.update(device.getAddress(), name != null ? name : device.getName(),
+                        bluetoothClass.getDeviceClass(), rssi != Short.MIN_VALUE ? (int) rssi : null,
+                        System.currentTimeMillis());
+                if (changed) {
+                    scheduleDiscoveryFlush();
+                }
+            } else if (BluetoothDevice.ACTION_NAME_CHANGED.equals(action)) {
+                BluetoothDevice device = getDevice(intent);
+                String name = intent.getStringExtra(BluetoothDevice.EXTRA_NAME);
+                // Only devices that passed the filter above are in the index.
+                if (device != null && name != null && devices.contains(device.getAddress())
+                        && devices.update(device.getAddress(), name, null, null, System.currentTimeMillis())) {
+                    scheduleDiscoveryFlush();
                 }
-
-                CapacitorThermalPrinterPlugin.this.notifyListeners(
-                        "discoverDevices",
-                        new JSObject() {
-                            {
-                                put("devices", getJsonDevices());
-                            }
-                        });
             } else if (BluetoothAdapter.ACTION_DISCOVERY_FINISHED.equals(action)) {
+                flushDiscoveredDevices();
                 notifyListeners("discoveryFinish", null);
                 mBluetoothAdapter.cancelDiscovery();
                 getContext().unregisterReceiver(mBluetoothReceiver);
@@ -183,9 +384,53 @@ public class CapacitorThermalPrinterPlugin extends Plugin implements PrinterObse
         }
     }
 
+    private static BluetoothDevice getDevice(Intent intent) {
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.TIRAMISU) {
+            return intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE, BluetoothDevice.class);
+        }
+        return intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
+    }
+
+    /**
+     * Reports discovery changes once the coalescing window passes.
+     */
+    private void scheduleDiscoveryFlush() {
+        synchronized (devices) {
+            if (!discoveryFlushScheduled) {
+                discoveryFlushScheduled = true;
+                mainHandler.postDelayed(discoveryFlush, DISCOVERY_COALESCE_MS);
+            }
+        }
+    }
+
+    private void flushDiscoveredDevices() {
+        JSArray changed;
+        JSArray all = null;
+        synchronized (devices) {
+            mainHandler.removeCallbacks(discoveryFlush);
+            discoveryFlushScheduled = false;
+            changed = devices.drainChanges();
+            // The full list is only built for apps still listening to the older event.
+            if (changed != null && hasListeners("discoverDevices")) {
+                all = devices.toJson();
+            }
+        }
+        if (changed == null) {
+            return;
+        }
+
+        JSObject payload = new JSObject();
+        payload.put("devices", changed);
+        notifyListeners("devicesUpdated", payload);
+        if (all != null) {
+            JSObject legacy = new JSObject();
+            legacy.put("devices", all);
+            notifyListeners("discoverDevices", legacy);
+        }
+    }
+
     public CapacitorThermalPrinterPlugin() {
         super();
-        PrinterObserverManager.getInstance().add(this);
 
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S) {
             bluetoothPermissions.add("BLUETOOTH");
@@ -214,22 +459,32 @@ public class CapacitorThermalPrinterPlugin extends Plugin implements PrinterObse
             mRegistered = false;
             mBluetoothReceiver = null;
         }
+        mainHandler.removeCallbacks(discoveryFlush);
 
+        // Links closed from here on are not reported.
+        connectionsByLink.clear();
         for (ConnectionContext context : connectionsById.values()) {
             try {
-                context.printer.disConnect();
+                context.transport.disconnect();
             } catch (Exception ignored) {
                 // Ignore teardown errors.
             }
+            context.writer.shutdown();
+            context.buffer.release();
+        }
+        scheduler.shutdownNow();
+        synchronized (virtualPrinters) {
+            for (VirtualPrinter printer : virtualPrinters.values()) {
+                printer.close();
+            }
+            virtualPrinters.clear();
         }
 
         connectionsById.clear();
         connectionsByAddress.clear();
-        connectionsByInterface.clear();
         pendingConnectionsByAddress.clear();
-        pendingConnectCallsById.clear();
-
-        PrinterObserverManager.getInstance().remove(this);
+        pendingConnectsById.clear();
+        pools.clear();
     }
 
     private ConnectionContext resolveContext(PluginCall call, boolean requireConnected) {
@@ -250,8 +505,9 @@ public class CapacitorThermalPrinterPlugin extends Plugin implements PrinterObse
             return null;
         }
 
-        if (requireConnected && context.printer.getConnectState() != ConnectStateEnum.Connected) {
-            call.reject("Printer is not connected!");
+        // Connections being re-established keep accepting work; their jobs wait for the link.
+        if (requireConnected && context.reconnectAttempt == 0 && !context.transport.isConnected()) {
+            call.reject(NOT_CONNECTED);
             return null;
         }
 
@@ -269,7 +525,7 @@ public class CapacitorThermalPrinterPlugin extends Plugin implements PrinterObse
         if (alignment > 2 || alignment < 0)
             alignment = 0;
 
-        context.cmd.append(new byte[] { 27, 97, (byte) alignment });
+        context.buffer.write(EscPos.ESC, EscPos.ALIGN, alignment);
     }
 
     private void applyLineSpacing(ConnectionContext context, int spacing) {
@@ -278,7 +534,7 @@ public class CapacitorThermalPrinterPlugin extends Plugin implements PrinterObse
         if (spacing > 255)
             spacing = 255;
 
-        context.cmd.append(new byte[] { 27, 51, (byte) spacing });
+        context.buffer.write(EscPos.ESC, EscPos.LINE_SPACING, spacing);
     }
 
     private void applyCharSpacing(ConnectionContext context, int spacing) {
@@ -287,41 +543,92 @@ public class CapacitorThermalPrinterPlugin extends Plugin implements PrinterObse
         if (spacing > 30)
             spacing = 30;
 
-        context.cmd.append(new byte[] { 27, 32, (byte) spacing });
+        context.buffer.write(EscPos.ESC, EscPos.CHAR_SPACING, spacing);
+        context.charSpacing = spacing;
     }
 
     private boolean isContextConnected(ConnectionContext context) {
-        if (context == null) {
-            return false;
+        return context != null && context.alive && context.transport.isConnected();
+    }
+
+    private void startHeartbeat(ConnectionContext context) {
+        context.alive = true;
+        context.writer.wake();
+        context.lastSeenAt = System.currentTimeMillis();
+        if (context.heartbeatIntervalMs > 0) {
+            context.heartbeat = scheduler.scheduleWithFixedDelay(() -> heartbeat(context),
+                    context.heartbeatIntervalMs, context.heartbeatIntervalMs, TimeUnit.MILLISECONDS);
         }
+    }
 
-        if (context.printer.getConnectState() != ConnectStateEnum.Connected) {
-            return false;
+    /**
+     * Checks a connection on the heartbeat thread. Jobs being sent prove the link works on their own; otherwise a
+     * status request is sent between jobs, and a probe write stuck for two intervals means the link is gone.
+     */
+    private void heartbeat(ConnectionContext context) {
+        if (context.reconnectAttempt > 0) {
+            return;
         }
 
-        try {
-            context.printer.writeMsg(new byte[] {});
-        } catch (Exception ignored) {
-            return false;
+        long now = System.currentTimeMillis();
+        long probeStartedAt = context.probeStartedAt;
+        boolean stuck = probeStartedAt > 0 && now - probeStartedAt > 2L * context.heartbeatIntervalMs;
+
+        if (stuck || !context.alive || !context.transport.isConnected()) {
+            context.alive = false;
+            Log.d(TAG, "Heartbeat lost " + context.address);
+            handleInterrupted(context,
+                    stuck ? ConnectionMetrics.DISCONNECT_HEARTBEAT : ConnectionMetrics.DISCONNECT_LINK_LOST);
+            return;
+        }
+
+        if (probeStartedAt > 0 || now - context.lastSeenAt < context.heartbeatIntervalMs) {
+            return;
         }
 
-        return context.printer.getConnectState() == ConnectStateEnum.Connected;
+        context.writer.control(output -> {
+            context.probeStartedAt = System.currentTimeMillis();
+            try {
+                output.write(context.status.statusRequest());
+            } catch (IOException e) {
+                context.alive = false;
+            } finally {
+                context.probeStartedAt = 0;
+            }
+        });
     }
 
     private JSObject buildDisconnectedPayload(ConnectionContext context) {
         JSObject payload = new JSObject();
         payload.put("connectionId", context.connectionId);
-        payload.put("address", context.device.getAddress());
+        payload.put("address", context.address);
         payload.put("name", context.displayName);
         return payload;
     }
 
     private void removeContext(ConnectionContext context) {
         connectionsById.remove(context.connectionId);
-        connectionsByAddress.remove(context.device.getAddress());
-        connectionsByInterface.remove(context.printerInterface);
-        pendingConnectionsByAddress.remove(context.device.getAddress());
-        pendingConnectCallsById.remove(context.connectionId);
+        connectionsByAddress.remove(context.address);
+        Link link = context.link;
+        if (link != null) {
+            connectionsByLink.remove(link);
+        }
+        pendingConnectionsByAddress.remove(context.address);
+        pendingConnectsById.remove(context.connectionId);
+        if (context.heartbeat != null) {
+            context.heartbeat.cancel(false);
+        }
+        if (context.reconnectTask != null) {
+            context.reconnectTask.cancel(false);
+        }
+        if (context.metricsTask != null) {
+            context.metricsTask.cancel(false);
+        }
+        for (PrinterPool pool : pools.values()) {
+            pool.removeMember(context.connectionId);
+        }
+        context.writer.shutdown();
+        context.buffer.release();
     }
 
     @PluginMethod
@@ -335,7 +642,8 @@ public class CapacitorThermalPrinterPlugin extends Plugin implements PrinterObse
             return;
         }
 
-        devices = new ArrayList<>();
+        flushDiscoveredDevices();
+        devices.clear();
         boolean success = mBluetoothAdapter.startDiscovery();
         mRegistered = success;
 
@@ -343,6 +651,7 @@ public class CapacitorThermalPrinterPlugin extends Plugin implements PrinterObse
             mBluetoothReceiver = new BluetoothDeviceReceiver();
             IntentFilter mBluetoothIntentFilter = new IntentFilter();
             mBluetoothIntentFilter.addAction(BluetoothDevice.ACTION_FOUND);
+            mBluetoothIntentFilter.addAction(BluetoothDevice.ACTION_NAME_CHANGED);
             mBluetoothIntentFilter.addAction(BluetoothAdapter.ACTION_DISCOVERY_FINISHED);
 
             getContext().registerReceiver(mBluetoothReceiver, mBluetoothIntentFilter);
@@ -367,6 +676,13 @@ public class CapacitorThermalPrinterPlugin extends Plugin implements PrinterObse
         }
     }
 
+    @PluginMethod
+    public void getDiscoveredDevices(PluginCall call) {
+        JSObject result = new JSObject();
+        result.put("devices", devices.toJson());
+        call.resolve(result);
+    }
+
     @PluginMethod
     public void isConnected(PluginCall call) {
         String connectionId = call.getString("connectionId");
@@ -395,22 +711,20 @@ public class CapacitorThermalPrinterPlugin extends Plugin implements PrinterObse
     @SuppressLint("MissingPermission")
     @PluginMethod
     public void connect(PluginCall call) {
-        if (!bluetoothCheck(call))
+        Object virtual = call.getData().opt("virtual");
+        boolean useVirtual = virtual instanceof JSONObject || Boolean.TRUE.equals(virtual);
+        String host = useVirtual ? null : call.getString("host");
+        int port = call.getInt("port", NetworkTransport.DEFAULT_PORT);
+        if (!useVirtual && host == null && !bluetoothCheck(call))
             return;
-        String address = call.getString("address");
+        String address = host != null ? NetworkTransport.address(host, port) : call.getString("address");
         if (address == null) {
             call.reject("Please provide address!");
             return;
         }
 
-        // Get encoding parameter, default to GBK for best Chinese character support
-        String encoding = call.getString("encoding", "GBK");
-        if (!encoding.equals("GBK") && !encoding.equals("UTF-8")) {
-            encoding = "GBK"; // Default to GBK if invalid encoding provided
-        }
-
         ConnectionContext existing = connectionsByAddress.get(address);
-        if (existing != null && existing.printer.getConnectState() == ConnectStateEnum.Connected) {
+        if (existing != null && existing.transport.isConnected()) {
             call.resolve(existing.toJson());
             return;
         }
@@ -420,27 +734,397 @@ public class CapacitorThermalPrinterPlugin extends Plugin implements PrinterObse
             return;
         }
 
-        BluetoothDevice device = mBluetoothAdapter.getRemoteDevice(address);
-        Log.d(TAG, "Connecting to " + device + " with encoding: " + encoding);
-
         ConnectionContext context;
         try {
-            context = new ConnectionContext(device);
-            context.encoding = encoding; // Set the encoding for this connection
-        } catch (IllegalStateException e) {
-            call.reject("Failed to create printer interface!");
+            PrinterTransport transport;
+            if (useVirtual) {
+                transport = new VirtualPrinterTransport(address, virtualPrinter(address, virtual));
+            } else if (host != null) {
+                transport = new NetworkTransport(host, port, NetworkTransport.DEFAULT_CONNECT_TIMEOUT_MS,
+                        call.getInt("writeTimeoutMs", NetworkTransport.DEFAULT_WRITE_TIMEOUT_MS));
+            } else {
+                transport = new BluetoothTransport(mBluetoothAdapter.getRemoteDevice(address),
+                        thermalPrinterFactory.create());
+            }
+            context = newContext(transport, call);
+        } catch (IllegalArgumentException e) {
+            call.reject(e.getMessage());
             return;
         }
-        pendingConnectionsByAddress.put(address, context);
-        pendingConnectCallsById.put(context.connectionId, call);
-        connectionsByInterface.put(context.printerInterface, context);
+        Log.d(TAG, "Connecting to " + address + " with encoding: " + context.text.encoding());
 
-        context.printer.setPrinterInterface(context.printerInterface);
         try {
-            context.printer.connect(context.config);
-        } catch (Exception e) {
+            startConnect(context, resolving(call));
+        } catch (IOException e) {
+            call.reject(e.getMessage());
+        }
+    }
+
+    /**
+     * Creates a connection with the options of a connect call.
+     *
+     * @throws IllegalArgumentException If the options are invalid.
+     */
+    private ConnectionContext newContext(PrinterTransport transport, PluginCall call) {
+        PrinterProfile profile = profiles().get(transport.address());
+        ConnectionContext context = new ConnectionContext(transport, profile);
+        String encoding = call.getString("encoding");
+        if (encoding != null) {
+            learn(context, profile.setEncoding(encoding));
+        } else {
+            encoding = profile.encoding() != null ? profile.encoding() : TextEncoder.DEFAULT_ENCODING;
+        }
+        context.text.setEncoding(encoding); // Set the encoding for this connection
+        Integer heartbeatIntervalMs = call.getInt("heartbeatIntervalMs", DEFAULT_HEARTBEAT_INTERVAL_MS);
+        if (heartbeatIntervalMs != null) {
+            context.heartbeatIntervalMs = Math.max(0, heartbeatIntervalMs);
+        }
+        context.reconnectPolicy = parseReconnectPolicy(call.getData().opt("reconnect"));
+        context.writer.setResumable(context.reconnectPolicy != null);
+        context.spool = Boolean.TRUE.equals(call.getBoolean("spool", false));
+        Integer metricsIntervalMs = call.getInt("metricsIntervalMs", 0);
+        if (metricsIntervalMs != null) {
+            context.metricsIntervalMs = Math.max(0, metricsIntervalMs);
+        }
+        return context;
+    }
+
+    /**
+     * Remembers the encoding or dpi an operation just set on the connection as the printer's default. Only for
+     * operations called on the connection itself; jobs encoded on a borrowed connection, such as broadcasts, pool
+     * jobs and templates, must not change the printer's defaults.
+     */
+    private void learnSetting(ConnectionContext context, String op) {
+        switch (op) {
+            case "setEncoding":
+                learn(context, context.profile.setEncoding(context.text.encoding()));
+                break;
+            case "dpi":
+                learn(context, context.profile.setDpi(context.bitmapSetting.getBmpDpi()));
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Saves the connection's printer profile if it changed.
+     */
+    private void learn(ConnectionContext context, boolean changed) {
+        if (changed) {
+            profiles().save(context.address, context.profile);
+        }
+    }
+
+    /**
+     * Starts connecting; the callback learns the outcome unless this throws.
+     */
+    private void startConnect(ConnectionContext context, ConnectCallback callback) throws IOException {
+        Link link = new Link(context);
+        context.link = link;
+        pendingConnectionsByAddress.put(context.address, context);
+        pendingConnectsById.put(context.connectionId, callback);
+        connectionsByLink.put(link, context);
+
+        context.connectStartedAt = System.nanoTime();
+        try {
+            context.transport.connect(link);
+        } catch (IOException e) {
             removeContext(context);
-            call.reject("Failed to connect!");
+            throw e;
+        }
+    }
+
+    /**
+     * Gives up a connect attempt; its callback learns it failed.
+     */
+    private void cancelConnect(ConnectionContext context) {
+        context.closing = true;
+        try {
+            context.transport.disconnect();
+        } catch (Exception ignored) {
+            // Reported as failed below.
+        }
+        // In case the transport had nothing to close.
+        handleInterrupted(context, ConnectionMetrics.DISCONNECT_CLOSED);
+    }
+
+    @SuppressLint("MissingPermission")
+    @PluginMethod
+    public void connectFirst(PluginCall call) {
+        if (!bluetoothCheck(call))
+            return;
+
+        ConnectFirstSearch search;
+        try {
+            search = new ConnectFirstSearch(call);
+        } catch (IllegalArgumentException e) {
+            call.reject(e.getMessage());
+            return;
+        }
+        search.start();
+    }
+
+    /**
+     * One connectFirst call. Matching bonded devices are tried first; if none connects, discovery runs until a match
+     * appears, stops, and the match is tried, resuming discovery if it fails. Discovery is always cancelled before
+     * connecting since it slows connects down badly.
+     */
+    private final class ConnectFirstSearch implements ConnectCallback {
+        final PluginCall call;
+        final Pattern namePattern;
+        final String addressPrefix;
+        final boolean bondedOnly;
+        final int attemptTimeoutMs;
+        final int maxParallel;
+
+        // Guarded by this.
+        private final ArrayDeque<BluetoothDevice> candidates = new ArrayDeque<>();
+        private final Set<String> seen = new HashSet<>();
+        private final Map<ConnectionContext, ScheduledFuture<?>> attempts = new HashMap<>();
+        private BroadcastReceiver receiver;
+        private ScheduledFuture<?> timeout;
+        private boolean scanning;
+        private boolean scanned;
+        private boolean foundInScan;
+        private boolean done;
+
+        /**
+         * @throws IllegalArgumentException If the options are invalid.
+         */
+        ConnectFirstSearch(PluginCall call) {
+            this.call = call;
+            String nameRegex = call.getString("nameRegex");
+            try {
+                namePattern = nameRegex != null ? Pattern.compile(nameRegex) : null;
+            } catch (PatternSyntaxException e) {
+                throw new IllegalArgumentException("Invalid nameRegex!");
+            }
+            String prefix = call.getString("addressPrefix");
+            addressPrefix = prefix != null ? prefix.toUpperCase(Locale.ROOT) : null;
+            bondedOnly = Boolean.TRUE.equals(call.getBoolean("bonded", false));
+            if (namePattern == null && addressPrefix == null && !bondedOnly) {
+                throw new IllegalArgumentException("Please provide nameRegex, addressPrefix or bonded!");
+            }
+            attemptTimeoutMs = Math.max(1, call.getInt("attemptTimeoutMs", DEFAULT_ATTEMPT_TIMEOUT_MS));
+            maxParallel = Math.max(1, call.getInt("maxParallel", DEFAULT_MAX_PARALLEL_ATTEMPTS));
+        }
+
+        @SuppressLint("MissingPermission")
+        synchronized void start() {
+            timeout = scheduler.schedule(this::timedOut,
+                    Math.max(1, call.getInt("timeoutMs", DEFAULT_CONNECT_FIRST_TIMEOUT_MS)), TimeUnit.MILLISECONDS);
+            mBluetoothAdapter.cancelDiscovery();
+            for (BluetoothDevice device : mBluetoothAdapter.getBondedDevices()) {
+                offer(device, device.getName());
+            }
+            next();
+        }
+
+        @SuppressLint("MissingPermission")
+        private void offer(BluetoothDevice device, String name) {
+            String address = device.getAddress();
+            if (seen.contains(address)) {
+                return;
+            }
+            if (addressPrefix != null && !address.toUpperCase(Locale.ROOT).startsWith(addressPrefix)) {
+                return;
+            }
+            if (namePattern != null && (name == null || !namePattern.matcher(name).find())) {
+                return;
+            }
+            if (namePattern == null && addressPrefix == null) {
+                // Only bonded was given: any paired printer.
+                BluetoothClass bluetoothClass = device.getBluetoothClass();
+                if (bluetoothClass == null
+                        || bluetoothClass.getMajorDeviceClass() != BluetoothClass.Device.Major.IMAGING) {
+                    return;
+                }
+            }
+            seen.add(address);
+            candidates.add(device);
+        }
+
+        private void next() {
+            while (!done && attempts.size() < maxParallel && !candidates.isEmpty()) {
+                attempt(candidates.poll());
+            }
+            if (done || !attempts.isEmpty() || scanning) {
+                return;
+            }
+            if (bondedOnly || (scanned && !foundInScan)) {
+                finish(null);
+                return;
+            }
+            scan();
+        }
+
+        private void attempt(BluetoothDevice device) {
+            String address = device.getAddress();
+            ConnectionContext existing = connectionsByAddress.get(address);
+            if (existing != null && existing.transport.isConnected()) {
+                finish(existing.toJson());
+                return;
+            }
+            if (pendingConnectionsByAddress.containsKey(address)) {
+                // Someone else is connecting to it.
+                return;
+            }
+
+            mBluetoothAdapter.cancelDiscovery();
+            Log.d(TAG, "Trying " + address);
+            ConnectionContext context;
+            try {
+                context = newContext(new BluetoothTransport(device, thermalPrinterFactory.create()), call);
+            } catch (IllegalArgumentException e) {
+                done = true;
+                cleanUp();
+                call.reject(e.getMessage());
+                return;
+            }
+            attempts.put(context, scheduler.schedule(() -> cancelConnect(context), attemptTimeoutMs,
+                    TimeUnit.MILLISECONDS));
+            try {
+                startConnect(context, this);
+            } catch (IOException e) {
+                attempts.remove(context).cancel(false);
+            }
+        }
+
+        @SuppressLint("MissingPermission")
+        private void scan() {
+            if (receiver == null) {
+                receiver = new BroadcastReceiver() {
+                    @Override
+                    public void onReceive(Context context, Intent intent) {
+                        if (BluetoothDevice.ACTION_FOUND.equals(intent.getAction())) {
+                            found(intent);
+                        } else {
+                            scanFinished();
+                        }
+                    }
+                };
+                IntentFilter filter = new IntentFilter();
+                filter.addAction(BluetoothDevice.ACTION_FOUND);
+                filter.addAction(BluetoothAdapter.ACTION_DISCOVERY_FINISHED);
+                getContext().registerReceiver(receiver, filter);
+            }
+
+            if (!mBluetoothAdapter.startDiscovery()) {
+                finish(null);
+                return;
+            }
+            scanning = true;
+            scanned = true;
+            foundInScan = false;
+        }
+
+        @SuppressLint("MissingPermission")
+        synchronized void found(Intent intent) {
+            BluetoothDevice device = getDevice(intent);
+            if (done || device == null) {
+                return;
+            }
+            String name = intent.getStringExtra(BluetoothDevice.EXTRA_NAME);
+            int before = candidates.size();
+            offer(device, name != null ? name : device.getName());
+            if (candidates.size() > before) {
+                // Stop at the first match.
+                foundInScan = true;
+                mBluetoothAdapter.cancelDiscovery();
+                next();
+            }
+        }
+
+        synchronized void scanFinished() {
+            scanning = false;
+            next();
+        }
+
+        @Override
+        public synchronized boolean claim(ConnectionContext context) {
+            ScheduledFuture<?> attemptTimeout = attempts.remove(context);
+            if (attemptTimeout != null) {
+                attemptTimeout.cancel(false);
+            }
+            if (done) {
+                return false;
+            }
+            done = true;
+            cleanUp();
+            return true;
+        }
+
+        @Override
+        public void onConnected(JSObject connection) {
+            call.resolve(connection);
+        }
+
+        @Override
+        public synchronized void onFailed(ConnectionContext context) {
+            ScheduledFuture<?> attemptTimeout = attempts.remove(context);
+            if (attemptTimeout != null) {
+                attemptTimeout.cancel(false);
+            }
+            next();
+        }
+
+        synchronized void timedOut() {
+            finish(null);
+        }
+
+        /**
+         * Resolves the call with a connection that already existed, or {@code null} if none was found.
+         */
+        private void finish(JSObject connection) {
+            if (done) {
+                return;
+            }
+            done = true;
+            cleanUp();
+            call.resolve(connection);
+        }
+
+        private void cleanUp() {
+            timeout.cancel(false);
+            if (receiver != null) {
+                try {
+                    getContext().unregisterReceiver(receiver);
+                } catch (IllegalArgumentException ignored) {
+                    // Already unregistered.
+                }
+                receiver = null;
+            }
+            if (scanning) {
+                mBluetoothAdapter.cancelDiscovery();
+                scanning = false;
+            }
+            // The losers; their callbacks return here and find the search done.
+            for (ConnectionContext context : new ArrayList<>(attempts.keySet())) {
+                attempts.remove(context).cancel(false);
+                scheduler.execute(() -> cancelConnect(context));
+            }
+            candidates.clear();
+        }
+    }
+
+    /**
+     * Returns the virtual printer of an address, created on first use so it keeps its state across connections.
+     *
+     * @param options {@code true} for the defaults, or an object overriding some of them.
+     * @throws IllegalArgumentException If the options are invalid.
+     */
+    private VirtualPrinter virtualPrinter(String address, Object options) {
+        synchronized (virtualPrinters) {
+            VirtualPrinter printer = virtualPrinters.get(address);
+            if (printer == null) {
+                JSONObject settings = options instanceof JSONObject ? (JSONObject) options : new JSONObject();
+                printer = new VirtualPrinter(
+                        settings.optInt("bufferSize", VirtualPrinter.DEFAULT_BUFFER_SIZE),
+                        settings.optDouble("printSpeed", VirtualPrinter.DEFAULT_PRINT_SPEED));
+                virtualPrinters.put(address, printer);
+            }
+            return printer;
         }
     }
 
@@ -451,8 +1135,12 @@ public class CapacitorThermalPrinterPlugin extends Plugin implements PrinterObse
             return;
         }
 
-        if (context.printer.getConnectState() == ConnectStateEnum.Connected) {
-            context.printer.disConnect();
+        context.closing = true;
+        if (context.reconnectAttempt > 0) {
+            dropContext(context, false);
+            call.resolve();
+        } else if (context.transport.isConnected()) {
+            context.transport.disconnect();
             call.resolve();
         } else {
             call.reject("Not Connected!");
@@ -465,7 +1153,7 @@ public class CapacitorThermalPrinterPlugin extends Plugin implements PrinterObse
         ArrayList<ConnectionContext> disconnectedContexts = new ArrayList<>();
 
         for (ConnectionContext context : connectionsById.values()) {
-            if (!isContextConnected(context)) {
+            if (context.reconnectAttempt == 0 && !isContextConnected(context)) {
                 disconnectedContexts.add(context);
                 continue;
             }
@@ -474,10 +1162,7 @@ public class CapacitorThermalPrinterPlugin extends Plugin implements PrinterObse
         }
 
         for (ConnectionContext context : disconnectedContexts) {
-            JSObject payload = buildDisconnectedPayload(context);
-            removeContext(context);
-            context.printer.setPrinterInterface(null);
-            notifyListeners("disconnected", payload);
+            handleInterrupted(context, ConnectionMetrics.DISCONNECT_LINK_LOST);
         }
 
         call.resolve(new JSObject() {
@@ -490,460 +1175,1764 @@ public class CapacitorThermalPrinterPlugin extends Plugin implements PrinterObse
     // region Text Formatting
     @PluginMethod
     public void bold(PluginCall call) {
-        ConnectionContext context = resolveContext(call, true);
-        if (context == null)
-            return;
-
-        context.textSetting.setBold(parseIsEnabled(call));
-        call.resolve();
+        runOperation(call, "bold");
     }
 
     @PluginMethod
     public void underline(PluginCall call) {
-        ConnectionContext context = resolveContext(call, true);
-        if (context == null)
-            return;
-
-        context.textSetting.setUnderline(parseIsEnabled(call));
-        call.resolve();
+        runOperation(call, "underline");
     }
 
     @PluginMethod
     public void doubleWidth(PluginCall call) {
-        ConnectionContext context = resolveContext(call, true);
-        if (context == null)
-            return;
-
-        context.textSetting.setDoubleWidth(parseIsEnabled(call));
-        call.resolve();
+        runOperation(call, "doubleWidth");
     }
 
     @PluginMethod
     public void doubleHeight(PluginCall call) {
-        ConnectionContext context = resolveContext(call, true);
-        if (context == null)
-            return;
-
-        context.textSetting.setDoubleHeight(parseIsEnabled(call));
-        call.resolve();
+        runOperation(call, "doubleHeight");
     }
 
     @PluginMethod
     public void inverse(PluginCall call) {
-        ConnectionContext context = resolveContext(call, true);
-        if (context == null)
-            return;
-
-        context.textSetting.setIsAntiWhite(parseIsEnabled(call));
-        call.resolve();
+        runOperation(call, "inverse");
     }
 
     @PluginMethod
     public void setEncoding(PluginCall call) {
-        ConnectionContext context = resolveContext(call, true);
-        if (context == null)
-            return;
+        runOperation(call, "setEncoding");
+    }
 
-        String encoding = call.getString("encoding", "GBK");
-        if (!encoding.equals("GBK") && !encoding.equals("UTF-8")) {
-            call.reject("Invalid encoding. Use 'GBK' or 'UTF-8'.");
-            return;
-        }
+    // endregion
 
-        context.encoding = encoding;
-        Log.d(TAG, "Encoding set to: " + encoding + " for connection: " + context.connectionId);
-        call.resolve();
+    // region Image Formatting
+    @PluginMethod
+    public void dpi(PluginCall call) {
+        runOperation(call, "dpi");
+    }
+
+    @PluginMethod
+    public void limitWidth(PluginCall call) {
+        runOperation(call, "limitWidth");
+    }
+
+    @PluginMethod
+    public void dither(PluginCall call) {
+        runOperation(call, "dither");
     }
 
     // endregion
 
-    // region Image Formatting
+    // region Hybrid Formatting
     @PluginMethod
-    public void dpi(PluginCall call) {
-        ConnectionContext context = resolveContext(call, true);
-        if (context == null)
-            return;
+    public void align(PluginCall call) {
+        runOperation(call, "align");
+    }
 
-        Integer dpi = call.getInt("dpi");
-        if (dpi == null) {
-            dpi = 0;
-        }
+    @PluginMethod
+    public void lineSpacing(PluginCall call) {
+        runOperation(call, "lineSpacing");
+    }
 
-        context.bitmapSetting.setBmpDpi(dpi);
-        call.resolve();
+    @PluginMethod
+    public void charSpacing(PluginCall call) {
+        runOperation(call, "charSpacing");
     }
 
     @PluginMethod
-    public void limitWidth(PluginCall call) {
-        ConnectionContext context = resolveContext(call, true);
-        if (context == null)
-            return;
+    public void font(PluginCall call) {
+        runOperation(call, "font");
+    }
 
-        Integer width = call.getInt("width");
-        if (width == null) {
-            width = 0;
-        }
+    @PluginMethod
+    public void clearFormatting(PluginCall call) {
+        runOperation(call, "clearFormatting");
+    }
 
-        context.bitmapSetting.setBimtapLimitWidth(width * 8);
-        call.resolve();
+    // endregion
+
+    // region Data Code Formatting
+
+    @PluginMethod
+    public void barcodeWidth(PluginCall call) {
+        runOperation(call, "barcodeWidth");
+    }
+
+    @PluginMethod
+    public void barcodeHeight(PluginCall call) {
+        runOperation(call, "barcodeHeight");
+    }
+
+    @PluginMethod
+    public void barcodeTextPlacement(PluginCall call) {
+        runOperation(call, "barcodeTextPlacement");
     }
 
     // endregion
 
-    // region Hybrid Formatting
+    // region Content
     @PluginMethod
-    public void align(PluginCall call) {
+    public void text(PluginCall call) {
+        runOperation(call, "text");
+    }
+
+    @PluginMethod
+    public void table(PluginCall call) {
+        runOperation(call, "table");
+    }
+
+    @PluginMethod
+    public void image(PluginCall call) {
+        runOperation(call, "image");
+    }
+
+    @PluginMethod
+    public void raw(PluginCall call) {
+        runOperation(call, "raw");
+    }
+
+    @PluginMethod
+    public void qr(PluginCall call) {
+        runOperation(call, "qr");
+    }
+
+    @PluginMethod
+    public void barcode(PluginCall call) {
+        runOperation(call, "barcode");
+    }
+
+    @PluginMethod
+    public void selfTest(PluginCall call) {
+        runOperation(call, "selfTest");
+    }
+
+    // endregion
+
+    // region Content Actions
+    @PluginMethod
+    public void beep(PluginCall call) {
+        runOperation(call, "beep");
+    }
+
+    @PluginMethod
+    public void openDrawer(PluginCall call) {
+        runOperation(call, "openDrawer");
+    }
+
+    @PluginMethod
+    public void cutPaper(PluginCall call) {
+        runOperation(call, "cutPaper");
+    }
+
+    @PluginMethod
+    public void feedCutPaper(PluginCall call) {
+        runOperation(call, "feedCutPaper");
+    }
+
+    // endregion
+
+    // region Printing Actions
+    /**
+     * Configures how jobs are split and paced on their way to the printer. Omitted options keep their current value.
+     */
+    @PluginMethod
+    public void setWriteOptions(PluginCall call) {
         ConnectionContext context = resolveContext(call, true);
         if (context == null)
             return;
 
-        String alignmentName = call.getString("alignment");
-        int alignment = alignments.indexOf(alignmentName);
-        if (alignment == -1) {
-            call.reject("Invalid Alignment");
+        ConnectionWriter writer = context.writer;
+        Integer chunkSize = call.getInt("chunkSize", writer.chunkSize());
+        Integer chunkDelayMs = call.getInt("chunkDelayMs", writer.chunkDelayMs());
+        Integer bytesPerSecond = call.getInt("bytesPerSecond", writer.bytesPerSecond());
+        if (chunkSize == null || chunkSize < 0 || chunkDelayMs == null || chunkDelayMs < 0
+                || bytesPerSecond == null || bytesPerSecond < 0) {
+            call.reject("Write options must be non-negative numbers!");
             return;
         }
 
-        applyAlignment(context, alignment);
-        call.resolve();
+        writer.configure(chunkSize, chunkDelayMs, bytesPerSecond);
+        JSObject options = new JSObject();
+        options.put("chunkSize", chunkSize);
+        options.put("chunkDelayMs", chunkDelayMs);
+        options.put("bytesPerSecond", bytesPerSecond);
+        call.resolve(options);
     }
 
     @PluginMethod
-    public void lineSpacing(PluginCall call) {
+    public void begin(PluginCall call) {
         ConnectionContext context = resolveContext(call, true);
         if (context == null)
             return;
 
-        int spacing = call.getInt("lineSpacing", 0);
-        applyLineSpacing(context, spacing);
+        try {
+            resetQueue(context);
+        } catch (IllegalStateException e) {
+            call.reject(NOT_CONNECTED);
+            return;
+        }
         call.resolve();
     }
 
     @PluginMethod
-    public void charSpacing(PluginCall call) {
+    public void write(PluginCall call) {
         ConnectionContext context = resolveContext(call, true);
         if (context == null)
             return;
 
-        int spacing = call.getInt("charSpacing", 0);
-        applyCharSpacing(context, spacing);
-        call.resolve();
+        byte[] job;
+        try {
+            job = context.buffer.toJob();
+        } catch (IllegalStateException e) {
+            call.reject(NOT_CONNECTED);
+            return;
+        }
+        _writeRaw(context, job, call, new JSObject());
     }
 
+    /**
+     * Prints an image right away, decoding and sending it band by band so very tall images never sit in memory as a
+     * whole. The print queue is left untouched.
+     */
     @PluginMethod
-    public void font(PluginCall call) {
+    public void streamImage(PluginCall call) {
         ConnectionContext context = resolveContext(call, true);
         if (context == null)
             return;
 
-        String fontName = call.getString("font", "A");
-        int font = fonts.indexOf(fontName);
-        if (font == -1) {
-            call.reject("Invalid Font");
+        byte[] data;
+        try {
+            data = decodeImageData(call.getString("image"));
+        } catch (IllegalArgumentException e) {
+            call.reject(e.getMessage());
             return;
         }
 
-        context.textSetting.setEscFontType(fontEnumValues[font]);
-        context.barcodeSetting.setEscBarcodFont(dataFontEnumValues[font]);
-        call.resolve();
+        BitmapSetting bitmapSetting = context.bitmapSetting;
+        int headDots = context.profile.dotWidth();
+        RasterEncoder.Dither dither = context.dither;
+        queueJob(context, call, new JSObject(), -1, sink -> {
+            byte[] init = EscPos.INIT.clone();
+            sink.send(init, 0, init.length);
+            // Runs on the writer thread, so it gets its own rasterizer; every band is sent before the next is decoded.
+            try {
+                new BitmapRasterizer().rasterizeInBands(data, bitmapSetting, headDots, dither, band -> {
+                    try {
+                        sink.send(band.copyFrom(0), 0, band.size());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new UncheckedIOException(new InterruptedIOException("Write interrupted"));
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            byte[] trailer = EscPos.JOB_TRAILER.clone();
+            sink.send(trailer, 0, trailer.length);
+        }, null);
     }
 
+    /**
+     * Encodes a whole list of operations in a single bridge call and optionally writes the result.
+     * Invalid operations are skipped and reported by index; if any operation fails nothing is written, and the
+     * connection's print queue and formatting state are left as they were before the call.
+     */
     @PluginMethod
-    public void clearFormatting(PluginCall call) {
+    public void printJob(PluginCall call) {
         ConnectionContext context = resolveContext(call, true);
         if (context == null)
             return;
 
-        applyDefaultFormatting(context);
-        call.resolve();
+        JSArray operations = call.getArray("operations");
+        if (operations == null) {
+            call.reject("Please provide operations!");
+            return;
+        }
+
+        JSArray errors = new JSArray();
+        List<String> applied = new ArrayList<>();
+        byte[] job = null;
+        try {
+            SavedQueue saved = new SavedQueue(context);
+            if (Boolean.TRUE.equals(call.getBoolean("begin", true))) {
+                resetQueue(context);
+            }
+
+            for (int i = 0; i < operations.length(); i++) {
+                String op = null;
+                try {
+                    JSObject args = JSObject.fromJSONObject(operations.getJSONObject(i));
+                    op = args.getString("op");
+                    if (op == null) {
+                        throw new IllegalArgumentException("Missing operation name");
+                    }
+                    applyOperation(context, op, args);
+                    applied.add(op);
+                } catch (JSONException e) {
+                    errors.put(buildOperationError(i, op, "Invalid operation"));
+                } catch (IllegalArgumentException e) {
+                    errors.put(buildOperationError(i, op, e.getMessage()));
+                }
+            }
+
+            if (errors.length() > 0) {
+                // Keeps the valid operations from being printed on their own by the next write.
+                saved.restore();
+            } else {
+                for (String op : applied) {
+                    learnSetting(context, op);
+                }
+                if (Boolean.TRUE.equals(call.getBoolean("write", true))) {
+                    job = context.buffer.toJob();
+                }
+            }
+        } catch (IllegalStateException e) {
+            call.reject(NOT_CONNECTED);
+            return;
+        }
+
+        JSObject result = new JSObject();
+        result.put("errors", errors);
+        result.put("written", job != null);
+        if (job == null) {
+            call.resolve(result);
+            return;
+        }
+        _writeRaw(context, job, call, result);
     }
 
-    // endregion
+    /**
+     * Prints the same operations on several connections. The job is encoded once per encoding profile and handed to
+     * every connection's writer, so printers receive it in parallel. Resolves with one result per connection once all
+     * of them finished, or once queued if {@code wait} is false.
+     */
+    @PluginMethod
+    public void broadcast(PluginCall call) {
+        JSArray operations = call.getArray("operations");
+        if (operations == null) {
+            call.reject("Please provide operations!");
+            return;
+        }
 
-    // region Data Code Formatting
+        JSArray ids = call.getArray("connectionIds");
+        List<String> connectionIds = new ArrayList<>();
+        if (ids == null) {
+            connectionIds.addAll(connectionsById.keySet());
+        } else {
+            for (int i = 0; i < ids.length(); i++) {
+                Object connectionId = ids.opt(i);
+                if (connectionId instanceof String && !connectionIds.contains(connectionId)) {
+                    connectionIds.add((String) connectionId);
+                }
+            }
+        }
+        if (connectionIds.isEmpty()) {
+            call.reject("No printer connections to broadcast to!");
+            return;
+        }
+
+        Broadcast broadcast = new Broadcast(call, connectionIds.size());
+        Map<String, byte[]> jobsByProfile = new HashMap<>();
+        List<ConnectionContext> targets = new ArrayList<>();
+        for (int i = 0; i < connectionIds.size(); i++) {
+            String connectionId = connectionIds.get(i);
+            ConnectionContext context = connectionsById.get(connectionId);
+            if (context == null) {
+                broadcast.fail(i, connectionId, null, "Unknown printer connection.");
+                continue;
+            }
+            if (context.reconnectAttempt == 0 && !context.transport.isConnected()) {
+                broadcast.fail(i, connectionId, null, NOT_CONNECTED);
+                continue;
+            }
+
+            String profile = encodingProfile(context);
+            if (!jobsByProfile.containsKey(profile)) {
+                try {
+                    jobsByProfile.put(profile, encodeDetached(context, operations));
+                } catch (IllegalArgumentException e) {
+                    call.reject(e.getMessage());
+                    return;
+                }
+            }
+            targets.add(context);
+        }
+
+        Integer priority = call.getInt("priority", 0);
+        boolean wait = Boolean.TRUE.equals(call.getBoolean("wait", true));
+        for (int i = 0, target = 0; i < connectionIds.size(); i++) {
+            if (broadcast.isDone(i)) {
+                continue;
+            }
+
+            ConnectionContext context = targets.get(target++);
+            byte[] job = jobsByProfile.get(encodingProfile(context));
+            String jobId = UUID.randomUUID().toString();
+            try {
+                context.writer.submit(jobId, priority != null ? priority : 0, job, broadcast.listener(i, context, jobId));
+                if (!wait) {
+                    broadcast.queued(i, context.connectionId, jobId);
+                }
+            } catch (IllegalStateException e) {
+                broadcast.fail(i, context.connectionId, jobId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Connections sharing a profile receive the same bytes for the same operations: jobs start from the encoding,
+     * image width and dpi of the printer's profile.
+     */
+    private static String encodingProfile(ConnectionContext context) {
+        Integer dpi = context.profile.dpi();
+        return context.text.encoding() + '/' + context.profile.dotWidth() + '/' + (dpi != null ? dpi : "");
+    }
+
+    /**
+     * Encodes operations from a fresh formatting state without touching the connection's own print queue.
+     *
+     * @throws IllegalArgumentException If an operation is invalid.
+     */
+    private byte[] encodeDetached(ConnectionContext context, JSONArray operations) {
+        SavedQueue saved = new SavedQueue(context);
+        int index = 0;
+        try {
+            resetQueue(context);
+            for (; index < operations.length(); index++) {
+                JSObject args = JSObject.fromJSONObject(operations.getJSONObject(index));
+                String op = args.getString("op");
+                if (op == null) {
+                    throw new IllegalArgumentException("Missing operation name");
+                }
+                applyOperation(context, op, args);
+            }
+            return context.buffer.toJob();
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Operation " + index + ": Invalid operation");
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Operation " + index + ": " + e.getMessage());
+        } finally {
+            saved.restore();
+        }
+    }
+
+    /**
+     * Collects the per-connection results of a {@link #broadcast} and resolves its call once every connection is
+     * done.
+     */
+    private final class Broadcast {
+        final PluginCall call;
+        final JSObject[] results;
+        final AtomicInteger remaining;
+
+        Broadcast(PluginCall call, int size) {
+            this.call = call;
+            this.results = new JSObject[size];
+            this.remaining = new AtomicInteger(size);
+        }
+
+        synchronized boolean isDone(int index) {
+            return results[index] != null;
+        }
+
+        WriteListener listener(int index, ConnectionContext context, String jobId) {
+            return new WriteListener(context, jobId, null, null) {
+                @Override
+                public void onComplete() {
+                    finish(index, result(context.connectionId, jobId, true, null));
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    String message = e.getMessage() != null ? e.getMessage() : "Failed to write to printer!";
+                    finish(index, result(context.connectionId, jobId, false, message));
+                }
+            };
+        }
+
+        void queued(int index, String connectionId, String jobId) {
+            finish(index, result(connectionId, jobId, true, null));
+        }
+
+        void fail(int index, String connectionId, String jobId, String error) {
+            finish(index, result(connectionId, jobId, false, error));
+        }
+
+        private void finish(int index, JSObject result) {
+            synchronized (this) {
+                // With wait disabled the call already counted the job when it was queued.
+                if (results[index] != null) {
+                    return;
+                }
+                results[index] = result;
+            }
+            if (remaining.decrementAndGet() > 0) {
+                return;
+            }
+
+            JSArray array = new JSArray();
+            for (JSObject entry : results) {
+                array.put(entry);
+            }
+            JSObject payload = new JSObject();
+            payload.put("results", array);
+            call.resolve(payload);
+        }
+
+        private JSObject result(String connectionId, String jobId, boolean success, String error) {
+            JSObject result = new JSObject();
+            result.put("connectionId", connectionId);
+            if (jobId != null) {
+                result.put("jobId", jobId);
+            }
+            result.put("success", success);
+            if (error != null) {
+                result.put("error", error);
+            }
+            return result;
+        }
+    }
 
     @PluginMethod
-    public void barcodeWidth(PluginCall call) {
+    public void listJobs(PluginCall call) {
         ConnectionContext context = resolveContext(call, true);
         if (context == null)
             return;
 
-        Integer width = call.getInt("width", 0);
-        if (width != null)
-            context.barcodeSetting.setBarcodeWidth(width);
-        call.resolve();
+        JSArray jobs = new JSArray();
+        for (ConnectionWriter.JobInfo job : context.writer.jobs()) {
+            JSObject obj = new JSObject();
+            obj.put("jobId", job.id);
+            obj.put("priority", job.priority);
+            obj.put("state", job.sending ? "sending" : "queued");
+            if (job.size >= 0) {
+                obj.put("size", job.size);
+            }
+            jobs.put(obj);
+        }
+
+        JSObject result = new JSObject();
+        result.put("jobs", jobs);
+        call.resolve(result);
     }
 
     @PluginMethod
-    public void barcodeHeight(PluginCall call) {
-        ConnectionContext context = resolveContext(call, true);
-        if (context == null)
+    public void cancelJob(PluginCall call) {
+        String jobId = call.getString("jobId");
+        if (jobId == null) {
+            call.reject("Please provide jobId!");
+            return;
+        }
+
+        for (ConnectionContext context : connectionsById.values()) {
+            if (context.writer.cancel(jobId)) {
+                call.resolve();
+                return;
+            }
+            if (context.writer.hasJob(jobId)) {
+                call.reject("Job is already being sent!");
+                return;
+            }
+        }
+        call.reject("Unknown job!");
+    }
+
+    @PluginMethod
+    public void setJobPriority(PluginCall call) {
+        String jobId = call.getString("jobId");
+        Integer priority = call.getInt("priority");
+        if (jobId == null || priority == null) {
+            call.reject("Please provide jobId and priority!");
             return;
+        }
 
-        Integer height = call.getInt("height");
-        if (height != null)
-            context.barcodeSetting.setHeightInDot(height);
+        for (ConnectionContext context : connectionsById.values()) {
+            if (context.writer.setPriority(jobId, priority)) {
+                call.resolve();
+                return;
+            }
+            if (context.writer.hasJob(jobId)) {
+                call.reject("Job is already being sent!");
+                return;
+            }
+        }
+        call.reject("Unknown job!");
+    }
 
-        call.resolve();
+    /**
+     * Drops spooled jobs so they are not replayed, optionally only those of one printer. Jobs already queued on a
+     * connection are still printed.
+     */
+    @PluginMethod
+    public void clearSpool(PluginCall call) {
+        PrintSpool spool = spool();
+        JSObject result = new JSObject();
+        result.put("cleared", spool != null ? spool.clear(call.getString("address")) : 0);
+        call.resolve(result);
     }
 
+    /**
+     * Returns what is known about a printer from earlier connections.
+     */
     @PluginMethod
-    public void barcodeTextPlacement(PluginCall call) {
-        ConnectionContext context = resolveContext(call, true);
-        if (context == null)
+    public void getPrinterProfile(PluginCall call) {
+        String address = call.getString("address");
+        if (address == null) {
+            call.reject("Please provide address!");
             return;
+        }
+
+        PrinterProfile profile = profiles().find(address);
+        JSObject result = new JSObject();
+        if (profile != null) {
+            try {
+                result.put("profile", JSObject.fromJSONObject(profile.toJson()));
+            } catch (JSONException e) {
+                call.reject(e.getMessage());
+                return;
+            }
+        }
+        call.resolve(result);
+    }
+
+    /**
+     * Forgets printer profiles, optionally only that of one printer, so they are probed again on their next connect.
+     */
+    @PluginMethod
+    public void clearPrinterProfiles(PluginCall call) {
+        JSObject result = new JSObject();
+        result.put("cleared", profiles().clear(call.getString("address")));
+        call.resolve(result);
+    }
+
+    // endregion
+
+    // region Pools
+    /**
+     * Groups connections to identical printers into a pool that {@link #printOnPool} spreads jobs over.
+     */
+    @PluginMethod
+    public void createPool(PluginCall call) {
+        JSArray ids = call.getArray("connectionIds");
+        if (ids == null || ids.length() == 0) {
+            call.reject("Please provide connectionIds!");
+            return;
+        }
+
+        List<String> members = new ArrayList<>();
+        for (int i = 0; i < ids.length(); i++) {
+            Object connectionId = ids.opt(i);
+            if (!(connectionId instanceof String) || !connectionsById.containsKey(connectionId)) {
+                call.reject("Unknown printer connection: " + connectionId);
+                return;
+            }
+            if (!members.contains(connectionId)) {
+                members.add((String) connectionId);
+            }
+        }
+
+        String poolId = call.getString("poolId");
+        if (poolId == null) {
+            poolId = UUID.randomUUID().toString();
+        }
+        if (pools.containsKey(poolId)) {
+            call.reject("Pool already exists: " + poolId);
+            return;
+        }
+        PrinterPool pool = new PrinterPool(poolId, members);
+        pools.put(poolId, pool);
+        call.resolve(buildPoolPayload(pool));
+    }
+
+    /**
+     * Deletes a pool. Jobs already routed to a member stay there.
+     */
+    @PluginMethod
+    public void removePool(PluginCall call) {
+        String poolId = call.getString("poolId");
+        if (poolId == null || pools.remove(poolId) == null) {
+            call.reject("Unknown pool: " + poolId, "POOL_NOT_FOUND");
+            return;
+        }
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void listPools(PluginCall call) {
+        JSArray array = new JSArray();
+        for (PrinterPool pool : pools.values()) {
+            array.put(buildPoolPayload(pool));
+        }
+
+        JSObject result = new JSObject();
+        result.put("pools", array);
+        call.resolve(result);
+    }
+
+    /**
+     * Encodes operations for the pool and queues them on the member with the least left to print. Resolves with the
+     * connection that printed the job, which may differ from the first choice if the job was moved.
+     */
+    @PluginMethod
+    public void printOnPool(PluginCall call) {
+        String poolId = call.getString("poolId");
+        PrinterPool pool = poolId != null ? pools.get(poolId) : null;
+        if (pool == null) {
+            call.reject("Unknown pool: " + poolId, "POOL_NOT_FOUND");
+            return;
+        }
+
+        JSArray operations = call.getArray("operations");
+        if (operations == null) {
+            call.reject("Please provide operations!");
+            return;
+        }
+
+        ConnectionContext target = selectPoolMember(pool, null);
+        if (target == null) {
+            call.reject("No printer in the pool can print right now!", "POOL_UNAVAILABLE");
+            return;
+        }
+
+        byte[] job;
+        try {
+            job = encodeDetached(target, operations);
+        } catch (IllegalArgumentException e) {
+            call.reject(e.getMessage());
+            return;
+        }
+
+        Integer priority = call.getInt("priority", 0);
+        boolean wait = Boolean.TRUE.equals(call.getBoolean("wait", true));
+        String jobId = UUID.randomUUID().toString();
+        JSObject result = new JSObject();
+        result.put("poolId", pool.id);
+        result.put("jobId", jobId);
+
+        pool.track(jobId, target.connectionId);
+        try {
+            target.writer.submit(jobId, priority != null ? priority : 0, job,
+                    new PoolListener(pool, jobId, wait ? call : null, result));
+        } catch (IllegalStateException e) {
+            pool.untrack(jobId);
+            call.reject(e.getMessage(), "QUEUE_FULL");
+            return;
+        }
+
+        if (!wait) {
+            result.put("connectionId", target.connectionId);
+            call.resolve(result);
+        }
+    }
+
+    /**
+     * Picks the connected member that can print and has the fewest bytes left to send.
+     *
+     * @return {@code null} if no member can take the job.
+     */
+    private ConnectionContext selectPoolMember(PrinterPool pool, ConnectionContext excluded) {
+        ConnectionContext best = null;
+        long bestBacklog = 0;
+        int bestJobs = 0;
+        for (String connectionId : pool.members()) {
+            ConnectionContext context = connectionsById.get(connectionId);
+            if (context == null || context == excluded || !isContextConnected(context) || !context.status.isReady()) {
+                continue;
+            }
+
+            long backlog = context.writer.backlogBytes();
+            int jobs = context.writer.queuedJobs();
+            if (best == null || backlog < bestBacklog || backlog == bestBacklog && jobs < bestJobs) {
+                best = context;
+                bestBacklog = backlog;
+                bestJobs = jobs;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Moves the pool jobs still waiting on a member that lost its link or can't print to the other members. Jobs
+     * stay put if no other member can take them.
+     */
+    private void rebalancePools(ConnectionContext from) {
+        for (PrinterPool pool : pools.values()) {
+            if (!pool.contains(from.connectionId)) {
+                continue;
+            }
+
+            List<ConnectionWriter.Job> jobs = from.writer.takeWaiting(pool.jobIds());
+            for (ConnectionWriter.Job job : jobs) {
+                ConnectionContext target = selectPoolMember(pool, from);
+                if (target == null) {
+                    target = from;
+                }
+
+                pool.track(job.id, target.connectionId);
+                try {
+                    target.writer.submit(job.id, job.priority, job.size, job.producer, job.listener);
+                } catch (IllegalStateException e) {
+                    job.listener.onError(e);
+                }
+            }
+
+            if (!jobs.isEmpty()) {
+                Log.d(TAG, "Moved " + jobs.size() + " job(s) off " + from.connectionId + " in pool " + pool.id);
+            }
+        }
+    }
+
+    private JSObject buildPoolPayload(PrinterPool pool) {
+        JSArray members = new JSArray();
+        for (String connectionId : pool.members()) {
+            members.put(connectionId);
+        }
+
+        JSObject payload = new JSObject();
+        payload.put("poolId", pool.id);
+        payload.put("connectionIds", members);
+        return payload;
+    }
+
+    private class PoolListener implements ConnectionWriter.Listener {
+        final PrinterPool pool;
+        final String jobId;
+        // Null if the call was resolved as soon as the job was queued.
+        final PluginCall call;
+        final JSObject result;
+
+        PoolListener(PrinterPool pool, String jobId, PluginCall call, JSObject result) {
+            this.pool = pool;
+            this.jobId = jobId;
+            this.call = call;
+            this.result = result;
+        }
+
+        @Override
+        public void onProgress(long sent, long total) {
+            String connectionId = pool.connectionOf(jobId);
+            if (connectionId == null || !hasListeners("writeProgress")) {
+                return;
+            }
+
+            JSObject payload = new JSObject();
+            payload.put("connectionId", connectionId);
+            payload.put("jobId", jobId);
+            payload.put("bytesSent", sent);
+            if (total >= 0) {
+                payload.put("totalBytes", total);
+            }
+            notifyListeners("writeProgress", payload);
+        }
+
+        @Override
+        public void onComplete() {
+            String connectionId = pool.connectionOf(jobId);
+            pool.untrack(jobId);
+            if (call != null) {
+                result.put("connectionId", connectionId);
+                call.resolve(result);
+            }
+        }
+
+        @Override
+        public void onError(Exception e) {
+            pool.untrack(jobId);
+            String message = e.getMessage() != null ? e.getMessage() : "Failed to write to printer!";
+            if (call == null) {
+                Log.w(TAG, "Pool job " + jobId + " failed: " + message);
+            } else if (e instanceof CancellationException) {
+                call.reject(message, "JOB_CANCELLED");
+            } else {
+                call.reject(message);
+            }
+        }
+    }
+    // endregion
+
+    // region Templates
+    /**
+     * Compiles operations into a template stored on the connection. Operations {@code text}, {@code qr} and
+     * {@code barcode} given a {@code slot} name instead of their data become slots filled by {@link #printTemplate}.
+     */
+    @PluginMethod
+    public void registerTemplate(PluginCall call) {
+        ConnectionContext context = resolveContext(call, true);
+        if (context == null)
+            return;
+
+        String id = call.getString("id");
+        JSArray operations = call.getArray("operations");
+        if (id == null || operations == null) {
+            call.reject("Please provide id and operations!");
+            return;
+        }
+
+        ReceiptTemplate template;
+        try {
+            template = compileTemplate(context, operations);
+        } catch (IllegalArgumentException e) {
+            call.reject(e.getMessage());
+            return;
+        }
+        context.templates.put(id, template);
+
+        JSArray slots = new JSArray();
+        for (ReceiptTemplate.Slot slot : template.slots()) {
+            slots.put(slot.name);
+        }
+
+        JSObject result = new JSObject();
+        result.put("id", id);
+        result.put("slots", slots);
+        result.put("size", template.fixedSize());
+        call.resolve(result);
+    }
+
+    /**
+     * Prints a registered template with the given slot values, leaving the print queue untouched.
+     */
+    @PluginMethod
+    public void printTemplate(PluginCall call) {
+        ConnectionContext context = resolveContext(call, true);
+        if (context == null)
+            return;
+
+        String id = call.getString("id");
+        ReceiptTemplate template = id != null ? context.templates.get(id) : null;
+        if (template == null) {
+            call.reject("Unknown template: " + id, "TEMPLATE_NOT_FOUND");
+            return;
+        }
+
+        EscBuffer out = new EscBuffer();
+        byte[] job;
+        try {
+            if (!template.encoding.equals(context.text.encoding())) {
+                template = compileTemplate(context, template.operations);
+                context.templates.put(id, template);
+            }
+
+            out.clear();
+            template.render(call.getObject("values", new JSObject()), context.text, out);
+            job = out.toJob();
+        } catch (IllegalArgumentException e) {
+            call.reject(e.getMessage());
+            return;
+        } finally {
+            out.release();
+        }
+
+        _writeRaw(context, job, call, new JSObject());
+    }
+
+    /**
+     * Runs the operations on the connection from a fresh formatting state, cutting the output at every slot. The
+     * print queue and formatting state of the connection are restored afterwards.
+     */
+    private ReceiptTemplate compileTemplate(ConnectionContext context, JSONArray operations) {
+        EscBuffer buffer = context.buffer;
+        SavedQueue saved = new SavedQueue(context);
+
+        int index = 0;
+        try {
+            resetQueue(context);
+            ReceiptTemplate.Builder builder = new ReceiptTemplate.Builder(context.text.encoding(), operations);
+            int mark = 0;
+            for (; index < operations.length(); index++) {
+                JSObject args = JSObject.fromJSONObject(operations.getJSONObject(index));
+                String op = args.getString("op");
+                if (op == null) {
+                    throw new IllegalArgumentException("Missing operation name");
+                }
+
+                String slot = args.getString("slot");
+                if (slot == null) {
+                    applyOperation(context, op, args);
+                    continue;
+                }
+
+                ReceiptTemplate.Slot compiled;
+                switch (op) {
+                    case "text":
+                        context.text.writePrefix(context.textFormat(), buffer);
+                        compiled = ReceiptTemplate.Slot.text(slot, args.getInteger("decimals", -1));
+                        break;
+                    case "qr":
+                        compiled = ReceiptTemplate.Slot.barcode(slot, barcodeEncoder(context, BarcodeType.QR_CODE,
+                                copyBarcodeSetting(context.barcodeSetting)));
+                        break;
+                    case "barcode":
+                        compiled = ReceiptTemplate.Slot.barcode(slot, barcodeEncoder(context, parseBarcodeType(args),
+                                copyBarcodeSetting(context.barcodeSetting)));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Operation can't have a slot: " + op);
+                }
+
+                builder.add(buffer.copyFrom(mark), compiled);
+                mark = buffer.size();
+            }
+
+            return builder.build(buffer.copyFrom(mark));
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Operation " + index + ": Invalid operation");
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Operation " + index + ": " + e.getMessage());
+        } finally {
+            saved.restore();
+        }
+    }
+
+    /**
+     * The print queue and formatting state of a connection, put back after borrowing the connection to encode
+     * something else.
+     */
+    private static final class SavedQueue {
+        final ConnectionContext context;
+        final byte[] queue;
+        final TextSetting textSetting;
+        final BitmapSetting bitmapSetting;
+        final BarcodeSetting barcodeSetting;
+        final RasterEncoder.Dither dither;
+        final int charSpacing;
+        final String encoding;
+        final boolean leftChineseMode;
+
+        SavedQueue(ConnectionContext context) {
+            this.context = context;
+            this.queue = context.buffer.copyFrom(0);
+            this.textSetting = context.textSetting;
+            this.bitmapSetting = context.bitmapSetting;
+            this.barcodeSetting = context.barcodeSetting;
+            this.dither = context.dither;
+            this.charSpacing = context.charSpacing;
+            this.encoding = context.text.encoding();
+            this.leftChineseMode = context.text.leftChineseMode();
+        }
+
+        void restore() {
+            context.buffer.clear();
+            context.buffer.write(queue);
+            context.textSetting = textSetting;
+            context.bitmapSetting = bitmapSetting;
+            context.barcodeSetting = barcodeSetting;
+            context.dither = dither;
+            context.charSpacing = charSpacing;
+            context.text.setEncoding(encoding);
+            context.text.setLeftChineseMode(leftChineseMode);
+        }
+    }
+
+    private static BarcodeSetting copyBarcodeSetting(BarcodeSetting setting) {
+        BarcodeSetting copy = new BarcodeSetting();
+        copy.setBarcodeWidth(setting.getBarcodeWidth());
+        copy.setHeightInDot(setting.getHeightInDot());
+        copy.setBarcodeStringPosition(setting.getBarcodeStringPosition());
+        copy.setEscBarcodFont(setting.getEscBarcodFont());
+        return copy;
+    }
+
+    // endregion
+
+    // region Status
+    /**
+     * Resolves the last status reported by the printer, or asks for a fresh one first if {@code refresh} is set.
+     * A refresh is sent between two jobs, so it times out while a job is paused midway.
+     */
+    @PluginMethod
+    public void getStatus(PluginCall call) {
+        ConnectionContext context = resolveContext(call, true);
+        if (context == null)
+            return;
+
+        if (!Boolean.TRUE.equals(call.getBoolean("refresh", false))) {
+            call.resolve(buildStatusPayload(context));
+            return;
+        }
+
+        AtomicBoolean settled = new AtomicBoolean();
+        Runnable settle = () -> {
+            if (settled.compareAndSet(false, true)) {
+                call.resolve(buildStatusPayload(context));
+            }
+        };
+
+        context.writer.control(output -> {
+            try {
+                output.write(context.status.statusRequest());
+                context.status.awaitReplies(STATUS_TIMEOUT_MS);
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to request printer status", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            settle.run();
+        });
+        mainHandler.postDelayed(settle, 2 * STATUS_TIMEOUT_MS);
+    }
+
+    private JSObject buildStatusPayload(ConnectionContext context) {
+        StatusMonitor.Snapshot status = context.status.snapshot();
+        JSObject payload = new JSObject();
+        payload.put("connectionId", context.connectionId);
+        payload.put("known", status.known);
+        payload.put("ready", !status.known || status.canPrint());
+        payload.put("online", !status.offline);
+        payload.put("coverOpen", status.coverOpen);
+        payload.put("paperOut", status.paperOut);
+        payload.put("paperNearEnd", status.paperNearEnd);
+        payload.put("error", status.error);
+        payload.put("drawerOpen", status.drawerOpen);
+        if (status.known) {
+            payload.put("updatedAt", status.updatedAt);
+        }
+        return payload;
+    }
+
+    // endregion
+
+    // region Metrics
+    @PluginMethod
+    public void getMetrics(PluginCall call) {
+        ConnectionContext context = resolveContext(call, false);
+        if (context == null)
+            return;
+
+        call.resolve(buildMetricsPayload(context));
+    }
+
+    @PluginMethod
+    public void resetMetrics(PluginCall call) {
+        ConnectionContext context = resolveContext(call, false);
+        if (context == null)
+            return;
+
+        context.metrics.reset();
+        call.resolve();
+    }
+
+    private void startMetricsEvents(ConnectionContext context) {
+        if (context.metricsIntervalMs <= 0) {
+            return;
+        }
+
+        context.metricsTask = scheduler.scheduleWithFixedDelay(() -> {
+            if (hasListeners("metrics")) {
+                notifyListeners("metrics", buildMetricsPayload(context));
+            }
+        }, context.metricsIntervalMs, context.metricsIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private JSObject buildMetricsPayload(ConnectionContext context) {
+        JSObject payload = new JSObject();
+        context.metrics.writeTo(payload);
+        payload.put("connectionId", context.connectionId);
+        return payload;
+    }
+
+    // endregion
+
+    // region Image Cache
+    @PluginMethod
+    public void getImageCacheStats(PluginCall call) {
+        JSObject stats = new JSObject();
+        stats.put("hits", imageCache.hits());
+        stats.put("misses", imageCache.misses());
+        stats.put("evictions", imageCache.evictions());
+        stats.put("entries", imageCache.size());
+        stats.put("bytes", imageCache.bytes());
+        stats.put("maxBytes", imageCache.maxBytes());
+        call.resolve(stats);
+    }
+
+    @PluginMethod
+    public void clearImageCache(PluginCall call) {
+        imageCache.clear();
+        call.resolve();
+    }
+
+    // endregion
+
+    // region Operations
+    private void runOperation(PluginCall call, String op) {
+        ConnectionContext context = resolveContext(call, true);
+        if (context == null)
+            return;
+
+        try {
+            applyOperation(context, op, call.getData());
+        } catch (ImageNotCachedException e) {
+            call.reject(e.getMessage(), ImageNotCachedException.CODE);
+            return;
+        } catch (IllegalArgumentException e) {
+            call.reject(e.getMessage());
+            return;
+        } catch (IllegalStateException e) {
+            // The connection was closed while the operation ran.
+            call.reject(NOT_CONNECTED);
+            return;
+        }
+        learnSetting(context, op);
+        call.resolve();
+    }
+
+    /**
+     * Applies a single formatting or content operation to the connection's print queue.
+     *
+     * @throws IllegalArgumentException if the operation is unknown or one of its arguments is invalid.
+     */
+    private void applyOperation(ConnectionContext context, String op, JSObject args) {
+        long startedAt = System.nanoTime();
+        switch (op) {
+            // Text Formatting
+            case "bold":
+                context.textSetting.setBold(parseIsEnabled(args));
+                context.text.invalidate();
+                break;
+            case "underline":
+                context.textSetting.setUnderline(parseIsEnabled(args));
+                context.text.invalidate();
+                break;
+            case "doubleWidth":
+                context.textSetting.setDoubleWidth(parseIsEnabled(args));
+                context.text.invalidate();
+                break;
+            case "doubleHeight":
+                context.textSetting.setDoubleHeight(parseIsEnabled(args));
+                context.text.invalidate();
+                break;
+            case "inverse":
+                context.textSetting.setIsAntiWhite(parseIsEnabled(args));
+                context.text.invalidate();
+                break;
+            case "setEncoding": {
+                String encoding = args.getString("encoding", TextEncoder.DEFAULT_ENCODING);
+                context.text.setEncoding(encoding);
+                Log.d(TAG, "Encoding set to: " + encoding + " for connection: " + context.connectionId);
+                break;
+            }
+
+            // Image Formatting
+            case "dpi": {
+                Integer dpi = args.getInteger("dpi");
+                if (dpi == null) {
+                    dpi = 0;
+                }
+
+                context.bitmapSetting.setBmpDpi(dpi);
+                break;
+            }
+            case "limitWidth": {
+                Integer width = args.getInteger("width");
+                if (width == null) {
+                    width = 0;
+                }
+
+                context.bitmapSetting.setBimtapLimitWidth(width * 8);
+                break;
+            }
+            case "dither": {
+                RasterEncoder.Dither dither = RasterEncoder.Dither.fromName(args.getString("algorithm", "none"));
+                if (dither == null) {
+                    throw new IllegalArgumentException("Invalid Dither Algorithm");
+                }
+
+                context.dither = dither;
+                break;
+            }
+
+            // Hybrid Formatting
+            case "align": {
+                int alignment = alignments.indexOf(args.getString("alignment"));
+                if (alignment == -1) {
+                    throw new IllegalArgumentException("Invalid Alignment");
+                }
+
+                applyAlignment(context, alignment);
+                break;
+            }
+            case "lineSpacing":
+                applyLineSpacing(context, args.getInteger("lineSpacing", 0));
+                break;
+            case "charSpacing":
+                applyCharSpacing(context, args.getInteger("charSpacing", 0));
+                break;
+            case "font": {
+                int font = fonts.indexOf(args.getString("font", "A"));
+                if (font == -1) {
+                    throw new IllegalArgumentException("Invalid Font");
+                }
+
+                context.textSetting.setEscFontType(fontEnumValues[font]);
+                context.text.invalidate();
+                context.barcodeSetting.setEscBarcodFont(dataFontEnumValues[font]);
+                break;
+            }
+            case "clearFormatting":
+                applyDefaultFormatting(context);
+                break;
+
+            // Data Code Formatting
+            case "barcodeWidth":
+                context.barcodeSetting.setBarcodeWidth(args.getInteger("width", 0));
+                break;
+            case "barcodeHeight": {
+                Integer height = args.getInteger("height");
+                if (height != null)
+                    context.barcodeSetting.setHeightInDot(height);
+                break;
+            }
+            case "barcodeTextPlacement": {
+                int placement = placements.indexOf(args.getString("placement"));
+                if (placement == -1) {
+                    throw new IllegalArgumentException("Invalid Placement");
+                }
+
+                context.barcodeSetting.setBarcodeStringPosition(placementEnumValues[placement]);
+                break;
+            }
+
+            // Content
+            case "text":
+                appendText(context, args.getString("text"));
+                context.metrics.encoded(ConnectionMetrics.TEXT, startedAt);
+                break;
+            case "table":
+                appendTable(context, args);
+                context.metrics.encoded(ConnectionMetrics.TEXT, startedAt);
+                break;
+            case "image":
+                appendImage(context, args.getString("image"), args.getString("cacheKey"));
+                context.metrics.encoded(ConnectionMetrics.IMAGE, startedAt);
+                break;
+            case "raw":
+                appendRaw(context, args);
+                break;
+            case "qr":
+                appendBarcode(context, BarcodeType.QR_CODE, args.getString("data", ""));
+                context.metrics.encoded(ConnectionMetrics.BARCODE, startedAt);
+                break;
+            case "barcode":
+                appendBarcode(context, parseBarcodeType(args), args.getString("data", ""));
+                context.metrics.encoded(ConnectionMetrics.BARCODE, startedAt);
+                break;
+            case "selfTest":
+                context.buffer.write(context.cmd.getSelfTestCmd());
+                break;
+
+            // Content Actions
+            case "beep":
+                context.buffer.write(context.cmd.getBeepCmd());
+                break;
+            case "openDrawer":
+                context.buffer.write(EscPos.OPEN_DRAWER);
+                break;
+            case "cutPaper": {
+                boolean half = Boolean.TRUE.equals(args.getBoolean("half", false));
+                context.buffer.write(half ? EscPos.HALF_CUT : EscPos.FULL_CUT);
+                break;
+            }
+            case "feedCutPaper": {
+                boolean half = Boolean.TRUE.equals(args.getBoolean("half", false));
+                context.buffer.write(EscPos.LF);
+                context.buffer.write(half ? EscPos.HALF_CUT : EscPos.FULL_CUT);
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown operation: " + op);
+        }
+    }
+
+    private void appendText(ConnectionContext context, String text) {
+        if (text == null)
+            return;
+
+        context.text.writeText(context.textFormat(), text, context.buffer);
+    }
+
+    /**
+     * Lays out all rows of a table natively and writes them as a single text command, so a long order is one call.
+     */
+    private void appendTable(ConnectionContext context, JSObject args) {
+        JSONArray columns = args.optJSONArray("columns");
+        JSONArray rows = args.optJSONArray("rows");
+        if (columns == null || rows == null) {
+            throw new IllegalArgumentException("Please provide columns and rows!");
+        }
+
+        JSONObject options = args.optJSONObject("options");
+        int gap = options != null ? options.optInt("gap", 1) : 1;
+        int lineWidth = options != null ? options.optInt("lineWidth", 0) : 0;
+        if (gap < 0) {
+            throw new IllegalArgumentException("Invalid gap");
+        }
+        if (lineWidth <= 0) {
+            lineWidth = lineWidth(context);
+        }
+
+        TableLayout layout = new TableLayout(TableLayout.columns(columns, lineWidth, gap), gap, context.text.multiByte());
+        StringBuilder lines = new StringBuilder(rows.length() * (lineWidth + 1));
+        layout.layout(rows, lines);
+        context.text.writeText(context.textFormat(), lines.toString(), context.buffer);
+    }
+
+    /**
+     * Characters that fit on a line with the current font, width and character spacing, within the printable
+     * width set by {@code limitWidth}.
+     */
+    private static int lineWidth(ConnectionContext context) {
+        ESCFontTypeEnum font = context.textSetting.getEscFontType();
+        int charWidth = font == null || font == ESCFontTypeEnum.FONT_A_12x24 ? 12 : 9;
+        charWidth += context.charSpacing;
+        if (context.textSetting.getDoubleWidth() == SettingEnum.Enable) {
+            charWidth *= 2;
+        }
+        return Math.max(1, context.bitmapSetting.getBimtapLimitWidth() / charWidth);
+    }
+
+    private void appendImage(ConnectionContext context, String image, String cacheKey) {
+        String key = null;
+        if (cacheKey != null) {
+            key = imageCacheKey(context, "key:" + cacheKey);
+            if (appendCachedImage(context, key))
+                return;
+            if (image == null)
+                throw new ImageNotCachedException();
+        }
+
+        if (image == null)
+            return;
+
+        // Files are keyed by path, size and modification time so a hit skips reading them.
+        if (key == null && NativeInput.isSource(image)) {
+            String identity = nativeInput().identity(image);
+            if (identity != null) {
+                key = imageCacheKey(context, identity);
+                if (appendCachedImage(context, key))
+                    return;
+            }
+        }
 
-        String placementName = call.getString("placement");
-        int placement = placements.indexOf(placementName);
-        if (placement == -1) {
-            call.reject("Invalid Placement");
-            return;
+        byte[] d = decodeImageData(image);
+
+        if (key == null) {
+            key = imageCacheKey(context, "sha256:" + sha256(d));
+            if (appendCachedImage(context, key))
+                return;
         }
 
-        context.barcodeSetting.setBarcodeStringPosition(placementEnumValues[placement]);
-        call.resolve();
+        int start = context.buffer.size();
+        context.rasterizer.rasterize(d, context.bitmapSetting, context.profile.dotWidth(), context.dither,
+                context.buffer);
+        imageCache.put(key, context.buffer.copyFrom(start));
     }
 
-    // endregion
-
-    // region Content
-    @PluginMethod
-    public void text(PluginCall call) {
-        ConnectionContext context = resolveContext(call, true);
-        if (context == null)
-            return;
+    private byte[] decodeImageData(String image) {
+        if (image == null) {
+            throw new IllegalArgumentException("Invalid Image");
+        }
 
-        String text = call.getString("text");
+        if (NativeInput.isSource(image)) {
+            return nativeInput().read(image);
+        }
 
         try {
-            if (text != null)
-                context.cmd.append(context.cmd.getTextCmd(context.textSetting, text, context.encoding));
-        } catch (UnsupportedEncodingException ignored) {
+            return Base64.decode(image.substring(image.indexOf(",") + 1), Base64.DEFAULT);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid Base64");
         }
-        call.resolve();
     }
 
-    @RequiresApi(api = Build.VERSION_CODES.O)
-    @PluginMethod
-    public void image(PluginCall call) {
-        ConnectionContext context = resolveContext(call, true);
-        if (context == null)
-            return;
+    private String imageCacheKey(ConnectionContext context, String imageId) {
+        return RasterCache.key(imageId, context.bitmapSetting.getBimtapLimitWidth(), context.profile.dotWidth(),
+                context.bitmapSetting.getBmpDpi(), context.dither);
+    }
 
-        String image = call.getString("image");
+    private boolean appendCachedImage(ConnectionContext context, String key) {
+        byte[] cached = imageCache.get(key);
+        if (cached == null)
+            return false;
 
-        context.bitmapSetting.setBmpPrintMode(BmpPrintMode.MODE_SINGLE_COLOR);
+        context.buffer.write(cached);
+        return true;
+    }
 
-        try {
-            if (image != null) {
-                byte[] d = Base64.getDecoder().decode(image.substring(image.indexOf(",") + 1));
-                context.cmd.append(
-                        context.cmd.getBitmapCmd(context.bitmapSetting, BitmapFactory.decodeByteArray(d, 0, d.length)));
+    /**
+     * Appends raw bytes given as Base64, a native source, a number array or a {@code {hex}} object.
+     */
+    private void appendRaw(ConnectionContext context, JSObject args) {
+        Object data = args.opt("data");
+        if (data instanceof JSONObject) {
+            String hex = ((JSONObject) data).optString("hex", null);
+            if (hex == null) {
+                throw new IllegalArgumentException("Invalid Data");
             }
-        } catch (SdkException ignored) {
+            context.buffer.write(decodeHex(hex));
+            return;
         }
-        call.resolve();
-    }
 
-    @RequiresApi(api = Build.VERSION_CODES.O)
-    @PluginMethod
-    public void raw(PluginCall call) {
-        ConnectionContext context = resolveContext(call, true);
-        if (context == null)
-            return;
+        if (data instanceof String) {
+            String string = (String) data;
+            if (NativeInput.isSource(string)) {
+                context.buffer.write(nativeInput().read(string));
+                return;
+            }
 
-        String base64 = call.getString("data");
-        if (base64 != null) {
             try {
-                context.cmd.append(Base64.getDecoder().decode(base64));
-            } catch (Exception ignored) {
-                call.reject("Invalid Base64");
-                return;
+                context.buffer.write(Base64.decode(string, Base64.DEFAULT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid Base64");
             }
-            call.resolve();
             return;
         }
 
-        JSArray dataArray = call.getArray("data");
-        if (dataArray == null) {
-            call.reject("Invalid Data");
-            return;
+        if (!(data instanceof JSONArray)) {
+            throw new IllegalArgumentException("Invalid Data");
         }
 
-        byte[] data = new byte[dataArray.length()];
+        JSONArray dataArray = (JSONArray) data;
+        byte[] bytes = new byte[dataArray.length()];
         for (int i = 0; i < dataArray.length(); i++) {
             try {
-                data[i] = (byte) (dataArray.getInt(i) & 0xff);
+                bytes[i] = (byte) (dataArray.getInt(i) & 0xff);
             } catch (JSONException e) {
-                call.reject("Invalid Data");
-                return;
+                throw new IllegalArgumentException("Invalid Data");
             }
         }
 
-        context.cmd.append(data);
-        call.resolve();
+        context.buffer.write(bytes);
     }
 
-    @PluginMethod
-    public void qr(PluginCall call) {
-        ConnectionContext context = resolveContext(call, true);
-        if (context == null)
-            return;
+    private static byte[] decodeHex(String hex) {
+        int length = hex.length();
+        if ((length & 1) != 0) {
+            throw new IllegalArgumentException("Invalid Hex");
+        }
 
-        String data = call.getString("data", "");
-        try {
-            context.cmd.append(context.cmd.getBarcodeCmd(BarcodeType.QR_CODE, context.barcodeSetting, data));
-        } catch (SdkException ignored) {
+        byte[] bytes = new byte[length / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("Invalid Hex");
+            }
+            bytes[i] = (byte) (high << 4 | low);
         }
-        call.resolve();
+        return bytes;
     }
 
-    @PluginMethod
-    public void barcode(PluginCall call) {
-        ConnectionContext context = resolveContext(call, true);
-        if (context == null)
-            return;
+    private NativeInput nativeInput() {
+        if (nativeInput == null) {
+            nativeInput = new NativeInput(getContext());
+        }
+        return nativeInput;
+    }
+
+    private synchronized ProfileStore profiles() {
+        if (profiles == null) {
+            profiles = new ProfileStore(getContext());
+        }
+        return profiles;
+    }
 
-        String typeName = call.getString("type");
+    /**
+     * @return {@code null} if the spool can't be opened, in which case jobs are only kept in memory.
+     */
+    private synchronized PrintSpool spool() {
+        if (spool == null) {
+            try {
+                spool = new PrintSpool(new File(getContext().getFilesDir(), SPOOL_DIR), scheduler);
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to open the print spool", e);
+            }
+        }
+        return spool;
+    }
 
+    private static BarcodeType parseBarcodeType(JSObject args) {
         BarcodeType type;
         try {
-            type = BarcodeType.valueOf(typeName);
+            type = BarcodeType.valueOf(args.getString("type"));
         } catch (Exception ignored) {
-            call.reject("Invalid Type");
-            return;
+            throw new IllegalArgumentException("Invalid Type");
         }
 
         if (type == BarcodeType.QR_CODE) {
-            call.reject("Invalid Type");
-            return;
+            throw new IllegalArgumentException("Invalid Type");
         }
-        String data = call.getString("data", "");
+        return type;
+    }
+
+    private void appendBarcode(ConnectionContext context, BarcodeType type, String data) {
+        context.buffer.write(barcodeEncoder(context, type, context.barcodeSetting).encode(data));
+    }
+
+    /**
+     * @param setting Read on every call; pass a copy to keep the current settings.
+     */
+    private static BarcodeEncoder barcodeEncoder(ConnectionContext context, BarcodeType type, BarcodeSetting setting) {
+        return data -> {
+            try {
+                return context.cmd.getBarcodeCmd(type, setting, data);
+            } catch (SdkException e) {
+                throw new IllegalArgumentException("Invalid barcode data");
+            }
+        };
+    }
 
+    private static String sha256(byte[] data) {
+        MessageDigest digest;
         try {
-            context.cmd.append(context.cmd.getBarcodeCmd(type, context.barcodeSetting, data));
-        } catch (SdkException ignored) {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
         }
 
-        call.resolve();
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest(data)) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
     }
 
-    @PluginMethod
-    public void selfTest(PluginCall call) {
-        ConnectionContext context = resolveContext(call, true);
-        if (context == null)
-            return;
-
-        context.cmd.append(context.cmd.getSelfTestCmd());
-        call.resolve();
+    private JSObject buildOperationError(int index, String op, String message) {
+        JSObject error = new JSObject();
+        error.put("index", index);
+        error.put("op", op);
+        error.put("message", message);
+        return error;
     }
 
     // endregion
 
-    // region Content Actions
-    @PluginMethod
-    public void beep(PluginCall call) {
-        ConnectionContext context = resolveContext(call, true);
-        if (context == null)
-            return;
-
-        context.cmd.append(context.cmd.getBeepCmd());
-        call.resolve();
-    }
+    // region Utils
+    SettingEnum parseIsEnabled(JSObject args) {
+        if ("default".equals(args.getString("enabled")))
+            return SettingEnum.NoSetting;
 
-    @PluginMethod
-    public void openDrawer(PluginCall call) {
-        ConnectionContext context = resolveContext(call, true);
-        if (context == null)
-            return;
+        Boolean enabled = args.getBoolean("enabled", true);
+        if (enabled == null)
+            return SettingEnum.NoSetting;
 
-        // ESC p m t1 t2 - Standard ESC/POS cash drawer kick command
-        // 0x1B = ESC, 0x70 = p, 0x00 = drawer pin 2
-        // 0x32 = pulse ON time (50 * 2ms = 100ms), 0x7D = pulse OFF time (125 * 2ms =
-        // 250ms)
-        context.cmd.append(new byte[] { 0x1B, 0x70, 0x00, 0x32, 0x7D });
-        call.resolve();
+        return enabled ? SettingEnum.Enable : SettingEnum.Disable;
     }
 
-    @PluginMethod
-    public void cutPaper(PluginCall call) {
-        ConnectionContext context = resolveContext(call, true);
-        if (context == null)
-            return;
-
-        boolean half = Boolean.TRUE.equals(call.getBoolean("half", false));
-        context.cmd.append(half ? context.cmd.getHalfCutCmd() : context.cmd.getAllCutCmd());
-
-        call.resolve();
+    private void resetQueue(ConnectionContext context) {
+        context.buffer.reset();
+        context.text.reset();
+        applyDefaultFormatting(context);
     }
 
-    @PluginMethod
-    public void feedCutPaper(PluginCall call) {
-        ConnectionContext context = resolveContext(call, true);
-        if (context == null)
-            return;
-
-        boolean half = Boolean.TRUE.equals(call.getBoolean("half", false));
-        context.cmd.append(new byte[] { (byte) '\n' });
-        context.cmd.append(half ? context.cmd.getHalfCutCmd() : context.cmd.getAllCutCmd());
-        call.resolve();
+    private void _writeRaw(ConnectionContext context, byte[] job, PluginCall call, JSObject result) {
+        queueJob(context, call, result, job.length, new ConnectionWriter.Bytes(job), context.spool ? job : null);
     }
 
-    // endregion
+    /**
+     * Queues a job on the connection's writer using the {@code priority} and {@code wait} options of the call.
+     * The call resolves with {@code result} and the job ID once the job is sent, or right after queueing it if
+     * {@code wait} is false.
+     *
+     * @param spooled The job's bytes to journal before queueing it, or {@code null} to keep it in memory only.
+     */
+    private void queueJob(ConnectionContext context, PluginCall call, JSObject result, long size,
+            ConnectionWriter.Producer producer, byte[] spooled) {
+        Integer priority = call.getInt("priority", 0);
+        boolean wait = Boolean.TRUE.equals(call.getBoolean("wait", true));
+        String jobId = UUID.randomUUID().toString();
+        result.put("jobId", jobId);
+
+        WriteListener listener = new WriteListener(context, jobId, wait ? call : null, result);
+        PrintSpool spool = spooled != null ? spool() : null;
+        if (spool != null) {
+            try {
+                spool.append(context.address, jobId, priority != null ? priority : 0, spooled);
+                listener.spooled = true;
+            } catch (IOException e) {
+                // Still worth printing, just not durably.
+                Log.w(TAG, "Failed to spool job " + jobId, e);
+            }
+        }
 
-    // region Printing Actions
-    @PluginMethod
-    public void begin(PluginCall call) {
-        ConnectionContext context = resolveContext(call, true);
-        if (context == null)
+        try {
+            context.writer.submit(jobId, priority != null ? priority : 0, size, producer, listener);
+        } catch (IllegalStateException e) {
+            if (listener.spooled) {
+                spool.markDone(jobId);
+            }
+            call.reject(e.getMessage(), "QUEUE_FULL");
             return;
+        }
 
-        context.cmd = new EscCmd();
-        applyDefaultFormatting(context);
-        call.resolve();
+        if (!wait) {
+            call.resolve(result);
+        }
     }
 
-    @PluginMethod
-    public void write(PluginCall call) {
-        ConnectionContext context = resolveContext(call, true);
-        if (context == null)
-            return;
+    private class WriteListener implements ConnectionWriter.Listener {
+        final ConnectionContext context;
+        final String jobId;
+        // Null if the call was resolved as soon as the job was queued.
+        final PluginCall call;
+        final JSObject result;
+        // Set once the job is in the spool, which keeps it until it is sent or cancelled.
+        boolean spooled;
+
+        WriteListener(ConnectionContext context, String jobId, PluginCall call, JSObject result) {
+            this.context = context;
+            this.jobId = jobId;
+            this.call = call;
+            this.result = result;
+        }
 
-        _writeRaw(call, context, context.cmd.getAppendCmds());
-    }
+        @Override
+        public void onProgress(long sent, long total) {
+            if (!hasListeners("writeProgress")) {
+                return;
+            }
 
-    // endregion
+            JSObject payload = new JSObject();
+            payload.put("connectionId", context.connectionId);
+            payload.put("jobId", jobId);
+            payload.put("bytesSent", sent);
+            if (total >= 0) {
+                payload.put("totalBytes", total);
+            }
+            notifyListeners("writeProgress", payload);
+        }
 
-    // region Utils
-    SettingEnum parseIsEnabled(PluginCall call) {
-        if ("default".equals(call.getString("enabled")))
-            return SettingEnum.NoSetting;
+        @Override
+        public void onComplete() {
+            if (spooled) {
+                spool.markDone(jobId);
+            }
+            if (call != null) {
+                call.resolve(result);
+            }
+        }
 
-        Boolean enabled = call.getBoolean("enabled", true);
-        if (enabled == null)
-            return SettingEnum.NoSetting;
+        @Override
+        public void onError(Exception e) {
+            // Jobs that failed to send stay spooled and are replayed once the printer is connected again.
+            if (spooled && e instanceof CancellationException) {
+                spool.markDone(jobId);
+            }
 
-        return enabled ? SettingEnum.Enable : SettingEnum.Disable;
-    }
+            String message = e.getMessage();
+            if (message == null) {
+                message = "Failed to write to printer!";
+            }
 
-    private void _writeRaw(PluginCall call, ConnectionContext context, byte[] data) {
-        PrinterInterface printerInterface = context.printer.getPrinterInterface();
-        if (printerInterface == null || printerInterface.getConnectState() != ConnectStateEnum.Connected) {
-            call.reject("Printer is not connected!");
-            return;
+            if (call == null) {
+                Log.w(TAG, "Job " + jobId + " failed: " + message);
+            } else if (e instanceof CancellationException) {
+                call.reject(message, "JOB_CANCELLED");
+            } else {
+                call.reject(message);
+            }
         }
-
-        CmdFactory escFac = new EscFactory();
-        Cmd escCmd = escFac.create();
-        escCmd.append(escCmd.getHeaderCmd());
-        escCmd.setChartsetName(context.encoding);
-        escCmd.append(data);
-        escCmd.append(escCmd.getLFCRCmd());
-        escCmd.append(escCmd.getLFCRCmd());
-        escCmd.append(escCmd.getLFCRCmd());
-        escCmd.append(escCmd.getEndCmd());
-        context.printer.writeMsgAsync(escCmd.getAppendCmds());
-        call.resolve();
     }
 
     private boolean bluetoothCheck(PluginCall call) {
@@ -993,79 +2982,270 @@ public class CapacitorThermalPrinterPlugin extends Plugin implements PrinterObse
         }
     }
 
-    @SuppressLint("MissingPermission")
-    private JSArray getJsonDevices() {
-        JSArray array = new JSArray();
-        for (BluetoothDevice device : devices) {
-            array.put(
-                    new JSObject() {
-                        {
-                            put("name", device.getName());
-                            put("address", device.getAddress());
-                        }
-                    });
+    private void handleConnected(ConnectionContext context) {
+        Log.d(TAG, "Connected to " + context.address);
+        if (context.reconnectAttempt > 0) {
+            handleReconnected(context);
+            return;
         }
 
-        return array;
+        ConnectCallback callback = pendingConnectsById.remove(context.connectionId);
+        if (callback != null && !callback.claim(context)) {
+            cancelConnect(context);
+            return;
+        }
+
+        context.displayName = context.transport.name();
+        connectionsById.put(context.connectionId, context);
+        connectionsByAddress.put(context.address, context);
+        pendingConnectionsByAddress.remove(context.address);
+
+        JSObject connectedPayload = context.toJson();
+        if (callback != null) {
+            callback.onConnected(connectedPayload);
+        }
+
+        context.metrics.connect.recordNanos(System.nanoTime() - context.connectStartedAt);
+        notifyListeners("connected", connectedPayload);
+        startHeartbeat(context);
+        startStatusMonitoring(context);
+        probeProfile(context);
+        startMetricsEvents(context);
+        replaySpool(context);
     }
 
-    @SuppressLint("MissingPermission")
-    @Override
-    public void printerObserverCallback(PrinterInterface printerInterface, int state) {
-        if (printerInterface == null) {
+    /**
+     * Asks a printer not seen before about itself, once; what it says is kept in its profile.
+     */
+    private void probeProfile(ConnectionContext context) {
+        if (context.profile.isProbed()) {
             return;
         }
 
-        ConnectionContext context = connectionsByInterface.get(printerInterface);
-        if (context == null) {
+        context.writer.control(output -> {
+            try {
+                output.write(context.probe.request());
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to probe printer", e);
+            }
+        });
+        scheduler.schedule(() -> {
+            ProfileProbe probe = context.probe;
+            probe.finish();
+            if (context.link == null || context.closing) {
+                return;
+            }
+            context.profile.probed(probe.answer(ProfileProbe.MODEL), probe.answer(ProfileProbe.FIRMWARE),
+                    probe.answer(ProfileProbe.MANUFACTURER));
+            learn(context, true);
+            Log.d(TAG, "Probed " + context.address + ": " + probe.answer(ProfileProbe.MODEL));
+        }, PROBE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void startStatusMonitoring(ConnectionContext context) {
+        // Have the printer report status changes by itself.
+        context.writer.control(output -> {
+            try {
+                output.write(StatusMonitor.ENABLE_AUTO_STATUS.clone());
+                output.write(context.status.statusRequest());
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to request printer status", e);
+            }
+        });
+    }
+
+    /**
+     * Handles a lost link by starting a reconnect if the connection asked for it, and dropping the connection
+     * otherwise. Reached from both the transport and the heartbeat, so only the first call per link acts.
+     *
+     * @param reason Recorded in the connection's metrics unless the app closed the connection itself.
+     */
+    private void handleInterrupted(ConnectionContext context, String reason) {
+        Link link = context.link;
+        if (link == null || connectionsByLink.remove(link) == null) {
             return;
         }
 
-        Log.d(TAG, "STATE CHANGE " + state + " for " + context.device.getAddress());
-        switch (state) {
-            case CommonEnum.CONNECT_STATE_SUCCESS:
-                context.printer.setPrinterInterface(printerInterface);
-                BluetoothEdrConfigBean config = (BluetoothEdrConfigBean) printerInterface.getConfigObject();
-                if (config != null && config.mBluetoothDevice != null) {
-                    context.displayName = config.mBluetoothDevice.getName();
-                }
-                connectionsById.put(context.connectionId, context);
-                connectionsByAddress.put(context.device.getAddress(), context);
-                pendingConnectionsByAddress.remove(context.device.getAddress());
-
-                PluginCall pendingCall = pendingConnectCallsById.remove(context.connectionId);
-                JSObject connectedPayload = context.toJson();
-                if (pendingCall != null) {
-                    pendingCall.resolve(connectedPayload);
-                }
+        context.metrics.disconnected(context.closing ? ConnectionMetrics.DISCONNECT_CLOSED : reason);
+        context.alive = false;
+        if (context.heartbeat != null) {
+            context.heartbeat.cancel(false);
+        }
+        try {
+            // The link is stale; close it so the transport stops using it.
+            context.transport.disconnect();
+        } catch (Exception ignored) {
+            // Already closed.
+        }
 
-                notifyListeners("connected", connectedPayload);
-                break;
-            case CommonEnum.CONNECT_STATE_INTERRUPTED:
-                boolean pending = pendingConnectCallsById.containsKey(context.connectionId);
-                PluginCall pendingConnect = pendingConnectCallsById.remove(context.connectionId);
+        rebalancePools(context);
 
-                JSObject disconnectedPayload = buildDisconnectedPayload(context);
+        boolean established = connectionsById.get(context.connectionId) == context;
+        if (established && context.reconnectPolicy != null && !context.closing) {
+            scheduleReconnect(context);
+            return;
+        }
 
-                removeContext(context);
-                context.printer.setPrinterInterface(null);
-                connectionsByInterface.remove(printerInterface);
+        dropContext(context, !established);
+    }
 
-                if (pending) {
-                    if (pendingConnect != null) {
-                        pendingConnect.resolve(null);
-                    }
-                } else {
-                    notifyListeners("disconnected", disconnectedPayload);
-                }
-                break;
-            default:
+    /**
+     * Removes a connection for good, resolving a pending connect call with {@code null} or emitting
+     * {@code disconnected}. Jobs still queued fail.
+     */
+    private void dropContext(ConnectionContext context, boolean pending) {
+        ConnectCallback callback = pendingConnectsById.remove(context.connectionId);
+        JSObject disconnectedPayload = buildDisconnectedPayload(context);
+
+        removeContext(context);
+
+        if (pending) {
+            if (callback != null) {
+                callback.onFailed(context);
+            }
+        } else {
+            notifyListeners("disconnected", disconnectedPayload);
+        }
+    }
+
+    private void scheduleReconnect(ConnectionContext context) {
+        int attempt = ++context.reconnectAttempt;
+        if (attempt == 1) {
+            context.linkLosses++;
+            context.lostAt = System.currentTimeMillis();
+        }
+
+        if (!context.reconnectPolicy.allows(attempt)) {
+            Log.d(TAG, "Giving up reconnecting to " + context.address);
+            context.metrics.disconnected(ConnectionMetrics.DISCONNECT_RECONNECT_FAILED);
+            dropContext(context, false);
+            return;
+        }
+
+        long delayMs = context.reconnectPolicy.delayMs(attempt);
+        JSObject payload = new JSObject();
+        payload.put("connectionId", context.connectionId);
+        payload.put("attempt", attempt);
+        payload.put("delayMs", delayMs);
+        notifyListeners("reconnecting", payload);
+
+        context.reconnectTask = scheduler.schedule(() -> reconnect(context), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Connects again through a new link; the outcome arrives through its listener.
+     */
+    private void reconnect(ConnectionContext context) {
+        if (context.closing || connectionsById.get(context.connectionId) != context) {
+            return;
+        }
+
+        Link link = new Link(context);
+        context.link = link;
+        connectionsByLink.put(link, context);
+        context.connectStartedAt = System.nanoTime();
+
+        try {
+            context.transport.connect(link);
+        } catch (IOException e) {
+            if (connectionsByLink.remove(link) != null) {
+                scheduleReconnect(context);
+            }
+        }
+    }
+
+    private void handleReconnected(ConnectionContext context) {
+        int attempts = context.reconnectAttempt;
+        context.reconnectAttempt = 0;
+        context.reconnects++;
+        context.metrics.reconnects.incrementAndGet();
+        context.metrics.connect.recordNanos(System.nanoTime() - context.connectStartedAt);
+
+        startHeartbeat(context);
+        startStatusMonitoring(context);
+
+        JSObject payload = context.toJson();
+        payload.put("attempts", attempts);
+        payload.put("downtimeMs", System.currentTimeMillis() - context.lostAt);
+        notifyListeners("reconnected", payload);
+        replaySpool(context);
+    }
+
+    /**
+     * Queues the spooled jobs of the printer that the writer doesn't hold: those left over from an earlier app run or
+     * connection, and those that failed while being sent. Emits {@code jobsReplayed} with their IDs.
+     */
+    private void replaySpool(ConnectionContext context) {
+        PrintSpool spool = context.spool ? spool() : null;
+        if (spool == null) {
+            return;
+        }
+
+        JSArray jobIds = new JSArray();
+        for (PrintSpool.Entry entry : spool.pending(context.address)) {
+            if (context.writer.hasJob(entry.jobId)) {
+                continue;
+            }
+
+            byte[] data;
+            try {
+                data = spool.read(entry);
+            } catch (IOException e) {
+                Log.w(TAG, "Dropping unreadable spooled job " + entry.jobId, e);
+                spool.markDone(entry.jobId);
+                continue;
+            }
+
+            WriteListener listener = new WriteListener(context, entry.jobId, null, new JSObject());
+            listener.spooled = true;
+            try {
+                context.writer.submit(entry.jobId, entry.priority, data, listener);
+            } catch (IllegalStateException e) {
+                // Queue full; the rest stays spooled for the next connect.
                 break;
+            }
+            jobIds.put(entry.jobId);
+        }
+
+        if (jobIds.length() > 0) {
+            JSObject payload = new JSObject();
+            payload.put("connectionId", context.connectionId);
+            payload.put("address", context.address);
+            payload.put("jobIds", jobIds);
+            notifyListeners("jobsReplayed", payload);
         }
     }
 
-    @Override
-    public void printerReadMsgCallback(PrinterInterface printerInterface, byte[] bytes) {
+    /**
+     * @param value {@code true} for the default policy, or an object overriding some of its settings.
+     */
+    private static ReconnectPolicy parseReconnectPolicy(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value ? ReconnectPolicy.defaults() : null;
+        }
+        if (!(value instanceof JSONObject)) {
+            return null;
+        }
+
+        JSONObject options = (JSONObject) value;
+        return new ReconnectPolicy(
+                options.optInt("maxAttempts", ReconnectPolicy.DEFAULT_MAX_ATTEMPTS),
+                options.optLong("initialDelayMs", ReconnectPolicy.DEFAULT_INITIAL_DELAY_MS),
+                options.optLong("maxDelayMs", ReconnectPolicy.DEFAULT_MAX_DELAY_MS));
+    }
+
+    private void handleData(ConnectionContext context, byte[] bytes) {
+        context.lastSeenAt = System.currentTimeMillis();
+        bytes = context.probe.filter(bytes);
+        if (bytes.length == 0 || !context.status.feed(bytes)) {
+            return;
+        }
+
+        context.writer.wake();
+        if (!context.status.isReady()) {
+            rebalancePools(context);
+        }
+        notifyListeners("statusChanged", buildStatusPayload(context));
     }
     // endregion
 }
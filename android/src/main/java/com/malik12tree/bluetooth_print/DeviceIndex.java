@@ -0,0 +1,109 @@
+package com.malik12tree.bluetooth_print;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Devices found by a scan, keyed by address in the order they were found. Devices are reported again and again
+ * during a scan, so the index also remembers which ones changed since the last {@link #drainChanges()}, letting
+ * events carry just those.
+ */
+final class DeviceIndex {
+
+    private static final class Entry {
+        final String address;
+        String name;
+        Integer deviceClass;
+        Integer rssi;
+        long lastSeenAt;
+
+        Entry(String address) {
+            this.address = address;
+        }
+
+        JSObject toJson() {
+            JSObject json = new JSObject();
+            json.put("name", name);
+            json.put("address", address);
+            if (deviceClass != null) {
+                json.put("deviceClass", deviceClass);
+            }
+            if (rssi != null) {
+                json.put("rssi", rssi);
+            }
+            json.put("lastSeenAt", lastSeenAt);
+            return json;
+        }
+    }
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final Map<String, Entry> changed = new LinkedHashMap<>();
+
+    /**
+     * Records a sighting of a device. {@code null} values leave what is known as is.
+     *
+     * @return Whether the device is new or any of its details changed.
+     */
+    synchronized boolean update(String address, String name, Integer deviceClass, Integer rssi, long now) {
+        Entry entry = entries.get(address);
+        boolean isNew = entry == null;
+        if (isNew) {
+            entry = new Entry(address);
+            entries.put(address, entry);
+        }
+
+        boolean changes = isNew;
+        if (name != null && !name.equals(entry.name)) {
+            entry.name = name;
+            changes = true;
+        }
+        if (deviceClass != null && !deviceClass.equals(entry.deviceClass)) {
+            entry.deviceClass = deviceClass;
+            changes = true;
+        }
+        if (rssi != null && !rssi.equals(entry.rssi)) {
+            entry.rssi = rssi;
+            changes = true;
+        }
+        entry.lastSeenAt = now;
+
+        if (changes) {
+            changed.put(address, entry);
+        }
+        return changes;
+    }
+
+    synchronized boolean contains(String address) {
+        return entries.containsKey(address);
+    }
+
+    /**
+     * @return The devices that changed since the last call, or {@code null} if none did.
+     */
+    synchronized JSArray drainChanges() {
+        if (changed.isEmpty()) {
+            return null;
+        }
+        JSArray array = new JSArray();
+        for (Entry entry : changed.values()) {
+            array.put(entry.toJson());
+        }
+        changed.clear();
+        return array;
+    }
+
+    synchronized JSArray toJson() {
+        JSArray array = new JSArray();
+        for (Entry entry : entries.values()) {
+            array.put(entry.toJson());
+        }
+        return array;
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        changed.clear();
+    }
+}
@@ -0,0 +1,138 @@
+package com.malik12tree.bluetooth_print;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads image and raw payloads straight from storage so they don't cross the bridge as Base64. Sources are
+ * {@code file://} paths, {@code content://} URIs and {@code cache://} paths relative to the app's cache directory.
+ */
+final class NativeInput {
+
+    static final String FILE_SCHEME = "file://";
+    static final String CONTENT_SCHEME = "content://";
+    static final String CACHE_SCHEME = "cache://";
+
+    // Larger payloads are memory-mapped instead of read through the channel.
+    static final int MAP_THRESHOLD = 64 * 1024;
+    static final int MAX_INPUT_BYTES = 32 * 1024 * 1024;
+
+    private final Context context;
+
+    NativeInput(Context context) {
+        this.context = context;
+    }
+
+    static boolean isSource(String value) {
+        return value != null
+                && (value.startsWith(FILE_SCHEME) || value.startsWith(CONTENT_SCHEME) || value.startsWith(CACHE_SCHEME));
+    }
+
+    /**
+     * Returns an identifier that changes whenever the content of a file source does, so it can key caches without
+     * reading the file, or {@code null} for content URIs, whose content has to be hashed.
+     */
+    String identity(String source) {
+        if (source.startsWith(CONTENT_SCHEME)) {
+            return null;
+        }
+
+        File file = resolveFile(source);
+        return "file:" + file.getPath() + ":" + file.length() + ":" + file.lastModified();
+    }
+
+    /**
+     * @throws IllegalArgumentException If the source can't be read.
+     */
+    byte[] read(String source) {
+        try {
+            if (source.startsWith(CONTENT_SCHEME)) {
+                return readContent(Uri.parse(source));
+            }
+
+            try (FileInputStream stream = new FileInputStream(resolveFile(source))) {
+                return read(stream.getChannel());
+            }
+        } catch (IOException | SecurityException e) {
+            throw new IllegalArgumentException("Failed to read " + source);
+        }
+    }
+
+    private File resolveFile(String source) {
+        if (source.startsWith(FILE_SCHEME)) {
+            return new File(Uri.parse(source).getPath());
+        }
+
+        File cacheDir = context.getCacheDir();
+        File file = new File(cacheDir, source.substring(CACHE_SCHEME.length()));
+        try {
+            if (!file.getCanonicalPath().startsWith(cacheDir.getCanonicalPath() + File.separator)) {
+                throw new IllegalArgumentException("Invalid cache path: " + source);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid cache path: " + source);
+        }
+        return file;
+    }
+
+    private byte[] readContent(Uri uri) throws IOException {
+        try (ParcelFileDescriptor descriptor = context.getContentResolver().openFileDescriptor(uri, "r")) {
+            if (descriptor == null) {
+                throw new IOException("No content");
+            }
+
+            // Providers may hand out pipes, which have no size and can't be mapped.
+            if (descriptor.getStatSize() < 0) {
+                try (InputStream stream = new FileInputStream(descriptor.getFileDescriptor())) {
+                    return readStream(stream);
+                }
+            }
+
+            try (FileInputStream stream = new FileInputStream(descriptor.getFileDescriptor())) {
+                return read(stream.getChannel());
+            }
+        }
+    }
+
+    private static byte[] read(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size > MAX_INPUT_BYTES) {
+            throw new IllegalArgumentException("Input exceeds " + MAX_INPUT_BYTES + " bytes");
+        }
+
+        byte[] bytes = new byte[(int) size];
+        if (size >= MAP_THRESHOLD) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            mapped.get(bytes);
+            return bytes;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            // Keep reading until the buffer is full or the file ends.
+        }
+        return bytes;
+    }
+
+    private static byte[] readStream(InputStream stream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[16 * 1024];
+        int read;
+        while ((read = stream.read(chunk)) != -1) {
+            if (out.size() + read > MAX_INPUT_BYTES) {
+                throw new IllegalArgumentException("Input exceeds " + MAX_INPUT_BYTES + " bytes");
+            }
+            out.write(chunk, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,411 @@
+package com.malik12tree.bluetooth_print;
+
+import android.util.Log;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of encoded jobs, so jobs that were not printed survive app restarts and lost connections. Jobs
+ * are keyed by printer address, since connection IDs don't outlive a connection.
+ *
+ * <p>
+ * The journal is a sequence of segment files holding {@code JOB} and {@code DONE} records, each followed by a CRC so
+ * a torn write at the end is detected and cut off. Writes only append to the newest segment and are synced at most
+ * once per {@link #SYNC_DELAY_MS}: the page cache already survives the app being killed, syncing only guards against
+ * power loss. Segments are deleted oldest first once none of their jobs are pending, and the pending jobs of the oldest
+ * segment are copied forward when there are too many segments, so a single stuck job doesn't pin the whole log.
+ */
+final class PrintSpool {
+
+    private static final String TAG = "PrintSpool";
+
+    static final long SEGMENT_BYTES = 4 * 1024 * 1024;
+    static final int MAX_SEGMENTS = 4;
+    static final long SYNC_DELAY_MS = 1000;
+    // Older jobs are dropped instead of replayed; a receipt from yesterday is more confusing than a lost one.
+    static final long MAX_REPLAY_AGE_MS = TimeUnit.HOURS.toMillis(24);
+
+    private static final byte JOB = 1;
+    private static final byte DONE = 2;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    static final class Entry {
+        final String address;
+        final String jobId;
+        final int priority;
+        final long createdAt;
+        final long segment;
+        final long dataOffset;
+        final int dataLength;
+
+        Entry(String address, String jobId, int priority, long createdAt, long segment, long dataOffset,
+                int dataLength) {
+            this.address = address;
+            this.jobId = jobId;
+            this.priority = priority;
+            this.createdAt = createdAt;
+            this.segment = segment;
+            this.dataOffset = dataOffset;
+            this.dataLength = dataLength;
+        }
+    }
+
+    private final File dir;
+    private final ScheduledExecutorService scheduler;
+    // Pending jobs in journal order.
+    private final LinkedHashMap<String, Entry> pending = new LinkedHashMap<>();
+    // Pending jobs per segment number.
+    private final TreeMap<Long, Integer> liveJobs = new TreeMap<>();
+    private RandomAccessFile active;
+    private long activeNumber;
+    private boolean syncScheduled;
+
+    /**
+     * Opens the journal, reading back the jobs that are still pending.
+     */
+    PrintSpool(File dir, ScheduledExecutorService scheduler) throws IOException {
+        this.dir = dir;
+        this.scheduler = scheduler;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create " + dir);
+        }
+
+        File[] files = dir.listFiles();
+        TreeMap<Long, File> segments = new TreeMap<>();
+        if (files != null) {
+            for (File file : files) {
+                long number = segmentNumber(file.getName());
+                if (number >= 0) {
+                    segments.put(number, file);
+                }
+            }
+        }
+
+        for (Map.Entry<Long, File> segment : segments.entrySet()) {
+            boolean last = segment.getKey().equals(segments.lastKey());
+            load(segment.getKey(), segment.getValue(), last);
+            liveJobs.put(segment.getKey(), 0);
+        }
+        for (Entry entry : pending.values()) {
+            liveJobs.put(entry.segment, liveJobs.get(entry.segment) + 1);
+        }
+        activeNumber = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+        deleteDeadSegments();
+    }
+
+    /**
+     * Journals a job before it is sent.
+     */
+    synchronized void append(String address, String jobId, int priority, byte[] data) throws IOException {
+        appendJob(address, jobId, priority, System.currentTimeMillis(), data, 0, data.length);
+    }
+
+    /**
+     * Marks a job as printed or abandoned, so it is not replayed.
+     */
+    synchronized void markDone(String jobId) {
+        Entry entry = pending.remove(jobId);
+        if (entry == null) {
+            return;
+        }
+        // Before writing, which may roll over and compact segments.
+        liveJobs.put(entry.segment, liveJobs.get(entry.segment) - 1);
+
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            new DataOutputStream(payload).writeUTF(jobId);
+            writeRecord(DONE, payload.toByteArray(), null, 0, 0);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to journal completion of " + jobId, e);
+        }
+        deleteDeadSegments();
+    }
+
+    /**
+     * Returns the pending jobs of a printer in journal order, dropping those too old to replay.
+     */
+    synchronized List<Entry> pending(String address) {
+        long oldest = System.currentTimeMillis() - MAX_REPLAY_AGE_MS;
+        ArrayList<Entry> entries = new ArrayList<>();
+        ArrayList<String> expired = new ArrayList<>();
+        for (Entry entry : pending.values()) {
+            if (!entry.address.equals(address)) {
+                continue;
+            }
+            if (entry.createdAt < oldest) {
+                expired.add(entry.jobId);
+            } else {
+                entries.add(entry);
+            }
+        }
+
+        for (String jobId : expired) {
+            markDone(jobId);
+        }
+        return entries;
+    }
+
+    /**
+     * Drops all pending jobs, or only those of a printer.
+     *
+     * @return The number of dropped jobs.
+     */
+    synchronized int clear(String address) {
+        ArrayList<String> jobIds = new ArrayList<>();
+        for (Entry entry : pending.values()) {
+            if (address == null || entry.address.equals(address)) {
+                jobIds.add(entry.jobId);
+            }
+        }
+        for (String jobId : jobIds) {
+            markDone(jobId);
+        }
+        return jobIds.size();
+    }
+
+    synchronized byte[] read(Entry entry) throws IOException {
+        byte[] data = new byte[entry.dataLength];
+        RandomAccessFile file = entry.segment == activeNumber && active != null
+                ? active
+                : new RandomAccessFile(segmentFile(entry.segment), "r");
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            FileChannel channel = file.getChannel();
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, entry.dataOffset + buffer.position()) < 0) {
+                    throw new EOFException("Spooled job " + entry.jobId + " is truncated");
+                }
+            }
+        } finally {
+            if (file != active) {
+                file.close();
+            }
+        }
+        return data;
+    }
+
+    private void appendJob(String address, String jobId, int priority, long createdAt, byte[] data, int offset,
+            int length) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(header);
+        out.writeUTF(address);
+        out.writeUTF(jobId);
+        out.writeInt(priority);
+        out.writeLong(createdAt);
+        out.writeInt(length);
+
+        long dataOffset = writeRecord(JOB, header.toByteArray(), data, offset, length);
+        pending.remove(jobId);
+        pending.put(jobId, new Entry(address, jobId, priority, createdAt, activeNumber, dataOffset, length));
+        Integer live = liveJobs.get(activeNumber);
+        liveJobs.put(activeNumber, (live != null ? live : 0) + 1);
+    }
+
+    /**
+     * Appends {@code type, length, header, data, crc} to the active segment.
+     *
+     * @return Offset of the data within the segment.
+     */
+    private long writeRecord(byte type, byte[] header, byte[] data, int offset, int length) throws IOException {
+        RandomAccessFile segment = activeSegment();
+        FileChannel channel = segment.getChannel();
+        long start = channel.size();
+
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(header);
+        if (data != null) {
+            crc.update(data, offset, length);
+        }
+
+        ByteBuffer head = ByteBuffer.allocate(5 + header.length);
+        head.put(type).putInt(header.length + length).put(header).flip();
+        ByteBuffer tail = ByteBuffer.allocate(4);
+        tail.putInt((int) crc.getValue()).flip();
+        ByteBuffer body = data != null ? ByteBuffer.wrap(data, offset, length) : ByteBuffer.allocate(0);
+
+        channel.position(start);
+        while (head.hasRemaining() || body.hasRemaining() || tail.hasRemaining()) {
+            channel.write(new ByteBuffer[] { head, body, tail });
+        }
+        scheduleSync();
+        return start + 5 + header.length;
+    }
+
+    private RandomAccessFile activeSegment() throws IOException {
+        if (active != null && active.getChannel().size() < SEGMENT_BYTES) {
+            return active;
+        }
+
+        if (active != null) {
+            active.close();
+            active = null;
+            activeNumber++;
+        }
+        active = new RandomAccessFile(segmentFile(activeNumber), "rw");
+        liveJobs.put(activeNumber, 0);
+        compact();
+        return active;
+    }
+
+    /**
+     * Copies the pending jobs of the oldest segment forward while there are too many segments.
+     */
+    private void compact() throws IOException {
+        while (liveJobs.size() > MAX_SEGMENTS) {
+            long oldest = liveJobs.firstKey();
+            if (oldest == activeNumber) {
+                return;
+            }
+
+            ArrayList<Entry> moved = new ArrayList<>();
+            for (Entry entry : pending.values()) {
+                if (entry.segment == oldest) {
+                    moved.add(entry);
+                }
+            }
+            for (Entry entry : moved) {
+                byte[] data = read(entry);
+                appendJob(entry.address, entry.jobId, entry.priority, entry.createdAt, data, 0, data.length);
+            }
+            liveJobs.put(oldest, 0);
+            deleteDeadSegments();
+        }
+    }
+
+    /**
+     * Deletes segments from the oldest while none of their jobs are pending. Newer segments are kept even when
+     * empty, since their {@code DONE} records may still cover jobs of older segments.
+     */
+    private void deleteDeadSegments() {
+        Iterator<Map.Entry<Long, Integer>> iterator = liveJobs.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Integer> segment = iterator.next();
+            if (segment.getValue() > 0 || segment.getKey() == activeNumber) {
+                return;
+            }
+            if (!segmentFile(segment.getKey()).delete()) {
+                Log.w(TAG, "Failed to delete spool segment " + segment.getKey());
+            }
+            iterator.remove();
+        }
+    }
+
+    private void scheduleSync() {
+        if (syncScheduled) {
+            return;
+        }
+        syncScheduled = true;
+        scheduler.schedule(this::sync, SYNC_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void sync() {
+        syncScheduled = false;
+        if (active == null) {
+            return;
+        }
+        try {
+            active.getChannel().force(false);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to sync spool", e);
+        }
+    }
+
+    /**
+     * Reads the records of a segment. A broken record ends the segment; in the last segment it is the tail of an
+     * interrupted write and is cut off.
+     */
+    private void load(long number, File file, boolean last) throws IOException {
+        long offset = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int type = in.read();
+                if (type == -1) {
+                    return;
+                }
+
+                int length = in.readInt();
+                if (length < 0 || length > file.length() - offset) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                int checksum = in.readInt();
+
+                CRC32 crc = new CRC32();
+                crc.update(type);
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                apply(number, offset, (byte) type, payload);
+                offset += 5 + length + 4;
+            }
+        } catch (EOFException e) {
+            // Torn record.
+        }
+
+        Log.w(TAG, "Spool segment " + number + " is damaged after " + offset + " bytes");
+        if (last) {
+            try (RandomAccessFile segment = new RandomAccessFile(file, "rw")) {
+                segment.setLength(offset);
+            }
+        }
+    }
+
+    private void apply(long segment, long offset, byte type, byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        if (type == DONE) {
+            pending.remove(in.readUTF());
+            return;
+        }
+        if (type != JOB) {
+            return;
+        }
+
+        String address = in.readUTF();
+        String jobId = in.readUTF();
+        int priority = in.readInt();
+        long createdAt = in.readLong();
+        int dataLength = in.readInt();
+        long dataOffset = offset + 5 + payload.length - dataLength;
+        pending.remove(jobId);
+        pending.put(jobId, new Entry(address, jobId, priority, createdAt, segment, dataOffset, dataLength));
+    }
+
+    private File segmentFile(long number) {
+        return new File(dir, SEGMENT_PREFIX + number + SEGMENT_SUFFIX);
+    }
+
+    private static long segmentNumber(String name) {
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
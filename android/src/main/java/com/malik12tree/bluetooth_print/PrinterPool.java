@@ -0,0 +1,59 @@
+package com.malik12tree.bluetooth_print;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Identical printers used as one: every job goes to the member that will be free first, and waiting jobs move to
+ * another member when theirs disconnects or can no longer print. Members are connection IDs.
+ */
+final class PrinterPool {
+
+    final String id;
+    private final CopyOnWriteArrayList<String> members;
+    // Unfinished jobs routed through the pool, mapped to the connection currently holding them.
+    private final ConcurrentHashMap<String, String> jobs = new ConcurrentHashMap<>();
+
+    PrinterPool(String id, Collection<String> members) {
+        this.id = id;
+        this.members = new CopyOnWriteArrayList<>(members);
+    }
+
+    List<String> members() {
+        return new ArrayList<>(members);
+    }
+
+    boolean contains(String connectionId) {
+        return members.contains(connectionId);
+    }
+
+    void removeMember(String connectionId) {
+        members.remove(connectionId);
+    }
+
+    void track(String jobId, String connectionId) {
+        jobs.put(jobId, connectionId);
+    }
+
+    void untrack(String jobId) {
+        jobs.remove(jobId);
+    }
+
+    /**
+     * @return The connection holding the job, or {@code null} once it finished.
+     */
+    String connectionOf(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    /**
+     * Live view of the unfinished jobs.
+     */
+    Set<String> jobIds() {
+        return jobs.keySet();
+    }
+}
@@ -0,0 +1,93 @@
+package com.malik12tree.bluetooth_print;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import java.util.HashMap;
+import java.util.Map;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * {@link PrinterProfile}s kept in shared preferences, keyed by printer address. Profiles are read once and shared by
+ * every connection to the printer; changes are written in the background.
+ */
+final class ProfileStore {
+
+    private static final String TAG = "ProfileStore";
+    private static final String PREFERENCES = "thermal-printer-profiles";
+
+    private final SharedPreferences preferences;
+    private final Map<String, PrinterProfile> profiles = new HashMap<>();
+
+    ProfileStore(Context context) {
+        this.preferences = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return The printer's profile; an empty one, not yet saved, if nothing is known about it.
+     */
+    synchronized PrinterProfile get(String address) {
+        PrinterProfile profile = profiles.get(address);
+        if (profile != null) {
+            return profile;
+        }
+
+        String stored = preferences.getString(address, null);
+        if (stored != null) {
+            try {
+                profile = PrinterProfile.fromJson(new JSONObject(stored));
+            } catch (JSONException e) {
+                Log.w(TAG, "Dropping unreadable profile of " + address, e);
+            }
+        }
+        if (profile == null) {
+            profile = new PrinterProfile();
+        }
+        profiles.put(address, profile);
+        return profile;
+    }
+
+    /**
+     * @return The saved profile, or {@code null} if there is none.
+     */
+    synchronized PrinterProfile find(String address) {
+        return profiles.containsKey(address) || preferences.contains(address) ? get(address) : null;
+    }
+
+    void save(String address, PrinterProfile profile) {
+        String json;
+        try {
+            json = profile.toJson().toString();
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+        synchronized (this) {
+            if (profiles.get(address) == profile) {
+                preferences.edit().putString(address, json).apply();
+            }
+        }
+    }
+
+    /**
+     * Forgets the profile of one printer, or of all printers if {@code address} is {@code null}. Printers are probed
+     * again on their next connect.
+     *
+     * @return Number of profiles removed.
+     */
+    synchronized int clear(String address) {
+        SharedPreferences.Editor editor = preferences.edit();
+        int cleared;
+        if (address != null) {
+            cleared = preferences.contains(address) ? 1 : 0;
+            editor.remove(address);
+            profiles.remove(address);
+        } else {
+            cleared = preferences.getAll().size();
+            editor.clear();
+            profiles.clear();
+        }
+        editor.apply();
+        return cleared;
+    }
+}
@@ -0,0 +1,49 @@
+package com.malik12tree.bluetooth_print;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How a lost connection is re-established: exponential backoff between attempts, with jitter so printers that
+ * dropped together don't retry in lockstep.
+ */
+final class ReconnectPolicy {
+
+    static final int DEFAULT_MAX_ATTEMPTS = 10;
+    static final long DEFAULT_INITIAL_DELAY_MS = 500;
+    static final long DEFAULT_MAX_DELAY_MS = 30_000;
+
+    /** {@code 0} retries forever. */
+    final int maxAttempts;
+    final long initialDelayMs;
+    final long maxDelayMs;
+
+    ReconnectPolicy(int maxAttempts, long initialDelayMs, long maxDelayMs) {
+        if (maxAttempts < 0 || initialDelayMs < 1 || maxDelayMs < initialDelayMs) {
+            throw new IllegalArgumentException("Invalid reconnect options");
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialDelayMs = initialDelayMs;
+        this.maxDelayMs = maxDelayMs;
+    }
+
+    static ReconnectPolicy defaults() {
+        return new ReconnectPolicy(DEFAULT_MAX_ATTEMPTS, DEFAULT_INITIAL_DELAY_MS, DEFAULT_MAX_DELAY_MS);
+    }
+
+    boolean allows(int attempt) {
+        return maxAttempts == 0 || attempt <= maxAttempts;
+    }
+
+    /**
+     * Delay before the given attempt, starting at 1: half of the backoff plus a random share of the other half.
+     */
+    long delayMs(int attempt) {
+        long backoff = initialDelayMs << Math.min(attempt - 1, 30);
+        if (backoff <= 0 || backoff > maxDelayMs) {
+            backoff = maxDelayMs;
+        }
+
+        long half = backoff / 2;
+        return half + ThreadLocalRandom.current().nextLong(backoff - half + 1);
+    }
+}
@@ -0,0 +1,43 @@
+package com.malik12tree.bluetooth_print;
+
+import com.rt.printerlibrary.cmd.EscCmd;
+import com.rt.printerlibrary.setting.TextSetting;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+/**
+ * The SDK's text settings as a {@link TextFormat}, one instance per {@link TextSetting} object.
+ */
+final class SdkTextFormat implements TextFormat {
+
+    // ESC 9 - Select Chinese code system
+    private static final byte SELECT_CHINESE_CODE = 0x39;
+
+    final TextSetting setting;
+    private final EscCmd cmd;
+
+    SdkTextFormat(TextSetting setting, EscCmd cmd) {
+        this.setting = setting;
+        this.cmd = cmd;
+    }
+
+    /**
+     * Returns the SDK's text formatting commands without the trailing {@code ESC 9 n}, which {@link TextEncoder}
+     * writes itself.
+     */
+    @Override
+    public byte[] commands() {
+        byte[] sdkPrefix;
+        try {
+            sdkPrefix = cmd.getTextCmd(setting, "", TextEncoder.DEFAULT_ENCODING);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+
+        int length = sdkPrefix.length;
+        if (length >= 3 && sdkPrefix[length - 3] == EscPos.ESC && sdkPrefix[length - 2] == SELECT_CHINESE_CODE) {
+            return Arrays.copyOf(sdkPrefix, length - 3);
+        }
+        return sdkPrefix;
+    }
+}
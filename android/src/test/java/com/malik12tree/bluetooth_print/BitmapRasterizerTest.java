@@ -0,0 +1,35 @@
+package com.malik12tree.bluetooth_print;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class BitmapRasterizerTest {
+
+    @Test
+    public void limitWidthOnlyShrinksImages() {
+        assertEquals(200, BitmapRasterizer.targetWidth(384, 200, 576, 200));
+        assertEquals(384, BitmapRasterizer.targetWidth(384, 200, 576, 1000));
+        assertEquals(576, BitmapRasterizer.targetWidth(0, 200, 576, 1000));
+    }
+
+    @Test
+    public void imagesNeverExceedThePrintHead() {
+        assertEquals(384, BitmapRasterizer.targetWidth(576, 200, 384, 1000));
+        // Unknown heads are taken as 80 mm ones.
+        assertEquals(BitmapRasterizer.HEAD_DOTS_203_DPI, BitmapRasterizer.targetWidth(0, 200, 0, 5000));
+    }
+
+    @Test
+    public void scalesLimitAndHeadFor300Dpi() {
+        assertEquals(576, BitmapRasterizer.targetWidth(384, 300, 576, 1000));
+        assertEquals(BitmapRasterizer.HEAD_DOTS_300_DPI, BitmapRasterizer.targetWidth(576, 300, 576, 1000));
+    }
+
+    @Test
+    public void sampleSizeKeepsAtLeastTheTargetWidth() {
+        assertEquals(1, BitmapRasterizer.sampleSize(1000, 576));
+        assertEquals(4, BitmapRasterizer.sampleSize(4000, 576));
+        assertEquals(8, BitmapRasterizer.sampleSize(4608, 576));
+    }
+}
@@ -0,0 +1,32 @@
+package com.malik12tree.bluetooth_print;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class DeviceIndexTest {
+
+    @Test
+    public void reportsNewAndChangedDevicesOnly() {
+        DeviceIndex index = new DeviceIndex();
+        assertTrue(index.update("AA:BB", null, null, -60, 1));
+        assertTrue(index.contains("AA:BB"));
+        assertFalse(index.update("AA:BB", null, null, -60, 2));
+        // Missing details keep what is known.
+        assertFalse(index.update("AA:BB", null, null, null, 3));
+        assertTrue(index.update("AA:BB", "Printer", null, null, 4));
+        assertTrue(index.update("AA:BB", "Printer", 1664, -58, 5));
+        assertFalse(index.contains("CC:DD"));
+    }
+
+    @Test
+    public void drainsNothingWithoutChanges() {
+        DeviceIndex index = new DeviceIndex();
+        assertNull(index.drainChanges());
+
+        index.update("AA:BB", "Printer", null, null, 1);
+        index.clear();
+        assertFalse(index.contains("AA:BB"));
+        assertNull(index.drainChanges());
+    }
+}
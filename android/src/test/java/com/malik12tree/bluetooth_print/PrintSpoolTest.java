@@ -0,0 +1,110 @@
+package com.malik12tree.bluetooth_print;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PrintSpoolTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private File dir;
+
+    @Before
+    public void createDir() throws IOException {
+        dir = Files.createTempDirectory("spool").toFile();
+    }
+
+    @After
+    public void deleteDir() {
+        scheduler.shutdownNow();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private PrintSpool open() throws IOException {
+        return new PrintSpool(dir, scheduler);
+    }
+
+    @Test
+    public void pendingJobsSurviveReopening() throws IOException {
+        PrintSpool spool = open();
+        spool.append("AA:BB", "first", 0, new byte[] { 1, 2, 3 });
+        spool.append("AA:BB", "second", 5, new byte[] { 4 });
+        spool.append("CC:DD", "other", 0, new byte[] { 5 });
+        spool.markDone("first");
+
+        List<PrintSpool.Entry> pending = open().pending("AA:BB");
+        assertEquals(1, pending.size());
+        PrintSpool.Entry entry = pending.get(0);
+        assertEquals("second", entry.jobId);
+        assertEquals(5, entry.priority);
+        assertArrayEquals(new byte[] { 4 }, open().read(entry));
+    }
+
+    @Test
+    public void pendingJobsKeepJournalOrder() throws IOException {
+        PrintSpool spool = open();
+        spool.append("AA:BB", "a", 0, new byte[] { 1 });
+        spool.append("AA:BB", "b", 0, new byte[] { 2 });
+        spool.append("AA:BB", "c", 0, new byte[] { 3 });
+
+        List<PrintSpool.Entry> pending = spool.pending("AA:BB");
+        assertEquals("a", pending.get(0).jobId);
+        assertEquals("b", pending.get(1).jobId);
+        assertEquals("c", pending.get(2).jobId);
+        assertArrayEquals(new byte[] { 2 }, spool.read(pending.get(1)));
+    }
+
+    @Test
+    public void clearDropsTheJobsOfOnePrinterOrAll() throws IOException {
+        PrintSpool spool = open();
+        spool.append("AA:BB", "a", 0, new byte[] { 1 });
+        spool.append("AA:BB", "b", 0, new byte[] { 2 });
+        spool.append("CC:DD", "c", 0, new byte[] { 3 });
+
+        assertEquals(2, spool.clear("AA:BB"));
+        assertTrue(spool.pending("AA:BB").isEmpty());
+        assertEquals(1, spool.pending("CC:DD").size());
+        assertEquals(1, spool.clear(null));
+        assertTrue(open().pending("CC:DD").isEmpty());
+    }
+
+    @Test
+    public void tornRecordsAtTheEndAreCutOff() throws IOException {
+        PrintSpool spool = open();
+        spool.append("AA:BB", "whole", 0, new byte[] { 1, 2 });
+        spool.append("AA:BB", "torn", 0, new byte[] { 3, 4 });
+
+        File segment = new File(dir, "segment-0.log");
+        long length = segment.length();
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(length - 3);
+        }
+
+        PrintSpool reopened = open();
+        List<PrintSpool.Entry> pending = reopened.pending("AA:BB");
+        assertEquals(1, pending.size());
+        assertEquals("whole", pending.get(0).jobId);
+
+        // New records follow the last whole one.
+        reopened.append("AA:BB", "next", 0, new byte[] { 5 });
+        pending = open().pending("AA:BB");
+        assertEquals(2, pending.size());
+        assertEquals("next", pending.get(1).jobId);
+        assertArrayEquals(new byte[] { 5 }, open().read(pending.get(1)));
+    }
+}
@@ -0,0 +1,51 @@
+package com.malik12tree.bluetooth_print;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class ReconnectPolicyTest {
+
+    @Test
+    public void backsOffExponentiallyWithJitter() {
+        ReconnectPolicy policy = new ReconnectPolicy(10, 500, 30_000);
+        for (int i = 0; i < 100; i++) {
+            long first = policy.delayMs(1);
+            assertTrue(first >= 250 && first <= 500);
+            long third = policy.delayMs(3);
+            assertTrue(third >= 1000 && third <= 2000);
+        }
+    }
+
+    @Test
+    public void delaysStopGrowingAtTheMaximum() {
+        ReconnectPolicy policy = new ReconnectPolicy(0, 500, 30_000);
+        for (int attempt : new int[] { 7, 31, 64, Integer.MAX_VALUE }) {
+            long delay = policy.delayMs(attempt);
+            assertTrue(attempt + ": " + delay, delay >= 15_000 && delay <= 30_000);
+        }
+    }
+
+    @Test
+    public void limitsAttemptsUnlessZero() {
+        ReconnectPolicy policy = new ReconnectPolicy(3, 500, 30_000);
+        assertTrue(policy.allows(3));
+        assertFalse(policy.allows(4));
+        assertTrue(new ReconnectPolicy(0, 500, 30_000).allows(1000));
+    }
+
+    @Test
+    public void rejectsInvalidOptions() {
+        assertThrows(IllegalArgumentException.class, () -> new ReconnectPolicy(-1, 500, 30_000));
+        assertThrows(IllegalArgumentException.class, () -> new ReconnectPolicy(3, 0, 30_000));
+        assertThrows(IllegalArgumentException.class, () -> new ReconnectPolicy(3, 500, 100));
+    }
+
+    @Test
+    public void defaults() {
+        ReconnectPolicy policy = ReconnectPolicy.defaults();
+        assertEquals(ReconnectPolicy.DEFAULT_MAX_ATTEMPTS, policy.maxAttempts);
+        assertEquals(ReconnectPolicy.DEFAULT_INITIAL_DELAY_MS, policy.initialDelayMs);
+        assertEquals(ReconnectPolicy.DEFAULT_MAX_DELAY_MS, policy.maxDelayMs);
+    }
+}
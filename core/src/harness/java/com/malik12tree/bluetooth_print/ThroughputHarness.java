@@ -0,0 +1,453 @@
+package com.malik12tree.bluetooth_print;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Drives a mix of realistic jobs through the whole printing path, from encoding through the connection writer and a
+ * transport to a {@link VirtualPrinter}, in memory or over TCP with {@code --tcp}, and reports throughput, latency
+ * percentiles and memory use.
+ *
+ * <p>
+ * Every job ends with a cut, so a job has printed once the printer counted its cut. End to end latency runs from
+ * the start of encoding until then, and includes waiting behind earlier jobs.
+ */
+public final class ThroughputHarness {
+
+    private static final String USAGE = "Options: --jobs <n> --warmup <n> --mix <kind=weight,...> --speed <mm/s, 0 for"
+            + " instant> --buffer <bytes> --chunk <bytes> --inflight <n> [--tcp]\n"
+            + "Kinds: receipt, logo, table, template";
+
+    private static final TextFormat NORMAL = () -> new byte[] { EscPos.ESC, '!', 0x00 };
+    private static final TextFormat BOLD = () -> new byte[] { EscPos.ESC, '!', 0x08 };
+    private static final int LOGO_WIDTH = 384;
+    private static final int LOGO_HEIGHT = 160;
+    private static final long PRINT_TIMEOUT_MS = 60_000;
+
+    private int jobs = 500;
+    private int warmup = 100;
+    private final Map<String, Integer> mix = new LinkedHashMap<>();
+    private double speed = 0;
+    private int bufferSize = VirtualPrinter.DEFAULT_BUFFER_SIZE;
+    private int chunkSize = ConnectionWriter.DEFAULT_CHUNK_SIZE;
+    private int inflight = 16;
+    private boolean tcp;
+
+    private final TextEncoder text = new TextEncoder();
+    private final RasterEncoder raster = new RasterEncoder();
+    private final EscBuffer buffer = new EscBuffer();
+    private final byte[] logo = new byte[LOGO_WIDTH * LOGO_HEIGHT];
+    private ReceiptTemplate template;
+    private JSONObject templateValues;
+    private JSONArray tableColumns;
+    private JSONArray tableRows;
+
+    public static void main(String[] args) throws Exception {
+        ThroughputHarness harness = new ThroughputHarness();
+        try {
+            harness.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        harness.prepare();
+        harness.run();
+    }
+
+    private void parse(String[] args) {
+        mix.put("receipt", 5);
+        mix.put("logo", 2);
+        mix.put("table", 2);
+        mix.put("template", 1);
+
+        for (int i = 0; i < args.length; i += 2) {
+            if (args[i].equals("--tcp")) {
+                tcp = true;
+                i--;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value of " + args[i]);
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--jobs":
+                    jobs = positive(args[i], value);
+                    break;
+                case "--warmup":
+                    warmup = Integer.parseInt(value);
+                    break;
+                case "--mix":
+                    parseMix(value);
+                    break;
+                case "--speed":
+                    speed = Double.parseDouble(value);
+                    break;
+                case "--buffer":
+                    bufferSize = positive(args[i], value);
+                    break;
+                case "--chunk":
+                    chunkSize = Integer.parseInt(value);
+                    break;
+                case "--inflight":
+                    inflight = Math.min(positive(args[i], value), ConnectionWriter.MAX_QUEUED_JOBS);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+    }
+
+    private static int positive(String option, String value) {
+        int number = Integer.parseInt(value);
+        if (number < 1) {
+            throw new IllegalArgumentException(option + " must be positive");
+        }
+        return number;
+    }
+
+    private void parseMix(String value) {
+        mix.clear();
+        for (String entry : value.split(",")) {
+            String[] parts = entry.split("=");
+            String kind = parts[0].trim();
+            if (!Arrays.asList("receipt", "logo", "table", "template").contains(kind)) {
+                throw new IllegalArgumentException("Unknown job kind " + kind);
+            }
+            mix.put(kind, parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1);
+        }
+    }
+
+    private void prepare() {
+        Random random = new Random(42);
+        for (int y = 0; y < LOGO_HEIGHT; y++) {
+            for (int x = 0; x < LOGO_WIDTH; x++) {
+                int value = (x * 255 / LOGO_WIDTH + y * 255 / LOGO_HEIGHT) / 2 + random.nextInt(33) - 16;
+                logo[y * LOGO_WIDTH + x] = (byte) Math.max(0, Math.min(255, value));
+            }
+        }
+
+        tableColumns = new JSONArray()
+                .put(new JSONObject())
+                .put(new JSONObject().put("width", 4).put("align", "right"))
+                .put(new JSONObject().put("width", "20%").put("align", "right"));
+        tableRows = new JSONArray();
+        for (int i = 0; i < 30; i++) {
+            tableRows.put(new JSONArray()
+                    .put("Oat milk latte, extra shot, no sugar, to go")
+                    .put(String.valueOf(1 + i % 4))
+                    .put(String.format(Locale.ROOT, "%.2f", 3.5 + i)));
+        }
+
+        ReceiptTemplate.Builder builder = new ReceiptTemplate.Builder(text.encoding(), new JSONArray());
+        builder.add(segment("THE CORNER SHOP\nReceipt #"), ReceiptTemplate.Slot.text("number", -1));
+        for (int i = 0; i < 10; i++) {
+            builder.add(segment("\nItem " + i + "                    "), ReceiptTemplate.Slot.text("price" + i, 2));
+        }
+        builder.add(segment("\nTOTAL                        "), ReceiptTemplate.Slot.text("total", 2));
+        template = builder.build(segment("\nThank you for your visit!\n"));
+        templateValues = new JSONObject().put("number", "000123").put("total", 263.0);
+        for (int i = 0; i < 10; i++) {
+            templateValues.put("price" + i, 3.5 + i);
+        }
+    }
+
+    private byte[] segment(String fixedText) {
+        EscBuffer segment = new EscBuffer();
+        segment.clear();
+        text.writeText(NORMAL, fixedText, segment);
+        byte[] bytes = segment.copyFrom(0);
+        segment.release();
+        return bytes;
+    }
+
+    private byte[] encode(String kind, int number) {
+        buffer.reset();
+        switch (kind) {
+            case "logo":
+                raster.encode(logo, LOGO_WIDTH, LOGO_HEIGHT, RasterEncoder.Dither.FLOYD_STEINBERG, buffer);
+                writeReceipt(number);
+                break;
+            case "receipt":
+                writeReceipt(number);
+                break;
+            case "table": {
+                StringBuilder lines = new StringBuilder();
+                new TableLayout(TableLayout.columns(tableColumns, 48, 1), 1, false).layout(tableRows, lines);
+                text.writeText(NORMAL, lines.toString(), buffer);
+                break;
+            }
+            case "template":
+                template.render(templateValues, text, buffer);
+                break;
+            default:
+                throw new IllegalArgumentException(kind);
+        }
+        buffer.write(EscPos.FULL_CUT);
+        return buffer.toJob();
+    }
+
+    private void writeReceipt(int number) {
+        text.writeText(BOLD, "THE CORNER SHOP\n", buffer);
+        text.writeText(NORMAL, "12 Market Street\nReceipt #" + number + "\n", buffer);
+        for (int i = 0; i < 40; i++) {
+            text.writeText(NORMAL, String.format(Locale.ROOT, "%-20s%3dx%8.2f\n", "Caf\u00e9 latte, oat milk",
+                    1 + i % 4, 3.5 + i), buffer);
+        }
+        text.writeText(BOLD, "TOTAL                        263.00\n", buffer);
+    }
+
+    private void run() throws Exception {
+        VirtualPrinter printer = new VirtualPrinter(bufferSize, speed);
+        VirtualPrinterServer server = tcp ? new VirtualPrinterServer(printer, 0) : null;
+        PrinterTransport transport = tcp
+                ? new NetworkTransport("127.0.0.1", server.port(), NetworkTransport.DEFAULT_CONNECT_TIMEOUT_MS,
+                        NetworkTransport.DEFAULT_WRITE_TIMEOUT_MS)
+                : new VirtualPrinterTransport("virtual", printer);
+        CountDownLatch connected = new CountDownLatch(1);
+        StatusMonitor status = new StatusMonitor();
+        ConnectionWriter writer = new ConnectionWriter("harness", transport::write);
+        ConnectionMetrics metrics = new ConnectionMetrics();
+        writer.configure(chunkSize, 0, 0);
+        writer.setGate(status);
+        writer.setMetrics(metrics);
+        transport.connect(new PrinterTransport.Listener() {
+            @Override
+            public void onConnected() {
+                connected.countDown();
+            }
+
+            @Override
+            public void onDisconnected() {
+            }
+
+            @Override
+            public void onData(byte[] data) {
+                if (status.feed(data)) {
+                    writer.wake();
+                }
+            }
+        });
+        if (!connected.await(PRINT_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            throw new IllegalStateException("Failed to connect");
+        }
+        writer.control(output -> {
+            try {
+                output.write(StatusMonitor.ENABLE_AUTO_STATUS.clone());
+                output.write(status.statusRequest());
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        String[] sequence = sequence();
+        if (warmup > 0) {
+            drive(printer, writer, sequence, warmup, null);
+            metrics.reset();
+        }
+
+        System.gc();
+        Report report = new Report();
+        MemorySampler sampler = new MemorySampler();
+        sampler.start();
+        long gcCount = gcCount();
+        long gcMillis = gcMillis();
+        long bytesBefore = printer.bytesReceived();
+        long dotsBefore = printer.dotsPrinted();
+        long startedAt = System.nanoTime();
+        drive(printer, writer, sequence, jobs, report);
+        long elapsed = System.nanoTime() - startedAt;
+        sampler.interrupt();
+        sampler.join();
+
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        long retained = runtime.totalMemory() - runtime.freeMemory();
+        double seconds = elapsed / 1e9;
+        long bytes = printer.bytesReceived() - bytesBefore;
+
+        System.out.printf(Locale.ROOT, "Jobs          %d %s over %s, %s mm/s, %d byte buffer, %d byte chunks%n", jobs,
+                mix, tcp ? "TCP" : "memory",
+                speed > 0 ? String.valueOf(speed) : "instant", bufferSize, chunkSize);
+        System.out.printf(Locale.ROOT, "Elapsed       %.2f s%n", seconds);
+        System.out.printf(Locale.ROOT, "Throughput    %.1f jobs/s, %.1f KB/s, %.2f m of paper%n", jobs / seconds,
+                bytes / 1024.0 / seconds, (printer.dotsPrinted() - dotsBefore) / (VirtualPrinter.DOTS_PER_MM * 1000.0));
+        System.out.println("Encode        " + percentiles(report.encode));
+        System.out.println("Sent          " + percentiles(report.sent));
+        System.out.println("End to end    " + percentiles(report.printed));
+        System.out.printf(Locale.ROOT, "Heap          %.1f MB peak, %.1f MB retained after GC%n",
+                sampler.peak / 1048576.0, retained / 1048576.0);
+        System.out.printf(Locale.ROOT, "GC            %d collections, %d ms%n", gcCount() - gcCount,
+                gcMillis() - gcMillis);
+
+        writer.shutdown();
+        transport.disconnect();
+        if (server != null) {
+            server.close();
+        }
+        printer.close();
+    }
+
+    /**
+     * Latencies of one run, in nanoseconds by job.
+     */
+    private static final class Report {
+        long[] encode;
+        long[] sent;
+        long[] printed;
+    }
+
+    private String[] sequence() {
+        int total = 0;
+        for (int weight : mix.values()) {
+            total += weight;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("The mix needs a positive weight");
+        }
+
+        Random random = new Random(7);
+        String[] sequence = new String[Math.max(jobs, warmup)];
+        for (int i = 0; i < sequence.length; i++) {
+            int pick = random.nextInt(total);
+            for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+                pick -= entry.getValue();
+                if (pick < 0) {
+                    sequence[i] = entry.getKey();
+                    break;
+                }
+            }
+        }
+        return sequence;
+    }
+
+    /**
+     * Submits {@code count} jobs, keeping at most {@link #inflight} of them unprinted, and waits for all to print.
+     */
+    private void drive(VirtualPrinter printer, ConnectionWriter writer, String[] sequence, int count, Report report)
+            throws InterruptedException {
+        long[] startedAt = new long[count];
+        long[] encode = new long[count];
+        long[] sent = new long[count];
+        long[] printed = new long[count];
+        long firstCut = printer.cuts() + 1;
+        Semaphore slots = new Semaphore(inflight);
+        AtomicLong failures = new AtomicLong();
+
+        Thread completions = new Thread(() -> {
+            try {
+                for (int i = 0; i < count; i++) {
+                    if (!printer.awaitCuts(firstCut + i, PRINT_TIMEOUT_MS)) {
+                        throw new IllegalStateException("Job " + i + " did not print");
+                    }
+                    printed[i] = System.nanoTime() - startedAt[i];
+                    slots.release();
+                }
+            } catch (InterruptedException ignored) {
+                // Stopped
+            }
+        }, "HarnessCompletions");
+        completions.start();
+
+        for (int i = 0; i < count; i++) {
+            slots.acquire();
+            int job = i;
+            startedAt[i] = System.nanoTime();
+            byte[] data = encode(sequence[i], i);
+            encode[i] = System.nanoTime() - startedAt[i];
+            writer.submit("job-" + i, 0, data, new ConnectionWriter.Listener() {
+                @Override
+                public void onProgress(long sentBytes, long total) {
+                }
+
+                @Override
+                public void onComplete() {
+                    sent[job] = System.nanoTime() - startedAt[job];
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    failures.incrementAndGet();
+                }
+            });
+        }
+
+        completions.join();
+        if (failures.get() > 0) {
+            throw new IllegalStateException(failures.get() + " jobs failed");
+        }
+        if (report != null) {
+            report.encode = encode;
+            report.sent = sent;
+            report.printed = printed;
+        }
+    }
+
+    private static String percentiles(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return String.format(Locale.ROOT, "p50 %.3f ms, p95 %.3f ms, p99 %.3f ms, max %.3f ms",
+                percentile(sorted, 0.5), percentile(sorted, 0.95), percentile(sorted, 0.99),
+                sorted[sorted.length - 1] / 1e6);
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        int index = (int) Math.ceil(sorted.length * quantile) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, bean.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, bean.getCollectionTime());
+        }
+        return millis;
+    }
+
+    /**
+     * Samples the used heap until interrupted.
+     */
+    private static final class MemorySampler extends Thread {
+        volatile long peak;
+
+        MemorySampler() {
+            super("HarnessMemory");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            Runtime runtime = Runtime.getRuntime();
+            while (!isInterrupted()) {
+                peak = Math.max(peak, runtime.totalMemory() - runtime.freeMemory());
+                try {
+                    TimeUnit.MILLISECONDS.sleep(5);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.malik12tree.bluetooth_print;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Rasterizes a full width 80 mm image, such as a logo or a photo, with every dithering algorithm.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RasterBenchmark {
+
+    private static final int WIDTH = 576;
+    private static final int HEIGHT = 1024;
+
+    @Param({ "NONE", "FLOYD_STEINBERG", "ATKINSON", "ORDERED" })
+    public RasterEncoder.Dither dither;
+
+    private final RasterEncoder encoder = new RasterEncoder();
+    private byte[] luminance;
+    private EscBuffer buffer;
+
+    @Setup
+    public void setUp() {
+        // A gradient with noise, so dithering has mid tones to work on and branches aren't predictable.
+        Random random = new Random(42);
+        luminance = new byte[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int value = (x * 255 / WIDTH + y * 255 / HEIGHT) / 2 + random.nextInt(33) - 16;
+                luminance[y * WIDTH + x] = (byte) Math.max(0, Math.min(255, value));
+            }
+        }
+        buffer = new EscBuffer();
+    }
+
+    @TearDown
+    public void tearDown() {
+        buffer.release();
+    }
+
+    @Benchmark
+    public int encodeImage() {
+        buffer.reset();
+        encoder.encode(luminance, WIDTH, HEIGHT, dither, buffer);
+        return buffer.size();
+    }
+}
@@ -0,0 +1,64 @@
+package com.malik12tree.bluetooth_print;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Encodes the text of a typical 58 mm sale receipt, one text command per line like the plugin's builder.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReceiptBenchmark {
+
+    private static final byte[] NORMAL = { EscPos.ESC, '!', 0x00 };
+    private static final byte[] BOLD = { EscPos.ESC, '!', 0x08 };
+
+    @Param({ "CP437", "GBK", "UTF-8" })
+    public String encoding;
+
+    private final TextEncoder text = new TextEncoder();
+    private final TextFormat normal = () -> NORMAL.clone();
+    private final TextFormat bold = () -> BOLD.clone();
+    private String[] lines;
+    private EscBuffer buffer;
+
+    @Setup
+    public void setUp() {
+        text.setEncoding(encoding);
+        // Non ASCII items only where the code page can print them, so every run measures the same work.
+        boolean cjk = text.multiByte();
+        lines = new String[40];
+        for (int i = 0; i < lines.length; i++) {
+            String item = cjk && i % 3 == 0 ? "\u73cd\u73e0\u5976\u8336 (\u5927\u676f)" : "Caf\u00e9 latte, oat milk";
+            lines[i] = String.format("%-20s%3dx%8.2f\n", item, 1 + i % 4, 3.5 + i);
+        }
+        buffer = new EscBuffer();
+    }
+
+    @TearDown
+    public void tearDown() {
+        buffer.release();
+    }
+
+    @Benchmark
+    public int encodeReceipt() {
+        buffer.reset();
+        text.writeText(bold, "THE CORNER SHOP\n", buffer);
+        text.writeText(normal, "12 Market Street\nReceipt #000123  2024-05-01 12:30\n", buffer);
+        for (String line : lines) {
+            text.writeText(normal, line, buffer);
+        }
+        text.writeText(bold, "TOTAL                        263.00\n", buffer);
+        text.writeText(normal, "Thank you for your visit!\n\n\n", buffer);
+        return buffer.size();
+    }
+}
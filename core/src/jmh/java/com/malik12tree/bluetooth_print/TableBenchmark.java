@@ -0,0 +1,62 @@
+package com.malik12tree.bluetooth_print;
+
+import java.util.concurrent.TimeUnit;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Lays out an item table with a wrapping description column, as printed by {@code table()}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TableBenchmark {
+
+    private static final int LINE_WIDTH = 48;
+    private static final int GAP = 1;
+
+    @Param({ "false", "true" })
+    public boolean wideCjk;
+
+    @Param({ "10", "100" })
+    public int rowCount;
+
+    private JSONArray columnSpecs;
+    private JSONArray rows;
+    private final StringBuilder lines = new StringBuilder();
+
+    @Setup
+    public void setUp() {
+        columnSpecs = new JSONArray()
+                .put(new JSONObject())
+                .put(new JSONObject().put("width", 4).put("align", "right"))
+                .put(new JSONObject().put("width", "20%").put("align", "right").put("overflow", "truncate"));
+
+        String description = wideCjk
+                ? "\u73cd\u73e0\u5976\u8336 \u5927\u676f \u5c11\u51b0 \u534a\u7cd6 \u52a0\u6930\u679c"
+                : "Oat milk latte, extra shot, no sugar, to go";
+        rows = new JSONArray();
+        for (int i = 0; i < rowCount; i++) {
+            rows.put(new JSONArray()
+                    .put(description)
+                    .put(String.valueOf(1 + i % 4))
+                    .put(String.format("%.2f", 3.5 + i)));
+        }
+    }
+
+    @Benchmark
+    public int layoutTable() {
+        lines.setLength(0);
+        TableLayout layout = new TableLayout(TableLayout.columns(columnSpecs, LINE_WIDTH, GAP), GAP, wideCjk);
+        layout.layout(rows, lines);
+        return lines.length();
+    }
+}
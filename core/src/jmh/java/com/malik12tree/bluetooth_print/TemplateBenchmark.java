@@ -0,0 +1,75 @@
+package com.malik12tree.bluetooth_print;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Renders a compiled receipt template, the path taken by {@code printTemplate()} for every receipt after the first.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TemplateBenchmark {
+
+    private final TextEncoder text = new TextEncoder();
+    private ReceiptTemplate template;
+    private JSONObject values;
+    private EscBuffer buffer;
+
+    @Setup
+    public void setUp() {
+        // Stands in for the SDK's QR code commands, which aren't available off Android.
+        BarcodeEncoder qr = data -> data.getBytes(StandardCharsets.US_ASCII);
+
+        ReceiptTemplate.Builder builder = new ReceiptTemplate.Builder(text.encoding(), new JSONArray());
+        builder.add(segment("THE CORNER SHOP\n12 Market Street\nReceipt #"), ReceiptTemplate.Slot.text("number", -1));
+        builder.add(segment("\nDate: "), ReceiptTemplate.Slot.text("date", -1));
+        for (int i = 0; i < 10; i++) {
+            builder.add(segment("\nItem " + i + "                    "), ReceiptTemplate.Slot.text("price" + i, 2));
+        }
+        builder.add(segment("\nTOTAL                        "), ReceiptTemplate.Slot.text("total", 2));
+        builder.add(segment("\n\n"), ReceiptTemplate.Slot.barcode("link", qr));
+        template = builder.build(segment("\nThank you for your visit!\n\n\n"));
+
+        values = new JSONObject()
+                .put("number", "000123")
+                .put("date", "2024-05-01 12:30")
+                .put("total", 263.0)
+                .put("link", "https://example.com/r/000123");
+        for (int i = 0; i < 10; i++) {
+            values.put("price" + i, 3.5 + i);
+        }
+        buffer = new EscBuffer();
+    }
+
+    @TearDown
+    public void tearDown() {
+        buffer.release();
+    }
+
+    private byte[] segment(String fixedText) {
+        EscBuffer segment = new EscBuffer();
+        segment.clear();
+        text.writeText(() -> new byte[] { EscPos.ESC, '!', 0x00 }, fixedText, segment);
+        byte[] bytes = segment.copyFrom(0);
+        segment.release();
+        return bytes;
+    }
+
+    @Benchmark
+    public int renderTemplate() {
+        buffer.reset();
+        template.render(values, text, buffer);
+        return buffer.size();
+    }
+}
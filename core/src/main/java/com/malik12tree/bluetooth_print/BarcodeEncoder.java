@@ -0,0 +1,12 @@
+package com.malik12tree.bluetooth_print;
+
+/**
+ * Builds the command printing a barcode or QR code of a fixed type and settings.
+ */
+interface BarcodeEncoder {
+
+    /**
+     * @throws IllegalArgumentException If the data can't be encoded.
+     */
+    byte[] encode(String data);
+}
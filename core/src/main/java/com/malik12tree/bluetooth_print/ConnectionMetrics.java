@@ -0,0 +1,190 @@
+package com.malik12tree.bluetooth_print;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Counters and timing histograms of a single connection. Updates only touch atomics, so the writer thread and the
+ * encoding paths never wait on each other to record them; a snapshot may mix values from just before and after a
+ * concurrent update.
+ */
+final class ConnectionMetrics {
+
+    static final int TEXT = 0;
+    static final int IMAGE = 1;
+    static final int BARCODE = 2;
+    private static final String[] ENCODE_KINDS = { "text", "image", "barcode" };
+
+    static final String DISCONNECT_CLOSED = "closed";
+    static final String DISCONNECT_LINK_LOST = "linkLost";
+    static final String DISCONNECT_HEARTBEAT = "heartbeatTimeout";
+    static final String DISCONNECT_RECONNECT_FAILED = "reconnectFailed";
+
+    /**
+     * Durations in microseconds, counted in power of two buckets. Percentiles are the upper bound of the bucket they
+     * fall in, so they are at most twice the real value.
+     */
+    static final class Histogram {
+        // Bucket i holds values below 2^i; the last one everything above 2^38 us, about three days.
+        private static final int BUCKETS = 40;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        void recordNanos(long nanos) {
+            record(TimeUnit.NANOSECONDS.toMicros(nanos));
+        }
+
+        void record(long micros) {
+            long value = Math.max(0, micros);
+            buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value)));
+            sum.addAndGet(value);
+
+            long current;
+            while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+                // Lost the race to a concurrent update; retry against its value.
+            }
+        }
+
+        long sumMicros() {
+            return sum.get();
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+            sum.set(0);
+            max.set(0);
+        }
+
+        JSONObject toJson() throws JSONException {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+
+            JSONObject json = new JSONObject();
+            json.put("count", total);
+            if (total == 0) {
+                return json;
+            }
+            long maxMicros = max.get();
+            json.put("meanMs", millis(sum.get() / total));
+            json.put("maxMs", millis(maxMicros));
+            json.put("p50Ms", millis(Math.min(maxMicros, percentile(counts, total, 0.5))));
+            json.put("p95Ms", millis(Math.min(maxMicros, percentile(counts, total, 0.95))));
+            json.put("p99Ms", millis(Math.min(maxMicros, percentile(counts, total, 0.99))));
+            return json;
+        }
+
+        private static long percentile(long[] counts, long total, double quantile) {
+            long rank = (long) Math.ceil(total * quantile);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return i == 0 ? 0 : (1L << i) - 1;
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+
+        private static double millis(long micros) {
+            return micros / 1000.0;
+        }
+    }
+
+    final AtomicLong bytesSent = new AtomicLong();
+    final AtomicLong jobsSent = new AtomicLong();
+    final AtomicLong jobsFailed = new AtomicLong();
+    // Bytes of completed jobs, over the transfer histogram's total time gives the effective rate.
+    final AtomicLong bytesTransferred = new AtomicLong();
+    final AtomicLong reconnects = new AtomicLong();
+    final Histogram[] encode = { new Histogram(), new Histogram(), new Histogram() };
+    final Histogram queueWait = new Histogram();
+    final Histogram transfer = new Histogram();
+    final Histogram connect = new Histogram();
+    private final Map<String, AtomicLong> disconnects = new ConcurrentHashMap<>();
+    private volatile long since = System.currentTimeMillis();
+
+    void encoded(int kind, long startedAt) {
+        encode[kind].recordNanos(System.nanoTime() - startedAt);
+    }
+
+    void disconnected(String reason) {
+        AtomicLong counter = disconnects.get(reason);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = disconnects.putIfAbsent(reason, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        counter.incrementAndGet();
+    }
+
+    void reset() {
+        bytesSent.set(0);
+        jobsSent.set(0);
+        jobsFailed.set(0);
+        bytesTransferred.set(0);
+        reconnects.set(0);
+        for (Histogram histogram : encode) {
+            histogram.reset();
+        }
+        queueWait.reset();
+        transfer.reset();
+        connect.reset();
+        disconnects.clear();
+        since = System.currentTimeMillis();
+    }
+
+    /**
+     * Adds a snapshot of the metrics to {@code json}.
+     */
+    void writeTo(JSONObject json) {
+        try {
+            writeJson(json);
+        } catch (JSONException e) {
+            // Only thrown for null keys and non-finite numbers.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void writeJson(JSONObject json) throws JSONException {
+        json.put("since", since);
+        json.put("bytesSent", bytesSent.get());
+        json.put("jobsSent", jobsSent.get());
+        json.put("jobsFailed", jobsFailed.get());
+
+        long transferMicros = transfer.sumMicros();
+        json.put("bytesPerSecond", transferMicros > 0
+                ? bytesTransferred.get() * TimeUnit.SECONDS.toMicros(1) / transferMicros
+                : 0);
+
+        JSONObject encodeJson = new JSONObject();
+        for (int i = 0; i < encode.length; i++) {
+            encodeJson.put(ENCODE_KINDS[i], encode[i].toJson());
+        }
+        json.put("encode", encodeJson);
+        json.put("queueWait", queueWait.toJson());
+        json.put("transfer", transfer.toJson());
+        json.put("connect", connect.toJson());
+        json.put("reconnects", reconnects.get());
+
+        JSONObject disconnectsJson = new JSONObject();
+        for (Map.Entry<String, AtomicLong> entry : disconnects.entrySet()) {
+            disconnectsJson.put(entry.getKey(), entry.getValue().get());
+        }
+        json.put("disconnects", disconnectsJson);
+    }
+}
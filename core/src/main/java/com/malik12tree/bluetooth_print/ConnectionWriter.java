@@ -0,0 +1,725 @@
+package com.malik12tree.bluetooth_print;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Queues the jobs of a single connection and sends them on a dedicated thread, highest priority first and in
+ * submission order otherwise. Jobs are split into chunks and optionally paced so cheap printers don't overrun their
+ * input buffer, and held back between chunks while the {@link Gate} is closed. Listeners are notified once the last
+ * chunk has been handed to the transport.
+ */
+final class ConnectionWriter {
+
+    static final int DEFAULT_CHUNK_SIZE = 512;
+    static final int MAX_QUEUED_JOBS = 64;
+    // How often a paused writer with waiting jobs asks the gate to check on the printer.
+    static final long PAUSED_POLL_MS = 2000;
+    // Minimum time between two progress notifications of the same job.
+    static final long PROGRESS_INTERVAL_MS = 100;
+    // Assumed size of streamed jobs when estimating the backlog.
+    static final long STREAMED_JOB_ESTIMATE = 32 * 1024;
+    // Wait before retrying an interrupted job, giving the connection time to notice the lost link.
+    static final long RESUME_DELAY_MS = 1000;
+    // Consecutive retries of a job without getting further before it fails.
+    static final int MAX_RESUME_ATTEMPTS = 3;
+
+    interface Output {
+        /**
+         * Synchronously writes a chunk to the printer.
+         */
+        void write(byte[] chunk) throws IOException;
+    }
+
+    interface Listener {
+        /**
+         * @param total Size of the job in bytes, or {@code -1} for streamed jobs.
+         */
+        void onProgress(long sent, long total);
+
+        void onComplete();
+
+        /**
+         * @param e A {@link CancellationException} if the job was cancelled while queued.
+         */
+        void onError(Exception e);
+    }
+
+    /**
+     * Decides whether bytes may be sent to the printer.
+     */
+    interface Gate {
+        Gate ALWAYS_READY = new Gate() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void whilePaused(Output output) {
+            }
+        };
+
+        /**
+         * Checked before each job and each chunk; call {@link #wake()} once this may have changed.
+         */
+        boolean isReady();
+
+        /**
+         * Called periodically while jobs wait for the gate, between two jobs, to let it query the printer.
+         */
+        void whilePaused(Output output) throws IOException;
+    }
+
+    /**
+     * A short exchange with the printer that runs between two jobs, ahead of any waiting job and regardless of the
+     * gate.
+     */
+    interface Control {
+        void run(Output output);
+    }
+
+    interface Producer {
+        /**
+         * Produces a streamed job by calling {@link Sink#send} as data becomes available.
+         */
+        void produce(Sink sink) throws IOException, InterruptedException;
+    }
+
+    interface Sink {
+        void send(byte[] data, int offset, int length) throws IOException, InterruptedException;
+    }
+
+    /**
+     * A job encoded up front. Unlike streamed jobs, it can continue where it was interrupted.
+     */
+    static final class Bytes implements Producer {
+        final byte[] data;
+
+        Bytes(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public void produce(Sink sink) throws IOException, InterruptedException {
+            sink.send(data, 0, data.length);
+        }
+    }
+
+    static final class Job {
+        final String id;
+        final long sequence;
+        final long size;
+        final Producer producer;
+        final Listener listener;
+        // Guarded by the writer's lock.
+        int priority;
+        boolean sending;
+        // Set while the job waits between two chunks for the gate to open.
+        boolean paused;
+        boolean cancelled;
+        // Written by the writer thread only.
+        volatile long sent;
+        // Bytes before the last chunk written, which have most likely left the device.
+        long acknowledged;
+        // Set while an interrupted job waits to continue; null if it starts over.
+        ResumePoint resume;
+        int resumeAttempts;
+        // Guarded by the writer's lock.
+        long retryAt;
+        long queuedAt = System.nanoTime();
+
+        Job(String id, long sequence, int priority, long size, Producer producer, Listener listener) {
+            this.id = id;
+            this.sequence = sequence;
+            this.priority = priority;
+            this.size = size;
+            this.producer = producer;
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * Immutable view of a job, safe to read outside the writer's lock.
+     */
+    static final class JobInfo {
+        final String id;
+        final int priority;
+        final long size;
+        final boolean sending;
+
+        JobInfo(Job job) {
+            this.id = job.id;
+            this.priority = job.priority;
+            this.size = job.size;
+            this.sending = job.sending;
+        }
+    }
+
+    private static final Comparator<Job> ORDER = (a, b) -> a.priority != b.priority
+            ? Integer.compare(b.priority, a.priority)
+            : Long.compare(a.sequence, b.sequence);
+
+    private final Output output;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final PriorityQueue<Job> queue = new PriorityQueue<>(ORDER);
+    private final ArrayDeque<Control> controls = new ArrayDeque<>();
+    private final Thread thread;
+    private long nextSequence;
+    private Job current;
+    private boolean closed;
+
+    private volatile Gate gate = Gate.ALWAYS_READY;
+    private volatile int chunkSize = DEFAULT_CHUNK_SIZE;
+    private volatile int chunkDelayMs = 0;
+    private volatile int bytesPerSecond = 0;
+    private volatile boolean resumable;
+    private volatile ConnectionMetrics metrics;
+
+    // Only touched on the writer thread.
+    private byte[] chunk = new byte[0];
+
+    ConnectionWriter(String name, Output output) {
+        this.output = output;
+        this.thread = new Thread(this::drain, "ThermalPrinterWriter-" + name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * @param chunkSize      Bytes per write, {@code 0} to write each job at once.
+     * @param chunkDelayMs   Pause after every chunk.
+     * @param bytesPerSecond Upper bound of the transfer rate, {@code 0} for unlimited.
+     */
+    void configure(int chunkSize, int chunkDelayMs, int bytesPerSecond) {
+        this.chunkSize = Math.max(0, chunkSize);
+        this.chunkDelayMs = Math.max(0, chunkDelayMs);
+        this.bytesPerSecond = Math.max(0, bytesPerSecond);
+    }
+
+    /**
+     * Puts jobs that fail partway back in the queue instead of failing them, to continue from their last safe point
+     * once the gate opens again. Only useful if the connection comes back by itself.
+     */
+    void setResumable(boolean resumable) {
+        this.resumable = resumable;
+    }
+
+    void setMetrics(ConnectionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    void setGate(Gate gate) {
+        this.gate = gate;
+        wake();
+    }
+
+    /**
+     * Re-checks the gate, resuming a paused writer.
+     */
+    void wake() {
+        lock.lock();
+        try {
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void control(Control control) {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            controls.add(control);
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int chunkSize() {
+        return chunkSize;
+    }
+
+    int chunkDelayMs() {
+        return chunkDelayMs;
+    }
+
+    int bytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * @throws IllegalStateException If {@link #MAX_QUEUED_JOBS} jobs are already waiting.
+     */
+    void submit(String jobId, int priority, byte[] data, Listener listener) {
+        submit(jobId, priority, data.length, new Bytes(data), listener);
+    }
+
+    /**
+     * @param size Size of the job in bytes, or {@code -1} if unknown.
+     * @throws IllegalStateException If {@link #MAX_QUEUED_JOBS} jobs are already waiting.
+     */
+    void submit(String jobId, int priority, long size, Producer producer, Listener listener) {
+        lock.lock();
+        try {
+            if (!closed) {
+                if (queue.size() >= MAX_QUEUED_JOBS) {
+                    throw new IllegalStateException("Print queue is full!");
+                }
+                queue.add(new Job(jobId, nextSequence++, priority, size, producer, listener));
+                available.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        listener.onError(new IOException("Printer is not connected!"));
+    }
+
+    /**
+     * Lists the job being sent, if any, followed by the waiting jobs in the order they will be sent.
+     */
+    List<JobInfo> jobs() {
+        lock.lock();
+        try {
+            ArrayList<Job> waiting = new ArrayList<>(queue);
+            Collections.sort(waiting, ORDER);
+
+            ArrayList<JobInfo> jobs = new ArrayList<>(waiting.size() + 1);
+            if (current != null) {
+                jobs.add(new JobInfo(current));
+            }
+            for (Job job : waiting) {
+                jobs.add(new JobInfo(job));
+            }
+            return jobs;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Estimates the bytes still to be sent: the rest of the current job plus all waiting jobs.
+     */
+    long backlogBytes() {
+        lock.lock();
+        try {
+            long bytes = 0;
+            if (current != null) {
+                bytes += Math.max(0, estimatedSize(current) - current.sent);
+            }
+            for (Job job : queue) {
+                bytes += estimatedSize(job);
+            }
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int queuedJobs() {
+        lock.lock();
+        try {
+            return queue.size() + (current != null ? 1 : 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static long estimatedSize(Job job) {
+        return job.size >= 0 ? job.size : STREAMED_JOB_ESTIMATE;
+    }
+
+    /**
+     * Removes the given jobs if they are still waiting, without notifying their listeners, so they can be submitted
+     * elsewhere.
+     */
+    List<Job> takeWaiting(Collection<String> jobIds) {
+        lock.lock();
+        try {
+            ArrayList<Job> taken = new ArrayList<>();
+            for (Job job : queue) {
+                if (jobIds.contains(job.id)) {
+                    taken.add(job);
+                }
+            }
+            queue.removeAll(taken);
+            Collections.sort(taken, ORDER);
+            return taken;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean hasJob(String jobId) {
+        lock.lock();
+        try {
+            return find(jobId) != null || current != null && current.id.equals(jobId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes a waiting job. Jobs that already started sending can only be cancelled while paused between two chunks,
+     * e.g. by paper out: the rest of the job is dropped, possibly in the middle of a command. The job then fails with
+     * a {@link CancellationException} from the writer thread.
+     *
+     * @return {@code false} if the job is neither waiting nor paused.
+     */
+    boolean cancel(String jobId) {
+        Job job;
+        lock.lock();
+        try {
+            job = find(jobId);
+            if (job == null) {
+                if (current == null || !current.paused || !current.id.equals(jobId)) {
+                    return false;
+                }
+                current.cancelled = true;
+                available.signalAll();
+                return true;
+            }
+            queue.remove(job);
+        } finally {
+            lock.unlock();
+        }
+
+        job.listener.onError(new CancellationException("Job cancelled"));
+        return true;
+    }
+
+    /**
+     * @return {@code false} if the job is not waiting.
+     */
+    boolean setPriority(String jobId, int priority) {
+        lock.lock();
+        try {
+            Job job = find(jobId);
+            if (job == null) {
+                return false;
+            }
+            queue.remove(job);
+            job.priority = priority;
+            queue.add(job);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Fails all waiting jobs and stops the writer thread once the job being sent, if any, is done.
+     */
+    void shutdown() {
+        ArrayList<Job> dropped;
+        lock.lock();
+        try {
+            closed = true;
+            dropped = new ArrayList<>(queue);
+            queue.clear();
+            controls.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        for (Job job : dropped) {
+            job.listener.onError(new IOException("Printer is not connected!"));
+        }
+    }
+
+    private Job find(String jobId) {
+        for (Job job : queue) {
+            if (job.id.equals(jobId)) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    private void drain() {
+        try {
+            Runnable next;
+            while ((next = take()) != null) {
+                next.run();
+            }
+        } catch (InterruptedException e) {
+            // Stopped.
+        }
+    }
+
+    /**
+     * Blocks until there is something to do: a control, a job the gate lets through, or a check on a paused printer.
+     *
+     * @return {@code null} once the writer is shut down.
+     */
+    private Runnable take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (!closed) {
+                Control control = controls.poll();
+                if (control != null) {
+                    return () -> control.run(output);
+                }
+
+                if (queue.isEmpty()) {
+                    available.await();
+                    continue;
+                }
+
+                Gate gate = this.gate;
+                if (gate.isReady()) {
+                    long delayMs = queue.peek().retryAt - System.currentTimeMillis();
+                    if (delayMs > 0) {
+                        available.await(delayMs, TimeUnit.MILLISECONDS);
+                        continue;
+                    }
+
+                    Job job = queue.poll();
+                    job.sending = true;
+                    current = job;
+                    return () -> send(job);
+                }
+
+                if (!available.await(PAUSED_POLL_MS, TimeUnit.MILLISECONDS)) {
+                    return () -> poll(gate);
+                }
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void send(Job job) {
+        run(job);
+
+        lock.lock();
+        try {
+            current = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void poll(Gate gate) {
+        try {
+            gate.whilePaused(output);
+        } catch (IOException ignored) {
+            // Jobs fail on their own once the connection is gone.
+        }
+    }
+
+    /**
+     * Blocks a job between two chunks while the gate is closed, checking on the printer every {@link #PAUSED_POLL_MS}
+     * like {@link #take()} does between jobs.
+     *
+     * @throws CancellationException If the job was cancelled while paused.
+     */
+    private void awaitReady(Job job) throws IOException, InterruptedException {
+        if (gate.isReady()) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            job.paused = true;
+            Gate gate;
+            while (!closed && !job.cancelled && !(gate = this.gate).isReady()) {
+                if (!available.await(PAUSED_POLL_MS, TimeUnit.MILLISECONDS)) {
+                    lock.unlock();
+                    try {
+                        poll(gate);
+                    } finally {
+                        lock.lock();
+                    }
+                }
+            }
+            if (closed) {
+                throw new IOException("Printer is not connected!");
+            }
+            if (job.cancelled) {
+                throw new CancellationException("Job cancelled");
+            }
+        } finally {
+            job.paused = false;
+            lock.unlock();
+        }
+    }
+
+    private void run(Job job) {
+        Transfer transfer = new Transfer(job);
+        ConnectionMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.queueWait.recordNanos(transfer.startedAt - job.queuedAt);
+        }
+
+        try {
+            ResumePoint resume = job.resume;
+            if (resume != null) {
+                byte[] data = ((Bytes) job.producer).data;
+                awaitReady(job);
+                output.write(resume.prefix);
+                transfer.sent = resume.offset;
+                transfer.send(data, resume.offset, data.length - resume.offset);
+            } else {
+                job.producer.produce(transfer);
+            }
+            if (metrics != null) {
+                metrics.transfer.recordNanos(System.nanoTime() - transfer.startedAt);
+                metrics.bytesTransferred.addAndGet(transfer.written);
+                metrics.jobsSent.incrementAndGet();
+            }
+            job.listener.onProgress(transfer.sent, job.size);
+            job.listener.onComplete();
+        } catch (IOException e) {
+            if (!requeue(job)) {
+                fail(job, e, metrics);
+            }
+        } catch (RuntimeException e) {
+            fail(job, e, metrics);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(job, e, metrics);
+        }
+    }
+
+    private static void fail(Job job, Exception e, ConnectionMetrics metrics) {
+        if (metrics != null) {
+            metrics.jobsFailed.incrementAndGet();
+        }
+        job.listener.onError(e);
+    }
+
+    /**
+     * Queues an interrupted job again to continue after the last line or image band that reached the printer, with
+     * its formatting restored. Jobs with nothing safe to continue from start over.
+     *
+     * @return {@code false} if the job can't be resumed and should fail.
+     */
+    private boolean requeue(Job job) {
+        if (!resumable || !(job.producer instanceof Bytes)) {
+            return false;
+        }
+
+        ResumePoint resume = ResumePoint.find(((Bytes) job.producer).data, job.acknowledged);
+        int previous = job.resume != null ? job.resume.offset : 0;
+        if (resume != null && resume.offset > previous) {
+            job.resumeAttempts = 0;
+        } else if (++job.resumeAttempts >= MAX_RESUME_ATTEMPTS) {
+            return false;
+        } else if (job.resume != null) {
+            resume = job.resume;
+        }
+
+        lock.lock();
+        try {
+            if (closed) {
+                return false;
+            }
+            job.resume = resume;
+            job.sending = false;
+            job.retryAt = System.currentTimeMillis() + RESUME_DELAY_MS;
+            job.queuedAt = System.nanoTime();
+            queue.add(job);
+            available.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private final class Transfer implements Sink {
+        final Job job;
+        final long total;
+        final Listener listener;
+        final long startedAt = System.nanoTime();
+        long sent;
+        // Bytes written by this attempt, unlike sent which counts from the start of a resumed job.
+        long written;
+        long lastProgressAt;
+
+        Transfer(Job job) {
+            this.job = job;
+            this.total = job.size;
+            this.listener = job.listener;
+        }
+
+        @Override
+        public void send(byte[] data, int offset, int length) throws IOException, InterruptedException {
+            int size = chunkSize;
+            if (size <= 0 || size >= length && offset == 0 && length == data.length) {
+                awaitReady(job);
+                output.write(offset == 0 && length == data.length ? data : copy(data, offset, length));
+                afterChunk(length);
+                return;
+            }
+
+            int end = offset + length;
+            for (int position = offset; position < end; position += size) {
+                int count = Math.min(size, end - position);
+                awaitReady(job);
+                output.write(copy(data, position, count));
+                afterChunk(count);
+            }
+        }
+
+        private byte[] copy(byte[] data, int offset, int length) {
+            // The output writes synchronously, so full chunks can share one array.
+            byte[] target = length == chunk.length ? chunk : null;
+            if (target == null) {
+                target = new byte[length];
+                if (length == chunkSize) {
+                    chunk = target;
+                }
+            }
+            System.arraycopy(data, offset, target, 0, length);
+            return target;
+        }
+
+        private void afterChunk(int count) throws InterruptedException {
+            job.acknowledged = sent;
+            sent += count;
+            written += count;
+            job.sent = sent;
+            ConnectionMetrics metrics = ConnectionWriter.this.metrics;
+            if (metrics != null) {
+                metrics.bytesSent.addAndGet(count);
+            }
+
+            long now = System.nanoTime();
+            long delayMs = chunkDelayMs;
+            int rate = bytesPerSecond;
+            if (rate > 0) {
+                // Paced on this attempt's bytes; a resumed job starts a new attempt at its offset.
+                long dueAt = startedAt + written * TimeUnit.SECONDS.toNanos(1) / rate;
+                delayMs = Math.max(delayMs, TimeUnit.NANOSECONDS.toMillis(dueAt - now));
+            }
+
+            if (TimeUnit.NANOSECONDS.toMillis(now - lastProgressAt) >= PROGRESS_INTERVAL_MS) {
+                lastProgressAt = now;
+                listener.onProgress(sent, total);
+            }
+
+            if (delayMs > 0) {
+                Thread.sleep(delayMs);
+            }
+        }
+    }
+}
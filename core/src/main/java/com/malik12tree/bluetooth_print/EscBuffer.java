@@ -0,0 +1,159 @@
+package com.malik12tree.bluetooth_print;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer holding the ESC/POS job of a single connection.
+ *
+ * The backing array is kept across {@link #reset()} calls and handed back to a small shared pool on
+ * {@link #release()}, so steady-state printing does not allocate per command. The buffer always starts with
+ * {@link EscPos#INIT}; {@link #toJob()} appends {@link EscPos#JOB_TRAILER} while taking the only copy of the body.
+ */
+final class EscBuffer {
+
+    static final int DEFAULT_CAPACITY = 4 * 1024;
+    // Arrays grown past this size (large images) are dropped on reset instead of pinning memory.
+    static final int MAX_RETAINED_CAPACITY = 1024 * 1024;
+    private static final int MAX_POOLED_ARRAYS = 4;
+    private static final ArrayDeque<byte[]> pool = new ArrayDeque<>();
+
+    private byte[] data;
+    private int size;
+
+    EscBuffer() {
+        this.data = acquire();
+        reset();
+    }
+
+    /**
+     * Clears the job, keeping the backing array unless it grew too large.
+     */
+    void reset() {
+        clear();
+        write(EscPos.INIT);
+    }
+
+    /**
+     * Empties the buffer without writing {@link EscPos#INIT}, for buffers that hold a fragment of a job.
+     */
+    void clear() {
+        checkNotReleased();
+        if (data.length > MAX_RETAINED_CAPACITY) {
+            data = acquire();
+        }
+        size = 0;
+    }
+
+    /**
+     * Returns the backing array to the shared pool. Later use of the buffer throws {@link IllegalStateException}.
+     */
+    void release() {
+        byte[] released = data;
+        data = null;
+        size = 0;
+        if (released == null || released.length > MAX_RETAINED_CAPACITY) {
+            return;
+        }
+
+        synchronized (pool) {
+            if (pool.size() < MAX_POOLED_ARRAYS) {
+                pool.push(released);
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    void write(byte b) {
+        ensureCapacity(size + 1);
+        data[size++] = b;
+    }
+
+    /**
+     * Writes a three byte escape such as {@code ESC a n} without allocating.
+     */
+    void write(byte prefix, byte command, int argument) {
+        ensureCapacity(size + 3);
+        data[size++] = prefix;
+        data[size++] = command;
+        data[size++] = (byte) argument;
+    }
+
+    /**
+     * Writes the string as single bytes if it is pure ASCII.
+     *
+     * @return {@code false}, with nothing written, if the string has other characters.
+     */
+    boolean writeAscii(String text) {
+        int length = text.length();
+        ensureCapacity(size + length);
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                return false;
+            }
+            data[size + i] = (byte) c;
+        }
+        size += length;
+        return true;
+    }
+
+    void write(byte[] bytes) {
+        write(bytes, 0, bytes.length);
+    }
+
+    void write(byte[] bytes, int offset, int length) {
+        ensureCapacity(size + length);
+        System.arraycopy(bytes, offset, data, size, length);
+        size += length;
+    }
+
+    /**
+     * Copies the bytes written since {@code from}, e.g. to cache the output of a single command.
+     */
+    byte[] copyFrom(int from) {
+        checkNotReleased();
+        return Arrays.copyOfRange(data, from, size);
+    }
+
+    /**
+     * Returns the job ready for the transport: the buffered commands followed by {@link EscPos#JOB_TRAILER}.
+     * The buffer itself is left untouched so the same job can be written again.
+     */
+    byte[] toJob() {
+        int trailerLength = EscPos.JOB_TRAILER.length;
+        ensureCapacity(size + trailerLength);
+        System.arraycopy(EscPos.JOB_TRAILER, 0, data, size, trailerLength);
+        return Arrays.copyOf(data, size + trailerLength);
+    }
+
+    private void ensureCapacity(int capacity) {
+        checkNotReleased();
+        if (capacity <= data.length) {
+            return;
+        }
+
+        int newCapacity = Math.max(capacity, data.length << 1);
+        data = Arrays.copyOf(data, newCapacity);
+    }
+
+    private void checkNotReleased() {
+        if (data == null) {
+            throw new IllegalStateException("Buffer was released");
+        }
+    }
+
+    private static byte[] acquire() {
+        synchronized (pool) {
+            byte[] pooled = pool.poll();
+            if (pooled != null) {
+                return pooled;
+            }
+        }
+
+        return new byte[DEFAULT_CAPACITY];
+    }
+}
@@ -0,0 +1,257 @@
+package com.malik12tree.bluetooth_print;
+
+/**
+ * Preallocated ESC/POS command bytes shared by all connections, and the lengths of the commands the plugin knows.
+ *
+ * Arrays are never handed to the transport directly, only copied into an {@link EscBuffer}, so sharing them is safe.
+ */
+final class EscPos {
+
+    static final byte LF = 0x0A;
+    static final byte CR = 0x0D;
+    static final byte DLE = 0x10;
+    static final byte ESC = 0x1B;
+    static final byte FS = 0x1C;
+    static final byte GS = 0x1D;
+
+    // ESC @ - Initialize printer
+    static final byte[] INIT = { ESC, 0x40 };
+    static final byte[] LF_CR = { LF, CR };
+    // ESC i / ESC m - Full and partial cut
+    static final byte[] FULL_CUT = { ESC, 0x69 };
+    static final byte[] HALF_CUT = { ESC, 0x6D };
+    // ESC p m t1 t2 - Standard ESC/POS cash drawer kick command
+    // 0x1B = ESC, 0x70 = p, 0x00 = drawer pin 2
+    // 0x32 = pulse ON time (50 * 2ms = 100ms), 0x7D = pulse OFF time (125 * 2ms = 250ms)
+    static final byte[] OPEN_DRAWER = { ESC, 0x70, 0x00, 0x32, 0x7D };
+    // Three LF/CRs appended after every job so the last line clears the tear bar
+    static final byte[] JOB_TRAILER = { LF, CR, LF, CR, LF, CR };
+
+    // ESC a n, ESC 3 n and ESC SP n are written through EscBuffer.write(byte, byte, int)
+    static final byte ALIGN = 0x61;
+    static final byte LINE_SPACING = 0x33;
+    static final byte CHAR_SPACING = 0x20;
+
+    private EscPos() {}
+
+    /**
+     * Whether {@code b} starts a command rather than being text or a control character.
+     */
+    static boolean isCommand(byte b) {
+        return b == ESC || b == GS || b == FS || b == DLE;
+    }
+
+    /**
+     * @return Length of the command at {@code i}, or {@code -1} if it is unknown or cut off at {@code end}.
+     */
+    static int commandLength(byte[] data, int i, int end) {
+        int length = declaredLength(data, i, end);
+        return length > 0 && i + length <= end ? length : -1;
+    }
+
+    /**
+     * Reads the length of the command at {@code i} from its header, for commands arriving in pieces.
+     *
+     * @return The length, which may reach past {@code end}; {@code 0} if more bytes are needed to tell; or {@code -1}
+     *         if the command is unknown.
+     */
+    static int declaredLength(byte[] data, int i, int end) {
+        if (i + 1 >= end) {
+            return 0;
+        }
+
+        byte prefix = data[i];
+        int command = data[i + 1] & 0xFF;
+        int length;
+        if (prefix == ESC) {
+            length = escLength(data, i, end, command);
+        } else if (prefix == GS) {
+            length = gsLength(data, i, end, command);
+        } else if (prefix == FS) {
+            switch (command) {
+                case '&':
+                case '.':
+                    length = 2;
+                    break;
+                case '!':
+                case '-':
+                case 'C':
+                case 'W':
+                    length = 3;
+                    break;
+                case 'S':
+                case 'p':
+                    length = 4;
+                    break;
+                default:
+                    return -1;
+            }
+        } else {
+            switch (command) {
+                // DLE EOT n, DLE ENQ n - Real-time status and recovery
+                case 0x04:
+                case 0x05:
+                    length = 3;
+                    break;
+                // DLE DC4 fn m t
+                case 0x14:
+                    length = 5;
+                    break;
+                default:
+                    return -1;
+            }
+        }
+        return length;
+    }
+
+    private static int escLength(byte[] data, int i, int end, int command) {
+        switch (command) {
+            case '2':
+            case '<':
+            case '@':
+            case 'i':
+            case 'm':
+                return 2;
+            case ' ':
+            case '!':
+            case '%':
+            case '-':
+            case '3':
+            case '9':
+            case '=':
+            case '?':
+            case 'E':
+            case 'G':
+            case 'J':
+            case 'M':
+            case 'R':
+            case 'U':
+            case 'V':
+            case 'a':
+            case 'd':
+            case 'e':
+            case 'r':
+            case 't':
+            case 'u':
+            case '{':
+                return 3;
+            case '$':
+            case 'B':
+            case '\\':
+                return 4;
+            case 'c':
+                if (i + 2 >= end) {
+                    return 0;
+                }
+                return data[i + 2] >= '3' && data[i + 2] <= '5' ? 4 : -1;
+            case 'p':
+                return 5;
+            case '*': {
+                // ESC * m nL nH d1...dk
+                if (i + 4 >= end) {
+                    return 0;
+                }
+                int mode = data[i + 2] & 0xFF;
+                int columns = word(data, i + 3);
+                return 5 + columns * (mode <= 1 ? 1 : 3);
+            }
+            case 'D': {
+                // ESC D n1...nk NUL
+                for (int j = i + 2; j < end; j++) {
+                    if (data[j] == 0) {
+                        return j + 1 - i;
+                    }
+                }
+                return 0;
+            }
+            default:
+                return -1;
+        }
+    }
+
+    private static int gsLength(byte[] data, int i, int end, int command) {
+        switch (command) {
+            case '!':
+            case '/':
+            case 'B':
+            case 'E':
+            case 'H':
+            case 'I':
+            case 'a':
+            case 'b':
+            case 'f':
+            case 'h':
+            case 'r':
+            case 'w':
+                return 3;
+            case '$':
+            case 'L':
+            case 'P':
+            case 'W':
+            case '\\':
+                return 4;
+            case 'V': {
+                if (i + 2 >= end) {
+                    return 0;
+                }
+                int mode = data[i + 2] & 0xFF;
+                return mode == 0 || mode == 1 || mode == '0' || mode == '1' ? 3 : 4;
+            }
+            case 'v': {
+                // GS v 0 m xL xH yL yH d1...dk
+                if (i + 7 >= end) {
+                    return 0;
+                }
+                if (data[i + 2] != '0') {
+                    return -1;
+                }
+                return 8 + word(data, i + 4) * word(data, i + 6);
+            }
+            case 'k': {
+                if (i + 2 >= end) {
+                    return 0;
+                }
+                int type = data[i + 2] & 0xFF;
+                if (type >= 65) {
+                    // GS k m n d1...dn
+                    return i + 3 < end ? 4 + (data[i + 3] & 0xFF) : 0;
+                }
+                // GS k m d1...dk NUL. Some SDK barcodes omit the NUL, so the data also ends at the first
+                // non-printable byte, or at the end of what was received.
+                for (int j = i + 3; j < end; j++) {
+                    if (data[j] == 0) {
+                        return j + 1 - i;
+                    }
+                    if (data[j] < 0x20 || data[j] == 0x7F) {
+                        return j - i;
+                    }
+                }
+                return end - i;
+            }
+            case '(':
+                // GS ( fn pL pH p1...pn
+                return i + 4 < end ? 5 + word(data, i + 3) : 0;
+            case '*':
+                // GS * x y d1...dk
+                return i + 3 < end ? 4 + (data[i + 2] & 0xFF) * (data[i + 3] & 0xFF) * 8 : 0;
+            case '8': {
+                // GS 8 L p1 p2 p3 p4 m fn ...
+                if (i + 6 >= end) {
+                    return 0;
+                }
+                if (data[i + 2] != 'L') {
+                    return -1;
+                }
+                long size = word(data, i + 3) | (long) word(data, i + 5) << 16;
+                return size <= Integer.MAX_VALUE - 7 ? (int) (7 + size) : -1;
+            }
+            default:
+                return -1;
+        }
+    }
+
+    private static int word(byte[] data, int i) {
+        return (data[i] & 0xFF) | (data[i + 1] & 0xFF) << 8;
+    }
+}
+
@@ -0,0 +1,154 @@
+package com.malik12tree.bluetooth_print;
+
+import java.io.IOException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+
+/**
+ * The single thread doing the I/O of every network printer. Channels are registered with a {@link Handler} that is
+ * called on this thread whenever its channel is ready, so no thread is spent per connection.
+ */
+final class NetworkSelector {
+
+    /**
+     * Handles the events of one channel, always on the selector thread.
+     */
+    interface Handler {
+        void ready(SelectionKey key);
+
+        /**
+         * @return When {@link #expired()} should be called, in {@link System#nanoTime()} terms, or {@code 0} for
+         * never. Checked every time the selector wakes up.
+         */
+        long deadline();
+
+        void expired();
+    }
+
+    private static NetworkSelector instance;
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+    static synchronized NetworkSelector get() throws IOException {
+        if (instance == null) {
+            instance = new NetworkSelector(Selector.open());
+        }
+        return instance;
+    }
+
+    private NetworkSelector(Selector selector) {
+        this.selector = selector;
+        Thread thread = new Thread(this::run, "PrinterNetwork");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Runs a task on the selector thread, which is the only one that may touch selection keys.
+     */
+    void execute(Runnable task) {
+        synchronized (tasks) {
+            tasks.add(task);
+        }
+        selector.wakeup();
+    }
+
+    /**
+     * Registers a non-blocking channel; {@code registered} runs on the selector thread once it is.
+     *
+     * @param registered Receives the channel's key, or {@code null} if the channel was closed meanwhile.
+     */
+    void register(SelectableChannel channel, int ops, Handler handler, Registered registered) {
+        execute(() -> {
+            SelectionKey key;
+            try {
+                key = channel.register(selector, ops, handler);
+            } catch (IOException | RuntimeException e) {
+                key = null;
+            }
+            registered.onRegistered(key);
+        });
+    }
+
+    interface Registered {
+        void onRegistered(SelectionKey key);
+    }
+
+    private void run() {
+        while (true) {
+            runTasks();
+            long timeoutMs = expire();
+            try {
+                selector.select(timeoutMs);
+            } catch (IOException e) {
+                continue;
+            }
+
+            Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+            while (selected.hasNext()) {
+                SelectionKey key = selected.next();
+                selected.remove();
+                try {
+                    if (key.isValid()) {
+                        ((Handler) key.attachment()).ready(key);
+                    }
+                } catch (RuntimeException ignored) {
+                    // A failing handler must not stop the other printers; cancelled keys end up here too.
+                }
+            }
+        }
+    }
+
+    private void runTasks() {
+        while (true) {
+            Runnable task;
+            synchronized (tasks) {
+                task = tasks.poll();
+            }
+            if (task == null) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (RuntimeException ignored) {
+                // Same as above.
+            }
+        }
+    }
+
+    /**
+     * Fires expired deadlines.
+     *
+     * @return Milliseconds until the next deadline, {@code 0} if there is none.
+     */
+    private long expire() {
+        long now = System.nanoTime();
+        long next = Long.MAX_VALUE;
+        for (SelectionKey key : selector.keys()) {
+            if (!key.isValid()) {
+                continue;
+            }
+            Handler handler = (Handler) key.attachment();
+            long deadline = handler.deadline();
+            if (deadline == 0) {
+                continue;
+            }
+            if (deadline - now <= 0) {
+                try {
+                    handler.expired();
+                } catch (RuntimeException ignored) {
+                    // Same as above.
+                }
+            } else {
+                next = Math.min(next, deadline - now);
+            }
+        }
+        // Round up so the deadline has passed when the select returns.
+        return next == Long.MAX_VALUE ? 0 : next / 1_000_000 + 1;
+    }
+}
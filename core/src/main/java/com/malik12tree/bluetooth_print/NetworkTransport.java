@@ -0,0 +1,318 @@
+package com.malik12tree.bluetooth_print;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.UnresolvedAddressException;
+import java.util.Arrays;
+
+/**
+ * Raw TCP, as spoken by network printers on port 9100. Sockets are non-blocking and served by the shared
+ * {@link NetworkSelector}: a write goes out directly while the socket takes it, and otherwise waits for the selector
+ * to drain it, up to the write timeout. TCP keepalive is enabled, though the plugin's heartbeat notices a dead printer
+ * long before the system's keepalive does.
+ */
+final class NetworkTransport implements PrinterTransport {
+
+    static final int DEFAULT_PORT = 9100;
+    static final int DEFAULT_CONNECT_TIMEOUT_MS = 10000;
+    static final int DEFAULT_WRITE_TIMEOUT_MS = 10000;
+
+    private static final int READ_BUFFER_SIZE = 512;
+
+    private final String host;
+    private final int port;
+    private final int connectTimeoutMs;
+    private final int writeTimeoutMs;
+    private volatile Session session;
+
+    /**
+     * @throws IllegalArgumentException If the port or a timeout is out of range.
+     */
+    NetworkTransport(String host, int port, int connectTimeoutMs, int writeTimeoutMs) {
+        if (port < 1 || port > 65535) {
+            throw new IllegalArgumentException("Invalid port!");
+        }
+        if (connectTimeoutMs < 1 || writeTimeoutMs < 1) {
+            throw new IllegalArgumentException("Timeouts must be positive!");
+        }
+        this.host = host;
+        this.port = port;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.writeTimeoutMs = writeTimeoutMs;
+    }
+
+    /**
+     * The address a printer is known by, {@code host:port}.
+     */
+    static String address(String host, int port) {
+        return (host.indexOf(':') >= 0 ? "[" + host + "]" : host) + ":" + port;
+    }
+
+    @Override
+    public String address() {
+        return address(host, port);
+    }
+
+    @Override
+    public String name() {
+        // Network printers don't announce a name.
+        return null;
+    }
+
+    @Override
+    public void connect(Listener listener) throws IOException {
+        NetworkSelector selector = NetworkSelector.get();
+        Session next;
+        synchronized (this) {
+            Session current = session;
+            if (current != null && !current.isClosed()) {
+                throw new IOException("Already connected!");
+            }
+
+            SocketChannel channel = SocketChannel.open();
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setKeepAlive(true);
+                channel.socket().setTcpNoDelay(true);
+                next = new Session(selector, channel, listener,
+                        System.nanoTime() + connectTimeoutMs * 1_000_000L);
+                next.connectedNow = channel.connect(new InetSocketAddress(host, port));
+            } catch (UnresolvedAddressException e) {
+                channel.close();
+                throw new IOException("Unknown host " + host + "!");
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw new IOException("Failed to connect!", e);
+            }
+            session = next;
+        }
+
+        selector.register(next.channel, next.connectedNow ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, next,
+                next::registered);
+    }
+
+    @Override
+    public boolean isConnected() {
+        Session current = session;
+        return current != null && current.connected && !current.isClosed();
+    }
+
+    @Override
+    public void write(byte[] data) throws IOException {
+        Session current = session;
+        if (current == null) {
+            throw new IOException("Printer is not connected!");
+        }
+        current.write(data, writeTimeoutMs);
+    }
+
+    @Override
+    public void disconnect() {
+        Session current = session;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    /**
+     * One socket and the listener of the link it carries.
+     */
+    private static final class Session implements NetworkSelector.Handler {
+        final NetworkSelector selector;
+        final SocketChannel channel;
+        final Listener listener;
+        final long connectDeadline;
+        boolean connectedNow;
+        volatile boolean connected;
+
+        // Selector thread only.
+        private SelectionKey key;
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+        // Guarded by this.
+        private boolean closed;
+        private ByteBuffer pending;
+
+        Session(NetworkSelector selector, SocketChannel channel, Listener listener, long connectDeadline) {
+            this.selector = selector;
+            this.channel = channel;
+            this.listener = listener;
+            this.connectDeadline = connectDeadline;
+        }
+
+        synchronized boolean isClosed() {
+            return closed;
+        }
+
+        void registered(SelectionKey key) {
+            if (key == null) {
+                close();
+                return;
+            }
+            this.key = key;
+            if (connectedNow) {
+                connected = true;
+                listener.onConnected();
+            }
+        }
+
+        @Override
+        public void ready(SelectionKey key) {
+            if (key.isConnectable()) {
+                finishConnect(key);
+            }
+            if (key.isValid() && key.isReadable()) {
+                read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                flush(key);
+            }
+        }
+
+        @Override
+        public long deadline() {
+            return connected ? 0 : connectDeadline;
+        }
+
+        @Override
+        public void expired() {
+            close();
+        }
+
+        private void finishConnect(SelectionKey key) {
+            try {
+                if (!channel.finishConnect()) {
+                    return;
+                }
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            key.interestOps(SelectionKey.OP_READ);
+            connected = true;
+            listener.onConnected();
+        }
+
+        private void read() {
+            int read;
+            try {
+                readBuffer.clear();
+                read = channel.read(readBuffer);
+            } catch (IOException e) {
+                read = -1;
+            }
+            if (read < 0) {
+                close();
+            } else if (read > 0) {
+                listener.onData(Arrays.copyOf(readBuffer.array(), read));
+            }
+        }
+
+        private void flush(SelectionKey key) {
+            boolean failed = false;
+            synchronized (this) {
+                if (pending != null) {
+                    try {
+                        channel.write(pending);
+                    } catch (IOException e) {
+                        failed = true;
+                    }
+                    if (!failed && !pending.hasRemaining()) {
+                        pending = null;
+                        notifyAll();
+                    }
+                }
+                if (pending == null && !failed) {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            }
+            if (failed) {
+                close();
+            }
+        }
+
+        /**
+         * Writes directly while the socket takes the bytes, then waits for the selector to send the rest.
+         */
+        void write(byte[] data, int timeoutMs) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            String failure = null;
+            synchronized (this) {
+                if (closed || !connected) {
+                    throw new IOException("Printer is not connected!");
+                }
+                try {
+                    channel.write(buffer);
+                    if (!buffer.hasRemaining()) {
+                        return;
+                    }
+                    pending = buffer;
+                    selector.execute(() -> {
+                        SelectionKey current = key;
+                        if (current != null && current.isValid() && hasPending()) {
+                            current.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        }
+                    });
+                    if (!waitForPending(timeoutMs)) {
+                        failure = "Write timed out!";
+                    } else if (closed) {
+                        throw new IOException("Printer is not connected!");
+                    } else {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    failure = "Write interrupted!";
+                } catch (IOException e) {
+                    if (closed) {
+                        throw e;
+                    }
+                    failure = "Printer is not connected!";
+                }
+            }
+
+            // Bytes may be half sent, so the link can't be trusted anymore.
+            close();
+            throw new IOException(failure);
+        }
+
+        private synchronized boolean hasPending() {
+            return pending != null;
+        }
+
+        /**
+         * @return {@code false} if the timeout passed first.
+         */
+        private boolean waitForPending(int timeoutMs) throws InterruptedException {
+            long deadline = System.nanoTime() + timeoutMs * 1_000_000L;
+            while (pending != null && !closed) {
+                long remainingMs = (deadline - System.nanoTime()) / 1_000_000;
+                if (remainingMs <= 0) {
+                    return false;
+                }
+                wait(remainingMs);
+            }
+            return true;
+        }
+
+        void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                pending = null;
+                notifyAll();
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Closing anyway.
+            }
+            listener.onDisconnected();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.malik12tree.bluetooth_print;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * What is known about one printer, kept across connections: what it reported about itself when first probed, and the
+ * settings last used with it, which later connections start from instead of the plugin's defaults.
+ */
+final class PrinterProfile {
+
+    private static final Pattern PAPER_WIDTH = Pattern.compile("(?<![0-9])(58|80)(?![0-9])");
+    private static final int DOTS_58MM = 384;
+    private static final int DOTS_80MM = 576;
+
+    private String model;
+    private String firmware;
+    private String manufacturer;
+    private long probedAt;
+    private int dotWidth;
+    private Integer dpi;
+    private String encoding;
+
+    synchronized boolean isProbed() {
+        return probedAt > 0;
+    }
+
+    /**
+     * Records the outcome of a probe. The dot width is guessed from a model name that gives the paper width, as in
+     * {@code POS-80} or {@code XP-58}; ESC/POS has no command to ask for it.
+     */
+    synchronized void probed(String model, String firmware, String manufacturer) {
+        this.model = model;
+        this.firmware = firmware;
+        this.manufacturer = manufacturer;
+        this.probedAt = System.currentTimeMillis();
+        if (model != null) {
+            Matcher matcher = PAPER_WIDTH.matcher(model);
+            if (matcher.find()) {
+                dotWidth = matcher.group(1).equals("58") ? DOTS_58MM : DOTS_80MM;
+            }
+        }
+    }
+
+    /**
+     * @return The printable width in dots, {@code 0} if unknown.
+     */
+    synchronized int dotWidth() {
+        return dotWidth;
+    }
+
+    /**
+     * @return {@code null} if unknown.
+     */
+    synchronized Integer dpi() {
+        return dpi;
+    }
+
+    /**
+     * @return Whether the profile changed.
+     */
+    synchronized boolean setDpi(int dpi) {
+        if (this.dpi != null && this.dpi == dpi) {
+            return false;
+        }
+        this.dpi = dpi;
+        return true;
+    }
+
+    /**
+     * @return {@code null} if unknown.
+     */
+    synchronized String encoding() {
+        return encoding;
+    }
+
+    synchronized boolean setEncoding(String encoding) {
+        if (encoding == null || encoding.equals(this.encoding)) {
+            return false;
+        }
+        this.encoding = encoding;
+        return true;
+    }
+
+    synchronized JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        if (model != null) {
+            json.put("model", model);
+        }
+        if (firmware != null) {
+            json.put("firmware", firmware);
+        }
+        if (manufacturer != null) {
+            json.put("manufacturer", manufacturer);
+        }
+        if (probedAt > 0) {
+            json.put("probedAt", probedAt);
+        }
+        if (dotWidth > 0) {
+            json.put("dotWidth", dotWidth);
+        }
+        if (dpi != null) {
+            json.put("dpi", dpi.intValue());
+        }
+        if (encoding != null) {
+            json.put("encoding", encoding);
+        }
+        return json;
+    }
+
+    /**
+     * Reads a profile written by {@link #toJson()}, ignoring anything unexpected.
+     */
+    static PrinterProfile fromJson(JSONObject json) {
+        PrinterProfile profile = new PrinterProfile();
+        profile.model = optString(json, "model");
+        profile.firmware = optString(json, "firmware");
+        profile.manufacturer = optString(json, "manufacturer");
+        profile.probedAt = json.optLong("probedAt", 0);
+        profile.dotWidth = Math.max(0, json.optInt("dotWidth", 0));
+        profile.dpi = json.has("dpi") ? json.optInt("dpi", 0) : null;
+        profile.encoding = optString(json, "encoding");
+        return profile;
+    }
+
+    private static String optString(JSONObject json, String key) {
+        Object value = json.opt(key);
+        return value instanceof String ? (String) value : null;
+    }
+}
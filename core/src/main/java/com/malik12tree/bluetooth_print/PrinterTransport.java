@@ -0,0 +1,56 @@
+package com.malik12tree.bluetooth_print;
+
+import java.io.IOException;
+
+/**
+ * The link to a single printer, whatever carries it. A transport is connected again on every reconnect, each time
+ * with a new {@link Listener}, so callbacks from an earlier link never reach a later one.
+ */
+interface PrinterTransport {
+
+    /**
+     * Receives the events of one link, on any thread and possibly before {@link #connect(Listener)} returns.
+     */
+    interface Listener {
+        void onConnected();
+
+        /**
+         * The link failed to connect, was lost or was closed by {@link #disconnect()}. Called at most once.
+         */
+        void onDisconnected();
+
+        /**
+         * Bytes sent by the printer, such as status replies.
+         */
+        void onData(byte[] data);
+    }
+
+    /**
+     * Identifies the printer across connections, e.g. its Bluetooth MAC address.
+     */
+    String address();
+
+    /**
+     * @return The printer's name, or {@code null} if unknown.
+     */
+    String name();
+
+    /**
+     * Starts connecting; the outcome is reported to the listener.
+     *
+     * @throws IOException If the attempt could not be started.
+     */
+    void connect(Listener listener) throws IOException;
+
+    boolean isConnected();
+
+    /**
+     * Synchronously writes bytes to the printer, blocking while it can't take more.
+     */
+    void write(byte[] data) throws IOException;
+
+    /**
+     * Closes the current link, if any.
+     */
+    void disconnect();
+}
@@ -0,0 +1,116 @@
+package com.malik12tree.bluetooth_print;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+
+/**
+ * Asks a printer about itself with {@code GS I} and picks the replies out of the bytes it sends back.
+ *
+ * <p>
+ * Each reply is {@code _} (0x5F), the text, then {@code NUL}, answering the requests in the order they were sent.
+ * 0x5F can't start a real-time status reply or be part of an automatic status packet, so while requests are pending
+ * replies are told apart from status bytes, which are passed on.
+ */
+final class ProfileProbe {
+
+    static final int FIRMWARE = 0x41;
+    static final int MANUFACTURER = 0x42;
+    static final int MODEL = 0x43;
+
+    private static final int[] QUERIES = { FIRMWARE, MANUFACTURER, MODEL };
+    private static final byte HEADER = 0x5F;
+    // Longer replies are not what was asked for.
+    private static final int MAX_REPLY = 80;
+    private static final Charset LATIN_1 = Charset.forName("ISO-8859-1");
+
+    private final ArrayDeque<Integer> pending = new ArrayDeque<>();
+    private final String[] answers = new String[QUERIES.length];
+    private final ByteArrayOutputStream reply = new ByteArrayOutputStream();
+    private boolean inReply;
+
+    /**
+     * Returns the requests and expects their replies.
+     */
+    synchronized byte[] request() {
+        pending.clear();
+        inReply = false;
+        byte[] request = new byte[QUERIES.length * 3];
+        for (int i = 0; i < QUERIES.length; i++) {
+            request[i * 3] = EscPos.GS;
+            request[i * 3 + 1] = 'I';
+            request[i * 3 + 2] = (byte) QUERIES[i];
+            pending.add(i);
+        }
+        return request;
+    }
+
+    synchronized boolean isPending() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Takes the replies out of bytes read from the printer.
+     *
+     * @return The other bytes; {@code data} itself if there were no replies in it.
+     */
+    synchronized byte[] filter(byte[] data) {
+        if (pending.isEmpty()) {
+            return data;
+        }
+
+        ByteArrayOutputStream rest = null;
+        for (int i = 0; i < data.length; i++) {
+            byte b = data[i];
+            boolean consumed = true;
+            if (inReply) {
+                if (b == 0) {
+                    answers[pending.poll()] = new String(reply.toByteArray(), LATIN_1).trim();
+                    reply.reset();
+                    inReply = false;
+                } else if (reply.size() < MAX_REPLY) {
+                    reply.write(b);
+                } else {
+                    // Not a reply after all; stop looking.
+                    pending.clear();
+                    reply.reset();
+                    inReply = false;
+                }
+            } else if (b == HEADER && !pending.isEmpty()) {
+                inReply = true;
+            } else {
+                consumed = false;
+            }
+
+            if (consumed && rest == null) {
+                rest = new ByteArrayOutputStream(data.length);
+                rest.write(data, 0, i);
+            } else if (!consumed && rest != null) {
+                rest.write(b);
+            }
+        }
+        return rest != null ? rest.toByteArray() : data;
+    }
+
+    /**
+     * Stops expecting replies; those missing by now never arrive.
+     */
+    synchronized void finish() {
+        pending.clear();
+        inReply = false;
+        reply.reset();
+    }
+
+    /**
+     * @return The reply to a query, or {@code null} if there was none.
+     */
+    synchronized String answer(int query) {
+        for (int i = 0; i < QUERIES.length; i++) {
+            if (QUERIES[i] == query) {
+                String answer = answers[i];
+                return answer == null || answer.isEmpty() ? null : answer;
+            }
+        }
+        return null;
+    }
+}
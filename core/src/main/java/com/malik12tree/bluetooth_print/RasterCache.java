@@ -0,0 +1,90 @@
+package com.malik12tree.bluetooth_print;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Byte-size bounded LRU cache of encoded raster commands, shared by all connections.
+ *
+ * Keys combine the image identity (content hash or caller supplied key) with every setting that changes the encoded
+ * output, so a hit can be copied into the job buffer as is.
+ */
+final class RasterCache {
+
+    static final int DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final int maxBytes;
+    private int bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    RasterCache(int maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    static String key(String imageId, int limitWidth, int headDots, int dpi, RasterEncoder.Dither dither) {
+        return imageId + '|' + limitWidth + '|' + headDots + '|' + dpi + '|' + dither.jsName;
+    }
+
+    synchronized byte[] get(String key) {
+        byte[] value = entries.get(key);
+        if (value == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return value;
+    }
+
+    synchronized void put(String key, byte[] value) {
+        if (value.length > maxBytes) {
+            return;
+        }
+
+        byte[] previous = entries.put(key, value);
+        if (previous != null) {
+            bytes -= previous.length;
+        }
+        bytes += value.length;
+
+        Iterator<Map.Entry<String, byte[]>> iterator = entries.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, byte[]> eldest = iterator.next();
+            bytes -= eldest.getValue().length;
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+
+    synchronized long evictions() {
+        return evictions;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized int bytes() {
+        return bytes;
+    }
+
+    int maxBytes() {
+        return maxBytes;
+    }
+}
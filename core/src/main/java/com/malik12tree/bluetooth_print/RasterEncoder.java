@@ -0,0 +1,187 @@
+package com.malik12tree.bluetooth_print;
+
+import java.util.Arrays;
+
+/**
+ * Converts 8-bit luminance rows into {@code GS v 0} raster bands.
+ *
+ * Rows can be fed in several calls; dithering error and the ordered-dither phase carry over between calls so an image
+ * encoded band by band is identical to one encoded in one go. Working arrays are kept between images.
+ */
+final class RasterEncoder {
+
+    enum Dither {
+        NONE("none"),
+        FLOYD_STEINBERG("floyd-steinberg"),
+        ATKINSON("atkinson"),
+        ORDERED("ordered");
+
+        final String jsName;
+
+        Dither(String jsName) {
+            this.jsName = jsName;
+        }
+
+        static Dither fromName(String name) {
+            for (Dither dither : values()) {
+                if (dither.jsName.equals(name)) {
+                    return dither;
+                }
+            }
+            return null;
+        }
+    }
+
+    // Rows per GS v 0 command. Small bands keep each command well inside cheap printers' input buffers.
+    static final int BAND_HEIGHT = 24;
+    static final int THRESHOLD = 128;
+    // Error rows are padded by two pixels on each side so diffusion never needs bounds checks.
+    private static final int PAD = 2;
+
+    private static final int[] BAYER_8X8 = {
+            0, 32, 8, 40, 2, 34, 10, 42,
+            48, 16, 56, 24, 50, 18, 58, 26,
+            12, 44, 4, 36, 14, 46, 6, 38,
+            60, 28, 52, 20, 62, 30, 54, 22,
+            3, 35, 11, 43, 1, 33, 9, 41,
+            51, 19, 59, 27, 49, 17, 57, 25,
+            15, 47, 7, 39, 13, 45, 5, 37,
+            63, 31, 55, 23, 61, 29, 53, 21,
+    };
+
+    private int width;
+    private Dither dither = Dither.NONE;
+    private int row;
+    private int[][] errors = new int[3][0];
+    private byte[] packedRow = new byte[0];
+
+    /**
+     * Prepares the encoder for a new image of the given width in dots.
+     */
+    void start(int width, Dither dither) {
+        this.width = width;
+        this.dither = dither == null ? Dither.NONE : dither;
+        this.row = 0;
+
+        int errorLength = width + PAD * 2;
+        for (int i = 0; i < errors.length; i++) {
+            if (errors[i].length < errorLength) {
+                errors[i] = new int[errorLength];
+            } else {
+                Arrays.fill(errors[i], 0, errorLength, 0);
+            }
+        }
+
+        int packedLength = bytesPerRow(width);
+        if (packedRow.length < packedLength) {
+            packedRow = new byte[packedLength];
+        }
+    }
+
+    /**
+     * Encodes {@code rows} rows of luminance (0 = black, 255 = white) starting at {@code offset} as a single
+     * {@code GS v 0} command.
+     */
+    void encodeBand(byte[] luminance, int offset, int rows, EscBuffer out) {
+        int rowBytes = bytesPerRow(width);
+        out.write(EscPos.GS, (byte) 0x76, 0x30);
+        out.write((byte) 0);
+        out.write((byte) (rowBytes & 0xff));
+        out.write((byte) ((rowBytes >> 8) & 0xff));
+        out.write((byte) (rows & 0xff));
+        out.write((byte) ((rows >> 8) & 0xff));
+
+        for (int y = 0; y < rows; y++) {
+            encodeRow(luminance, offset + y * width);
+            out.write(packedRow, 0, rowBytes);
+            row++;
+        }
+    }
+
+    /**
+     * Encodes a whole image, splitting it into {@link #BAND_HEIGHT} row bands.
+     */
+    void encode(byte[] luminance, int width, int height, Dither dither, EscBuffer out) {
+        start(width, dither);
+        for (int top = 0; top < height; top += BAND_HEIGHT) {
+            encodeBand(luminance, top * width, Math.min(BAND_HEIGHT, height - top), out);
+        }
+    }
+
+    static int bytesPerRow(int width) {
+        return (width + 7) >> 3;
+    }
+
+    private void encodeRow(byte[] luminance, int offset) {
+        Arrays.fill(packedRow, 0, bytesPerRow(width), (byte) 0);
+
+        switch (dither) {
+            case FLOYD_STEINBERG:
+                diffuseRow(luminance, offset, 4);
+                break;
+            case ATKINSON:
+                diffuseRow(luminance, offset, 3);
+                break;
+            case ORDERED: {
+                int matrixRow = (row & 7) << 3;
+                for (int x = 0; x < width; x++) {
+                    int threshold = (BAYER_8X8[matrixRow + (x & 7)] << 2) + 2;
+                    if ((luminance[offset + x] & 0xff) < threshold) {
+                        setBlack(x);
+                    }
+                }
+                break;
+            }
+            default:
+                for (int x = 0; x < width; x++) {
+                    if ((luminance[offset + x] & 0xff) < THRESHOLD) {
+                        setBlack(x);
+                    }
+                }
+                break;
+        }
+    }
+
+    /**
+     * Error diffusion over three rotating error rows. Errors are stored scaled by {@code 1 << shift}: 16 for
+     * Floyd-Steinberg, 8 for Atkinson.
+     */
+    private void diffuseRow(byte[] luminance, int offset, int shift) {
+        int[] current = errors[row % 3];
+        int[] next = errors[(row + 1) % 3];
+        int[] afterNext = errors[(row + 2) % 3];
+        boolean atkinson = shift == 3;
+
+        for (int x = 0; x < width; x++) {
+            int i = x + PAD;
+            int value = (luminance[offset + x] & 0xff) + (current[i] >> shift);
+            int error;
+            if (value < THRESHOLD) {
+                setBlack(x);
+                error = value;
+            } else {
+                error = value - 255;
+            }
+
+            if (atkinson) {
+                current[i + 1] += error;
+                current[i + 2] += error;
+                next[i - 1] += error;
+                next[i] += error;
+                next[i + 1] += error;
+                afterNext[i] += error;
+            } else {
+                current[i + 1] += error * 7;
+                next[i - 1] += error * 3;
+                next[i] += error * 5;
+                next[i + 1] += error;
+            }
+        }
+
+        Arrays.fill(current, 0);
+    }
+
+    private void setBlack(int x) {
+        packedRow[x >> 3] |= (byte) (0x80 >> (x & 7));
+    }
+}
@@ -0,0 +1,128 @@
+package com.malik12tree.bluetooth_print;
+
+import java.util.ArrayList;
+import java.util.Locale;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * A receipt compiled once into fixed ESC/POS segments with named slots between them. Printing only encodes the slot
+ * values: text slots are plain encoded text, since their formatting commands are already part of the preceding
+ * segment, while QR code and barcode slots are encoded with the settings that were active where they appeared.
+ */
+final class ReceiptTemplate {
+
+    // Compiled templates kept per connection; the least recently printed one is dropped first.
+    static final int MAX_TEMPLATES = 32;
+
+    static final class Slot {
+        final String name;
+        // Null for text slots.
+        final BarcodeEncoder barcode;
+        // Fraction digits of numeric values, -1 to print them as given.
+        final int decimals;
+
+        private Slot(String name, BarcodeEncoder barcode, int decimals) {
+            this.name = name;
+            this.barcode = barcode;
+            this.decimals = decimals;
+        }
+
+        static Slot text(String name, int decimals) {
+            return new Slot(name, null, decimals);
+        }
+
+        /**
+         * @param barcode Encodes with a snapshot of the barcode settings where the slot appeared.
+         */
+        static Slot barcode(String name, BarcodeEncoder barcode) {
+            return new Slot(name, barcode, -1);
+        }
+
+        void write(Object value, TextEncoder textEncoder, EscBuffer out) {
+            String text = value instanceof Number && decimals >= 0
+                    ? String.format(Locale.ROOT, "%." + decimals + "f", ((Number) value).doubleValue())
+                    : String.valueOf(value);
+
+            if (barcode == null) {
+                textEncoder.write(text, out);
+                return;
+            }
+
+            try {
+                out.write(barcode.encode(text));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid barcode data for slot: " + name);
+            }
+        }
+    }
+
+    static final class Builder {
+        private final String encoding;
+        private final JSONArray operations;
+        private final ArrayList<byte[]> segments = new ArrayList<>();
+        private final ArrayList<Slot> slots = new ArrayList<>();
+
+        Builder(String encoding, JSONArray operations) {
+            this.encoding = encoding;
+            this.operations = operations;
+        }
+
+        Builder add(byte[] segment, Slot slot) {
+            segments.add(segment);
+            slots.add(slot);
+            return this;
+        }
+
+        ReceiptTemplate build(byte[] tail) {
+            segments.add(tail);
+            return new ReceiptTemplate(encoding, operations, segments.toArray(new byte[0][]),
+                    slots.toArray(new Slot[0]));
+        }
+    }
+
+    /** Encoding of the connection when the template was compiled. */
+    final String encoding;
+    /** Source operations, kept to compile the template again for another encoding. */
+    final JSONArray operations;
+    private final byte[][] segments;
+    private final Slot[] slots;
+
+    private ReceiptTemplate(String encoding, JSONArray operations, byte[][] segments, Slot[] slots) {
+        this.encoding = encoding;
+        this.operations = operations;
+        this.segments = segments;
+        this.slots = slots;
+    }
+
+    Slot[] slots() {
+        return slots.clone();
+    }
+
+    int fixedSize() {
+        int size = 0;
+        for (byte[] segment : segments) {
+            size += segment.length;
+        }
+        return size;
+    }
+
+    /**
+     * Appends the receipt with the given slot values. The text encoder must use the encoding of the template.
+     *
+     * @throws IllegalArgumentException If a value is missing or can't be encoded.
+     */
+    void render(JSONObject values, TextEncoder textEncoder, EscBuffer out) {
+        for (int i = 0; i < slots.length; i++) {
+            out.write(segments[i]);
+
+            Slot slot = slots[i];
+            Object value = values.opt(slot.name);
+            if (value == null || value == JSONObject.NULL) {
+                throw new IllegalArgumentException("Missing value for slot: " + slot.name);
+            }
+            slot.write(value, textEncoder, out);
+        }
+        out.write(segments[slots.length]);
+    }
+}
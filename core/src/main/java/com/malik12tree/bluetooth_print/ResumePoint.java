@@ -0,0 +1,173 @@
+package com.malik12tree.bluetooth_print;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Where an interrupted job can continue: the last line feed, raster band, paper feed or cut before a given offset,
+ * along with the commands that restore the formatting in effect there.
+ *
+ * <p>
+ * Found by walking the job's ESC/POS commands. Encoded text can't be mistaken for a command, since no supported
+ * encoding puts bytes below {@code 0x40} inside a multi-byte character. An unknown command ends the walk, as nothing
+ * after it can be parsed reliably.
+ */
+final class ResumePoint {
+
+    final int offset;
+    // ESC @ followed by the formatting commands in effect at the offset.
+    final byte[] prefix;
+
+    private ResumePoint(int offset, byte[] prefix) {
+        this.offset = offset;
+        this.prefix = prefix;
+    }
+
+    /**
+     * @param limit Bytes known to have reached the printer.
+     * @return {@code null} if there is no safe point past the start of the job.
+     */
+    static ResumePoint find(byte[] job, long limit) {
+        int end = (int) Math.min(limit, job.length);
+        int offset = scan(job, end, null);
+        if (offset == 0) {
+            return null;
+        }
+
+        LinkedHashMap<Integer, byte[]> state = new LinkedHashMap<>();
+        scan(job, offset, state);
+        ByteArrayOutputStream prefix = new ByteArrayOutputStream();
+        prefix.write(EscPos.INIT, 0, EscPos.INIT.length);
+        for (byte[] command : state.values()) {
+            prefix.write(command, 0, command.length);
+        }
+        return new ResumePoint(offset, prefix.toByteArray());
+    }
+
+    /**
+     * Walks the commands before {@code end}, collecting the formatting commands into {@code state} if given.
+     *
+     * @return Offset right after the last safe point.
+     */
+    private static int scan(byte[] job, int end, Map<Integer, byte[]> state) {
+        int safe = 0;
+        int i = 0;
+        while (i < end) {
+            byte b = job[i];
+            int length = EscPos.isCommand(b) ? EscPos.commandLength(job, i, job.length) : 1;
+            if (length < 0 || i + length > end) {
+                break;
+            }
+
+            if (state != null) {
+                track(job, i, length, state);
+            }
+            boolean boundary = isBoundary(job, i);
+            i += length;
+            if (boundary) {
+                safe = i;
+            }
+        }
+        return safe;
+    }
+
+    private static boolean isBoundary(byte[] job, int i) {
+        byte b = job[i];
+        if (b == EscPos.LF) {
+            return true;
+        }
+        if (i + 1 >= job.length) {
+            return false;
+        }
+
+        byte command = job[i + 1];
+        if (b == EscPos.ESC) {
+            // Feeds and cuts
+            return command == 'J' || command == 'd' || command == 'i' || command == 'm';
+        }
+        // Raster bands and cuts
+        return b == EscPos.GS && (command == 'v' || command == 'V');
+    }
+
+    /**
+     * Records formatting commands under a key shared by commands that override each other. {@code ESC @} forgets
+     * everything before it.
+     */
+    private static void track(byte[] job, int i, int length, Map<Integer, byte[]> state) {
+        if (length < 2) {
+            return;
+        }
+
+        byte prefix = job[i];
+        byte command = job[i + 1];
+        if (prefix == EscPos.ESC && command == '@') {
+            state.clear();
+            return;
+        }
+
+        int key;
+        if (prefix == EscPos.ESC) {
+            switch (command) {
+                case '2':
+                case '3':
+                    key = '3';
+                    break;
+                case ' ':
+                case '!':
+                case '-':
+                case '9':
+                case 'E':
+                case 'G':
+                case 'M':
+                case 'R':
+                case 'V':
+                case 'a':
+                case 't':
+                case '{':
+                    key = command;
+                    break;
+                default:
+                    return;
+            }
+        } else if (prefix == EscPos.GS) {
+            switch (command) {
+                case '!':
+                case 'B':
+                case 'H':
+                case 'L':
+                case 'W':
+                case 'f':
+                case 'h':
+                case 'w':
+                    key = command;
+                    break;
+                default:
+                    return;
+            }
+        } else if (prefix == EscPos.FS) {
+            switch (command) {
+                // Entering and leaving Chinese character mode
+                case '&':
+                case '.':
+                    key = '&';
+                    break;
+                case '!':
+                case '-':
+                case 'W':
+                    key = command;
+                    break;
+                default:
+                    return;
+            }
+        } else {
+            return;
+        }
+
+        key |= (prefix & 0xFF) << 8;
+        // Re-inserted so the prefix replays commands in the order they were last given.
+        state.remove(key);
+        state.put(key, Arrays.copyOfRange(job, i, i + length));
+    }
+}
@@ -0,0 +1,191 @@
+package com.malik12tree.bluetooth_print;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+/**
+ * Tracks what a printer reports about itself, from replies to real-time status requests ({@code DLE EOT n}) and
+ * from automatic status back packets ({@code GS a}). Also gates the connection's writer so no bytes are sent while the
+ * printer can't print.
+ *
+ * <p>
+ * Real-time replies are single bytes shaped {@code 0xx1xx10} that don't say which request they answer, so requests
+ * are matched in the order they were sent. Automatic status back packets are 4 bytes and start with {@code 0xx1xx00}.
+ */
+final class StatusMonitor implements ConnectionWriter.Gate {
+
+    static final byte DLE = 0x10;
+    static final byte EOT = 0x04;
+
+    /** Enables automatic status back for drawer, online/offline, error and paper sensor changes. */
+    static final byte[] ENABLE_AUTO_STATUS = { EscPos.GS, 0x61, 0x0F };
+
+    private static final int PRINTER_STATUS = 1;
+    private static final int OFFLINE_STATUS = 2;
+    private static final int ERROR_STATUS = 3;
+    private static final int PAPER_STATUS = 4;
+
+    private final ArrayDeque<Integer> pendingRequests = new ArrayDeque<>();
+    private final byte[] packet = new byte[4];
+    private int packetLength;
+
+    private boolean known;
+    private boolean offline;
+    private boolean coverOpen;
+    private boolean paperOut;
+    private boolean paperNearEnd;
+    private boolean error;
+    private boolean drawerOpen;
+    private long updatedAt;
+
+    static final class Snapshot {
+        /** False until the printer has answered at least once; some printers never do. */
+        final boolean known;
+        final boolean offline;
+        final boolean coverOpen;
+        final boolean paperOut;
+        final boolean paperNearEnd;
+        final boolean error;
+        final boolean drawerOpen;
+        final long updatedAt;
+
+        Snapshot(StatusMonitor monitor) {
+            this.known = monitor.known;
+            this.offline = monitor.offline;
+            this.coverOpen = monitor.coverOpen;
+            this.paperOut = monitor.paperOut;
+            this.paperNearEnd = monitor.paperNearEnd;
+            this.error = monitor.error;
+            this.drawerOpen = monitor.drawerOpen;
+            this.updatedAt = monitor.updatedAt;
+        }
+
+        boolean canPrint() {
+            return !offline && !coverOpen && !paperOut && !error;
+        }
+    }
+
+    /**
+     * Returns the requests for all real-time statuses and expects their replies. Replies still missing from earlier
+     * requests are considered lost.
+     */
+    synchronized byte[] statusRequest() {
+        pendingRequests.clear();
+        byte[] request = new byte[12];
+        for (int n = PRINTER_STATUS; n <= PAPER_STATUS; n++) {
+            int offset = (n - 1) * 3;
+            request[offset] = DLE;
+            request[offset + 1] = EOT;
+            request[offset + 2] = (byte) n;
+            pendingRequests.add(n);
+        }
+        return request;
+    }
+
+    /**
+     * Waits until every reply to the last {@link #statusRequest()} has arrived.
+     *
+     * @return {@code false} on timeout.
+     */
+    synchronized boolean awaitReplies(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (!pendingRequests.isEmpty()) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Parses bytes read from the printer.
+     *
+     * @return {@code true} if the status changed.
+     */
+    synchronized boolean feed(byte[] data) {
+        Snapshot before = new Snapshot(this);
+        for (byte b : data) {
+            if (packetLength > 0) {
+                packet[packetLength++] = b;
+                if (packetLength == packet.length) {
+                    applyAutoStatus();
+                    packetLength = 0;
+                }
+            } else if ((b & 0x93) == 0x12 && !pendingRequests.isEmpty()) {
+                applyReply(pendingRequests.poll(), b);
+            } else if ((b & 0x93) == 0x10) {
+                packet[packetLength++] = b;
+            }
+        }
+
+        if (pendingRequests.isEmpty()) {
+            notifyAll();
+        }
+        return changed(before);
+    }
+
+    synchronized Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    @Override
+    public synchronized boolean isReady() {
+        return !known || new Snapshot(this).canPrint();
+    }
+
+    @Override
+    public void whilePaused(ConnectionWriter.Output output) throws IOException {
+        output.write(statusRequest());
+    }
+
+    private void applyReply(int request, byte b) {
+        switch (request) {
+            case PRINTER_STATUS:
+                drawerOpen = (b & 0x04) != 0;
+                offline = (b & 0x08) != 0;
+                break;
+            case OFFLINE_STATUS:
+                coverOpen = (b & 0x04) != 0;
+                paperOut = (b & 0x20) != 0;
+                error = (b & 0x40) != 0;
+                break;
+            case ERROR_STATUS:
+                error = (b & 0x68) != 0;
+                break;
+            case PAPER_STATUS:
+                paperNearEnd = (b & 0x0C) != 0;
+                paperOut = (b & 0x60) != 0;
+                break;
+            default:
+                return;
+        }
+        touch();
+    }
+
+    private void applyAutoStatus() {
+        drawerOpen = (packet[0] & 0x04) != 0;
+        offline = (packet[0] & 0x08) != 0;
+        coverOpen = (packet[0] & 0x20) != 0;
+        error = (packet[1] & 0x6C) != 0;
+        paperNearEnd = (packet[2] & 0x03) != 0;
+        paperOut = (packet[2] & 0x0C) != 0;
+        touch();
+    }
+
+    private void touch() {
+        known = true;
+        updatedAt = System.currentTimeMillis();
+    }
+
+    private boolean changed(Snapshot before) {
+        return before.known != known
+                || before.offline != offline
+                || before.coverOpen != coverOpen
+                || before.paperOut != paperOut
+                || before.paperNearEnd != paperNearEnd
+                || before.error != error
+                || before.drawerOpen != drawerOpen;
+    }
+}
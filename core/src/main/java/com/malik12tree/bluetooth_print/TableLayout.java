@@ -0,0 +1,303 @@
+package com.malik12tree.bluetooth_print;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Lays out rows of cells into fixed-width text lines. Widths are counted in character cells: CJK and other
+ * full-width characters take two cells when printed with a multi-byte encoding, everything else takes one.
+ */
+final class TableLayout {
+
+    static final int ALIGN_LEFT = 0;
+    static final int ALIGN_CENTER = 1;
+    static final int ALIGN_RIGHT = 2;
+
+    static final class Column {
+        final int width;
+        final int align;
+        // Wraps overflowing cells onto more lines, truncates them otherwise.
+        final boolean wrap;
+
+        Column(int width, int align, boolean wrap) {
+            this.width = width;
+            this.align = align;
+            this.wrap = wrap;
+        }
+    }
+
+    private final Column[] columns;
+    private final int gap;
+    private final boolean wideCjk;
+
+    TableLayout(Column[] columns, int gap, boolean wideCjk) {
+        this.columns = columns;
+        this.gap = gap;
+        this.wideCjk = wideCjk;
+    }
+
+    /**
+     * Resolves column widths against the line width. Columns are given in characters, as a percentage of the line
+     * ({@code "50%"}) or without a width, in which case they share what is left.
+     *
+     * @throws IllegalArgumentException If a column is invalid or the columns don't fit on a line.
+     */
+    static Column[] columns(JSONArray specs, int lineWidth, int gap) {
+        int count = specs.length();
+        if (count == 0) {
+            throw new IllegalArgumentException("Please provide columns!");
+        }
+
+        int available = lineWidth - gap * (count - 1);
+        int[] widths = new int[count];
+        int used = 0;
+        int flexible = 0;
+        for (int i = 0; i < count; i++) {
+            JSONObject spec = specs.optJSONObject(i);
+            Object width = spec != null ? spec.opt("width") : null;
+            if (width == null || width == JSONObject.NULL) {
+                flexible++;
+                continue;
+            }
+
+            if (width instanceof Number) {
+                widths[i] = ((Number) width).intValue();
+            } else if (width instanceof String && ((String) width).endsWith("%")) {
+                String percent = (String) width;
+                try {
+                    widths[i] = (int) (available * Double.parseDouble(percent.substring(0, percent.length() - 1)) / 100);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid width of column " + i);
+                }
+            } else {
+                throw new IllegalArgumentException("Invalid width of column " + i);
+            }
+
+            if (widths[i] < 1) {
+                throw new IllegalArgumentException("Invalid width of column " + i);
+            }
+            used += widths[i];
+        }
+
+        int remaining = available - used;
+        if (remaining < flexible || (flexible == 0 && remaining < 0)) {
+            throw new IllegalArgumentException("Columns don't fit in a line of " + lineWidth + " characters");
+        }
+
+        // Flexible columns share the rest of the line, the first ones getting a character more if it doesn't divide.
+        int share = flexible > 0 ? remaining / flexible : 0;
+        int extra = flexible > 0 ? remaining % flexible : 0;
+        Column[] columns = new Column[count];
+        for (int i = 0; i < count; i++) {
+            JSONObject spec = specs.optJSONObject(i);
+            int width = widths[i];
+            if (width == 0) {
+                width = share + (extra-- > 0 ? 1 : 0);
+            }
+
+            String align = spec != null ? spec.optString("align", "left") : "left";
+            String overflow = spec != null ? spec.optString("overflow", "wrap") : "wrap";
+            columns[i] = new Column(width, parseAlign(align, i), parseOverflow(overflow, i));
+        }
+        return columns;
+    }
+
+    private static int parseAlign(String align, int column) {
+        switch (align) {
+            case "left":
+                return ALIGN_LEFT;
+            case "center":
+                return ALIGN_CENTER;
+            case "right":
+                return ALIGN_RIGHT;
+            default:
+                throw new IllegalArgumentException("Invalid alignment of column " + column);
+        }
+    }
+
+    private static boolean parseOverflow(String overflow, int column) {
+        switch (overflow) {
+            case "wrap":
+                return true;
+            case "truncate":
+                return false;
+            default:
+                throw new IllegalArgumentException("Invalid overflow of column " + column);
+        }
+    }
+
+    /**
+     * Appends the lines of all rows, each ending with a line feed.
+     *
+     * @throws IllegalArgumentException If a row is not an array.
+     */
+    void layout(JSONArray rows, StringBuilder out) {
+        ArrayList<List<String>> cells = new ArrayList<>(columns.length);
+        for (int r = 0; r < rows.length(); r++) {
+            JSONArray row = rows.optJSONArray(r);
+            if (row == null) {
+                throw new IllegalArgumentException("Invalid row " + r);
+            }
+
+            cells.clear();
+            int height = 1;
+            for (int c = 0; c < columns.length; c++) {
+                Object value = row.opt(c);
+                String text = value == null || value == JSONObject.NULL ? "" : String.valueOf(value);
+                List<String> lines = split(text, columns[c]);
+                cells.add(lines);
+                height = Math.max(height, lines.size());
+            }
+
+            for (int line = 0; line < height; line++) {
+                int start = out.length();
+                for (int c = 0; c < columns.length; c++) {
+                    if (c > 0) {
+                        pad(out, gap);
+                    }
+                    List<String> lines = cells.get(c);
+                    append(out, line < lines.size() ? lines.get(line) : "", columns[c]);
+                }
+
+                int end = out.length();
+                while (end > start && out.charAt(end - 1) == ' ') {
+                    end--;
+                }
+                out.setLength(end);
+                out.append('\n');
+            }
+        }
+    }
+
+    private List<String> split(String text, Column column) {
+        ArrayList<String> lines = new ArrayList<>(1);
+        if (!column.wrap) {
+            int lineEnd = text.indexOf('\n');
+            lines.add(cut(lineEnd == -1 ? text : text.substring(0, lineEnd), column.width));
+            return lines;
+        }
+
+        for (String paragraph : text.split("\n", -1)) {
+            wrap(paragraph, column.width, lines);
+        }
+        return lines;
+    }
+
+    /**
+     * Greedy word wrap; words wider than the column are broken wherever they overflow.
+     */
+    private void wrap(String text, int width, List<String> lines) {
+        int firstLine = lines.size();
+        StringBuilder line = new StringBuilder();
+        int lineWidth = 0;
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            int wordEnd = i;
+            int wordWidth = 0;
+            while (wordEnd < length && text.charAt(wordEnd) != ' ') {
+                int codePoint = text.codePointAt(wordEnd);
+                wordWidth += cellWidth(codePoint);
+                wordEnd += Character.charCount(codePoint);
+            }
+
+            int needed = lineWidth == 0 ? wordWidth : lineWidth + 1 + wordWidth;
+            if (needed <= width) {
+                if (lineWidth > 0) {
+                    line.append(' ');
+                }
+                line.append(text, i, wordEnd);
+                lineWidth = needed;
+            } else {
+                if (lineWidth > 0) {
+                    lines.add(line.toString());
+                    line.setLength(0);
+                    lineWidth = 0;
+                }
+
+                for (int j = i; j < wordEnd;) {
+                    int codePoint = text.codePointAt(j);
+                    int cell = cellWidth(codePoint);
+                    if (lineWidth + cell > width && lineWidth > 0) {
+                        lines.add(line.toString());
+                        line.setLength(0);
+                        lineWidth = 0;
+                    }
+                    line.appendCodePoint(codePoint);
+                    lineWidth += cell;
+                    j += Character.charCount(codePoint);
+                }
+            }
+
+            i = wordEnd;
+            while (i < length && text.charAt(i) == ' ') {
+                i++;
+            }
+        }
+
+        if (lineWidth > 0 || lines.size() == firstLine) {
+            lines.add(line.toString());
+        }
+    }
+
+    private String cut(String text, int width) {
+        int used = 0;
+        for (int i = 0; i < text.length();) {
+            int codePoint = text.codePointAt(i);
+            used += cellWidth(codePoint);
+            if (used > width) {
+                return text.substring(0, i);
+            }
+            i += Character.charCount(codePoint);
+        }
+        return text;
+    }
+
+    private void append(StringBuilder out, String text, Column column) {
+        int space = column.width - displayWidth(text);
+        int before = column.align == ALIGN_RIGHT ? space : column.align == ALIGN_CENTER ? space / 2 : 0;
+        pad(out, before);
+        out.append(text);
+        pad(out, space - before);
+    }
+
+    private static void pad(StringBuilder out, int count) {
+        for (int i = 0; i < count; i++) {
+            out.append(' ');
+        }
+    }
+
+    int displayWidth(String text) {
+        int width = 0;
+        for (int i = 0; i < text.length();) {
+            int codePoint = text.codePointAt(i);
+            width += cellWidth(codePoint);
+            i += Character.charCount(codePoint);
+        }
+        return width;
+    }
+
+    private int cellWidth(int codePoint) {
+        return wideCjk && isWide(codePoint) ? 2 : 1;
+    }
+
+    /**
+     * East Asian wide and full-width ranges, which printers render as double-byte characters.
+     */
+    private static boolean isWide(int c) {
+        return (c >= 0x1100 && c <= 0x115F)
+                || (c >= 0x2E80 && c <= 0x303E)
+                || (c >= 0x3041 && c <= 0x33FF)
+                || (c >= 0x3400 && c <= 0x4DBF)
+                || (c >= 0x4E00 && c <= 0x9FFF)
+                || (c >= 0xA000 && c <= 0xA4CF)
+                || (c >= 0xAC00 && c <= 0xD7A3)
+                || (c >= 0xF900 && c <= 0xFAFF)
+                || (c >= 0xFE30 && c <= 0xFE4F)
+                || (c >= 0xFF00 && c <= 0xFF60)
+                || (c >= 0xFFE0 && c <= 0xFFE6)
+                || (c >= 0x20000 && c <= 0x3FFFD);
+    }
+}
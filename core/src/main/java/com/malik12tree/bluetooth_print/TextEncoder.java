@@ -0,0 +1,221 @@
+package com.malik12tree.bluetooth_print;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Encodes text for a single connection. The formatting prefix is only rebuilt after the text settings change, pure
+ * ASCII strings are copied without going through the charset, and other strings reuse one encoder and output buffer.
+ *
+ * <p>
+ * Every text command selects its code page: multi-byte encodings through {@code ESC 9 n} like the SDK does, single-byte
+ * code pages by leaving Chinese character mode ({@code FS .}) and selecting the table with {@code ESC t n}.
+ */
+final class TextEncoder {
+
+    static final String DEFAULT_ENCODING = "GBK";
+
+    private static final byte FS = 0x1C;
+    // FS & / FS . - Enter and leave Chinese character mode
+    private static final byte[] CHINESE_MODE = { FS, 0x26 };
+    private static final byte[] SINGLE_BYTE_MODE = { FS, 0x2E };
+    private static final byte SELECT_CHINESE_CODE = 0x39;
+    private static final byte SELECT_CODE_TABLE = 0x74;
+
+    private static final int INITIAL_OUTPUT_CAPACITY = 256;
+
+    static final class CodePage {
+        final String name;
+        final String charset;
+        // ESC 9 n for multi-byte encodings, ESC t n otherwise.
+        final int selector;
+        final boolean multiByte;
+
+        CodePage(String name, String charset, int selector, boolean multiByte) {
+            this.name = name;
+            this.charset = charset;
+            this.selector = selector;
+            this.multiByte = multiByte;
+        }
+    }
+
+    private static final Map<String, CodePage> CODE_PAGES = new LinkedHashMap<>();
+
+    static {
+        // Chinese code systems as numbered by ESC 9 on Rongta printers.
+        add(new CodePage("GBK", "GBK", 0, true));
+        add(new CodePage("UTF-8", "UTF-8", 1, true));
+        add(new CodePage("Big5", "Big5", 3, true));
+        add(new CodePage("Shift_JIS", "Shift_JIS", 4, true));
+        // Character code tables as numbered by ESC t on Epson compatible printers.
+        add(new CodePage("CP437", "IBM437", 0, false));
+        add(new CodePage("CP850", "IBM850", 2, false));
+        add(new CodePage("CP860", "IBM860", 3, false));
+        add(new CodePage("CP863", "IBM863", 4, false));
+        add(new CodePage("CP865", "IBM865", 5, false));
+        add(new CodePage("CP1252", "windows-1252", 16, false));
+        add(new CodePage("CP866", "IBM866", 17, false));
+        add(new CodePage("CP852", "IBM852", 18, false));
+        add(new CodePage("CP858", "IBM00858", 19, false));
+        add(new CodePage("CP1250", "windows-1250", 45, false));
+        add(new CodePage("CP1251", "windows-1251", 46, false));
+        add(new CodePage("CP1253", "windows-1253", 47, false));
+        add(new CodePage("CP1254", "windows-1254", 48, false));
+        add(new CodePage("CP1257", "windows-1257", 51, false));
+    }
+
+    private static void add(CodePage codePage) {
+        CODE_PAGES.put(codePage.name, codePage);
+    }
+
+    private CodePage codePage;
+    private CharsetEncoder encoder;
+    private ByteBuffer output = ByteBuffer.allocate(INITIAL_OUTPUT_CAPACITY);
+    // Set once FS . was written since the last ESC @, after which multi-byte encodings re-enter Chinese character mode.
+    private boolean leftChineseMode;
+
+    private TextFormat prefixFormat;
+    private byte[] prefix;
+
+    TextEncoder() {
+        setEncoding(DEFAULT_ENCODING);
+    }
+
+    /**
+     * @throws IllegalArgumentException If the encoding is unknown or the device lacks its charset.
+     */
+    static CodePage codePage(String encoding) {
+        CodePage codePage = encoding != null ? CODE_PAGES.get(encoding) : null;
+        if (codePage == null) {
+            StringBuilder names = new StringBuilder();
+            for (String name : CODE_PAGES.keySet()) {
+                names.append(names.length() > 0 ? ", " : "").append(name);
+            }
+            throw new IllegalArgumentException("Invalid encoding. Use one of: " + names + ".");
+        }
+        return codePage;
+    }
+
+    String encoding() {
+        return codePage.name;
+    }
+
+    boolean multiByte() {
+        return codePage.multiByte;
+    }
+
+    /**
+     * @throws IllegalArgumentException If the encoding is unknown or the device lacks its charset.
+     */
+    void setEncoding(String encoding) {
+        CodePage codePage = codePage(encoding);
+        if (codePage == this.codePage) {
+            return;
+        }
+
+        CharsetEncoder encoder;
+        try {
+            encoder = Charset.forName(codePage.charset)
+                    .newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported encoding: " + encoding);
+        }
+
+        this.codePage = codePage;
+        this.encoder = encoder;
+    }
+
+    /**
+     * Must be called whenever the output starts over with {@link EscPos#INIT}, which puts the printer back in its
+     * default character mode.
+     */
+    void reset() {
+        leftChineseMode = false;
+        prefix = null;
+    }
+
+    /**
+     * Whether the output left Chinese character mode since the last {@link #reset()}; saved and restored together
+     * with the output it describes.
+     */
+    boolean leftChineseMode() {
+        return leftChineseMode;
+    }
+
+    void setLeftChineseMode(boolean leftChineseMode) {
+        this.leftChineseMode = leftChineseMode;
+    }
+
+    /**
+     * Must be called after the current text format was modified.
+     */
+    void invalidate() {
+        prefix = null;
+    }
+
+    /**
+     * Writes the formatting and code page selection that precede text.
+     */
+    void writePrefix(TextFormat format, EscBuffer out) {
+        if (prefix == null || format != prefixFormat) {
+            prefix = format.commands();
+            prefixFormat = format;
+        }
+
+        out.write(prefix);
+        if (codePage.multiByte) {
+            if (leftChineseMode) {
+                out.write(CHINESE_MODE);
+            }
+            out.write(EscPos.ESC, SELECT_CHINESE_CODE, codePage.selector);
+        } else {
+            out.write(SINGLE_BYTE_MODE);
+            out.write(EscPos.ESC, SELECT_CODE_TABLE, codePage.selector);
+            leftChineseMode = true;
+        }
+    }
+
+    /**
+     * Writes a text command: the prefix followed by the encoded text. Characters missing from the code page are
+     * printed as {@code ?}.
+     */
+    void writeText(TextFormat format, String text, EscBuffer out) {
+        writePrefix(format, out);
+        write(text, out);
+    }
+
+    /**
+     * Writes the encoded text alone, for text that follows a prefix written earlier.
+     */
+    void write(String text, EscBuffer out) {
+        // Every supported encoding maps ASCII to itself.
+        if (out.writeAscii(text)) {
+            return;
+        }
+
+        CharBuffer input = CharBuffer.wrap(text);
+        encoder.reset();
+        output.clear();
+        while (encoder.encode(input, output, true).isOverflow()) {
+            grow();
+        }
+        while (encoder.flush(output).isOverflow()) {
+            grow();
+        }
+        out.write(output.array(), 0, output.position());
+    }
+
+    private void grow() {
+        ByteBuffer grown = ByteBuffer.allocate(output.capacity() << 1);
+        output.flip();
+        grown.put(output);
+        output = grown;
+    }
+}
@@ -0,0 +1,13 @@
+package com.malik12tree.bluetooth_print;
+
+/**
+ * The formatting in effect for text, such as bold or double size, as ESC/POS commands.
+ */
+interface TextFormat {
+
+    /**
+     * Returns the commands that select this formatting, without any code page selection. Only called again after
+     * {@link TextEncoder#invalidate()} or for another instance.
+     */
+    byte[] commands();
+}
@@ -0,0 +1,489 @@
+package com.malik12tree.bluetooth_print;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A simulated ESC/POS printer to test and measure the whole printing path without hardware.
+ *
+ * <p>
+ * Received bytes wait in an input buffer of fixed size until a print engine thread has printed them, at a paper
+ * speed derived from the commands' feed: text lines, feeds, raster bands, barcodes and cuts. Senders are held back
+ * while the buffer is full, like flow control on a real link. Real-time status requests ({@code DLE EOT n}) and
+ * printer information queries ({@code GS I}) are answered as soon as they arrive, and automatic status back
+ * ({@code GS a}) reports status changes once enabled.
+ * Printing stops while the paper is out or the cover is open.
+ */
+final class VirtualPrinter {
+
+    static final int DEFAULT_BUFFER_SIZE = 4096;
+    // Typical of 58 mm and 80 mm mobile printers.
+    static final double DEFAULT_PRINT_SPEED = 80;
+    // 203 dpi
+    static final int DOTS_PER_MM = 8;
+
+    private static final int DEFAULT_LINE_SPACING = 30;
+    private static final int DEFAULT_BARCODE_HEIGHT = 162;
+    private static final int DEFAULT_QR_MODULE_SIZE = 3;
+    // Modules of a version 3 QR code with its quiet zone; the real size depends on the data.
+    private static final int QR_MODULES = 37;
+    // Time of a cut at 80 mm/s, scaled with the print speed.
+    private static final long CUT_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    // Commands up to this size are collected whole, longer ones only up to their header.
+    private static final int MAX_COMMAND_SIZE = 64;
+
+    interface Listener {
+        /**
+         * Bytes the printer sends back, delivered on the print engine thread.
+         */
+        void onReply(byte[] data);
+    }
+
+    /** Received bytes printed together, ending with the command that moves the paper or cuts it. */
+    private static final class Segment {
+        final int bytes;
+        final int dots;
+        final boolean cut;
+        long nanosLeft;
+
+        Segment(int bytes, int dots, long nanos, boolean cut) {
+            this.bytes = bytes;
+            this.dots = dots;
+            this.nanosLeft = nanos;
+            this.cut = cut;
+        }
+    }
+
+    private final int bufferSize;
+    private final double printSpeed;
+    private final Thread engine;
+    private volatile Listener listener;
+
+    // Guarded by this
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final ArrayDeque<byte[]> replies = new ArrayDeque<>();
+    private int buffered;
+    private boolean closed;
+    private boolean paperOut;
+    private boolean coverOpen;
+    private boolean autoStatus;
+    private long bytesReceived;
+    private long bytesPrinted;
+    private long dotsPrinted;
+    private long cuts;
+
+    // Parser state, guarded by this
+    private final byte[] command = new byte[MAX_COMMAND_SIZE];
+    private int commandSize;
+    // Payload of a long command: bytes still to come, its size, the feed it causes and how much of it was queued.
+    private long skip;
+    private long skipTotal;
+    private int skipDots;
+    private int skipDotsQueued;
+    private int segmentBytes;
+    private int lineSpacing;
+    private int barcodeHeight;
+    private int qrModuleSize;
+
+    /**
+     * Starts the printer's engine thread; {@link #close()} stops it.
+     *
+     * @param printSpeed Paper speed in mm/s, or {@code 0} to print instantly.
+     */
+    VirtualPrinter(int bufferSize, double printSpeed) {
+        if (bufferSize <= MAX_COMMAND_SIZE) {
+            throw new IllegalArgumentException("Buffer size must be larger than " + MAX_COMMAND_SIZE + " bytes");
+        }
+        this.bufferSize = bufferSize;
+        this.printSpeed = Math.max(0, printSpeed);
+        initialize();
+
+        engine = new Thread(this::runEngine, "VirtualPrinter");
+        engine.setDaemon(true);
+        engine.start();
+    }
+
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Takes as many bytes as fit in the input buffer, waiting up to {@code timeoutMs} for room if it is full.
+     *
+     * @return Bytes taken, {@code 0} on timeout.
+     * @throws IllegalStateException If the printer was closed.
+     */
+    synchronized int offer(byte[] data, int offset, int length, long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (buffered == bufferSize && !closed) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return 0;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        if (closed) {
+            throw new IllegalStateException("Printer closed");
+        }
+
+        int count = Math.min(length, bufferSize - buffered);
+        parse(data, offset, count);
+        buffered += count;
+        bytesReceived += count;
+        notifyAll();
+        return count;
+    }
+
+    synchronized void setPaperOut(boolean paperOut) {
+        if (this.paperOut != paperOut) {
+            this.paperOut = paperOut;
+            statusChanged();
+        }
+    }
+
+    synchronized void setCoverOpen(boolean coverOpen) {
+        if (this.coverOpen != coverOpen) {
+            this.coverOpen = coverOpen;
+            statusChanged();
+        }
+    }
+
+    synchronized int buffered() {
+        return buffered;
+    }
+
+    synchronized long bytesReceived() {
+        return bytesReceived;
+    }
+
+    synchronized long bytesPrinted() {
+        return bytesPrinted;
+    }
+
+    /**
+     * Paper printed so far, in dots of {@link #DOTS_PER_MM}.
+     */
+    synchronized long dotsPrinted() {
+        return dotsPrinted;
+    }
+
+    synchronized long cuts() {
+        return cuts;
+    }
+
+    /**
+     * Waits until everything up to the given cut was printed.
+     *
+     * @param count Cuts since the printer was created.
+     * @return {@code false} on timeout or once the printer was closed.
+     */
+    synchronized boolean awaitCuts(long count, long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (cuts < count && !closed) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return cuts >= count;
+    }
+
+    /**
+     * Stops the engine. Buffered bytes are dropped and senders waiting for room fail.
+     */
+    void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        if (Thread.currentThread() == engine) {
+            return;
+        }
+        try {
+            engine.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runEngine() {
+        List<byte[]> pendingReplies = new ArrayList<>();
+        while (true) {
+            synchronized (this) {
+                while (!closed && replies.isEmpty() && (segments.isEmpty() || stopped())) {
+                    waitUninterruptibly(0);
+                }
+                if (closed) {
+                    return;
+                }
+
+                if (replies.isEmpty()) {
+                    Segment segment = segments.peek();
+                    long deadline = System.nanoTime() + segment.nanosLeft;
+                    // Replies and status changes interrupt printing; the segment continues afterwards.
+                    while (!closed && replies.isEmpty() && !stopped() && segment.nanosLeft > 0) {
+                        waitUninterruptibly(segment.nanosLeft);
+                        segment.nanosLeft = deadline - System.nanoTime();
+                    }
+
+                    if (segment.nanosLeft <= 0 && !stopped()) {
+                        segments.poll();
+                        buffered -= segment.bytes;
+                        bytesPrinted += segment.bytes;
+                        dotsPrinted += segment.dots;
+                        if (segment.cut) {
+                            cuts++;
+                        }
+                        notifyAll();
+                    }
+                }
+                pendingReplies.addAll(replies);
+                replies.clear();
+            }
+
+            Listener listener = this.listener;
+            if (listener == null) {
+                pendingReplies.clear();
+                continue;
+            }
+            for (byte[] reply : pendingReplies) {
+                listener.onReply(reply);
+            }
+            pendingReplies.clear();
+        }
+    }
+
+    private void waitUninterruptibly(long nanos) {
+        try {
+            if (nanos > 0) {
+                TimeUnit.NANOSECONDS.timedWait(this, nanos);
+            } else {
+                wait();
+            }
+        } catch (InterruptedException ignored) {
+            // Only close() stops the engine.
+        }
+    }
+
+    private boolean stopped() {
+        return paperOut || coverOpen;
+    }
+
+    private void initialize() {
+        lineSpacing = DEFAULT_LINE_SPACING;
+        barcodeHeight = DEFAULT_BARCODE_HEIGHT;
+        qrModuleSize = DEFAULT_QR_MODULE_SIZE;
+    }
+
+    /**
+     * Splits received bytes into segments. Text is printed by the line feed after it; commands are interpreted once
+     * complete, and long ones such as raster bands once their header arrived, printing their payload as it comes.
+     */
+    private void parse(byte[] data, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            if (skip > 0) {
+                int count = (int) Math.min(skip, end - i);
+                skip -= count;
+                segmentBytes += count;
+                i += count;
+                int dots = (int) (skipDots - skipDots * skip / skipTotal) - skipDotsQueued;
+                skipDotsQueued += dots;
+                addSegment(dots, false);
+                continue;
+            }
+
+            byte b = data[i++];
+            segmentBytes++;
+            if (commandSize == 0 && !EscPos.isCommand(b)) {
+                if (b == EscPos.LF) {
+                    addSegment(lineSpacing, false);
+                }
+                continue;
+            }
+
+            command[commandSize++] = b;
+            int declared = EscPos.declaredLength(command, 0, commandSize);
+            if (declared < 0 || (declared == 0 && commandSize == MAX_COMMAND_SIZE)) {
+                // Unknown; the printer prints it as text.
+                commandSize = 0;
+            } else if (declared > 0 && (declared == commandSize || declared > MAX_COMMAND_SIZE)) {
+                int dots = interpret(declared);
+                boolean cut = isCut();
+                if (declared > commandSize) {
+                    skip = declared - commandSize;
+                    skipTotal = skip;
+                    skipDots = dots;
+                    skipDotsQueued = 0;
+                } else if (dots > 0 || cut) {
+                    addSegment(dots, cut);
+                }
+                commandSize = 0;
+            }
+        }
+
+        // Bytes that don't move the paper are printed along with the next ones; queued now so they never hold the
+        // buffer. Only the header of an incomplete command stays behind.
+        if (segmentBytes > 0 && commandSize == 0) {
+            addSegment(0, false);
+        }
+    }
+
+    private void addSegment(int dots, boolean cut) {
+        long nanos = 0;
+        if (printSpeed > 0) {
+            nanos = (long) (dots * 1e9 / (printSpeed * DOTS_PER_MM));
+            if (cut) {
+                nanos += (long) (CUT_NANOS * DEFAULT_PRINT_SPEED / printSpeed);
+            }
+        }
+        segments.add(new Segment(segmentBytes, dots, nanos, cut));
+        segmentBytes = 0;
+    }
+
+    private boolean isCut() {
+        byte prefix = command[0];
+        byte code = command[1];
+        return (prefix == EscPos.ESC && (code == 'i' || code == 'm')) || (prefix == EscPos.GS && code == 'V');
+    }
+
+    /**
+     * Applies a complete command, or the header of a long one.
+     *
+     * @return Paper it feeds, in dots.
+     */
+    private int interpret(int length) {
+        byte prefix = command[0];
+        int code = command[1] & 0xFF;
+        int n = length > 2 && commandSize > 2 ? command[2] & 0xFF : 0;
+        if (prefix == EscPos.DLE) {
+            if (code == 0x04) {
+                replies.add(new byte[] { realTimeStatus(n) });
+            }
+            return 0;
+        }
+
+        if (prefix == EscPos.ESC) {
+            switch (code) {
+                case '@':
+                    initialize();
+                    return 0;
+                case '2':
+                    lineSpacing = DEFAULT_LINE_SPACING;
+                    return 0;
+                case '3':
+                    lineSpacing = n;
+                    return 0;
+                case 'J':
+                    return n;
+                case 'd':
+                    return n * lineSpacing;
+                default:
+                    return 0;
+            }
+        }
+
+        if (prefix == EscPos.GS) {
+            switch (code) {
+                case 'a':
+                    autoStatus = n != 0;
+                    if (autoStatus) {
+                        replies.add(autoStatusPacket());
+                    }
+                    return 0;
+                case 'I':
+                    replies.add(printerInfo(n));
+                    return 0;
+                case 'h':
+                    barcodeHeight = n;
+                    return 0;
+                case 'k':
+                    return barcodeHeight;
+                case 'v':
+                    // GS v 0 m xL xH yL yH
+                    return (command[6] & 0xFF) | (command[7] & 0xFF) << 8;
+                case '(':
+                    return qrCode(length);
+                default:
+                    return 0;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Handles {@code GS ( k} QR code commands: the module size and printing the stored symbol.
+     */
+    private int qrCode(int length) {
+        // GS ( k pL pH cn fn [n]
+        if (length > MAX_COMMAND_SIZE || length < 7 || command[2] != 'k' || command[5] != '1') {
+            return 0;
+        }
+        int function = command[6];
+        if (function == 'C' && length >= 8) {
+            qrModuleSize = command[7] & 0xFF;
+        } else if (function == 'Q') {
+            return QR_MODULES * qrModuleSize;
+        }
+        return 0;
+    }
+
+    /**
+     * Answers {@code GS I} queries of the firmware version, manufacturer and model name.
+     */
+    private static byte[] printerInfo(int n) {
+        String info;
+        switch (n) {
+            case 0x41:
+                info = "1.00";
+                break;
+            case 0x42:
+                info = "Virtual";
+                break;
+            case 0x43:
+                info = "Virtual Printer 80";
+                break;
+            default:
+                return new byte[] { 0 };
+        }
+        byte[] reply = new byte[info.length() + 2];
+        reply[0] = '_';
+        for (int i = 0; i < info.length(); i++) {
+            reply[i + 1] = (byte) info.charAt(i);
+        }
+        return reply;
+    }
+
+    private void statusChanged() {
+        if (autoStatus) {
+            replies.add(autoStatusPacket());
+        }
+        notifyAll();
+    }
+
+    private byte realTimeStatus(int n) {
+        switch (n) {
+            case 1:
+                return (byte) (0x16 | (stopped() ? 0x08 : 0));
+            case 2:
+                return (byte) (0x12 | (coverOpen ? 0x04 : 0) | (paperOut ? 0x20 : 0));
+            case 4:
+                return (byte) (0x12 | (paperOut ? 0x60 : 0));
+            default:
+                return 0x12;
+        }
+    }
+
+    private byte[] autoStatusPacket() {
+        return new byte[] {
+                (byte) (0x10 | (stopped() ? 0x08 : 0) | (coverOpen ? 0x20 : 0)),
+                0x00,
+                (byte) (paperOut ? 0x0C : 0),
+                0x00,
+        };
+    }
+}
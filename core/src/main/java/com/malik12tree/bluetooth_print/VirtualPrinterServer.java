@@ -0,0 +1,130 @@
+package com.malik12tree.bluetooth_print;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Serves a {@link VirtualPrinter} on a local TCP port, like a network printer's raw port 9100. One client is served
+ * at a time; while the printer's buffer is full the server stops reading, so the client is held back by TCP flow
+ * control.
+ */
+final class VirtualPrinterServer {
+
+    private static final int READ_BUFFER_SIZE = 4096;
+    // How long a read waits for room in the printer's buffer before checking whether the server was closed.
+    private static final long OFFER_TIMEOUT_MS = 100;
+
+    private final VirtualPrinter printer;
+    private final ServerSocket serverSocket;
+    private final Thread acceptor;
+    private volatile Socket client;
+    private volatile boolean closed;
+
+    /**
+     * Starts listening on the loopback interface.
+     *
+     * @param port {@code 0} for any free port; see {@link #port()}.
+     */
+    VirtualPrinterServer(VirtualPrinter printer, int port) throws IOException {
+        this.printer = printer;
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+
+        acceptor = new Thread(this::serve, "VirtualPrinterServer");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops serving and drops the current client. The printer is left running.
+     */
+    void close() {
+        closed = true;
+        try {
+            serverSocket.close();
+        } catch (IOException ignored) {
+            // Closing anyway.
+        }
+        dropClient();
+        try {
+            acceptor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Drops the current client as if the printer lost the connection.
+     */
+    void dropClient() {
+        Socket socket = client;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Already closed.
+            }
+        }
+    }
+
+    private void serve() {
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                // Closed
+                return;
+            }
+
+            client = socket;
+            try {
+                socket.setTcpNoDelay(true);
+                OutputStream output = socket.getOutputStream();
+                printer.setListener(data -> {
+                    try {
+                        output.write(data);
+                    } catch (IOException ignored) {
+                        // The read loop notices the closed socket.
+                    }
+                });
+                pump(socket.getInputStream());
+            } catch (IOException | IllegalStateException e) {
+                // Client gone or printer closed; wait for the next one.
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                printer.setListener(null);
+                client = null;
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                    // Already closed.
+                }
+            }
+        }
+    }
+
+    private void pump(InputStream input) throws IOException, InterruptedException {
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        int read;
+        while ((read = input.read(buffer)) >= 0) {
+            int offset = 0;
+            while (offset < read) {
+                if (closed) {
+                    return;
+                }
+                offset += printer.offer(buffer, offset, read - offset, OFFER_TIMEOUT_MS);
+            }
+        }
+    }
+}
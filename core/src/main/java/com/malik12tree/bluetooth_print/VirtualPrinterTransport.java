@@ -0,0 +1,91 @@
+package com.malik12tree.bluetooth_print;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * Connects to a {@link VirtualPrinter} in the same process. The printer outlives the links to it, like a real one
+ * stays on while the app reconnects.
+ */
+final class VirtualPrinterTransport implements PrinterTransport {
+
+    // How long a write waits for room in the printer's buffer before checking the link again.
+    private static final long OFFER_TIMEOUT_MS = 100;
+
+    private final String address;
+    private final VirtualPrinter printer;
+    private volatile Listener listener;
+
+    VirtualPrinterTransport(String address, VirtualPrinter printer) {
+        this.address = address;
+        this.printer = printer;
+    }
+
+    VirtualPrinter printer() {
+        return printer;
+    }
+
+    @Override
+    public String address() {
+        return address;
+    }
+
+    @Override
+    public String name() {
+        return "Virtual Printer";
+    }
+
+    @Override
+    public void connect(Listener listener) throws IOException {
+        synchronized (this) {
+            if (this.listener != null) {
+                throw new IOException("Already connected");
+            }
+            this.listener = listener;
+        }
+
+        printer.setListener(data -> {
+            if (this.listener == listener) {
+                listener.onData(data);
+            }
+        });
+        listener.onConnected();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return listener != null;
+    }
+
+    @Override
+    public void write(byte[] data) throws IOException {
+        Listener writing = listener;
+        int offset = 0;
+        while (offset < data.length) {
+            if (writing == null || listener != writing) {
+                throw new IOException("Printer is not connected!");
+            }
+            try {
+                offset += printer.offer(data, offset, data.length - offset, OFFER_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch (IllegalStateException e) {
+                throw new IOException("Printer is not connected!", e);
+            }
+        }
+    }
+
+    @Override
+    public void disconnect() {
+        Listener closed;
+        synchronized (this) {
+            closed = listener;
+            listener = null;
+        }
+        if (closed != null) {
+            printer.setListener(null);
+            closed.onDisconnected();
+        }
+    }
+}
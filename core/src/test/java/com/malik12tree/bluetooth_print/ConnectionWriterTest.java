@@ -0,0 +1,485 @@
+package com.malik12tree.bluetooth_print;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class ConnectionWriterTest {
+
+    private static final class Recorder implements ConnectionWriter.Output {
+        final List<byte[]> writes = Collections.synchronizedList(new ArrayList<byte[]>());
+        // Number of writes after which the next one fails once.
+        volatile int failAt = -1;
+        final List<Long> times = Collections.synchronizedList(new ArrayList<Long>());
+        volatile Runnable afterWrite;
+
+        @Override
+        public void write(byte[] chunk) throws IOException {
+            if (writes.size() == failAt) {
+                failAt = -1;
+                throw new IOException("Link lost");
+            }
+            // Chunks share an array, so keep a copy.
+            writes.add(chunk.clone());
+            times.add(System.nanoTime());
+            Runnable afterWrite = this.afterWrite;
+            if (afterWrite != null) {
+                afterWrite.run();
+            }
+        }
+
+        byte[] all() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            synchronized (writes) {
+                for (byte[] write : writes) {
+                    out.write(write, 0, write.length);
+                }
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static class Switch implements ConnectionWriter.Gate {
+        volatile boolean ready;
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public void whilePaused(ConnectionWriter.Output output) {
+        }
+    }
+
+    private static final class Result implements ConnectionWriter.Listener {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile boolean completed;
+        volatile Exception error;
+        volatile long sent;
+        volatile long total;
+
+        @Override
+        public void onProgress(long sent, long total) {
+            this.sent = sent;
+            this.total = total;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            done.countDown();
+        }
+
+        @Override
+        public void onError(Exception e) {
+            error = e;
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("Job didn't finish", done.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private final Recorder output = new Recorder();
+    private final ConnectionWriter writer = new ConnectionWriter("test", output);
+
+    @After
+    public void shutdown() {
+        writer.shutdown();
+    }
+
+    private static byte[] lines(int count, int length) {
+        byte[] data = new byte[count * length];
+        Arrays.fill(data, (byte) 'a');
+        for (int i = length - 1; i < data.length; i += length) {
+            data[i] = EscPos.LF;
+        }
+        return data;
+    }
+
+    @Test
+    public void splitsJobsIntoChunks() throws InterruptedException {
+        writer.configure(4, 0, 0);
+        byte[] data = { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 };
+        Result result = new Result();
+        writer.submit("job", 0, data, result);
+        result.await();
+
+        assertTrue(result.completed);
+        assertEquals(3, output.writes.size());
+        assertArrayEquals(new byte[] { 9, 10 }, output.writes.get(2));
+        assertArrayEquals(data, output.all());
+        assertEquals(10, result.sent);
+        assertEquals(10, result.total);
+    }
+
+    @Test
+    public void writesSmallJobsAtOnce() throws InterruptedException {
+        writer.configure(0, 0, 0);
+        Result result = new Result();
+        writer.submit("job", 0, new byte[2000], result);
+        result.await();
+
+        assertEquals(1, output.writes.size());
+    }
+
+    @Test
+    public void chunksStreamedJobsAsTheyArrive() throws InterruptedException {
+        writer.configure(3, 0, 0);
+        Result result = new Result();
+        writer.submit("job", 0, -1, sink -> {
+            sink.send(new byte[] { 1, 2, 3, 4 }, 0, 4);
+            sink.send(new byte[] { 0, 5, 6 }, 1, 2);
+        }, result);
+        result.await();
+
+        assertTrue(result.completed);
+        assertArrayEquals(new byte[] { 1, 2, 3, 4, 5, 6 }, output.all());
+        assertEquals(3, output.writes.size());
+        assertEquals(-1, result.total);
+    }
+
+    @Test
+    public void sendsJobsInSubmissionOrder() throws InterruptedException {
+        Result last = new Result();
+        writer.submit("first", 0, new byte[] { 1 }, new Result());
+        writer.submit("second", 0, new byte[] { 2 }, new Result());
+        writer.submit("third", 0, new byte[] { 3 }, last);
+        last.await();
+
+        assertArrayEquals(new byte[] { 1, 2, 3 }, output.all());
+    }
+
+    /**
+     * Submits a job that holds the writer until the returned latch is released.
+     */
+    private CountDownLatch block(Result result) {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        writer.submit("blocking", 0, -1, sink -> {
+            started.countDown();
+            release.await();
+        }, result);
+        try {
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+        return release;
+    }
+
+    @Test
+    public void sendsHigherPrioritiesFirst() throws InterruptedException {
+        CountDownLatch release = block(new Result());
+        Result last = new Result();
+        writer.submit("first", 0, new byte[] { 1 }, new Result());
+        writer.submit("urgent", 5, new byte[] { 2 }, new Result());
+        writer.submit("second", 0, new byte[] { 3 }, last);
+        writer.submit("raised", 0, new byte[] { 4 }, new Result());
+        assertTrue(writer.setPriority("raised", 1));
+        assertFalse(writer.setPriority("blocking", 1));
+
+        List<ConnectionWriter.JobInfo> jobs = writer.jobs();
+        assertEquals("blocking", jobs.get(0).id);
+        assertTrue(jobs.get(0).sending);
+        assertEquals("urgent", jobs.get(1).id);
+        assertEquals("raised", jobs.get(2).id);
+        assertEquals("first", jobs.get(3).id);
+        assertEquals("second", jobs.get(4).id);
+        assertFalse(jobs.get(4).sending);
+
+        release.countDown();
+        last.await();
+        assertArrayEquals(new byte[] { 2, 4, 1, 3 }, output.all());
+    }
+
+    @Test
+    public void cancelsWaitingJobsOnly() throws InterruptedException {
+        CountDownLatch release = block(new Result());
+        Result result = new Result();
+        writer.submit("job", 0, new byte[] { 1 }, result);
+
+        assertTrue(writer.cancel("job"));
+        result.await();
+        assertTrue(result.error instanceof CancellationException);
+        assertFalse(writer.cancel("job"));
+        assertFalse(writer.hasJob("job"));
+        assertFalse(writer.cancel("blocking"));
+        assertTrue(writer.hasJob("blocking"));
+        release.countDown();
+    }
+
+    @Test
+    public void rejectsJobsOnceTheQueueIsFull() {
+        CountDownLatch release = block(new Result());
+        for (int i = 0; i < ConnectionWriter.MAX_QUEUED_JOBS; i++) {
+            writer.submit("job" + i, 0, new byte[] { 1 }, new Result());
+        }
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> writer.submit("overflow", 0, new byte[] { 1 }, new Result()));
+        assertEquals("Print queue is full!", e.getMessage());
+        release.countDown();
+    }
+
+    @Test
+    public void shutdownFailsWaitingJobs() throws InterruptedException {
+        CountDownLatch release = block(new Result());
+        Result waiting = new Result();
+        writer.submit("job", 0, new byte[] { 1 }, waiting);
+        writer.shutdown();
+
+        waiting.await();
+        assertEquals("Printer is not connected!", waiting.error.getMessage());
+        release.countDown();
+    }
+
+    @Test
+    public void takesWaitingJobsBackForAnotherWriter() throws InterruptedException {
+        CountDownLatch release = block(new Result());
+        Result moved = new Result();
+        writer.submit("small", 0, new byte[100], new Result());
+        writer.submit("moved", 0, new byte[200], moved);
+        assertEquals(ConnectionWriter.STREAMED_JOB_ESTIMATE + 300, writer.backlogBytes());
+        assertEquals(3, writer.queuedJobs());
+
+        List<ConnectionWriter.Job> taken = writer.takeWaiting(Collections.singleton("moved"));
+        assertEquals(1, taken.size());
+        assertEquals("moved", taken.get(0).id);
+        assertFalse(writer.hasJob("moved"));
+        assertEquals(ConnectionWriter.STREAMED_JOB_ESTIMATE + 100, writer.backlogBytes());
+        assertTrue(writer.takeWaiting(Collections.singleton("blocking")).isEmpty());
+
+        release.countDown();
+        // Taken jobs belong to their new writer and aren't failed by this one.
+        writer.shutdown();
+        assertFalse(moved.done.await(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void holdsJobsWhileTheGateIsClosed() throws InterruptedException {
+        Switch gate = new Switch();
+        writer.setGate(gate);
+        Result result = new Result();
+        writer.submit("job", 0, new byte[] { 1 }, result);
+        assertFalse(result.done.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(0, output.writes.size());
+
+        gate.ready = true;
+        writer.wake();
+        result.await();
+        assertArrayEquals(new byte[] { 1 }, output.all());
+    }
+
+    @Test
+    public void pausesBetweenChunksWhileTheGateIsClosed() throws InterruptedException {
+        Switch gate = new Switch();
+        gate.ready = true;
+        writer.setGate(gate);
+        writer.configure(2, 0, 0);
+        output.afterWrite = () -> gate.ready = false;
+
+        Result result = new Result();
+        writer.submit("job", 0, new byte[] { 1, 2, 3, 4 }, result);
+        assertFalse(result.done.await(200, TimeUnit.MILLISECONDS));
+        assertArrayEquals(new byte[] { 1, 2 }, output.all());
+
+        output.afterWrite = null;
+        gate.ready = true;
+        writer.wake();
+        result.await();
+        assertArrayEquals(new byte[] { 1, 2, 3, 4 }, output.all());
+    }
+
+    @Test
+    public void checksOnThePrinterWhilePausedMidJob() throws InterruptedException {
+        CountDownLatch polled = new CountDownLatch(1);
+        Switch gate = new Switch() {
+            @Override
+            public void whilePaused(ConnectionWriter.Output output) {
+                // The printer answers the status request once its paper was refilled.
+                ready = true;
+                polled.countDown();
+            }
+        };
+        gate.ready = true;
+        writer.setGate(gate);
+        writer.configure(2, 0, 0);
+        output.afterWrite = () -> {
+            output.afterWrite = null;
+            gate.ready = false;
+        };
+
+        Result result = new Result();
+        writer.submit("job", 0, new byte[] { 1, 2, 3, 4 }, result);
+        assertTrue(polled.await(ConnectionWriter.PAUSED_POLL_MS + 5000, TimeUnit.MILLISECONDS));
+        result.await();
+        assertArrayEquals(new byte[] { 1, 2, 3, 4 }, output.all());
+    }
+
+    @Test
+    public void cancelsJobsPausedMidway() throws InterruptedException {
+        Switch gate = new Switch();
+        gate.ready = true;
+        writer.setGate(gate);
+        writer.configure(2, 0, 0);
+        CountDownLatch wrote = new CountDownLatch(1);
+        output.afterWrite = () -> {
+            gate.ready = false;
+            wrote.countDown();
+        };
+
+        Result result = new Result();
+        writer.submit("job", 0, new byte[] { 1, 2, 3, 4 }, result);
+        assertTrue(wrote.await(5, TimeUnit.SECONDS));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!writer.cancel("job")) {
+            assertTrue("Job never paused", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+
+        result.await();
+        assertTrue(result.error instanceof CancellationException);
+        assertArrayEquals(new byte[] { 1, 2 }, output.all());
+        assertFalse(writer.hasJob("job"));
+    }
+
+    @Test
+    public void controlsRunWhileJobsWait() throws InterruptedException {
+        writer.setGate(new Switch());
+        writer.submit("job", 0, new byte[] { 1 }, new Result());
+        CountDownLatch ran = new CountDownLatch(1);
+        writer.control(out -> {
+            try {
+                out.write(new byte[] { 0x10, 0x04, 1 });
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+            ran.countDown();
+        });
+
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertArrayEquals(new byte[] { 0x10, 0x04, 1 }, output.all());
+    }
+
+    @Test
+    public void pacesToTheTransferRate() throws InterruptedException {
+        writer.configure(250, 0, 2000);
+        Result result = new Result();
+        long startedAt = System.nanoTime();
+        writer.submit("job", 0, new byte[1000], result);
+        result.await();
+
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+        assertTrue("Sent in " + elapsedMs + " ms", elapsedMs >= 450);
+    }
+
+    @Test
+    public void failedWritesFailOnlyTheirJob() throws InterruptedException {
+        output.failAt = 0;
+        Result failed = new Result();
+        Result next = new Result();
+        writer.submit("failed", 0, new byte[] { 1 }, failed);
+        writer.submit("next", 0, new byte[] { 2 }, next);
+        next.await();
+
+        assertEquals("Link lost", failed.error.getMessage());
+        assertTrue(next.completed);
+        assertArrayEquals(new byte[] { 2 }, output.all());
+    }
+
+    @Test
+    public void jobsFailOnceShutDown() throws InterruptedException {
+        writer.shutdown();
+        Result late = new Result();
+        writer.submit("late", 0, new byte[] { 1 }, late);
+        late.await();
+
+        assertEquals("Printer is not connected!", late.error.getMessage());
+        assertEquals(0, output.writes.size());
+    }
+
+    @Test
+    public void recordsSentAndFailedJobs() throws InterruptedException {
+        ConnectionMetrics metrics = new ConnectionMetrics();
+        writer.setMetrics(metrics);
+        writer.configure(4, 0, 0);
+        Result sent = new Result();
+        writer.submit("sent", 0, new byte[10], sent);
+        sent.await();
+        output.failAt = output.writes.size();
+        Result failed = new Result();
+        writer.submit("failed", 0, new byte[10], failed);
+        failed.await();
+
+        assertEquals(1, metrics.jobsSent.get());
+        assertEquals(1, metrics.jobsFailed.get());
+        assertEquals(10, metrics.bytesSent.get());
+        assertEquals(10, metrics.bytesTransferred.get());
+    }
+
+    @Test
+    public void interruptedJobsFailUnlessResumable() throws InterruptedException {
+        output.failAt = 0;
+        Result result = new Result();
+        writer.submit("job", 0, new byte[] { 1, EscPos.LF }, result);
+        result.await();
+
+        assertEquals("Link lost", result.error.getMessage());
+    }
+
+    @Test
+    public void resumesAfterTheLastLineThatArrived() throws InterruptedException {
+        writer.setResumable(true);
+        writer.configure(3, 0, 0);
+        byte[] job = {
+                0x1B, 'E', 1,
+                'a', 'b', EscPos.LF,
+                'c', 'd', EscPos.LF,
+                'e', 'f', EscPos.LF,
+        };
+        // The last chunk fails, after "cd" was handed over but before it is known to have left the device.
+        output.failAt = 3;
+        Result result = new Result();
+        writer.submit("job", 0, job, result);
+        result.await();
+
+        assertTrue(result.completed);
+        List<byte[]> writes = output.writes;
+        assertEquals(6, writes.size());
+        assertArrayEquals(new byte[] { 0x1B, '@', 0x1B, 'E', 1 }, writes.get(3));
+        assertArrayEquals(new byte[] { 'c', 'd', EscPos.LF }, writes.get(4));
+        assertArrayEquals(new byte[] { 'e', 'f', EscPos.LF }, writes.get(5));
+    }
+
+    @Test
+    public void pacesResumedJobsOnTheirOwnBytes() throws InterruptedException {
+        writer.setResumable(true);
+        writer.configure(500, 0, 4000);
+        // 4000 bytes; the 6th chunk fails, so the job resumes at 2000 with 2000 bytes or about 500 ms left.
+        byte[] job = lines(40, 100);
+        output.failAt = 5;
+        Result result = new Result();
+        writer.submit("job", 0, job, result);
+        result.await();
+
+        assertTrue(result.completed);
+        long resumedAt = output.times.get(5);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - resumedAt);
+        assertTrue("Resumed in " + elapsedMs + " ms", elapsedMs >= 350 && elapsedMs < 850);
+        assertArrayEquals(Arrays.copyOfRange(job, 2000, job.length),
+                Arrays.copyOfRange(output.all(), 2500 + 2, 2500 + 2 + 2000));
+    }
+}
@@ -0,0 +1,95 @@
+package com.malik12tree.bluetooth_print;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+public class EscBufferTest {
+
+    @Test
+    public void startsWithInit() {
+        EscBuffer buffer = new EscBuffer();
+        assertArrayEquals(new byte[] { 0x1B, 0x40, 0x0A, 0x0D, 0x0A, 0x0D, 0x0A, 0x0D }, buffer.toJob());
+    }
+
+    @Test
+    public void toJobAppendsTrailerAndKeepsBuffer() {
+        EscBuffer buffer = new EscBuffer();
+        buffer.write(EscPos.ESC, EscPos.ALIGN, 1);
+        byte[] job = buffer.toJob();
+
+        assertArrayEquals(new byte[] { 0x1B, 0x40, 0x1B, 0x61, 1, 0x0A, 0x0D, 0x0A, 0x0D, 0x0A, 0x0D }, job);
+        assertEquals(5, buffer.size());
+        assertArrayEquals(job, buffer.toJob());
+    }
+
+    @Test
+    public void growsPastItsCapacity() {
+        EscBuffer buffer = new EscBuffer();
+        byte[] data = new byte[EscBuffer.DEFAULT_CAPACITY * 3];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        buffer.write(data);
+
+        assertEquals(data.length + 2, buffer.size());
+        assertArrayEquals(data, Arrays.copyOfRange(buffer.toJob(), 2, 2 + data.length));
+    }
+
+    @Test
+    public void resetStartsANewJob() {
+        EscBuffer buffer = new EscBuffer();
+        buffer.write(new byte[] { 1, 2, 3 }, 1, 2);
+        assertEquals(4, buffer.size());
+
+        buffer.reset();
+        assertArrayEquals(new EscBuffer().toJob(), buffer.toJob());
+    }
+
+    @Test
+    public void clearHoldsAFragmentWithoutInit() {
+        EscBuffer buffer = new EscBuffer();
+        buffer.write((byte) 'x');
+        buffer.clear();
+        assertEquals(0, buffer.size());
+
+        buffer.write((byte) 'y');
+        assertArrayEquals(new byte[] { 'y' }, buffer.copyFrom(0));
+        buffer.reset();
+        assertArrayEquals(EscPos.INIT, buffer.copyFrom(0));
+    }
+
+    @Test
+    public void copyFromReturnsBytesSinceOffset() {
+        EscBuffer buffer = new EscBuffer();
+        int mark = buffer.size();
+        buffer.write(new byte[] { 1, 2, 3 }, 1, 2);
+
+        assertArrayEquals(new byte[] { 2, 3 }, buffer.copyFrom(mark));
+        assertArrayEquals(new byte[] { 0x1B, 0x40, 2, 3 }, buffer.copyFrom(0));
+    }
+
+    @Test
+    public void writeAsciiRejectsOtherCharactersWithoutWriting() {
+        EscBuffer buffer = new EscBuffer();
+        buffer.clear();
+        assertTrue(buffer.writeAscii("ok"));
+        assertFalse(buffer.writeAscii("caf\u00e9"));
+
+        assertArrayEquals(new byte[] { 'o', 'k' }, buffer.copyFrom(0));
+    }
+
+    @Test
+    public void releasedBufferCanNotBeUsed() {
+        EscBuffer buffer = new EscBuffer();
+        buffer.release();
+
+        assertThrows(IllegalStateException.class, () -> buffer.write((byte) 1));
+        assertThrows(IllegalStateException.class, buffer::reset);
+        assertThrows(IllegalStateException.class, buffer::toJob);
+        assertThrows(IllegalStateException.class, () -> buffer.copyFrom(0));
+        // Releasing twice is harmless.
+        buffer.release();
+    }
+}
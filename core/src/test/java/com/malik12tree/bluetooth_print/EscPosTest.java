@@ -0,0 +1,80 @@
+package com.malik12tree.bluetooth_print;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class EscPosTest {
+
+    private static int length(int... bytes) {
+        byte[] data = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            data[i] = (byte) bytes[i];
+        }
+        return EscPos.commandLength(data, 0, data.length);
+    }
+
+    @Test
+    public void fixedLengthCommands() {
+        assertEquals(2, length(0x1B, '@'));
+        assertEquals(3, length(0x1B, 'a', 1));
+        assertEquals(4, length(0x1B, '$', 0, 0));
+        assertEquals(5, length(0x1B, 'p', 0, 0x32, 0x7D));
+        assertEquals(3, length(0x1D, '!', 0x11));
+        assertEquals(2, length(0x1C, '.'));
+        assertEquals(3, length(0x10, 0x04, 1));
+        assertEquals(5, length(0x10, 0x14, 1, 0, 1));
+    }
+
+    @Test
+    public void rasterBandLengthComesFromItsHeader() {
+        // GS v 0 m, 2 bytes by 3 rows
+        assertEquals(8 + 6, length(0x1D, 'v', '0', 0, 2, 0, 3, 0, 1, 2, 3, 4, 5, 6));
+        // ESC * in 24-dot mode, 2 columns of 3 bytes
+        assertEquals(5 + 6, length(0x1B, '*', 33, 2, 0, 1, 2, 3, 4, 5, 6));
+    }
+
+    @Test
+    public void barcodeLengths() {
+        // GS k m n d1...dn
+        assertEquals(4 + 3, length(0x1D, 'k', 73, 3, '1', '2', '3'));
+        // GS k m d1...dk NUL
+        assertEquals(3 + 4, length(0x1D, 'k', 4, 'A', 'B', 'C', 0));
+        // GS ( k pL pH with 3 bytes of parameters
+        assertEquals(5 + 3, length(0x1D, '(', 'k', 3, 0, '1', 'C', 3));
+    }
+
+    @Test
+    public void gsCutWithAndWithoutFeed() {
+        assertEquals(3, length(0x1D, 'V', 1));
+        assertEquals(4, length(0x1D, 'V', 66, 10));
+    }
+
+    @Test
+    public void cutOffAndUnknownCommandsHaveNoLength() {
+        assertEquals(-1, length(0x1D, 'v', '0', 0, 2, 0, 3, 0, 1, 2));
+        assertEquals(-1, length(0x1B, 'a'));
+        assertEquals(-1, length(0x1B, 0x01, 0));
+        assertEquals(-1, length(0x1C, 'z'));
+    }
+
+    @Test
+    public void declaredLengthAsksForMoreOfAnIncompleteHeader() {
+        byte[] header = { 0x1D, 'v', '0', 0, 2 };
+        assertEquals(0, EscPos.declaredLength(header, 0, header.length));
+        assertEquals(0, EscPos.declaredLength(new byte[] { 0x1B }, 0, 1));
+
+        byte[] full = { 0x1D, 'v', '0', 0, 2, 0, 3, 0 };
+        assertEquals(14, EscPos.declaredLength(full, 0, full.length));
+    }
+
+    @Test
+    public void commandsStartWithAPrefix() {
+        assertTrue(EscPos.isCommand(EscPos.ESC));
+        assertTrue(EscPos.isCommand(EscPos.GS));
+        assertTrue(EscPos.isCommand(EscPos.FS));
+        assertTrue(EscPos.isCommand(EscPos.DLE));
+        assertFalse(EscPos.isCommand((byte) 'A'));
+        assertFalse(EscPos.isCommand(EscPos.LF));
+    }
+}
@@ -0,0 +1,179 @@
+package com.malik12tree.bluetooth_print;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class NetworkTransportTest {
+
+    private static final class Link implements PrinterTransport.Listener {
+        final CountDownLatch connected = new CountDownLatch(1);
+        final CountDownLatch disconnected = new CountDownLatch(1);
+        private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+        @Override
+        public void onConnected() {
+            connected.countDown();
+        }
+
+        @Override
+        public void onDisconnected() {
+            disconnected.countDown();
+        }
+
+        @Override
+        public synchronized void onData(byte[] data) {
+            received.write(data, 0, data.length);
+            notifyAll();
+        }
+
+        synchronized byte[] await(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (received.size() < count) {
+                long remaining = deadline - System.nanoTime();
+                assertTrue("Got " + received.size() + " of " + count + " bytes", remaining > 0);
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return received.toByteArray();
+        }
+    }
+
+    private final VirtualPrinter printer = new VirtualPrinter(VirtualPrinter.DEFAULT_BUFFER_SIZE, 0);
+    private VirtualPrinterServer server;
+
+    @After
+    public void close() {
+        if (server != null) {
+            server.close();
+        }
+        printer.close();
+    }
+
+    private NetworkTransport connect(Link link, int writeTimeoutMs) throws Exception {
+        server = new VirtualPrinterServer(printer, 0);
+        String host = InetAddress.getLoopbackAddress().getHostAddress();
+        NetworkTransport transport = new NetworkTransport(host, server.port(), 5000, writeTimeoutMs);
+        transport.connect(link);
+        assertTrue("Not connected", link.connected.await(5, TimeUnit.SECONDS));
+        assertTrue(transport.isConnected());
+
+        // Answered once the server serves this client.
+        transport.write(new byte[] { 0x10, 0x04, 1 });
+        assertArrayEquals(new byte[] { 0x16 }, link.await(1));
+        return transport;
+    }
+
+    @Test
+    public void sendsJobsAndReceivesReplies() throws Exception {
+        Link link = new Link();
+        NetworkTransport transport = connect(link, 5000);
+
+        transport.write(new byte[] { 'a', 0x0A, 0x1B, 'J', 40, 0x1D, 'V', 1 });
+        assertTrue(printer.awaitCuts(1, 5000));
+        assertEquals(30 + 40, printer.dotsPrinted());
+        assertEquals(3 + 8, printer.bytesReceived());
+
+        transport.write(new byte[] { 0x10, 0x04, 2 });
+        assertArrayEquals(new byte[] { 0x16, 0x12 }, link.await(2));
+    }
+
+    @Test
+    public void writesMoreThanTheSocketBuffersHold() throws Exception {
+        Link link = new Link();
+        NetworkTransport transport = connect(link, 5000);
+
+        // Far more than the socket buffers take at once, so the rest is sent by the selector.
+        byte[] job = new byte[8 * 1024 * 1024];
+        transport.write(job);
+        assertTrue(transport.isConnected());
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (printer.bytesReceived() < 3 + job.length && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(3 + job.length, printer.bytesReceived());
+        assertEquals(1, link.disconnected.getCount());
+    }
+
+    @Test
+    public void disconnectClosesTheLink() throws Exception {
+        Link link = new Link();
+        NetworkTransport transport = connect(link, 5000);
+
+        transport.disconnect();
+        assertTrue(link.disconnected.await(5, TimeUnit.SECONDS));
+        assertFalse(transport.isConnected());
+        IOException e = assertThrows(IOException.class, () -> transport.write(new byte[] { 1 }));
+        assertEquals("Printer is not connected!", e.getMessage());
+    }
+
+    @Test
+    public void noticesWhenThePrinterDropsTheLink() throws Exception {
+        Link link = new Link();
+        NetworkTransport transport = connect(link, 5000);
+
+        server.dropClient();
+        assertTrue("Not disconnected", link.disconnected.await(5, TimeUnit.SECONDS));
+        assertFalse(transport.isConnected());
+    }
+
+    @Test
+    public void writesTimeOutWhileThePrinterIsStalled() throws Exception {
+        Link link = new Link();
+        NetworkTransport transport = connect(link, 500);
+        printer.setPaperOut(true);
+
+        // The printer stops reading once its buffer is full, then the socket buffers fill up.
+        byte[] chunk = new byte[1024 * 1024];
+        IOException failure = null;
+        for (int i = 0; i < 256 && failure == null; i++) {
+            try {
+                transport.write(chunk);
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+
+        assertNotNull("Writes never blocked", failure);
+        assertEquals("Write timed out!", failure.getMessage());
+        assertTrue(link.disconnected.await(5, TimeUnit.SECONDS));
+        assertFalse(transport.isConnected());
+    }
+
+    @Test
+    public void failsToConnectToAClosedPort() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket()) {
+            socket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            port = socket.getLocalPort();
+        }
+
+        Link link = new Link();
+        NetworkTransport transport = new NetworkTransport(InetAddress.getLoopbackAddress().getHostAddress(), port,
+                5000, 5000);
+        try {
+            transport.connect(link);
+            assertTrue("Not disconnected", link.disconnected.await(5, TimeUnit.SECONDS));
+        } catch (IOException e) {
+            // Refused right away.
+        }
+        assertEquals(1, link.connected.getCount());
+        assertFalse(transport.isConnected());
+    }
+
+    @Test
+    public void validatesItsSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new NetworkTransport("printer", 0, 5000, 5000));
+        assertThrows(IllegalArgumentException.class, () -> new NetworkTransport("printer", 9100, 5000, 0));
+        assertEquals("printer:9100", NetworkTransport.address("printer", 9100));
+        assertEquals("[::1]:9100", NetworkTransport.address("::1", 9100));
+    }
+}
@@ -0,0 +1,50 @@
+package com.malik12tree.bluetooth_print;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class PrinterProfileTest {
+
+    @Test
+    public void guessesTheDotWidthFromTheModel() {
+        PrinterProfile profile = new PrinterProfile();
+        profile.probed("XP-58IIH", "1.0", "Xprinter");
+        assertTrue(profile.isProbed());
+        assertEquals(384, profile.dotWidth());
+
+        profile = new PrinterProfile();
+        profile.probed("POS-80", null, null);
+        assertEquals(576, profile.dotWidth());
+
+        profile = new PrinterProfile();
+        profile.probed("RPP580", null, null);
+        assertEquals(0, profile.dotWidth());
+    }
+
+    @Test
+    public void roundTripsThroughJson() throws Exception {
+        PrinterProfile profile = new PrinterProfile();
+        profile.probed("POS-80", "2.1", "Rongta");
+        profile.setDpi(300);
+        profile.setEncoding("CP1252");
+
+        PrinterProfile read = PrinterProfile.fromJson(new JSONObject(profile.toJson().toString()));
+        assertEquals(profile.toJson().toString(), read.toJson().toString());
+        assertEquals(576, read.dotWidth());
+        assertEquals(Integer.valueOf(300), read.dpi());
+        assertEquals("CP1252", read.encoding());
+    }
+
+    @Test
+    public void ignoresUnexpectedFields() throws Exception {
+        PrinterProfile read = PrinterProfile.fromJson(
+                new JSONObject().put("model", 58).put("statusReplies", true).put("dotWidth", -1));
+        assertFalse(read.isProbed());
+        assertEquals(0, read.dotWidth());
+        assertNull(read.dpi());
+        assertFalse(read.toJson().has("model"));
+        assertFalse(read.toJson().has("statusReplies"));
+    }
+}
@@ -0,0 +1,75 @@
+package com.malik12tree.bluetooth_print;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.Charset;
+import org.junit.Test;
+
+public class ProfileProbeTest {
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(Charset.forName("US-ASCII"));
+    }
+
+    @Test
+    public void asksForFirmwareManufacturerAndModel() {
+        ProfileProbe probe = new ProfileProbe();
+        assertArrayEquals(new byte[] {
+                0x1D, 'I', 0x41,
+                0x1D, 'I', 0x42,
+                0x1D, 'I', 0x43,
+        }, probe.request());
+        assertTrue(probe.isPending());
+    }
+
+    @Test
+    public void takesRepliesAndPassesStatusBytesOn() {
+        ProfileProbe probe = new ProfileProbe();
+        probe.request();
+
+        // A status reply between the answers, which are split across reads.
+        assertArrayEquals(new byte[] { 0x16 }, probe.filter(ascii("_1.02\0\u0016_Rong")));
+        assertArrayEquals(new byte[0], probe.filter(ascii("ta\0_RPP300 \0")));
+
+        assertFalse(probe.isPending());
+        assertEquals("1.02", probe.answer(ProfileProbe.FIRMWARE));
+        assertEquals("Rongta", probe.answer(ProfileProbe.MANUFACTURER));
+        assertEquals("RPP300", probe.answer(ProfileProbe.MODEL));
+    }
+
+    @Test
+    public void passesDataThroughWhenNothingIsPending() {
+        ProfileProbe probe = new ProfileProbe();
+        byte[] data = ascii("_1.02\0");
+        assertSame(data, probe.filter(data));
+        assertNull(probe.answer(ProfileProbe.FIRMWARE));
+    }
+
+    @Test
+    public void missingRepliesStayUnanswered() {
+        ProfileProbe probe = new ProfileProbe();
+        probe.request();
+        probe.filter(ascii("_1.02\0_"));
+        probe.finish();
+
+        assertFalse(probe.isPending());
+        assertEquals("1.02", probe.answer(ProfileProbe.FIRMWARE));
+        assertNull(probe.answer(ProfileProbe.MANUFACTURER));
+        assertNull(probe.answer(ProfileProbe.MODEL));
+        assertNull(probe.answer(0x44));
+    }
+
+    @Test
+    public void stopsLookingAfterAnOverlongReply() {
+        ProfileProbe probe = new ProfileProbe();
+        probe.request();
+        StringBuilder reply = new StringBuilder("_");
+        for (int i = 0; i < 100; i++) {
+            reply.append('x');
+        }
+        probe.filter(ascii(reply.toString()));
+
+        assertFalse(probe.isPending());
+        assertNull(probe.answer(ProfileProbe.FIRMWARE));
+    }
+}
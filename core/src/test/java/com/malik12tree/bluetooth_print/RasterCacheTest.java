@@ -0,0 +1,78 @@
+package com.malik12tree.bluetooth_print;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class RasterCacheTest {
+
+    @Test
+    public void countsHitsAndMisses() {
+        RasterCache cache = new RasterCache(100);
+        byte[] raster = new byte[10];
+        cache.put("logo", raster);
+
+        assertSame(raster, cache.get("logo"));
+        assertNull(cache.get("other"));
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(10, cache.bytes());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedPastItsSize() {
+        RasterCache cache = new RasterCache(100);
+        cache.put("a", new byte[40]);
+        cache.put("b", new byte[40]);
+        cache.get("a");
+        cache.put("c", new byte[40]);
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(1, cache.evictions());
+        assertEquals(80, cache.bytes());
+    }
+
+    @Test
+    public void replacingAnEntryCountsItsSizeOnce() {
+        RasterCache cache = new RasterCache(100);
+        cache.put("a", new byte[40]);
+        cache.put("a", new byte[30]);
+
+        assertEquals(1, cache.size());
+        assertEquals(30, cache.bytes());
+    }
+
+    @Test
+    public void skipsEntriesLargerThanTheCache() {
+        RasterCache cache = new RasterCache(100);
+        cache.put("a", new byte[50]);
+        cache.put("huge", new byte[101]);
+
+        assertNull(cache.get("huge"));
+        assertNotNull(cache.get("a"));
+        assertEquals(0, cache.evictions());
+    }
+
+    @Test
+    public void keysDifferBySetting() {
+        String key = RasterCache.key("logo", 384, 0, 203, RasterEncoder.Dither.NONE);
+        assertNotEquals(key, RasterCache.key("logo", 576, 0, 203, RasterEncoder.Dither.NONE));
+        assertNotEquals(key, RasterCache.key("logo", 384, 576, 203, RasterEncoder.Dither.NONE));
+        assertNotEquals(key, RasterCache.key("logo", 384, 0, 180, RasterEncoder.Dither.NONE));
+        assertNotEquals(key, RasterCache.key("logo", 384, 0, 203, RasterEncoder.Dither.ORDERED));
+        assertEquals(key, RasterCache.key("logo", 384, 0, 203, RasterEncoder.Dither.NONE));
+    }
+
+    @Test
+    public void clearEmptiesTheCache() {
+        RasterCache cache = new RasterCache(100);
+        cache.put("a", new byte[40]);
+        cache.clear();
+
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.bytes());
+        assertNull(cache.get("a"));
+    }
+}
@@ -0,0 +1,115 @@
+package com.malik12tree.bluetooth_print;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+public class RasterEncoderTest {
+
+    // The buffer's bytes without the job's INIT and trailer.
+    private static byte[] written(EscBuffer out) {
+        byte[] job = out.toJob();
+        return Arrays.copyOfRange(job, EscPos.INIT.length, job.length - EscPos.JOB_TRAILER.length);
+    }
+
+    private static byte[] encode(byte[] luminance, int width, int height, RasterEncoder.Dither dither) {
+        EscBuffer out = new EscBuffer();
+        new RasterEncoder().encode(luminance, width, height, dither, out);
+        return written(out);
+    }
+
+    private static byte[] gradient(int width, int height) {
+        byte[] luminance = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                luminance[y * width + x] = (byte) (x * 255 / (width - 1));
+            }
+        }
+        return luminance;
+    }
+
+    @Test
+    public void thresholdsPixelsIntoOneBand() {
+        // 10 dots wide: black, white, then black from the 9th dot on; the second row is all white.
+        byte[] luminance = new byte[20];
+        Arrays.fill(luminance, (byte) 0xFF);
+        luminance[0] = 0;
+        luminance[8] = 0x7F;
+        luminance[9] = 0;
+
+        byte[] band = encode(luminance, 10, 2, RasterEncoder.Dither.NONE);
+        assertArrayEquals(new byte[] {
+                0x1D, 'v', '0', 0, 2, 0, 2, 0,
+                (byte) 0x80, (byte) 0xC0,
+                0, 0,
+        }, band);
+    }
+
+    @Test
+    public void splitsTallImagesIntoBands() {
+        int height = RasterEncoder.BAND_HEIGHT + 6;
+        byte[] luminance = new byte[8 * height];
+        byte[] bands = encode(luminance, 8, height, RasterEncoder.Dither.NONE);
+
+        assertEquals(2 * 8 + height, bands.length);
+        assertArrayEquals(new byte[] { 0x1D, 'v', '0', 0, 1, 0, (byte) RasterEncoder.BAND_HEIGHT, 0 },
+                Arrays.copyOf(bands, 8));
+        int second = 8 + RasterEncoder.BAND_HEIGHT;
+        assertArrayEquals(new byte[] { 0x1D, 'v', '0', 0, 1, 0, 6, 0 }, Arrays.copyOfRange(bands, second, second + 8));
+    }
+
+    @Test
+    public void bandsEncodeLikeTheWholeImage() {
+        int width = 50;
+        int height = 40;
+        byte[] luminance = gradient(width, height);
+        for (RasterEncoder.Dither dither : RasterEncoder.Dither.values()) {
+            EscBuffer whole = new EscBuffer();
+            RasterEncoder encoder = new RasterEncoder();
+            encoder.start(width, dither);
+            encoder.encodeBand(luminance, 0, height, whole);
+
+            EscBuffer banded = new EscBuffer();
+            encoder.start(width, dither);
+            encoder.encodeBand(luminance, 0, 15, banded);
+            encoder.encodeBand(luminance, 15 * width, height - 15, banded);
+
+            // Same rows after each band's header.
+            byte[] expected = Arrays.copyOfRange(written(whole), 8, 8 + 7 * height);
+            byte[] rows = written(banded);
+            byte[] actual = new byte[7 * height];
+            System.arraycopy(rows, 8, actual, 0, 7 * 15);
+            System.arraycopy(rows, 8 + 7 * 15 + 8, actual, 7 * 15, 7 * (height - 15));
+            assertArrayEquals(dither.jsName, expected, actual);
+        }
+    }
+
+    @Test
+    public void ditheringKeepsTheShadeOfGrey() {
+        int width = 64;
+        int height = 64;
+        byte[] grey = new byte[width * height];
+        Arrays.fill(grey, (byte) 0x80);
+        for (RasterEncoder.Dither dither : new RasterEncoder.Dither[] {
+                RasterEncoder.Dither.FLOYD_STEINBERG, RasterEncoder.Dither.ORDERED }) {
+            byte[] bands = encode(grey, width, height, dither);
+            int black = 0;
+            for (int i = 0; i < bands.length; i++) {
+                // Skip the band headers.
+                if (i % (8 + 8 * RasterEncoder.BAND_HEIGHT) < 8) {
+                    continue;
+                }
+                black += Integer.bitCount(bands[i] & 0xFF);
+            }
+            double share = black / (double) (width * height);
+            assertTrue(dither.jsName + " " + share, share > 0.45 && share < 0.55);
+        }
+    }
+
+    @Test
+    public void dithersByName() {
+        assertSame(RasterEncoder.Dither.ATKINSON, RasterEncoder.Dither.fromName("atkinson"));
+        assertNull(RasterEncoder.Dither.fromName("halftone"));
+    }
+}
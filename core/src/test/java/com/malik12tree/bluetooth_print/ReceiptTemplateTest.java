@@ -0,0 +1,76 @@
+package com.malik12tree.bluetooth_print;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.Charset;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class ReceiptTemplateTest {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(ASCII);
+    }
+
+    private static String render(ReceiptTemplate template, JSONObject values) {
+        EscBuffer out = new EscBuffer();
+        out.clear();
+        template.render(values, new TextEncoder(), out);
+        return new String(out.copyFrom(0), ASCII);
+    }
+
+    @Test
+    public void fillsSlotsBetweenSegments() {
+        ReceiptTemplate template = new ReceiptTemplate.Builder("GBK", new JSONArray())
+                .add(ascii("Receipt #"), ReceiptTemplate.Slot.text("number", -1))
+                .add(ascii("\nTotal "), ReceiptTemplate.Slot.text("total", 2))
+                .build(ascii("\nThanks\n"));
+
+        String receipt = render(template, new JSONObject().put("number", "0042").put("total", 7.5));
+        assertEquals("Receipt #0042\nTotal 7.50\nThanks\n", receipt);
+        assertEquals("Receipt #\nTotal \nThanks\n".length(), template.fixedSize());
+        assertEquals("GBK", template.encoding);
+    }
+
+    @Test
+    public void numbersWithoutDecimalsPrintAsGiven() {
+        ReceiptTemplate template = new ReceiptTemplate.Builder("GBK", new JSONArray())
+                .add(ascii("Items: "), ReceiptTemplate.Slot.text("count", -1))
+                .build(new byte[0]);
+
+        assertEquals("Items: 3", render(template, new JSONObject().put("count", 3)));
+    }
+
+    @Test
+    public void encodesBarcodeSlotsWithTheirEncoder() {
+        BarcodeEncoder encoder = data -> {
+            if (data.isEmpty()) {
+                throw new IllegalArgumentException("empty");
+            }
+            return ascii("[" + data + "]");
+        };
+        ReceiptTemplate template = new ReceiptTemplate.Builder("GBK", new JSONArray())
+                .add(ascii("Order "), ReceiptTemplate.Slot.barcode("order", encoder))
+                .build(ascii("\n"));
+
+        assertEquals("Order [A-17]\n", render(template, new JSONObject().put("order", "A-17")));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> render(template, new JSONObject().put("order", "")));
+        assertEquals("Invalid barcode data for slot: order", e.getMessage());
+    }
+
+    @Test
+    public void rejectsMissingValues() {
+        ReceiptTemplate template = new ReceiptTemplate.Builder("GBK", new JSONArray())
+                .add(ascii("Total "), ReceiptTemplate.Slot.text("total", 2))
+                .build(new byte[0]);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> render(template, new JSONObject().put("total", JSONObject.NULL)));
+        assertEquals("Missing value for slot: total", e.getMessage());
+    }
+}
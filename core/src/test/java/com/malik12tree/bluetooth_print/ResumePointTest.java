@@ -0,0 +1,80 @@
+package com.malik12tree.bluetooth_print;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class ResumePointTest {
+
+    private static final byte[] JOB = {
+            0x1B, '@',
+            0x1B, 'E', 1,
+            'a', 'b', 0x0A,
+            0x1B, 'a', 1,
+            'c', 'd', 0x0A,
+            0x1B, 'E', 0,
+            'e', 'f',
+    };
+
+    @Test
+    public void resumesAfterTheLastLineFeedSent() {
+        ResumePoint point = ResumePoint.find(JOB, 12);
+        assertEquals(8, point.offset);
+        assertArrayEquals(new byte[] { 0x1B, '@', 0x1B, 'E', 1 }, point.prefix);
+
+        point = ResumePoint.find(JOB, JOB.length);
+        assertEquals(14, point.offset);
+        assertArrayEquals(new byte[] { 0x1B, '@', 0x1B, 'E', 1, 0x1B, 'a', 1 }, point.prefix);
+    }
+
+    @Test
+    public void prefixReplaysCommandsInTheOrderTheyWereLastGiven() {
+        byte[] job = {
+                0x1B, 'E', 1,
+                0x1B, 'a', 1,
+                0x1B, 'E', 0,
+                0x0A,
+        };
+        ResumePoint point = ResumePoint.find(job, job.length);
+        assertEquals(job.length, point.offset);
+        assertArrayEquals(new byte[] { 0x1B, '@', 0x1B, 'a', 1, 0x1B, 'E', 0 }, point.prefix);
+    }
+
+    @Test
+    public void initializingForgetsEarlierFormatting() {
+        byte[] job = {
+                0x1B, 'E', 1,
+                0x1B, '@',
+                0x1D, '!', 0x11,
+                0x0A,
+        };
+        ResumePoint point = ResumePoint.find(job, job.length);
+        assertArrayEquals(new byte[] { 0x1B, '@', 0x1D, '!', 0x11 }, point.prefix);
+    }
+
+    @Test
+    public void resumesAfterRasterBandsAndCuts() {
+        byte[] job = {
+                0x1D, 'v', '0', 0, 1, 0, 2, 0, (byte) 0xFF, 0x0A,
+                0x1D, 'v', '0', 0, 1, 0, 1, 0, 0x00,
+                0x1B, 'i',
+        };
+        // The band's 0x0A is image data, not a line feed.
+        assertEquals(10, ResumePoint.find(job, 15).offset);
+        assertEquals(19, ResumePoint.find(job, 20).offset);
+        assertEquals(job.length, ResumePoint.find(job, job.length).offset);
+    }
+
+    @Test
+    public void ignoresCommandsCutOffByTheLimit() {
+        byte[] job = { 0x1B, 'J', 0x20, 'a' };
+        assertNull(ResumePoint.find(job, 2));
+        assertEquals(3, ResumePoint.find(job, 3).offset);
+    }
+
+    @Test
+    public void noSafePointWithoutABoundary() {
+        assertNull(ResumePoint.find(new byte[] { 0x1B, 'E', 1, 'a', 'b' }, 5));
+        assertNull(ResumePoint.find(JOB, 0));
+    }
+}
@@ -0,0 +1,105 @@
+package com.malik12tree.bluetooth_print;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import org.junit.Test;
+
+public class StatusMonitorTest {
+
+    @Test
+    public void requestsEveryRealTimeStatus() {
+        assertArrayEquals(new byte[] {
+                0x10, 0x04, 1,
+                0x10, 0x04, 2,
+                0x10, 0x04, 3,
+                0x10, 0x04, 4,
+        }, new StatusMonitor().statusRequest());
+    }
+
+    @Test
+    public void readyUntilThePrinterAnswers() {
+        StatusMonitor monitor = new StatusMonitor();
+        assertTrue(monitor.isReady());
+        assertFalse(monitor.snapshot().known);
+    }
+
+    @Test
+    public void repliesAnswerRequestsInOrder() throws InterruptedException {
+        StatusMonitor monitor = new StatusMonitor();
+        monitor.statusRequest();
+        assertFalse(monitor.awaitReplies(1));
+
+        // Drawer open; cover open; no error; paper near its end.
+        assertTrue(monitor.feed(new byte[] { 0x12 | 0x04, 0x12 | 0x04, 0x12, 0x12 | 0x0C }));
+        assertTrue(monitor.awaitReplies(0));
+
+        StatusMonitor.Snapshot status = monitor.snapshot();
+        assertTrue(status.known);
+        assertTrue(status.drawerOpen);
+        assertTrue(status.coverOpen);
+        assertTrue(status.paperNearEnd);
+        assertFalse(status.offline);
+        assertFalse(status.paperOut);
+        assertFalse(status.error);
+        assertFalse(monitor.isReady());
+    }
+
+    @Test
+    public void reportsOnlyChanges() {
+        StatusMonitor monitor = new StatusMonitor();
+        monitor.statusRequest();
+        assertTrue(monitor.feed(new byte[] { 0x16 }));
+        monitor.statusRequest();
+        assertFalse(monitor.feed(new byte[] { 0x16 }));
+        monitor.statusRequest();
+        assertTrue(monitor.feed(new byte[] { 0x16 | 0x08 }));
+        assertTrue(monitor.snapshot().offline);
+    }
+
+    @Test
+    public void paperOutStopsPrinting() {
+        StatusMonitor monitor = new StatusMonitor();
+        monitor.statusRequest();
+        monitor.feed(new byte[] { 0x16, 0x12 | 0x20, 0x12 });
+        assertTrue(monitor.snapshot().paperOut);
+        assertFalse(monitor.isReady());
+
+        // Loaded again: the 4th reply clears it.
+        monitor.feed(new byte[] { 0x12 });
+        assertFalse(monitor.snapshot().paperOut);
+        assertTrue(monitor.isReady());
+    }
+
+    @Test
+    public void ignoresRepliesThatWereNotAskedFor() {
+        StatusMonitor monitor = new StatusMonitor();
+        assertFalse(monitor.feed(new byte[] { 0x16 | 0x08 }));
+        assertFalse(monitor.snapshot().known);
+    }
+
+    @Test
+    public void parsesAutomaticStatusPackets() {
+        StatusMonitor monitor = new StatusMonitor();
+        // Cover open, then paper out split across reads.
+        assertTrue(monitor.feed(new byte[] { 0x10 | 0x20, 0x00, 0x00, 0x00 }));
+        assertTrue(monitor.snapshot().coverOpen);
+
+        assertFalse(monitor.feed(new byte[] { 0x10, 0x00 }));
+        assertTrue(monitor.feed(new byte[] { 0x0C, 0x00 }));
+        StatusMonitor.Snapshot status = monitor.snapshot();
+        assertFalse(status.coverOpen);
+        assertTrue(status.paperOut);
+        assertFalse(status.paperNearEnd);
+    }
+
+    @Test
+    public void pollsWhilePaused() throws Exception {
+        StatusMonitor monitor = new StatusMonitor();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        monitor.whilePaused(out::write);
+
+        assertArrayEquals(new StatusMonitor().statusRequest(), out.toByteArray());
+        assertFalse(monitor.awaitReplies(0));
+    }
+}
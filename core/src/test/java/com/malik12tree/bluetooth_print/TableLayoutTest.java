@@ -0,0 +1,100 @@
+package com.malik12tree.bluetooth_print;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class TableLayoutTest {
+
+    private static String layout(TableLayout.Column[] columns, boolean wideCjk, JSONArray rows) {
+        StringBuilder out = new StringBuilder();
+        new TableLayout(columns, 1, wideCjk).layout(rows, out);
+        return out.toString();
+    }
+
+    private static JSONArray row(Object... cells) {
+        JSONArray row = new JSONArray();
+        for (Object cell : cells) {
+            row.put(cell);
+        }
+        return row;
+    }
+
+    @Test
+    public void flexibleColumnsShareWhatIsLeft() {
+        JSONArray specs = new JSONArray()
+                .put(new JSONObject())
+                .put(new JSONObject().put("width", 4))
+                .put(new JSONObject().put("width", "25%"))
+                .put(new JSONObject());
+        TableLayout.Column[] columns = TableLayout.columns(specs, 32, 1);
+
+        // 29 characters without the gaps: 4 fixed, 7 for 25% and 18 shared by the other two.
+        assertEquals(9, columns[0].width);
+        assertEquals(4, columns[1].width);
+        assertEquals(7, columns[2].width);
+        assertEquals(9, columns[3].width);
+    }
+
+    @Test
+    public void rejectsColumnsThatDontFit() {
+        JSONArray specs = new JSONArray().put(new JSONObject().put("width", 20)).put(new JSONObject().put("width", 20));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> TableLayout.columns(specs, 32, 1));
+        assertEquals("Columns don't fit in a line of 32 characters", e.getMessage());
+
+        assertThrows(IllegalArgumentException.class,
+                () -> TableLayout.columns(new JSONArray().put(new JSONObject().put("align", "justify")), 32, 1));
+        assertThrows(IllegalArgumentException.class, () -> TableLayout.columns(new JSONArray(), 32, 1));
+    }
+
+    @Test
+    public void alignsCellsAndTrimsTrailingSpaces() {
+        TableLayout.Column[] columns = {
+                new TableLayout.Column(6, TableLayout.ALIGN_LEFT, true),
+                new TableLayout.Column(3, TableLayout.ALIGN_CENTER, true),
+                new TableLayout.Column(6, TableLayout.ALIGN_RIGHT, true),
+        };
+        String lines = layout(columns, false, new JSONArray().put(row("Tea", 2, "3.50")).put(row("Cake", "", "")));
+
+        assertEquals("Tea     2    3.50\nCake\n", lines);
+    }
+
+    @Test
+    public void wrapsWordsAndBreaksLongOnes() {
+        TableLayout.Column[] columns = {
+                new TableLayout.Column(8, TableLayout.ALIGN_LEFT, true),
+                new TableLayout.Column(4, TableLayout.ALIGN_RIGHT, true),
+        };
+        String lines = layout(columns, false, new JSONArray().put(row("Oat milk latte", "3.5")).put(row("Cappuccinos", 4)));
+
+        assertEquals("Oat milk  3.5\nlatte\nCappucci    4\nnos\n", lines);
+    }
+
+    @Test
+    public void truncatesWhenAsked() {
+        TableLayout.Column[] columns = { new TableLayout.Column(5, TableLayout.ALIGN_LEFT, false) };
+        assertEquals("Cappu\n", layout(columns, false, new JSONArray().put(row("Cappuccino\nlarge"))));
+    }
+
+    @Test
+    public void wideCharactersTakeTwoCells() {
+        TableLayout.Column[] columns = {
+                new TableLayout.Column(5, TableLayout.ALIGN_RIGHT, true),
+                new TableLayout.Column(2, TableLayout.ALIGN_LEFT, true),
+        };
+        JSONArray rows = new JSONArray().put(row("\u4e2d\u6587", "x"));
+
+        assertEquals(" \u4e2d\u6587 x\n", layout(columns, true, rows));
+        assertEquals("   \u4e2d\u6587 x\n", layout(columns, false, rows));
+        assertEquals(4, new TableLayout(columns, 1, true).displayWidth("\u4e2d\u6587"));
+    }
+
+    @Test
+    public void rejectsRowsThatAreNotArrays() {
+        TableLayout.Column[] columns = { new TableLayout.Column(5, TableLayout.ALIGN_LEFT, true) };
+        assertThrows(IllegalArgumentException.class, () -> layout(columns, false, new JSONArray().put("row")));
+    }
+}
@@ -0,0 +1,148 @@
+package com.malik12tree.bluetooth_print;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import org.junit.Test;
+
+public class TextEncoderTest {
+
+    private static final byte[] BOLD = { 0x1B, 'E', 1 };
+    private static final TextFormat FORMAT = () -> BOLD.clone();
+
+    private static byte[] bytes(Object... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Object part : parts) {
+            if (part instanceof byte[]) {
+                out.write((byte[]) part, 0, ((byte[]) part).length);
+            } else if (part instanceof String) {
+                byte[] text = ((String) part).getBytes(Charset.forName("US-ASCII"));
+                out.write(text, 0, text.length);
+            } else if (part instanceof Character) {
+                out.write((Character) part);
+            } else {
+                out.write((Integer) part);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static EscBuffer fragment() {
+        EscBuffer buffer = new EscBuffer();
+        buffer.clear();
+        return buffer;
+    }
+
+    @Test
+    public void multiByteTextSelectsItsCodeSystem() {
+        TextEncoder encoder = new TextEncoder();
+        EscBuffer out = fragment();
+        encoder.writeText(FORMAT, "Hi\n", out);
+
+        assertArrayEquals(bytes(BOLD, 0x1B, '9', 0, "Hi\n"), out.copyFrom(0));
+    }
+
+    @Test
+    public void encodesChineseWithGbk() {
+        TextEncoder encoder = new TextEncoder();
+        EscBuffer out = fragment();
+        encoder.write("\u4e2d\u6587", out);
+
+        assertArrayEquals(new byte[] { (byte) 0xD6, (byte) 0xD0, (byte) 0xCE, (byte) 0xC4 }, out.copyFrom(0));
+    }
+
+    @Test
+    public void singleByteCodePageLeavesChineseMode() {
+        TextEncoder encoder = new TextEncoder();
+        encoder.setEncoding("CP1252");
+        EscBuffer out = fragment();
+        encoder.writeText(FORMAT, "Caf\u00e9", out);
+
+        assertArrayEquals(bytes(BOLD, 0x1C, '.', 0x1B, 't', 16, "Caf", 0xE9), out.copyFrom(0));
+        assertFalse(encoder.multiByte());
+    }
+
+    @Test
+    public void reentersChineseModeOnlyAfterLeavingIt() {
+        TextEncoder encoder = new TextEncoder();
+        encoder.setEncoding("CP437");
+        encoder.setEncoding("GBK");
+        EscBuffer out = fragment();
+        encoder.writePrefix(FORMAT, out);
+        // Nothing left Chinese mode yet.
+        assertArrayEquals(bytes(BOLD, 0x1B, '9', 0), out.copyFrom(0));
+
+        encoder.setEncoding("CP437");
+        encoder.writePrefix(FORMAT, out);
+        encoder.setEncoding("UTF-8");
+        int mark = out.size();
+        encoder.writePrefix(FORMAT, out);
+        assertArrayEquals(bytes(BOLD, 0x1C, '&', 0x1B, '9', 1), out.copyFrom(mark));
+    }
+
+    @Test
+    public void resetForgetsThatChineseModeWasLeft() {
+        TextEncoder encoder = new TextEncoder();
+        encoder.setEncoding("CP437");
+        encoder.writePrefix(FORMAT, fragment());
+        assertTrue(encoder.leftChineseMode());
+
+        encoder.reset();
+        encoder.setEncoding("GBK");
+        EscBuffer out = fragment();
+        encoder.writePrefix(FORMAT, out);
+        assertFalse(encoder.leftChineseMode());
+        assertArrayEquals(bytes(BOLD, 0x1B, '9', 0), out.copyFrom(0));
+    }
+
+    @Test
+    public void unmappableCharactersPrintAsQuestionMarks() {
+        TextEncoder encoder = new TextEncoder();
+        encoder.setEncoding("CP437");
+        EscBuffer out = fragment();
+        encoder.write("\u4e2da", out);
+
+        assertArrayEquals(bytes("?a"), out.copyFrom(0));
+    }
+
+    @Test
+    public void longTextGrowsTheOutput() {
+        TextEncoder encoder = new TextEncoder();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append('\u4e2d');
+        }
+        EscBuffer out = fragment();
+        encoder.write(text.toString(), out);
+
+        assertEquals(2000, out.size());
+    }
+
+    @Test
+    public void prefixIsBuiltOnceUntilInvalidated() {
+        int[] calls = { 0 };
+        TextFormat counting = () -> {
+            calls[0]++;
+            return BOLD.clone();
+        };
+        TextEncoder encoder = new TextEncoder();
+        EscBuffer out = fragment();
+        encoder.writePrefix(counting, out);
+        encoder.writePrefix(counting, out);
+        assertEquals(1, calls[0]);
+
+        encoder.invalidate();
+        encoder.writePrefix(counting, out);
+        assertEquals(2, calls[0]);
+    }
+
+    @Test
+    public void rejectsUnknownEncodings() {
+        TextEncoder encoder = new TextEncoder();
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> encoder.setEncoding("EBCDIC"));
+        assertTrue(e.getMessage().startsWith("Invalid encoding. Use one of: GBK, UTF-8, "));
+        assertEquals("GBK", encoder.encoding());
+    }
+}
@@ -0,0 +1,176 @@
+package com.malik12tree.bluetooth_print;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class VirtualPrinterTest {
+
+    private static final class Replies implements VirtualPrinter.Listener {
+        private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+        @Override
+        public synchronized void onReply(byte[] data) {
+            received.write(data, 0, data.length);
+            notifyAll();
+        }
+
+        synchronized byte[] await(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (received.size() < count) {
+                long remaining = deadline - System.nanoTime();
+                assertTrue("Got " + received.size() + " of " + count + " bytes", remaining > 0);
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return received.toByteArray();
+        }
+    }
+
+    private VirtualPrinter printer = new VirtualPrinter(VirtualPrinter.DEFAULT_BUFFER_SIZE, 0);
+    private final Replies replies = new Replies();
+
+    @After
+    public void close() {
+        printer.close();
+    }
+
+    private void send(int... data) throws InterruptedException {
+        byte[] bytes = new byte[data.length];
+        for (int i = 0; i < data.length; i++) {
+            bytes[i] = (byte) data[i];
+        }
+        send(bytes);
+    }
+
+    private void send(byte[] data) throws InterruptedException {
+        int offset = 0;
+        while (offset < data.length) {
+            offset += printer.offer(data, offset, data.length - offset, 1000);
+        }
+    }
+
+    @Test
+    public void answersStatusRequests() throws InterruptedException {
+        printer.setListener(replies);
+        send(0x10, 0x04, 1, 0x10, 0x04, 2, 0x10, 0x04, 4);
+        assertArrayEquals(new byte[] { 0x16, 0x12, 0x12 }, replies.await(3));
+    }
+
+    @Test
+    public void reportsPaperOut() throws InterruptedException {
+        printer.setListener(replies);
+        printer.setPaperOut(true);
+        send(0x10, 0x04, 1, 0x10, 0x04, 2, 0x10, 0x04, 4);
+        assertArrayEquals(new byte[] { 0x16 | 0x08, 0x12 | 0x20, 0x12 | 0x60 }, replies.await(3));
+    }
+
+    @Test
+    public void answersPrinterInformationQueries() throws InterruptedException {
+        printer.setListener(replies);
+        ProfileProbe probe = new ProfileProbe();
+        send(probe.request());
+
+        byte[] answers = replies.await("_1.00\0_Virtual\0_Virtual Printer 80\0".length());
+        assertEquals(0, probe.filter(answers).length);
+        assertEquals("Virtual", probe.answer(ProfileProbe.MANUFACTURER));
+        assertEquals("Virtual Printer 80", probe.answer(ProfileProbe.MODEL));
+    }
+
+    @Test
+    public void sendsStatusBackOnceEnabled() throws InterruptedException {
+        printer.setListener(replies);
+        send(StatusMonitor.ENABLE_AUTO_STATUS);
+        replies.await(4);
+        printer.setCoverOpen(true);
+
+        byte[] packets = replies.await(8);
+        StatusMonitor monitor = new StatusMonitor();
+        monitor.feed(packets);
+        assertTrue(monitor.snapshot().coverOpen);
+        assertFalse(monitor.isReady());
+    }
+
+    @Test
+    public void printsLinesFeedsAndCuts() throws InterruptedException {
+        send('a', 0x0A, 0x1B, 'J', 40, 0x1B, '3', 10, 'b', 0x0A, 0x1D, 'V', 1);
+        assertTrue(printer.awaitCuts(1, 5000));
+
+        assertEquals(30 + 40 + 10, printer.dotsPrinted());
+        assertEquals(13, printer.bytesReceived());
+    }
+
+    @Test
+    public void printsRasterBandsByTheirHeight() throws InterruptedException {
+        byte[] band = new byte[8 + 2 * 100];
+        band[0] = 0x1D;
+        band[1] = 'v';
+        band[2] = '0';
+        band[4] = 2;
+        band[6] = 100;
+        send(band);
+        send(0x1B, 'i');
+        assertTrue(printer.awaitCuts(1, 5000));
+
+        assertEquals(100, printer.dotsPrinted());
+        assertEquals(band.length + 2, printer.bytesPrinted());
+    }
+
+    @Test
+    public void holdsSendersBackWhileStopped() throws InterruptedException {
+        printer.close();
+        printer = new VirtualPrinter(100, 0);
+        printer.setPaperOut(true);
+        byte[] data = new byte[150];
+
+        assertEquals(100, printer.offer(data, 0, data.length, 0));
+        assertEquals(0, printer.offer(data, 100, 50, 50));
+        assertEquals(100, printer.buffered());
+
+        printer.setPaperOut(false);
+        assertEquals(50, printer.offer(data, 100, 50, 5000));
+    }
+
+    @Test
+    public void rejectsBytesOnceClosed() {
+        printer.close();
+        assertThrows(IllegalStateException.class, () -> printer.offer(new byte[1], 0, 1, 0));
+        assertThrows(IllegalArgumentException.class, () -> new VirtualPrinter(64, 0));
+    }
+
+    @Test
+    public void transportDeliversRepliesUntilDisconnected() throws Exception {
+        VirtualPrinterTransport transport = new VirtualPrinterTransport("virtual", printer);
+        boolean[] events = new boolean[2];
+        transport.connect(new PrinterTransport.Listener() {
+            @Override
+            public void onConnected() {
+                events[0] = true;
+            }
+
+            @Override
+            public void onDisconnected() {
+                events[1] = true;
+            }
+
+            @Override
+            public void onData(byte[] reply) {
+                replies.onReply(reply);
+            }
+        });
+        assertTrue(events[0]);
+        assertTrue(transport.isConnected());
+
+        transport.write(new byte[] { 0x10, 0x04, 1 });
+        assertArrayEquals(new byte[] { 0x16 }, replies.await(1));
+
+        transport.disconnect();
+        assertTrue(events[1]);
+        assertFalse(transport.isConnected());
+        IOException e = assertThrows(IOException.class, () -> transport.write(new byte[] { 1 }));
+        assertEquals("Printer is not connected!", e.getMessage());
+    }
+}
@@ -6,12 +6,35 @@ export const PrinterFonts = ['A', 'B'] as const;
 export const BarcodeTextPlacements = ['none', 'above', 'below', 'both'] as const;
 export const BarcodeTypes = ['UPC_A', 'EAN8', 'EAN13', 'CODE39', 'ITF', 'CODABAR', 'CODE128'] as const;
 export const DataCodeTypes = ['QR', ...BarcodeTypes] as const;
+export const DitherAlgorithms = ['none', 'floyd-steinberg', 'atkinson', 'ordered'] as const;
 /**
  * Available character encodings for printing.
  * - `GBK`: Chinese GB2312/GBK encoding - best compatibility with most Chinese thermal printers.
  * - `UTF-8`: Unicode UTF-8 encoding - works with newer/high-end printers.
+ * - `Big5`, `Shift_JIS`: Traditional Chinese and Japanese, for printers with these character sets.
+ * - `CP437`, `CP850`, `CP858`, `CP1252`, ...: Single-byte code pages for Latin, Cyrillic and Greek text on most
+ *   ESC/POS printers. The code page is selected on the printer automatically.
  */
-export const PrinterEncodings = ['GBK', 'UTF-8'] as const;
+export const PrinterEncodings = [
+  'GBK',
+  'UTF-8',
+  'Big5',
+  'Shift_JIS',
+  'CP437',
+  'CP850',
+  'CP860',
+  'CP863',
+  'CP865',
+  'CP1252',
+  'CP866',
+  'CP852',
+  'CP858',
+  'CP1250',
+  'CP1251',
+  'CP1253',
+  'CP1254',
+  'CP1257',
+] as const;
 
 /**
  * When `"default"`, uses default internal printer settings.
@@ -28,12 +51,33 @@ export type BarcodeTextPlacement = (typeof BarcodeTextPlacements)[number];
 export type PrinterFont = (typeof PrinterFonts)[number];
 export type BarcodeType = (typeof BarcodeTypes)[number];
 export type DataCodeType = (typeof DataCodeTypes)[number];
+/**
+ * Algorithms used to convert images to black and white dots.
+ * - `none`: Plain threshold at 50% gray. Best for logos and line art.
+ * - `floyd-steinberg`: Error diffusion. Best for photos.
+ * - `atkinson`: Lighter error diffusion that keeps more contrast.
+ * - `ordered`: 8x8 Bayer matrix. Fastest dithering, with a regular pattern.
+ */
+export type DitherAlgorithm = (typeof DitherAlgorithms)[number];
 /**
  * Character encoding type for printing.
  * - `GBK`: Best for Chinese thermal printers (default).
  * - `UTF-8`: For newer printers with UTF-8 support.
+ * - Code pages such as `CP437` or `CP1252`: For Western and Eastern European text; characters missing from the code
+ *   page print as `?`.
+ *
+ * @see {@linkcode PrinterEncodings}
  */
 export type PrinterEncoding = (typeof PrinterEncodings)[number];
+/**
+ * Binary data passed to the native layer.
+ *
+ * @remarks
+ * On Android, strings starting with `file://`, `content://` or `cache://` (a path relative to the app's cache
+ * directory) are read natively instead of being sent across the bridge, which is the fastest way to print large
+ * images. Other platforms reject these sources. Number arrays and buffers given to `raw` are sent as hex on Android
+ * and as Base64 elsewhere.
+ */
 export type Base64Encodable = string | Blob | BufferSource | number[];
 
 export interface BluetoothDevice {
@@ -41,8 +85,139 @@ export interface BluetoothDevice {
   address: string;
 }
 
+export interface DiscoveredDevice extends BluetoothDevice {
+  /**
+   * The device's Bluetooth class of device, including its major class.
+   */
+  deviceClass?: number;
+  /**
+   * Signal strength in dBm when the device was last seen.
+   */
+  rssi?: number;
+  /**
+   * When the device was last seen, in milliseconds since the epoch.
+   */
+  lastSeenAt: number;
+}
+
+/**
+ * What is known about a printer from earlier connections. Printers are asked about themselves on their first connect,
+ * and the settings last used with them are applied to later connections.
+ *
+ * @remarks
+ * Standard ESC/POS can't report which barcodes or raster commands a printer supports or how large its buffer is, so
+ * profiles hold none of these.
+ *
+ * @see {@linkcode CapacitorThermalPrinterPlugin.getPrinterProfile}
+ */
+export interface PrinterProfile {
+  /**
+   * The model name the printer reported, e.g. `'POS-80'`.
+   */
+  model?: string;
+  /**
+   * The firmware version the printer reported.
+   */
+  firmware?: string;
+  manufacturer?: string;
+  /**
+   * When the printer was probed, in milliseconds since the epoch. Unset if it was never connected long enough.
+   */
+  probedAt?: number;
+  /**
+   * Printable width in dots, guessed from a model name such as `'XP-58'`. New connections use it as their image width
+   * limit instead of 384 dots, and images are never printed wider.
+   */
+  dotWidth?: number;
+  /**
+   * The last `dpi` set on a connection to the printer, not counting broadcasts, pools and templates; new connections
+   * start from it.
+   */
+  dpi?: number;
+  /**
+   * The last encoding a connection to the printer was opened with or set to; new connections default to it.
+   */
+  encoding?: PrinterEncoding;
+}
+
 export interface PrinterConnection extends BluetoothDevice {
   connectionId: string;
+  /**
+   * Last time the printer was heard from or written to, in milliseconds since the epoch. Only set on Android.
+   */
+  lastSeenAt?: number;
+  /**
+   * Only set when connected with {@linkcode ReconnectOptions | reconnect} enabled.
+   */
+  reconnecting?: boolean;
+  /**
+   * Number of times the link was lost. Only set when connected with {@linkcode ReconnectOptions | reconnect} enabled.
+   */
+  linkLosses?: number;
+  /**
+   * Number of times the link was re-established. Only set when connected with
+   * {@linkcode ReconnectOptions | reconnect} enabled.
+   */
+  reconnects?: number;
+}
+
+export interface ReconnectOptions {
+  /**
+   * Attempts before giving up and emitting `disconnected`, `0` to retry forever. Defaults to `10`.
+   */
+  maxAttempts?: number;
+  /**
+   * Delay before the first attempt. Each following attempt waits twice as long, up to `maxDelayMs`, with random
+   * jitter of up to half the delay. Defaults to `500`.
+   */
+  initialDelayMs?: number;
+  /**
+   * Defaults to `30000`.
+   */
+  maxDelayMs?: number;
+}
+
+export interface VirtualPrinterOptions {
+  /**
+   * Bytes the printer buffers before holding back writes. Defaults to `4096`.
+   */
+  bufferSize?: number;
+  /**
+   * Simulated print speed in mm/s, `0` to print instantly. Defaults to `80`.
+   */
+  printSpeed?: number;
+}
+
+export interface ConnectFirstOptions {
+  /**
+   * Only devices whose name matches this regular expression, e.g. `'^RPP'`.
+   */
+  nameRegex?: string;
+  /**
+   * Only devices whose address starts with this, ignoring case, e.g. `'DC:0D:30'`.
+   */
+  addressPrefix?: string;
+  /**
+   * Only tries bonded (paired) devices, without scanning. On its own, tries every bonded printer.
+   */
+  bonded?: boolean;
+  /**
+   * Gives up and resolves with `null` after this long. Defaults to `30000`.
+   */
+  timeoutMs?: number;
+  /**
+   * Gives up on a single device after this long. Defaults to `10000`.
+   */
+  attemptTimeoutMs?: number;
+  /**
+   * Devices tried at once. Defaults to `2`.
+   */
+  maxParallel?: number;
+  encoding?: PrinterEncoding;
+  heartbeatIntervalMs?: number;
+  reconnect?: boolean | ReconnectOptions;
+  spool?: boolean;
+  metricsIntervalMs?: number;
 }
 
 export interface DisconnectOptions {
@@ -53,6 +228,338 @@ export interface IsConnectedOptions {
   connectionId?: string;
 }
 
+export interface GetStatusOptions {
+  connectionId?: string;
+  /**
+   * Asks the printer for its current status instead of returning the last one it reported. Defaults to `false`.
+   */
+  refresh?: boolean;
+}
+
+export interface MetricsOptions {
+  connectionId?: string;
+}
+
+/**
+ * Durations bucketed by powers of two, so percentiles are rounded up to at most twice the real value.
+ * Everything but `count` is missing until something was recorded.
+ */
+export interface TimingHistogram {
+  count: number;
+  meanMs?: number;
+  maxMs?: number;
+  p50Ms?: number;
+  p95Ms?: number;
+  p99Ms?: number;
+}
+
+export interface ConnectionMetrics {
+  connectionId: string;
+  /**
+   * When counting started, on connect or on the last {@linkcode CapacitorThermalPrinterPlugin.resetMetrics}, in
+   * milliseconds since the epoch.
+   */
+  since: number;
+  /**
+   * Bytes written to the printer, including jobs that failed partway.
+   */
+  bytesSent: number;
+  jobsSent: number;
+  jobsFailed: number;
+  /**
+   * Bytes of sent jobs over the time spent sending them.
+   */
+  bytesPerSecond: number;
+  /**
+   * Time spent encoding operations into printer commands, by kind. `text` includes tables, `barcode` QR codes.
+   */
+  encode: {
+    text: TimingHistogram;
+    image: TimingHistogram;
+    barcode: TimingHistogram;
+  };
+  /**
+   * Time jobs waited in the queue before being sent.
+   */
+  queueWait: TimingHistogram;
+  /**
+   * Time spent sending jobs, including pauses from pacing and while the printer wasn't ready.
+   */
+  transfer: TimingHistogram;
+  /**
+   * Time taken to connect and reconnect.
+   */
+  connect: TimingHistogram;
+  reconnects: number;
+  /**
+   * Number of lost or closed connections by reason: `closed`, `linkLost`, `heartbeatTimeout` or `reconnectFailed`.
+   */
+  disconnects: Record<string, number>;
+}
+
+export interface PrinterStatus {
+  connectionId: string;
+  /**
+   * `false` until the printer has reported its status at least once. Some printers never do.
+   */
+  known: boolean;
+  /**
+   * Whether jobs are being sent. Jobs wait while the printer is offline, its cover is open, it is out of paper or in
+   * an error state.
+   */
+  ready: boolean;
+  online: boolean;
+  coverOpen: boolean;
+  paperOut: boolean;
+  paperNearEnd: boolean;
+  error: boolean;
+  drawerOpen: boolean;
+  /**
+   * Time of the last report in milliseconds since the epoch. Missing until {@linkcode PrinterStatus.known}.
+   */
+  updatedAt?: number;
+}
+
+export interface WriteOptions {
+  /**
+   * Number of bytes sent to the printer at once. `0` sends each job at once. Defaults to `512`.
+   */
+  chunkSize?: number;
+  /**
+   * Pause in milliseconds after every chunk. Defaults to `0`.
+   */
+  chunkDelayMs?: number;
+  /**
+   * Upper bound of the transfer rate in bytes per second. `0` means unlimited. Defaults to `0`.
+   */
+  bytesPerSecond?: number;
+}
+
+export interface SetWriteOptionsOptions extends WriteOptions {
+  connectionId?: string;
+}
+
+export interface WriteProgress {
+  connectionId: string;
+  jobId: string;
+  bytesSent: number;
+  /**
+   * Size of the job in bytes. Missing for streamed images, whose size is not known upfront.
+   */
+  totalBytes?: number;
+}
+
+export interface TableColumn {
+  /**
+   * Width in characters, or a percentage of the line such as `'50%'`. Columns without a width share what is left
+   * of the line.
+   */
+  width?: number | `${number}%`;
+  /**
+   * Defaults to `'left'`.
+   */
+  align?: PrintAlignment;
+  /**
+   * `wrap` continues cells that don't fit on the following lines, breaking at spaces when possible. `truncate` cuts
+   * them at the column width. Defaults to `'wrap'`.
+   */
+  overflow?: 'wrap' | 'truncate';
+}
+
+export interface TableOptions {
+  /**
+   * Spaces between columns. Defaults to `1`.
+   */
+  gap?: number;
+  /**
+   * Characters per line. Defaults to what fits within {@linkcode PrinterSession.limitWidth} with the current font,
+   * character spacing and double width.
+   */
+  lineWidth?: number;
+}
+
+/**
+ * A single formatting, content or action step of a {@linkcode PrinterSession.printJob}.
+ *
+ * Each operation takes the same arguments as the session method of the same name.
+ */
+export type PrintOperation =
+  | { op: 'bold' | 'underline' | 'doubleWidth' | 'doubleHeight' | 'inverse'; enabled?: IsEnabled }
+  | { op: 'setEncoding'; encoding: PrinterEncoding }
+  | { op: 'dpi'; dpi: PrinterDPI }
+  | { op: 'limitWidth'; width: number }
+  | { op: 'dither'; algorithm: DitherAlgorithm }
+  | { op: 'align'; alignment: PrintAlignment }
+  | { op: 'charSpacing'; charSpacing: number }
+  | { op: 'lineSpacing'; lineSpacing: number }
+  | { op: 'font'; font: PrinterFont }
+  | { op: 'barcodeWidth'; width: number }
+  | { op: 'barcodeHeight'; height: number }
+  | { op: 'barcodeTextPlacement'; placement: BarcodeTextPlacement }
+  | { op: 'text'; text: string }
+  | { op: 'table'; columns: TableColumn[]; rows: (string | number)[][]; options?: TableOptions }
+  | { op: 'image'; image?: Base64Encodable; cacheKey?: string }
+  | { op: 'qr'; data: string }
+  | { op: 'barcode'; type: BarcodeType; data: string }
+  | { op: 'raw'; data: Base64Encodable }
+  | { op: 'cutPaper' | 'feedCutPaper'; half?: boolean }
+  | { op: 'clearFormatting' | 'selfTest' | 'beep' | 'openDrawer' };
+
+/**
+ * A {@linkcode PrintOperation}, or a `text`, `qr` or `barcode` operation that leaves its data to a named slot filled
+ * by {@linkcode PrinterSession.printTemplate}.
+ */
+export type TemplateOperation =
+  | PrintOperation
+  | {
+      op: 'text';
+      slot: string;
+      /**
+       * Prints numeric values with this many fraction digits. By default values are printed as given.
+       */
+      decimals?: number;
+    }
+  | { op: 'qr'; slot: string }
+  | { op: 'barcode'; type: BarcodeType; slot: string };
+
+export interface RegisteredTemplate {
+  id: string;
+  /**
+   * Slot names in the order they appear.
+   */
+  slots: string[];
+  /**
+   * Size in bytes of the compiled template without slot values.
+   */
+  size: number;
+}
+
+export interface QueueOptions {
+  /**
+   * Jobs with a higher priority are sent first; jobs of equal priority are sent in order. Defaults to `0`.
+   */
+  priority?: number;
+  /**
+   * Waits until the job has been sent to the printer before resolving. When `false`, resolves as soon as the job is
+   * queued. Defaults to `true`.
+   */
+  wait?: boolean;
+}
+
+export interface QueuedJob {
+  jobId: string;
+}
+
+export interface PrintJobInfo extends QueuedJob {
+  priority: number;
+  /**
+   * `sending` for the job currently being sent, `queued` for jobs waiting their turn.
+   */
+  state: 'queued' | 'sending';
+  /**
+   * Size of the job in bytes. Missing for streamed images.
+   */
+  size?: number;
+}
+
+export interface ListJobsOptions {
+  connectionId?: string;
+}
+
+export interface PrintJobOptions extends QueueOptions {
+  /**
+   * Resets the print queue and formatting before encoding the operations. Defaults to `true`.
+   */
+  begin?: boolean;
+  /**
+   * Writes the print queue once all operations are encoded. Defaults to `true`.
+   */
+  write?: boolean;
+}
+
+export interface BroadcastOptions extends QueueOptions {
+  /**
+   * Connections to print on. Defaults to all connections.
+   */
+  connectionIds?: string[];
+}
+
+export interface BroadcastTargetResult {
+  connectionId: string;
+  /**
+   * Missing if the job could not be queued on this connection.
+   */
+  jobId?: string;
+  success: boolean;
+  error?: string;
+}
+
+export interface BroadcastResult {
+  /**
+   * One result per connection, in the order of {@linkcode BroadcastOptions.connectionIds}.
+   */
+  results: BroadcastTargetResult[];
+}
+
+export interface CreatePoolOptions {
+  /**
+   * Name of the pool. Defaults to a random ID.
+   */
+  poolId?: string;
+}
+
+export interface PrinterPoolInfo {
+  poolId: string;
+  /**
+   * Members of the pool. Connections are removed once they are gone for good.
+   */
+  connectionIds: string[];
+}
+
+export interface PoolJob extends QueuedJob {
+  poolId: string;
+  /**
+   * Connection that printed the job, or that it was queued on when `wait` is `false`.
+   */
+  connectionId: string;
+}
+
+export interface PrintJobError {
+  /**
+   * Index of the failed operation in the submitted list.
+   */
+  index: number;
+  op: string | null;
+  message: string;
+}
+
+export interface PrintJobResult {
+  /**
+   * Operations that failed validation or encoding. Nothing is written when this is not empty.
+   */
+  errors: PrintJobError[];
+  written: boolean;
+  /**
+   * Identifier of the queued job when {@linkcode PrintJobResult.written} is `true`.
+   */
+  jobId?: string;
+}
+
+export interface ImageCacheStats {
+  hits: number;
+  misses: number;
+  evictions: number;
+  /**
+   * Number of cached images.
+   */
+  entries: number;
+  /**
+   * Total size of the cached raster commands in bytes.
+   */
+  bytes: number;
+  maxBytes: number;
+}
+
 export interface PrinterSession {
   bold(enabled?: IsEnabled): PrinterSession;
   underline(enabled?: IsEnabled): PrinterSession;
@@ -61,6 +568,7 @@ export interface PrinterSession {
   inverse(enabled?: IsEnabled): PrinterSession;
   dpi(dpi: PrinterDPI): PrinterSession;
   limitWidth(width: number): PrinterSession;
+  dither(algorithm: DitherAlgorithm): PrinterSession;
   align(alignment: PrintAlignment): PrinterSession;
   charSpacing(charSpacing: number): PrinterSession;
   lineSpacing(lineSpacing: number): PrinterSession;
@@ -74,6 +582,9 @@ export interface PrinterSession {
    *
    * @param encoding - The encoding to use. Defaults to 'GBK' for best Chinese character support.
    *
+   * @remarks
+   * Each text command also selects the matching code page on the printer, so encodings can be mixed in one receipt.
+   *
    * @see {@linkcode PrinterEncoding}
    * @see {@linkcode PrinterEncodings}
    *
@@ -81,7 +592,8 @@ export interface PrinterSession {
    */
   setEncoding(encoding: PrinterEncoding): PrinterSession;
   text(text: string): PrinterSession;
-  image(data: Base64Encodable): PrinterSession;
+  table(columns: TableColumn[], rows: (string | number)[][], options?: TableOptions): PrinterSession;
+  image(data: Base64Encodable, cacheKey?: string): PrinterSession;
   qr(data: string): PrinterSession;
   barcode(type: BarcodeType, data: string): PrinterSession;
   raw(data: Base64Encodable): PrinterSession;
@@ -91,7 +603,11 @@ export interface PrinterSession {
   cutPaper(half?: boolean): PrinterSession;
   feedCutPaper(half?: boolean): PrinterSession;
   begin(): PrinterSession;
-  write(): Promise<void>;
+  write(options?: QueueOptions): Promise<QueuedJob>;
+  printJob(operations: PrintOperation[], options?: PrintJobOptions): Promise<PrintJobResult>;
+  streamImage(data: Base64Encodable, options?: QueueOptions): Promise<QueuedJob>;
+  registerTemplate(id: string, operations: TemplateOperation[]): Promise<RegisteredTemplate>;
+  printTemplate(id: string, values: Record<string, string | number>, options?: QueueOptions): Promise<QueuedJob>;
 }
 
 export interface CapacitorThermalPrinterPlugin extends PrinterSession {
@@ -103,24 +619,115 @@ export interface CapacitorThermalPrinterPlugin extends PrinterSession {
    * @category Connectivity
    */
   stopScan(): Promise<void>;
+  /**
+   * Every device found by the current or last scan, in the order they were found.
+   *
+   * Only supported on Android.
+   *
+   * @see {@linkcode CapacitorThermalPrinterPlugin.startScan}
+   *
+   * @category Connectivity
+   */
+  getDiscoveredDevices(): Promise<{ devices: DiscoveredDevice[] }>;
+  /**
+   * What is known about a printer from earlier connections; `profile` is unset if nothing is.
+   *
+   * Only supported on Android.
+   *
+   * @category Connectivity
+   */
+  getPrinterProfile(options: { address: string }): Promise<{ profile?: PrinterProfile }>;
+  /**
+   * Forgets printer profiles, so the printers are probed again on their next connect and new connections start from
+   * the default settings.
+   *
+   * @param options.address - Only forgets the profile of this printer.
+   *
+   * @remarks
+   * Only supported on Android.
+   *
+   * @see {@linkcode PrinterProfile}
+   *
+   * @category Connectivity
+   */
+  clearPrinterProfiles(options?: { address?: string }): Promise<{ cleared: number }>;
   /**
    * @category Connectivity
    */
   /**
    * Connect to a thermal printer.
    *
-   * @param options.address - The Bluetooth address of the printer.
-   * @param options.encoding - Character encoding to use. Defaults to 'GBK' for best Chinese character support.
+   * @param options.address - The Bluetooth address of the printer. Not needed with `host`.
+   * @param options.host - Connects to a network printer's raw TCP port instead of a Bluetooth one, e.g.
+   * `'192.168.1.50'`. The connection's `address` is then `host:port`. Only supported on Android.
+   * @param options.port - The network printer's port. Defaults to `9100`.
+   * @param options.writeTimeoutMs - How long a network printer may take to accept written bytes before its link is
+   * considered lost. Defaults to `10000`.
+   * @param options.encoding - Character encoding to use. Defaults to the encoding last used with the printer, or
+   * 'GBK' for best Chinese character support.
+   * Rejects if the encoding is not one of {@linkcode PrinterEncodings}.
+   * @param options.heartbeatIntervalMs - How often the connection is checked in the background, `0` to disable.
+   * Defaults to 5000ms. Lost connections are reported through the `disconnected` event. Only supported on Android.
+   * @param options.reconnect - Re-establishes a lost link in the background instead of dropping the connection,
+   * keeping its `connectionId`, formatting and queued jobs. `true` uses the default {@linkcode ReconnectOptions}.
+   * Disabled by default. Only supported on Android.
+   * @param options.metricsIntervalMs - Emits the `metrics` event at this interval, `0` to disable. Defaults to `0`.
+   * Only supported on Android.
+   * @param options.spool - Journals written jobs to disk until they are sent, so jobs lost to an app restart or a
+   * dropped link are printed once the printer is connected again. Disabled by default. Only supported on Android.
+   * @param options.virtual - Connects to a simulated in-app printer instead of a Bluetooth one, identified by
+   * `address`, which may be any string. It answers status requests and paces printing like real hardware, so apps
+   * can be tried without a printer. `true` uses the default {@linkcode VirtualPrinterOptions}; the options of the
+   * first connect to an address are kept. Only supported on Android.
+   *
+   * @remarks
+   * While reconnecting, methods keep working and jobs wait for the link. A job that was being sent when the link
+   * was lost continues after the last line or image band that reached the printer, with its formatting restored.
+   * Streamed images fail instead, as do jobs whose connection is dropped for good; the latter are sent again from
+   * the start on the next connect if `spool` is enabled.
+   *
+   * @see {@linkcode CapacitorThermalPrinterPlugin.clearSpool}
    *
    * @category Connectivity
    */
-  connect(options: { address: string; encoding?: PrinterEncoding }): Promise<PrinterConnection | null>;
+  connect(options: {
+    address?: string;
+    host?: string;
+    port?: number;
+    writeTimeoutMs?: number;
+    encoding?: PrinterEncoding;
+    heartbeatIntervalMs?: number;
+    reconnect?: boolean | ReconnectOptions;
+    spool?: boolean;
+    metricsIntervalMs?: number;
+    virtual?: boolean | VirtualPrinterOptions;
+  }): Promise<PrinterConnection | null>;
+  /**
+   * Connects to the first printer that matches, without a separate scan. Matching bonded devices are tried first,
+   * and only if none connects does a scan run, stopping at the first match. Discovery is cancelled before every
+   * attempt since it slows connecting down, which also ends a scan started by
+   * {@linkcode CapacitorThermalPrinterPlugin.startScan}.
+   *
+   * Devices must match every filter given; at least one of `nameRegex`, `addressPrefix` or `bonded` is required. The
+   * remaining options are those of {@linkcode CapacitorThermalPrinterPlugin.connect}.
+   *
+   * Only supported on Android.
+   *
+   * @returns The connection, or `null` if no matching printer connected in time. Connections that already exist are
+   * returned as is.
+   *
+   * @category Connectivity
+   */
+  connectFirst(options: ConnectFirstOptions): Promise<PrinterConnection | null>;
   /**
    * @category Connectivity
    */
   disconnect(options?: DisconnectOptions): Promise<void>;
 
   /**
+   * @remarks
+   * On Android, answers from the state kept by the background heartbeat without contacting the printer.
+   *
    * @category Connectivity
    */
   isConnected(options?: IsConnectedOptions): Promise<boolean>;
@@ -155,11 +762,83 @@ export interface CapacitorThermalPrinterPlugin extends PrinterSession {
   getActiveConnection(): string | null;
 
   /**
-   * Emitted when new devices are discovered.
+   * Returns the status reported by the printer.
+   *
+   * @remarks
+   * - The plugin asks printers to report status changes by themselves on connect, so the cached status is usually
+   * current.
+   * - A refresh is sent between two jobs; if it can't be sent or answered in time, the cached status is returned.
+   * - Only supported on Android.
+   *
+   * @category Connectivity
+   */
+  getStatus(options?: GetStatusOptions): Promise<PrinterStatus>;
+
+  /**
+   * Returns counters and timings of a connection, collected since it connected or since the last
+   * {@linkcode CapacitorThermalPrinterPlugin.resetMetrics}.
+   *
+   * @remarks
+   * Only supported on Android.
+   *
+   * @category Connectivity
+   */
+  getMetrics(options?: MetricsOptions): Promise<ConnectionMetrics>;
+  /**
+   * Starts counting the metrics of a connection from zero.
+   *
+   * @remarks
+   * Only supported on Android.
+   *
+   * @category Connectivity
+   */
+  resetMetrics(options?: MetricsOptions): Promise<void>;
+
+  /**
+   * Configures how jobs are split and paced on their way to the printer.
+   *
+   * @param options - Omitted options keep their current value.
+   * @returns The options now in effect.
+   *
+   * @remarks
+   * - Slow or cheap printers with small input buffers may drop data when written to at full speed;
+   * lower `chunkSize` or set `chunkDelayMs` / `bytesPerSecond` for them.
+   * - Only supported on Android.
+   *
+   * @see {@linkcode CapacitorThermalPrinterPlugin.write}
+   *
+   * @category Connectivity
+   */
+  setWriteOptions(options: SetWriteOptionsOptions): Promise<Required<WriteOptions>>;
+
+  /**
+   * Returns hit and miss counters of the native cache of encoded images.
+   *
+   * @remarks
+   * Only supported on Android.
+   *
+   * @category Image Formatting
+   */
+  getImageCacheStats(): Promise<ImageCacheStats>;
+
+  /**
+   * Drops all cached encoded images.
+   *
+   * @remarks
+   * Only supported on Android.
+   *
+   * @category Image Formatting
+   */
+  clearImageCache(): Promise<void>;
+
+  /**
+   * Emitted when new devices are discovered, with every device found so far.
    *
    * @remarks
    * If you're using Angular as your framework of choice, the handler doesn't run in zone.
    *
+   * On Android, prefer `devicesUpdated`, which only carries what changed.
+   *
    * @category Event Listeners
    */
   addListener(
@@ -167,6 +846,25 @@ export interface CapacitorThermalPrinterPlugin extends PrinterSession {
     handler: (data: { devices: BluetoothDevice[] }) => void,
   ): Promise<PluginListenerHandle>;
 
+  /**
+   * Emitted during a scan with the devices that were found or changed, such as a resolved name or a new signal
+   * strength. Changes are collected for a quarter of a second before being reported, and all are reported before
+   * `discoveryFinish`.
+   *
+   * Only supported on Android.
+   *
+   * @remarks
+   * If you're using Angular as your framework of choice, the handler doesn't run in zone.
+   *
+   * @see {@linkcode CapacitorThermalPrinterPlugin.getDiscoveredDevices}
+   *
+   * @category Event Listeners
+   */
+  addListener(
+    event: 'devicesUpdated',
+    handler: (data: { devices: DiscoveredDevice[] }) => void,
+  ): Promise<PluginListenerHandle>;
+
   /**
    * Emitted when device discovery finishes.
    *
@@ -200,6 +898,87 @@ export interface CapacitorThermalPrinterPlugin extends PrinterSession {
     event: 'disconnected',
     handler: (data: { connectionId: string; address: string; name?: string | null }) => void,
   ): Promise<PluginListenerHandle>;
+  /**
+   * Emitted before each attempt to re-establish a lost link.
+   *
+   * @remarks
+   * - If you're using Angular as your framework of choice, the handler doesn't run in zone.
+   * - Only supported on Android.
+   *
+   * @see {@linkcode ReconnectOptions}
+   *
+   * @category Event Listeners
+   */
+  addListener(
+    event: 'reconnecting',
+    handler: (data: { connectionId: string; attempt: number; delayMs: number }) => void,
+  ): Promise<PluginListenerHandle>;
+  /**
+   * Emitted when a lost link is re-established.
+   *
+   * @remarks
+   * - If you're using Angular as your framework of choice, the handler doesn't run in zone.
+   * - Only supported on Android.
+   *
+   * @see {@linkcode ReconnectOptions}
+   *
+   * @category Event Listeners
+   */
+  addListener(
+    event: 'reconnected',
+    handler: (data: PrinterConnection & { attempts: number; downtimeMs: number }) => void,
+  ): Promise<PluginListenerHandle>;
+  /**
+   * Emitted when the printer reports a status change, such as running out of paper.
+   *
+   * @remarks
+   * - If you're using Angular as your framework of choice, the handler doesn't run in zone.
+   * - Only supported on Android.
+   *
+   * @see {@linkcode CapacitorThermalPrinterPlugin.getStatus}
+   *
+   * @category Event Listeners
+   */
+  addListener(event: 'statusChanged', handler: (status: PrinterStatus) => void): Promise<PluginListenerHandle>;
+  /**
+   * Emitted while a job is being sent to the printer, at most every 100ms and once when it has been fully sent.
+   *
+   * @remarks
+   * - If you're using Angular as your framework of choice, the handler doesn't run in zone.
+   * - Only supported on Android.
+   *
+   * @see {@linkcode CapacitorThermalPrinterPlugin.setWriteOptions}
+   *
+   * @category Event Listeners
+   */
+  addListener(event: 'writeProgress', handler: (progress: WriteProgress) => void): Promise<PluginListenerHandle>;
+  /**
+   * Emitted periodically with the metrics of connections opened with `metricsIntervalMs`.
+   *
+   * @remarks
+   * - If you're using Angular as your framework of choice, the handler doesn't run in zone.
+   * - Only supported on Android.
+   *
+   * @see {@linkcode CapacitorThermalPrinterPlugin.getMetrics}
+   *
+   * @category Event Listeners
+   */
+  addListener(event: 'metrics', handler: (metrics: ConnectionMetrics) => void): Promise<PluginListenerHandle>;
+  /**
+   * Emitted when jobs spooled by an earlier app run or connection are queued again after connecting.
+   *
+   * @remarks
+   * - If you're using Angular as your framework of choice, the handler doesn't run in zone.
+   * - Only supported on Android.
+   *
+   * @see {@linkcode CapacitorThermalPrinterPlugin.connect}
+   *
+   * @category Event Listeners
+   */
+  addListener(
+    event: 'jobsReplayed',
+    handler: (data: { connectionId: string; address: string; jobIds: string[] }) => void,
+  ): Promise<PluginListenerHandle>;
 
   //#region Text Formatting
   /**
@@ -284,12 +1063,14 @@ export interface CapacitorThermalPrinterPlugin extends PrinterSession {
   /**
    * Limits the width of following images.
    *
-   * @param width - The maximum width of the image in millimeters ranging from 1mm to 880mm.
+   * @param width - The maximum width of the image in millimeters.
    *
    * @remarks
    * - The initial maximum width is 45mm.
    * - If the width is less than 1mm, this will fail silently.
-   * - If the width is greater than 880mm it will be treated as 880mm.
+   * - Narrower images print at their own width; wider ones are scaled down.
+   * - On Android, images are also never wider than the print head: the width known from the printer's profile, or
+   *   72mm (80mm paper) when it is unknown.
    *
    * @see {@linkcode CapacitorThermalPrinterPlugin.dpi}
    * @see {@linkcode CapacitorThermalPrinterPlugin.image}
@@ -297,6 +1078,22 @@ export interface CapacitorThermalPrinterPlugin extends PrinterSession {
    * @category Image Formatting
    */
   limitWidth(width: number): PrinterSession;
+  /**
+   * Sets the algorithm used to convert following images to black and white dots.
+   *
+   * @param algorithm - Dithering algorithm to use.
+   *
+   * @remarks
+   * - The initial algorithm is `none`.
+   * - Only supported on Android.
+   *
+   * @see {@linkcode DitherAlgorithm}
+   * @see {@linkcode DitherAlgorithms}
+   * @see {@linkcode CapacitorThermalPrinterPlugin.image}
+   *
+   * @category Image Formatting
+   */
+  dither(algorithm: DitherAlgorithm): PrinterSession;
   //#endregion
 
   //#region Hybrid Formatting
@@ -428,20 +1225,51 @@ export interface CapacitorThermalPrinterPlugin extends PrinterSession {
    * @category Content
    */
   text(text: string): PrinterSession;
+  /**
+   * Adds rows of text laid out in columns, such as the line items of a receipt, as a single text command.
+   *
+   * @param columns - Width, alignment and overflow of each column.
+   * @param rows - Cells of each row, one per column.
+   * @param options - Gap between columns and line width.
+   *
+   * @remarks
+   * - Widths are counted natively: Chinese, Japanese and Korean characters take two characters with multi-byte
+   *   encodings such as `GBK`.
+   * - Every line ends with a newline.
+   *
+   * @example
+   * ```ts
+   * CapacitorThermalPrinter.table(
+   *   [{ width: 3, align: 'right' }, {}, { width: 8, align: 'right' }],
+   *   [
+   *     [2, 'Latte', '9.00'],
+   *     [1, 'Blueberry muffin', '3.50'],
+   *   ],
+   * );
+   * ```
+   *
+   * @category Content
+   */
+  table(columns: TableColumn[], rows: (string | number)[][], options?: TableOptions): PrinterSession;
   /**
    * Adds an image to the print queue.
    *
    * @param data - Image data. Can be a URL, a data URL, a Base64, a Blob, a BufferSource or a number array.
+   * On Android, it can also be a `file://`, `content://` or `cache://` URI, see {@linkcode Base64Encodable}.
+   * @param cacheKey - Optional stable key for images printed repeatedly, such as logos. When the encoded image is
+   * already cached natively, `data` isn't read or sent at all.
    *
    * @remarks
-   * The supported image formats the running platform's supported formats.
+   * - The supported image formats the running platform's supported formats.
    * For maximum compatibility, use PNG and JPEG formats.
+   * - Encoded images are cached on Android by content even without a `cacheKey`.
    *
    * @see {@linkcode CapacitorThermalPrinterPlugin.limitWidth}
+   * @see {@linkcode CapacitorThermalPrinterPlugin.getImageCacheStats}
    *
    * @category Content
    */
-  image(data: Base64Encodable): PrinterSession;
+  image(data: Base64Encodable, cacheKey?: string): PrinterSession;
   /**
    * Adds a QR code to the print queue.
    *
@@ -468,6 +1296,7 @@ export interface CapacitorThermalPrinterPlugin extends PrinterSession {
    * Adds raw data to the print queue. Use only if you know what you are doing.
    *
    * @param data - The data. Can be a URL, a data URL, a Base64, a Blob, a BufferSource or a number array.
+   * On Android, it can also be a `file://`, `content://` or `cache://` URI, see {@linkcode Base64Encodable}.
    *
    * @remarks
    * Each byte will be truncated/wrapped if it's outside the range of 0 to 255.
@@ -547,13 +1376,207 @@ export interface CapacitorThermalPrinterPlugin extends PrinterSession {
   /**
    * Writes the print queue to the printer.
    *
+   * @param options - Priority of the job and whether to wait until it has been sent.
+   * @returns The identifier of the job, which can be used to cancel or reprioritize it while it is queued.
+   *
    * @remarks
-   * Calling this method doesn't reset the print queue
+   * - Calling this method doesn't reset the print queue
+   * - On Android, jobs of each printer are sent one at a time in their own thread; by default this resolves once
+   * the last byte has been sent to the printer and rejects if the connection drops midway.
+   * - Jobs wait instead of being sent while the printer reports it can't print, see {@linkcode PrinterStatus.ready}.
+   * - Rejects with code `QUEUE_FULL` if 64 jobs are already waiting, and with code `JOB_CANCELLED` if the job is
+   * cancelled before it starts.
    *
    * @see {@linkcode CapacitorThermalPrinterPlugin.begin}
+   * @see {@linkcode CapacitorThermalPrinterPlugin.setWriteOptions}
+   * @see {@linkcode CapacitorThermalPrinterPlugin.listJobs}
+   *
+   * @category Printing Actions
+   */
+  write(options?: QueueOptions): Promise<QueuedJob>;
+  /**
+   * Encodes a whole list of operations natively in a single bridge call and writes the result.
+   *
+   * @param operations - Ordered operations, each taking the same arguments as the method of the same name.
+   * @param options - Whether to reset the queue before and write it after. Both default to `true`.
+   *
+   * @remarks
+   * - Invalid operations are skipped and reported by index in {@linkcode PrintJobResult.errors}.
+   * - If any operation fails, the print queue is not written and is left as it was before the call, along with the
+   *   formatting state.
+   *
+   * @see {@linkcode PrintOperation}
+   *
+   * @category Printing Actions
+   */
+  printJob(operations: PrintOperation[], options?: PrintJobOptions): Promise<PrintJobResult>;
+  /**
+   * Prints an image right away, decoding and sending it in horizontal bands.
+   *
+   * @param data - Image data. Can be a URL, a data URL, a Base64, a Blob, a BufferSource or a number array.
+   * On Android, it can also be a `file://`, `content://` or `cache://` URI, see {@linkcode Base64Encodable}.
+   * @param options - Priority of the job and whether to wait until it has been sent.
+   *
+   * @remarks
+   * - Meant for very tall images such as full-page invoices: only one band is held in memory and paper starts
+   * moving before the last band is converted.
+   * - The print queue is neither written nor reset.
+   * - Only supported on Android.
+   *
+   * @see {@linkcode CapacitorThermalPrinterPlugin.image}
+   *
+   * @category Printing Actions
+   */
+  streamImage(data: Base64Encodable, options?: QueueOptions): Promise<QueuedJob>;
+  /**
+   * Compiles operations into a reusable receipt stored on the connection, replacing any template with the same id.
+   *
+   * @param id - Name of the template.
+   * @param operations - Operations encoded once; those with a `slot` are filled on every print.
+   *
+   * @remarks
+   * - Operations run from reset formatting and leave the print queue and formatting untouched.
+   * - Up to 32 templates are kept per connection; the least recently used one is dropped first.
+   * - Only supported on Android.
+   *
+   * @example
+   * ```ts
+   * await CapacitorThermalPrinter.registerTemplate('receipt', [
+   *   { op: 'align', alignment: 'center' },
+   *   { op: 'text', text: 'Order #' },
+   *   { op: 'text', slot: 'order' },
+   *   { op: 'text', text: '\nTotal: ' },
+   *   { op: 'text', slot: 'total', decimals: 2 },
+   *   { op: 'qr', slot: 'link' },
+   *   { op: 'feedCutPaper' },
+   * ]);
+   * await CapacitorThermalPrinter.printTemplate('receipt', { order: 42, total: 9.5, link: 'https://example.com/42' });
+   * ```
+   *
+   * @category Printing Actions
+   */
+  registerTemplate(id: string, operations: TemplateOperation[]): Promise<RegisteredTemplate>;
+  /**
+   * Prints a template registered with {@linkcode CapacitorThermalPrinterPlugin.registerTemplate}, only encoding the
+   * slot values.
+   *
+   * @param values - Value of every slot, by name.
+   * @param options - Priority of the job and whether to wait until it has been sent.
+   *
+   * @remarks
+   * - Rejects with code `TEMPLATE_NOT_FOUND` if the template is not registered on this connection.
+   * - The print queue is neither written nor reset.
+   * - Only supported on Android.
+   *
+   * @category Printing Actions
+   */
+  printTemplate(id: string, values: Record<string, string | number>, options?: QueueOptions): Promise<QueuedJob>;
+  /**
+   * Prints the same operations on several printers at once, e.g. an order on the bar, grill and expo printers.
+   *
+   * @param operations - Operations encoded from reset formatting, leaving the print queues of the connections
+   * untouched.
+   * @param options - Target connections, priority of the jobs and whether to wait until all of them have been sent.
+   *
+   * @remarks
+   * - Operations are encoded once per encoding, not once per printer, and all printers receive their job in
+   *   parallel: the call takes as long as the slowest printer.
+   * - Rejects without printing anything if an operation is invalid. Failures of single printers are reported in
+   *   {@linkcode BroadcastResult.results} instead.
+   * - Only supported on Android.
+   *
+   * @category Printing Actions
+   */
+  broadcast(operations: PrintOperation[], options?: BroadcastOptions): Promise<BroadcastResult>;
+  /**
+   * Groups connections to identical printers so they can be used as one with
+   * {@linkcode CapacitorThermalPrinterPlugin.printOnPool}.
+   *
+   * @param connectionIds - Connections in the pool.
+   *
+   * @remarks
+   * Only supported on Android.
+   *
+   * @category Printer Pools
+   */
+  createPool(connectionIds: string[], options?: CreatePoolOptions): Promise<PrinterPoolInfo>;
+  /**
+   * Deletes a pool. Jobs already queued on a member are still printed.
+   *
+   * @remarks
+   * Only supported on Android.
+   *
+   * @category Printer Pools
+   */
+  removePool(poolId: string): Promise<void>;
+  /**
+   * @remarks
+   * Only supported on Android.
+   *
+   * @category Printer Pools
+   */
+  listPools(): Promise<{ pools: PrinterPoolInfo[] }>;
+  /**
+   * Prints operations on the pool member that will be free first.
+   *
+   * @param operations - Operations encoded from reset formatting, leaving the print queues of the members untouched.
+   * @param options - Priority of the job and whether to wait until it has been sent.
+   *
+   * @remarks
+   * - Members that are disconnected or report a problem such as paper out are skipped. Rejects with code
+   *   `POOL_UNAVAILABLE` if no member can print.
+   * - Jobs still waiting on a member that disconnects or stops being able to print move to the other members.
+   * - Only supported on Android.
+   *
+   * @category Printer Pools
+   */
+  printOnPool(poolId: string, operations: PrintOperation[], options?: QueueOptions): Promise<PoolJob>;
+  /**
+   * Lists the job being sent, followed by the queued jobs in the order they will be sent.
+   *
+   * @remarks
+   * Only supported on Android.
+   *
+   * @category Printing Actions
+   */
+  listJobs(options?: ListJobsOptions): Promise<{ jobs: PrintJobInfo[] }>;
+  /**
+   * Removes a queued job. Its pending {@linkcode CapacitorThermalPrinterPlugin.write} call rejects with code
+   * `JOB_CANCELLED`.
+   *
+   * @remarks
+   * - A job that is already being sent can only be cancelled while it is paused, e.g. by paper out. The rest of it is
+   *   dropped, which may leave the printer in the middle of a command.
+   * - Only supported on Android.
+   *
+   * @category Printing Actions
+   */
+  cancelJob(jobId: string): Promise<void>;
+  /**
+   * Changes the priority of a queued job.
+   *
+   * @remarks
+   * Only supported on Android.
+   *
+   * @see {@linkcode QueueOptions.priority}
+   *
+   * @category Printing Actions
+   */
+  setJobPriority(jobId: string, priority: number): Promise<void>;
+  /**
+   * Drops spooled jobs so they are not printed on the next connect.
+   *
+   * @param options.address - Only drops the jobs of this printer.
+   *
+   * @remarks
+   * - Jobs already queued on a connection are still printed.
+   * - Jobs older than a day are never replayed.
+   * - Only supported on Android.
+   *
+   * @see {@linkcode CapacitorThermalPrinterPlugin.connect}
    *
    * @category Printing Actions
    */
-  write(): Promise<void>;
+  clearSpool(options?: { address?: string }): Promise<{ cleared: number }>;
   //#endregion
 }
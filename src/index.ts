@@ -1,12 +1,25 @@
-import { registerPlugin } from '@capacitor/core';
+import { Capacitor, registerPlugin } from '@capacitor/core';
 
 import type {
   Base64Encodable,
+  BroadcastOptions,
+  CreatePoolOptions,
   CapacitorThermalPrinterPlugin,
   DisconnectOptions,
+  GetStatusOptions,
   IsConnectedOptions,
+  ListJobsOptions,
+  MetricsOptions,
+  PrintJobOptions,
+  PrintJobResult,
+  PrintOperation,
   PrinterConnection,
   PrinterSession,
+  QueueOptions,
+  QueuedJob,
+  RegisteredTemplate,
+  SetWriteOptionsOptions,
+  TemplateOperation,
 } from './definitions';
 import { WrappedMethodsArgsMap, WrappedMethodsMiddlewareMap } from './private-definitions';
 import CallablePromise from './utils/CallablePromise';
@@ -26,6 +39,7 @@ const wrappedMethodsArgNames = {
   //#region Image Formatting
   dpi: ['dpi'],
   limitWidth: ['width'],
+  dither: ['algorithm'],
   //#endregion
 
   //#region Data Code Formatting
@@ -45,7 +59,8 @@ const wrappedMethodsArgNames = {
 
   //#region Content
   text: ['text'],
-  image: ['image'],
+  table: ['columns', 'rows', 'options'],
+  image: ['image', 'cacheKey'],
   qr: ['data'],
   barcode: ['type', 'data'],
   raw: ['data'],
@@ -61,19 +76,54 @@ const wrappedMethodsArgNames = {
 
   //#region Printing Actions
   begin: [],
-  write: [],
   //#endregion
 } as const satisfies WrappedMethodsArgsMap;
 
+/**
+ * Only the Android plugin reads native sources and decodes hex payloads; iOS takes Base64 or number arrays.
+ */
+function isAndroid() {
+  return Capacitor.getPlatform() === 'android';
+}
+
+function checkNativeSource(data: string) {
+  if (!isAndroid()) {
+    throw new Error('file://, content:// and cache:// sources are only supported on Android.');
+  }
+  return data;
+}
+
 const wrappedMethodsMiddleware = {
-  async image(data: Base64Encodable) {
-    return { image: await Encoding.toBase64(data) };
+  async image(data: Base64Encodable, cacheKey?: string) {
+    if (Encoding.isNativeSource(data)) {
+      return { image: checkNativeSource(data), cacheKey };
+    }
+
+    return { image: await Encoding.toBase64(data), cacheKey };
   },
   async raw(data: Base64Encodable) {
+    if (Encoding.isNativeSource(data)) {
+      return { data: checkNativeSource(data) };
+    }
+    if (isAndroid() && typeof data !== 'string' && !(data instanceof Blob)) {
+      return { data: { hex: Encoding.toHex(data) } };
+    }
+
     return { data: await Encoding.toBase64(data) };
   },
 } as const satisfies WrappedMethodsMiddlewareMap<typeof wrappedMethodsArgNames>;
 
+async function mapOperation(operation: PrintOperation) {
+  if (operation.op === 'image' && operation.image !== undefined) {
+    return { ...operation, ...(await wrappedMethodsMiddleware.image(operation.image, operation.cacheKey)) };
+  }
+  if (operation.op === 'raw') {
+    return { ...operation, ...(await wrappedMethodsMiddleware.raw(operation.data)) };
+  }
+
+  return operation;
+}
+
 function mapArgs(key: string, args: any[]) {
   if (key in wrappedMethodsMiddleware) {
     // eslint-disable-next-line @typescript-eslint/ban-ts-comment
@@ -103,39 +153,95 @@ function ensureQueue(connectionId: string) {
   return queue;
 }
 
+function enqueue<T>(connectionId: string, task: () => Promise<T>): Promise<T> {
+  const queue = ensureQueue(connectionId);
+  const trailingLock = queue.pop();
+  const lock = new CallablePromise<void>();
+  queue.push(lock);
+
+  return Promise.resolve(trailingLock)
+    .then(task)
+    .finally(() => {
+      lock.resolve();
+    });
+}
+
+function enqueueCall<T>(
+  connectionId: string,
+  key: string,
+  buildPayload: () => Record<string, unknown> | PromiseLike<Record<string, unknown>>,
+): Promise<T> {
+  return enqueue(connectionId, async () => {
+    const payload = {
+      connectionId,
+      ...(await buildPayload()),
+    };
+    return CapacitorThermalPrinterImplementation[key](payload);
+  });
+}
+
+/**
+ * Tries the native raster cache first when a cache key is given, so the image is only encoded and sent on a miss.
+ */
+async function printImage(connectionId: string, data: Base64Encodable, cacheKey?: string) {
+  if (cacheKey !== undefined) {
+    try {
+      return await CapacitorThermalPrinterImplementation.image({ connectionId, cacheKey });
+    } catch (e) {
+      if ((e as { code?: string })?.code !== 'IMAGE_NOT_CACHED') {
+        throw e;
+      }
+    }
+  }
+
+  return CapacitorThermalPrinterImplementation.image({
+    connectionId,
+    ...(await wrappedMethodsMiddleware.image(data, cacheKey)),
+  });
+}
+
 function createSession(connectionIdResolver: ConnectionIdResolver): PrinterSession {
   const session: Record<string, any> = {};
   const sessionProxy = session as PrinterSession;
 
   for (const key in wrappedMethodsArgNames) {
     session[key] = (...args: any[]) => {
-      const connectionId = connectionIdResolver();
-      const queue = ensureQueue(connectionId);
-      const trailingLock = queue.pop();
-      const lock = new CallablePromise<void>();
-      queue.push(lock);
-
-      const promise = Promise.resolve(trailingLock)
-        .then(async () => {
-          const mappedArgs = await Promise.resolve(mapArgs(key, args));
-          const payload = {
-            connectionId,
-            ...mappedArgs,
-          };
-          return CapacitorThermalPrinterImplementation[key](payload);
-        })
-        .finally(() => {
-          lock.resolve();
-        });
-
-      if (key === 'write') {
-        return promise;
-      }
-
+      enqueueCall(connectionIdResolver(), key, () => mapArgs(key, args));
       return sessionProxy;
     };
   }
 
+  session.image = (data: Base64Encodable, cacheKey?: string) => {
+    const connectionId = connectionIdResolver();
+    enqueue(connectionId, () => printImage(connectionId, data, cacheKey));
+    return sessionProxy;
+  };
+
+  session.write = (options?: QueueOptions) => enqueueCall<QueuedJob>(connectionIdResolver(), 'write', () => ({ ...options }));
+
+  session.streamImage = (data: Base64Encodable, options?: QueueOptions) =>
+    enqueueCall<QueuedJob>(connectionIdResolver(), 'streamImage', async () => ({
+      ...options,
+      ...(await wrappedMethodsMiddleware.image(data)),
+    }));
+
+  session.printJob = (operations: PrintOperation[], options?: PrintJobOptions) =>
+    enqueueCall<PrintJobResult>(connectionIdResolver(), 'printJob', async () => ({
+      ...options,
+      operations: await Promise.all(operations.map(mapOperation)),
+    }));
+
+  session.registerTemplate = (id: string, operations: TemplateOperation[]) =>
+    enqueueCall<RegisteredTemplate>(connectionIdResolver(), 'registerTemplate', async () => ({
+      id,
+      operations: await Promise.all(
+        operations.map((operation) => ('slot' in operation ? operation : mapOperation(operation))),
+      ),
+    }));
+
+  session.printTemplate = (id: string, values: Record<string, string | number>, options?: QueueOptions) =>
+    enqueueCall<QueuedJob>(connectionIdResolver(), 'printTemplate', () => ({ ...options, id, values }));
+
   return sessionProxy;
 }
 
@@ -183,22 +289,24 @@ function resolveConnectionId(preferred?: string | null): string {
 
 const defaultSession = createSession(() => resolveConnectionId());
 
-const CapacitorThermalPrinter = Object.assign(defaultSession as CapacitorThermalPrinterPlugin, {
-  async connect(options: { address: string; encoding?: string }) {
-    // Default to GBK encoding for best Chinese character support
-    const connectOptions = {
-      address: options.address,
-      encoding: options.encoding || 'GBK',
-    };
-    const result = (await CapacitorThermalPrinterImplementation.connect(connectOptions)) as PrinterConnection | null;
-    if (result) {
-      ensureSession(result.connectionId);
-      if (!activeConnectionId) {
-        activeConnectionId = result.connectionId;
-      }
+function trackConnection(result: PrinterConnection | null): PrinterConnection | null {
+  if (result) {
+    ensureSession(result.connectionId);
+    if (!activeConnectionId) {
+      activeConnectionId = result.connectionId;
     }
+  }
 
-    return result;
+  return result;
+}
+
+const CapacitorThermalPrinter = Object.assign(defaultSession as CapacitorThermalPrinterPlugin, {
+  async connect(options: Parameters<CapacitorThermalPrinterPlugin['connect']>[0]) {
+    // Without an encoding, the native side uses the one last used with the printer, or GBK.
+    return trackConnection(await CapacitorThermalPrinterImplementation.connect(options));
+  },
+  async connectFirst(options: Parameters<CapacitorThermalPrinterPlugin['connectFirst']>[0]) {
+    return trackConnection(await CapacitorThermalPrinterImplementation.connectFirst(options));
   },
   async disconnect(options?: DisconnectOptions) {
     const connectionId = resolveConnectionId(options?.connectionId ?? null);
@@ -247,10 +355,57 @@ const CapacitorThermalPrinter = Object.assign(defaultSession as CapacitorThermal
   getActiveConnection() {
     return activeConnectionId;
   },
+  async broadcast(operations: PrintOperation[], options?: BroadcastOptions) {
+    return CapacitorThermalPrinterImplementation.broadcast({
+      ...options,
+      operations: await Promise.all(operations.map(mapOperation)),
+    });
+  },
+  createPool: (connectionIds: string[], options?: CreatePoolOptions) =>
+    CapacitorThermalPrinterImplementation.createPool({ ...options, connectionIds }),
+  removePool: (poolId: string) => CapacitorThermalPrinterImplementation.removePool({ poolId }),
+  listPools: () => CapacitorThermalPrinterImplementation.listPools(),
+  async printOnPool(poolId: string, operations: PrintOperation[], options?: QueueOptions) {
+    return CapacitorThermalPrinterImplementation.printOnPool({
+      ...options,
+      poolId,
+      operations: await Promise.all(operations.map(mapOperation)),
+    });
+  },
+  listJobs(options?: ListJobsOptions) {
+    const connectionId = resolveConnectionId(options?.connectionId ?? null);
+    return CapacitorThermalPrinterImplementation.listJobs({ connectionId });
+  },
+  cancelJob: (jobId: string) => CapacitorThermalPrinterImplementation.cancelJob({ jobId }),
+  setJobPriority: (jobId: string, priority: number) =>
+    CapacitorThermalPrinterImplementation.setJobPriority({ jobId, priority }),
+  clearSpool: (options?: { address?: string }) => CapacitorThermalPrinterImplementation.clearSpool({ ...options }),
+  getStatus(options?: GetStatusOptions) {
+    const connectionId = resolveConnectionId(options?.connectionId ?? null);
+    return CapacitorThermalPrinterImplementation.getStatus({ ...options, connectionId });
+  },
+  setWriteOptions(options: SetWriteOptionsOptions) {
+    const connectionId = resolveConnectionId(options.connectionId ?? null);
+    return CapacitorThermalPrinterImplementation.setWriteOptions({ ...options, connectionId });
+  },
+  getMetrics(options?: MetricsOptions) {
+    const connectionId = resolveConnectionId(options?.connectionId ?? null);
+    return CapacitorThermalPrinterImplementation.getMetrics({ connectionId });
+  },
+  resetMetrics(options?: MetricsOptions) {
+    const connectionId = resolveConnectionId(options?.connectionId ?? null);
+    return CapacitorThermalPrinterImplementation.resetMetrics({ connectionId });
+  },
+  getImageCacheStats: () => CapacitorThermalPrinterImplementation.getImageCacheStats(),
+  clearImageCache: () => CapacitorThermalPrinterImplementation.clearImageCache(),
   startScan: (...args: Parameters<typeof CapacitorThermalPrinterImplementation.startScan>) =>
     CapacitorThermalPrinterImplementation.startScan(...args),
   stopScan: (...args: Parameters<typeof CapacitorThermalPrinterImplementation.stopScan>) =>
     CapacitorThermalPrinterImplementation.stopScan(...args),
+  getDiscoveredDevices: () => CapacitorThermalPrinterImplementation.getDiscoveredDevices(),
+  getPrinterProfile: (options: { address: string }) => CapacitorThermalPrinterImplementation.getPrinterProfile(options),
+  clearPrinterProfiles: (options?: { address?: string }) =>
+    CapacitorThermalPrinterImplementation.clearPrinterProfiles({ ...options }),
   addListener: CapacitorThermalPrinterImplementation.addListener.bind(CapacitorThermalPrinterImplementation),
 }) as CapacitorThermalPrinterPlugin;
 
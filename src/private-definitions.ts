@@ -3,7 +3,7 @@ import type { PrinterSession } from './definitions';
 type PickByType<T, Value> = {
   [P in keyof T as T[P] extends Value | undefined ? P : never]: T[P];
 };
-type WrappedMethods = keyof PickByType<PrinterSession, (...args: any[]) => PrinterSession> | 'write';
+type WrappedMethods = keyof PickByType<PrinterSession, (...args: any[]) => PrinterSession>;
 type FixedArray<T, L> = readonly T[] & { length: L };
 
 export type WrappedMethodsArgsMap = {
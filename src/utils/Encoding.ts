@@ -1,6 +1,31 @@
 import type { Base64Encodable } from '../definitions';
 
+const NATIVE_SOURCE_PATTERN = /^(file|content|cache):\/\//;
+const HEX_DIGITS = Array.from({ length: 256 }, (_, i) => i.toString(16).padStart(2, '0'));
+
 export default class Encoding {
+  /**
+   * Whether the data is a `file://`, `content://` or `cache://` URI, which the native layer reads by itself.
+   */
+  static isNativeSource(data: Base64Encodable): data is string {
+    return typeof data === 'string' && NATIVE_SOURCE_PATTERN.test(data);
+  }
+
+  static toHex(data: number[] | BufferSource): string {
+    const bytes =
+      data instanceof Array
+        ? data
+        : data instanceof ArrayBuffer
+          ? new Uint8Array(data)
+          : new Uint8Array(data.buffer, data.byteOffset, data.byteLength);
+
+    let hex = '';
+    for (let i = 0; i < bytes.length; i++) {
+      hex += HEX_DIGITS[bytes[i] & 0xff];
+    }
+    return hex;
+  }
+
   static blobToDataURL(blob: Blob): Promise<string> {
     const reader = new FileReader();
 